@@ -0,0 +1,280 @@
+package sqlmrFunctions;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.CharsetDecoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+
+import utils.Accumulator;
+import utils.ErrorHandler;
+import utils.JSONReaderService;
+import utils.PartitionInputStream;
+import utils.PartitionReader;
+import utils.Utils;
+import utils.Utils.UnzipCallback;
+import utils.XMLReaderService;
+
+import com.asterdata.ncluster.sqlmr.Drainable;
+import com.asterdata.ncluster.sqlmr.IllegalUsageException;
+import com.asterdata.ncluster.sqlmr.OutputInfo;
+import com.asterdata.ncluster.sqlmr.PartitionFunction;
+import com.asterdata.ncluster.sqlmr.RowFunction;
+import com.asterdata.ncluster.sqlmr.RuntimeContract;
+import com.asterdata.ncluster.sqlmr.data.ColumnDefinition;
+import com.asterdata.ncluster.sqlmr.data.PartitionDefinition;
+import com.asterdata.ncluster.sqlmr.data.RowEmitter;
+import com.asterdata.ncluster.sqlmr.data.RowIterator;
+import com.asterdata.ncluster.sqlmr.data.SqlType;
+
+/**
+ * @author Juergen Boiselle
+ *
+ * Parses JSON documents and filters using an include and exclude list. The data is optionally uncompressed and encoded with a given character set
+ * before JSON parsing starts. This is the JSON counterpart of XMLFastFilter and returns the same columns.
+ * All nodes are returned, when not filtered out. Filtering is configured using the include and exclude list, which contain nodes to switch
+ * filtering on and off.
+ * 
+ * The JSON document is read as a tree of nodes:
+ * - The top level value is the root node named "root".
+ * - Each member of an object is a node named by its key.
+ * - An array, that is the value of a member, is not a node by itself. Each of its items is a node named by the key of the member,
+ * 		like repeated elements in XML. Items of the root array and of arrays within arrays are named "item".
+ * 		A member with an empty array therefore returns no row, like a missing member.
+ * For example in {"order": {"no": 1, "items": [{"sku": "A"}, {"sku": "B"}]}} the full path of the first sku is "/root/order/items/sku/"
+ * and include('items') returns one includecount for each item.
+ * 
+ * Syntax:
+ * 	SELECT * FROM JSONFastFilter(
+ * 		ON { table_name | view_name | (query) }
+ * 		[PARTITION BY partition_column1, ... ORDER BY chunk]
+ * 		JSON('column_name')
+ * 		[INCLUDE('included_key|included_regex'[, ...])]
+ * 		[EXCLUDE('excluded_key|excluded_regex'[, ...])]
+ * 		[SKIPAFTER('key|regex'[, ...])]
+ * 		[LOCALNAMES('key|regex'[, ...])]
+ * 		[accumulate('passed_thru_column_name'[, ...])]
+ * 		[unzip(character encoding)]
+ * 		[stopOnError('true'|'false')]
+ * 		[log(infoN)]
+ * 
+ * Parameter:
+ * JSON	mandatory	Name of the column in the ON Phrase that contains the JSON document.
+ * accumulate	optional	Copy columns of input to each output row.
+ * unzip	optional	If set, the input is uncompressed before it is passed to the JSON parser.
+ * 						The input must be of type bytea and is encoded by the given value. If this parameter is not set, the function expects,
+ * 						that the input is a JSON document. In this case the input must be of type character varying.
+ * stopOnError	optional	Possible values are 'true' and 'false'. If set to 'true' the function stops when it occurs an error while reading the partitions.
+ * 							'false' indicates, that the function continues, ignoring the partition and continuing with the next one. Default is 'false'.
+ * log optional	number of rows between information logged	If set every number of rows or partitions, information is logged at level INFO about timings and progress.	
+ * INCLUDE/EXCLUDE/SKIPAFTER/LOCALNAMES	optional	See XMLFastFilter. Keys take the role of local names.
+ * 
+ * Output:
+ * includeparent, includecount, fullpath, uri, localname, qname, type, value, id, first_sub_id	as in XMLFastFilter with:
+ * uri	character varying	is always empty.
+ * localname, qname	character varying	is the key of the node, "root" or "item".
+ * type	character(1)	is 'O' for objects, 'L' for arrays, that are a node, 'S' for strings, 'N' for numbers, 'B' for booleans and 'Z' for null.
+ * value	character varying	is the unescaped string, the number or boolean as written in the document. Null for null and empty for objects and arrays.
+ * 
+ * Additional output is written if "unzip" is set. See SQL-MR function "unzip" for a description of the additional fields.
+ * 
+ * Error handling:
+ * - Whenever a Java exception is thrown such as ZipException, a JSON syntax error or an IOException, the partition is aborted and no more rows are returned.
+ * - The exception and the stack is printed in the Aster log file. Processing continues with next partition.
+ */
+public final class JSONFastFilter implements RowFunction, PartitionFunction, Drainable {
+	// These member variables will be populated with the values of the argument clauses passed to the SQL-MR function.
+	private int jsonArgumentIdx = 0;
+	private JSONReaderService jsonReaderService = null;
+	private Accumulator accumulator = null;
+	private CharsetDecoder charsetDecoder = null; // if null, UNZIP was not set. Input is plain JSON.
+	private ErrorHandler errorHandler = null;
+
+	/* 
+	 * The constructor establishes the RuntimeContract between
+	 * the SQL-MR function and Aster Database. During query planning,
+	 * the function will constructed on a single node. During
+	 * query execution, it will be constructed and run on one or more nodes.
+	 */
+	public JSONFastFilter(RuntimeContract contract) {
+		// Read argument clauses into appropriate member variables.
+		jsonArgumentIdx = contract.getInputInfo().getColumnIndex(contract.useArgumentClause("json").getSingleValue());
+		accumulator = new Accumulator(contract);
+		charsetDecoder = Utils.getEncoding(contract, "unzip");
+		errorHandler = new ErrorHandler(
+				this.getClass().getName(),
+				Utils.getSingleBooleanFromParameter(contract, "stoponerror", false),
+				Utils.getSingleIntFromParameter(contract, "log", Integer.MAX_VALUE));
+		
+		// Initialize the JSON parser
+		jsonReaderService = new JSONReaderService(
+				contract.hasArgumentClause("include")? contract.useArgumentClause("include").getValues():null,
+				contract.hasArgumentClause("exclude")? contract.useArgumentClause("exclude").getValues():null,
+				contract.hasArgumentClause("skipafter")? contract.useArgumentClause("skipafter").getValues():null,
+				contract.hasArgumentClause("localnames")? contract.useArgumentClause("localnames").getValues():null);
+
+		// Verify that the function accepts the given input schema depending on UNZIP is set or not.
+		if(charsetDecoder != null && !SqlType.getType("bytea").equals(contract.getInputInfo().getColumnType(jsonArgumentIdx))) {
+			throw new IllegalUsageException(
+					"When 'zipped' is set, type (bytea) expected for zipped column \"" +
+					contract.useArgumentClause("json").getSingleValue() + "\"");
+		}
+		else if(charsetDecoder == null && !SqlType.getType("character varying").equals(contract.getInputInfo().getColumnType(jsonArgumentIdx))) {
+			throw new IllegalUsageException(
+					"When 'zipped' not set, type (character varying) expected for json column \"" +
+					contract.useArgumentClause("json").getSingleValue() + "\"");
+		}
+
+		// Construct the output schema
+		List<ColumnDefinition> outputColumns = new ArrayList<ColumnDefinition>();
+		accumulator.constructOutputSchema(contract, outputColumns);
+		outputColumns.add(new ColumnDefinition("includeparent", SqlType.getType("character varying")));
+		outputColumns.add(new ColumnDefinition("includecount", SqlType.getType("integer")));
+		outputColumns.add(new ColumnDefinition("fullpath", SqlType.getType("character varying")));
+		outputColumns.add(new ColumnDefinition("uri", SqlType.getType("character varying")));
+		outputColumns.add(new ColumnDefinition("localname", SqlType.getType("character varying")));
+		outputColumns.add(new ColumnDefinition("qname", SqlType.getType("character varying")));
+		outputColumns.add(new ColumnDefinition("type", SqlType.getType("character (1)")));
+		outputColumns.add(new ColumnDefinition("value", SqlType.getType("character varying")));
+		outputColumns.add(new ColumnDefinition("id", SqlType.getType("integer")));
+		outputColumns.add(new ColumnDefinition("first_sub_id", SqlType.getType("integer")));
+
+		if(charsetDecoder != null) {
+			outputColumns.add(new ColumnDefinition("file", SqlType.getType("character varying")));
+			outputColumns.add(new ColumnDefinition("time", SqlType.getType("timestamp with time zone")));
+			outputColumns.add(new ColumnDefinition("size", SqlType.getType("integer")));
+			outputColumns.add(new ColumnDefinition("compressedSize", SqlType.getType("integer")));
+			outputColumns.add(new ColumnDefinition("isDirectory", SqlType.getType("character(1)")));
+			outputColumns.add(new ColumnDefinition("method", SqlType.getType("integer")));
+			outputColumns.add(new ColumnDefinition("crc", SqlType.getType("integer")));
+			outputColumns.add(new ColumnDefinition("comment", SqlType.getType("character varying")));
+		}
+		contract.setOutputInfo(new OutputInfo(outputColumns));
+
+		// Complete the contract
+		contract.complete();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.asterdata.ncluster.sqlmr.RowFunction#operateOnSomeRows(com.asterdata.ncluster.sqlmr.data.RowIterator, com.asterdata.ncluster.sqlmr.data.RowEmitter)
+	 * 
+	 * Operate of rows of input. SQL-MR function was called as a map function without partitions.
+	 * Each row is expected to be one complete JSON Document, either compressed or plain.
+	 */
+	public void operateOnSomeRows(RowIterator inputIterator, RowEmitter outputEmitter) {
+		while (inputIterator.advanceToNextRow()) {
+			errorHandler.enterOperateOnRow(inputIterator, outputEmitter);
+			if(inputIterator.isNullAt(jsonArgumentIdx)) {
+				errorHandler.skipRow();
+				continue;
+			}
+
+			if(charsetDecoder == null) // is input compressed?
+				jsonFilter(new StringReader(inputIterator.getStringAt(jsonArgumentIdx)), null, inputIterator, outputEmitter);
+			else
+				zippedJsonFilter(new ByteArrayInputStream(inputIterator.getBytesAt(jsonArgumentIdx)), inputIterator, outputEmitter);
+			errorHandler.exitOperateOnRow();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.asterdata.ncluster.sqlmr.PartitionFunction#operateOnPartition(com.asterdata.ncluster.sqlmr.data.PartitionDefinition, com.asterdata.ncluster.sqlmr.data.RowIterator, com.asterdata.ncluster.sqlmr.data.RowEmitter)
+	 * 
+	 * Operate of rows of input. SQL-MR function was called as a reduce function with partitions.
+	 * Each partition is expected to be one complete JSON Document, either compressed or plain.
+	 * Rows within the partition are chunks (parts, pieces) of the document in correct order.
+	 */
+	public void operateOnPartition(PartitionDefinition definition, RowIterator inputIterator, RowEmitter outputEmitter) {
+		errorHandler.enterOperateOnPartition(definition, inputIterator, outputEmitter);
+		if(charsetDecoder == null) // is input compressed?
+			jsonFilter(new PartitionReader(inputIterator, jsonArgumentIdx), null, inputIterator, outputEmitter);
+		else
+			zippedJsonFilter(new PartitionInputStream(inputIterator, jsonArgumentIdx), inputIterator, outputEmitter);
+		errorHandler.exitOperateOnPartition();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.asterdata.ncluster.sqlmr.Drainable#drainOutputRows(com.asterdata.ncluster.sqlmr.data.RowEmitter)
+	 * 
+	 * Send last logging information
+	 */
+	public void drainOutputRows(RowEmitter outputEmitter) {
+		errorHandler.drainOutputRows();
+	}
+	
+	/**
+	 * Parse one JSON document, not compressed and complete. Emit the rows to Aster.
+	 * @param reader to read the JSON from.
+	 * @param zipEntry might be null. If not null, contains the meta data of the ZIP entry to be emitted with each row.
+	 * @param inputIterator
+	 * @param outputEmitter
+	 */
+	private void jsonFilter(Reader reader, final ZipEntry zipEntry, final RowIterator inputIterator, final RowEmitter outputEmitter) {
+		try {
+			jsonReaderService.parse(reader, new XMLReaderService.XMLReaderCallback() {
+				// Construct row on each callback and emit the row
+				public void newRow(String includeParent, int includeCount, String fullPath,
+						String uri, String localName, String qName, String type, String value, int id, int first_sub_id) {
+					
+					// accumulate
+					accumulator.emit(inputIterator, outputEmitter);
+
+					// JSON part
+					Utils.emitNullableString(outputEmitter, includeParent);
+					outputEmitter.addInt(includeCount);
+					outputEmitter.addString(fullPath);
+					outputEmitter.addString(uri);
+					outputEmitter.addString(localName);
+					outputEmitter.addString(qName);
+					outputEmitter.addString(type);
+					Utils.emitNullableString(outputEmitter, value);
+					outputEmitter.addInt(id);
+					outputEmitter.addInt(first_sub_id);
+					
+					// ZIP part
+					if(zipEntry != null) {
+						Utils.emitNullableString(outputEmitter, zipEntry.getName());
+						Utils.emitNullableTimestamp(outputEmitter, zipEntry.getTime(), -1L);
+						Utils.emitNullableInteger(outputEmitter, zipEntry.getSize(), -1L);
+						Utils.emitNullableInteger(outputEmitter, zipEntry.getCompressedSize(), -1L);
+						outputEmitter.addString(zipEntry.isDirectory()? "T":"F");
+						outputEmitter.addInt(zipEntry.getMethod());
+						Utils.emitNullableInteger(outputEmitter, zipEntry.getCrc(), -1L);
+						Utils.emitNullableString(outputEmitter, zipEntry.getComment());
+					}
+					outputEmitter.emitRow();
+				}
+			});
+		} catch (IOException e) {
+			errorHandler.catchException(e);
+			return; // End this row and go to next if stopOnError is set to false (otherwise exception is thrown)
+		}
+	}
+	
+	/**
+	 * Uncompress and parse each ZIP entry as one JSON document.
+	 * @param inputStream to read the compressed content from.
+	 * @param inputIterator
+	 * @param outputEmitter
+	 */
+	private void zippedJsonFilter(InputStream inputStream, final RowIterator inputIterator, final RowEmitter outputEmitter) {
+		try {
+			// The unzip of the file
+			Utils.unzip(inputStream, new UnzipCallback() {
+				public void newZipEntry(final ZipEntry zipEntry, InputStream inputStream) {
+					jsonFilter(new InputStreamReader(inputStream, charsetDecoder), zipEntry, inputIterator, outputEmitter);
+				}
+			});
+			inputStream.close();
+		}
+		catch(IOException e) {
+			errorHandler.catchException(e);
+			return; // End this row and go to next if stopOnError is set to false (otherwise exception is thrown)
+		}
+	}
+}
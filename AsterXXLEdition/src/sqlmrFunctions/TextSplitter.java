@@ -15,6 +15,7 @@ import utils.Accumulator;
 import utils.ErrorHandler;
 import utils.PartitionInputStream;
 import utils.PartitionReader;
+import utils.Sampler;
 import utils.TextSplitterService;
 import utils.TextSplitterService.SplitterCallback;
 import utils.TextSplitterService.SplitterType;
@@ -47,6 +48,8 @@ import com.asterdata.ncluster.sqlmr.data.SqlType;
  * 		TEXT('column_name')
  * 		[accumulate('passed_thru_column_name'[, ...])]
  * 		[unzip(character encoding)]
+ * 		[limit(n)]
+ * 		[sample(fraction[, seed])]
  * 		[stopOnError('true'|'false')]
  * 		[log(infoN)]
  * 
@@ -57,6 +60,15 @@ import com.asterdata.ncluster.sqlmr.data.SqlType;
  * 						The input must be of type bytea and is encoded by the given value. It is recommended in the current Aster
  * 						environment to encode with "UTF-8". If this parameter is not set, the function expects, that the input is
  * 						a plain text document. In this case the input must be of type character varying.
+ * limit	optional	If set, at most n rows are returned per document, that is per row, partition or ZIP entry.
+ * 						Splitting of a document stops, when the limit is reached, and the rest of the document is not read.
+ * sample	optional	If set, only a random sample of the documents is split. fraction is the probability of each document to be part of
+ * 						the sample, e.g. 0.01 for 1%. The documents are ZIP entries, if "unzip" is set, else rows or partitions.
+ * 						Each document is decided by a hash of the seed and its key: the partition key of a partition, the document of a row
+ * 						and name, CRC and size of a ZIP entry. So the sample does not depend on the order of the input or on the vworker.
+ * 						Partitions not sampled are not even read, rows not sampled are not split. With "unzip" all input is still read and
+ * 						inflated, because ZIP entries can only be reached one after the other, but entries not sampled are not split.
+ * 						The optional seed defaults to 0, so that the same input returns the same sample.
  * stopOnError	optional	Possible values are 'true' and 'false'. If set to 'true' the function stops when it occurs an error while
  * 							reading the partitions. 'false' indicates, that the function continues, ignoring the partition and continuing
  * 							with the next one. Default is 'false'.
@@ -94,6 +106,8 @@ public final class TextSplitter implements RowFunction, PartitionFunction, Drain
 	private Accumulator accumulator = null;
 	private CharsetDecoder charsetDecoder = null; // if null, UNZIP was not set. Input is plain text.
 	private ErrorHandler errorHandler = null;
+	private int limit = 0; // if more then 0, at most this number of rows is returned per document
+	private Sampler sampler = null; // if not null, only sampled documents are split
 
 	/* 
 	 * The constructor establishes the RuntimeContract between
@@ -111,6 +125,10 @@ public final class TextSplitter implements RowFunction, PartitionFunction, Drain
 				Utils.getSingleBooleanFromParameter(contract, "stoponerror", false),
 				Utils.getSingleIntFromParameter(contract, "log", Integer.MAX_VALUE));
 		
+		limit = Utils.getSingleIntFromParameter(contract, "limit", 0);
+		if(limit < 0) throw new IllegalUsageException("limit must not be negative");
+		sampler = Sampler.getSampler(contract, "sample");
+		
 		// Initialize the splitter
 		textSplitterService = new TextSplitterService();
 
@@ -156,6 +174,7 @@ public final class TextSplitter implements RowFunction, PartitionFunction, Drain
 	 */
 	public void operateOnSomeRows(RowIterator inputIterator, RowEmitter outputEmitter) {
 		while (inputIterator.advanceToNextRow()) {
+			if(charsetDecoder == null && sampler != null && !sampler.isSampled(inputIterator, textArgumentIdx)) continue; // Not part of the sample
 			errorHandler.enterOperateOnRow(inputIterator, outputEmitter);
 			if(inputIterator.isNullAt(textArgumentIdx)) {
 				errorHandler.skipRow();
@@ -180,6 +199,7 @@ public final class TextSplitter implements RowFunction, PartitionFunction, Drain
 	 * Rows within the partition are chunks (parts, pieces) of the document in correct order.
 	 */
 	public void operateOnPartition(PartitionDefinition definition, RowIterator inputIterator, RowEmitter outputEmitter) {
+		if(charsetDecoder == null && sampler != null && !sampler.isSampled(definition)) return; // Not part of the sample
 		errorHandler.enterOperateOnPartition(definition, inputIterator, outputEmitter);
 		if(charsetDecoder == null) // is input compressed?
 			textSplitter(textSplitterService, new PartitionReader(inputIterator, textArgumentIdx),
@@ -214,6 +234,8 @@ public final class TextSplitter implements RowFunction, PartitionFunction, Drain
 		
 		try {
 			textSplitterService.split(reader, new SplitterCallback() {
+				private int rows = 0; // Rows returned for this document
+				
 				// Construct row on each callback and emit the row
 				public void newRow(SplitterType type, String value) {
 					
@@ -236,6 +258,7 @@ public final class TextSplitter implements RowFunction, PartitionFunction, Drain
 						Utils.emitNullableString(outputEmitter, zipEntry.getComment());
 					}
 					outputEmitter.emitRow();
+					if(limit > 0 && ++rows >= limit) textSplitterService.stop();
 				}
 			});
 		} catch (IOException e) {
@@ -262,6 +285,7 @@ public final class TextSplitter implements RowFunction, PartitionFunction, Drain
 			// The unzip of the file
 			Utils.unzip(inputStream, new UnzipCallback() {
 				public void newZipEntry(final ZipEntry zipEntry, InputStream inputStream) {
+					if(sampler != null && !sampler.isSampled(zipEntry)) return; // Not part of the sample, but inflated to reach the next entry
 					textSplitter(textSplitterService, new InputStreamReader(inputStream, charsetDecoder), zipEntry, accumulator, inputIterator, outputEmitter);
 				}
 			});
@@ -8,7 +8,11 @@ import java.io.Reader;
 import java.io.StringReader;
 import java.nio.charset.CharsetDecoder;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 
 import org.xml.sax.SAXException;
@@ -17,9 +21,22 @@ import utils.Accumulator;
 import utils.ErrorHandler;
 import utils.PartitionInputStream;
 import utils.PartitionReader;
+import utils.PathDictionary;
+import utils.RowCache;
+import utils.Sampler;
+import utils.StringHashSet;
 import utils.Utils;
 import utils.Utils.UnzipCallback;
+import utils.XMLDocumentReader;
+import utils.XMLEvent;
 import utils.XMLReaderService;
+import utils.XMLReaderService.XMLReaderCallback;
+import utils.XMLReaderService.XMLRowAdapter;
+import utils.XMLReaderServicePool;
+import utils.XMLReaderServicePool.ParseJob;
+import utils.XMLRowBuffer;
+import utils.XMLShredder;
+import utils.XMLSplitParser;
 
 import com.asterdata.ncluster.sqlmr.ClientVisibleException;
 import com.asterdata.ncluster.sqlmr.Drainable;
@@ -51,8 +68,31 @@ import com.asterdata.ncluster.sqlmr.data.SqlType;
  * 		[EXCLUDE('excluded_node_localname|excluded_regex'[, ...])]
  * 		[SKIPAFTER('localname|regex'[, ...])]
  * 		[LOCALNAMES('localname|regex'[, ...])]
+ * 		[SELECT('xpath'[, ...])]
+ * 		[COLUMNS('name:type=localname|regex'[, ...])]
+ * 		[maxValueChars(n)]
+ * 		[pathDictionary('true'|'false')]
+ * 		[fingerprint('true'|'false'|'only')]
+ * 		[hierarchy('true'|'false')]
+ * 		[values('value'[, ...])]
+ * 		[valuesFile('file')]
+ * 		[valueNames('localname'[, ...])]
+ * 		[valueMatch('node'|'record')]
+ * 		[binaryNodes('localname|regex'[, ...])]
+ * 		[binaryChunk(chunk size)]
+ * 		[fragment('localname|regex'[, ...])]
+ * 		[fragmentChars(n)]
+ * 		[multiDocument('true'|'false')]
+ * 		[dtdCatalog('directory')]
+ * 		[rowCache(megabytes)]
+ * 		[limit(n[, 'rows'|'includecount'])]
+ * 		[sample(fraction[, seed])]
  * 		[accumulate('passed_thru_column_name'[, ...])]
  * 		[unzip(character encoding)]
+ * 		[parser('reader'|'bytes'|'fast'|'events')]
+ * 		[threads(n)]
+ * 		[splitrecord('localname')]
+ * 		[splitsize(n)]
  * 		[stopOnError('true'|'false')]
  * 		[log(infoN)]
  * 
@@ -63,6 +103,89 @@ import com.asterdata.ncluster.sqlmr.data.SqlType;
  * 						The input must be of type bytea and is encoded by the given value. It is recommended in the current Aster
  * 						environment to encode with "UTF-8". If this parameter is not set, the function expects, that the input is a XML document.
  * 						In this case the input must be of type character varying.
+ * parser	optional	Possible values are 'reader', 'bytes', 'fast' and 'events'. Default is 'reader', which decodes the input with the "unzip" encoding and parses it with SAX.
+ * 						'bytes' passes the bytes of each ZIP entry to SAX, which detects the encoding from the byte order mark or XML declaration.
+ * 						The "unzip" encoding is not used then, but "unzip" must still be set. 'bytes' is less tolerant then 'reader': Only invalid control
+ * 						characters are replaced. The encoding is not known at byte level, so U+FFFE, U+FFFF and unpaired surrogates make the parse fail.
+ * 						'fast' scans the UTF-8 bytes of each ZIP entry with a hand-written tokenizer and decodes only the values, that are returned.
+ * 						Documents with a DOCTYPE or another declared encoding are parsed with SAX as with 'reader'.
+ * 						'fast' requires "unzip" to be set to 'UTF-8'.
+ * 						'events' reads binary event streams written by XMLPreParse from a bytea column instead of XML. The rows are the same as
+ * 						for the original documents, but nothing is inflated or parsed. Call with PARTITION BY the stream ORDER BY chunk.
+ * 						'events' can not be combined with "unzip". The ZIP meta data is not returned, accumulate it from the XMLPreParse result.
+ * threads	optional	Number of ZIP entries parsed at once. Default is 1. If set to more then 1, each entry is inflated into memory
+ * 						and parsed in its own thread. Rows are returned in the order of the entries. At most 2*threads entries are kept in memory.
+ * 						Requires "unzip" or "splitrecord" to be set.
+ * splitrecord	optional	Local name of the records, that are the direct children of the root element. If set, each XML document is split before these records
+ * 						into segments, which are parsed in parallel by "threads" threads. Use this for single large documents with a flat list of records.
+ * 						id, first_sub_id, includecount, parent_id and ordinal are the same as if the document was parsed as a whole.
+ * 						Requires "threads" to be set to more then 1 and parser('reader'). Can not be combined with "select", because the attributes of the
+ * 						root element are only part of the first segment, and "fingerprint", because the root element would cover the last segment only.
+ * 						The root element has no fragment.
+ * splitsize	optional	Minimal number of characters of a segment, if "splitrecord" is set. Default is 4194304.
+ * maxValueChars	optional	Limit the memory needed for large values like embedded base64 attachments. If set, the value of a tag contains
+ * 						at most n characters. The rest of the value is returned while reading in continuation rows of type 'C' with at most n characters each.
+ * 						They are numbered in column "valuechunk" from 1 on and are returned before the row of their tag. Their id and first_sub_id
+ * 						are both the first_sub_id of the tag, which identifies the tag together with fullpath. Can not be combined with "columns".
+ * pathDictionary	optional	Possible values are 'true' and 'false'. Default is 'false'. If set to 'true', the rows contain the 64 bit "path_id"
+ * 						instead of fullpath, uri, localname and qname, which are null then. The distinct paths are returned once per vworker at the end,
+ * 						as rows of type 'P' with path_id, fullpath, uri, localname and qname and null in all other columns.
+ * 						The path_id is a hash of the strings and therefore the same on all vworkers. Select the dictionary with DISTINCT.
+ * 						Can not be combined with "columns".
+ * fingerprint	optional	Possible values are 'true', 'false' and 'only'. Default is 'false'. If set to 'true', the rows contain the column "fingerprint",
+ * 						a 64 bit hash of the tag, its attributes, its value and all included tags and attributes below it. See SubtreeFingerprint.
+ * 						Tags with the same name and content have the same fingerprint on all vworkers, regardless of the order of attributes.
+ * 						'only' returns just the rows of the include parents, e.g. one row per record. To find changed records between two
+ * 						versions of a document, join the fingerprints of both versions. Can not be combined with "columns" or "splitrecord".
+ * hierarchy	optional	Possible values are 'true' and 'false'. Default is 'false'. If set to 'true', the rows contain the columns "parent_id", "depth"
+ * 						and "ordinal", so that parents and siblings are found with equi-joins instead of range joins on id and first_sub_id.
+ * 						Can not be combined with "columns".
+ * values	optional	If set, only tags and attributes with one of the values are returned, e.g. a list of customer ids. The values are kept in
+ * 						a hash set, large sets with a Bloom filter in front. See StringHashSet.
+ * valuesFile	optional	Name of a UTF-8 encoded file on the workers with one value per line. Use it for lists too long for "values".
+ * 						Can be combined with "values". The file is read, when the first document is parsed.
+ * valueNames	optional	Local names of the tags and attributes, whose values are compared. Default is all. Requires "values" or "valuesFile".
+ * valueMatch	optional	Possible values are 'node' and 'record'. Default is 'node', which returns the matching tags and attributes only.
+ * 						'record' returns all rows of an include parent, if one of them matches. The rows of each include parent are kept in memory,
+ * 						until it ends. A nested include parent ends the record.
+ * binaryNodes	optional	Tags with base64 encoded content, like embedded PDF documents. Items are local names, regular expressions or literal
+ * 						full paths as in INCLUDE. The content is decoded while reading, without keeping the text, and returned in rows of type 'B'
+ * 						with the bytes in column "binary", before the row of the tag. The value of the tag is null then.
+ * 						The id and first_sub_id of 'B' rows are the first_sub_id of the tag. 'B' rows have no value, so with "values" they are only
+ * 						returned with valueMatch('record'). Can not be combined with "columns".
+ * binaryChunk	optional	Maximal number of bytes in one 'B' row. Default is 16MB.
+ * fragment	optional	Tags, whose original XML is returned in column "fragment" of their row, e.g. to archive or resend matching records.
+ * 						Items are local names, regular expressions or literal full paths as in INCLUDE. Tags within a returned fragment
+ * 						do not get a fragment on their own. The XML is kept while the document is read, from the start to the end tag
+ * 						of the element, as written, including comments and entities. Requires parser('reader') and can not be combined with
+ * 						"columns".
+ * fragmentChars	optional	Maximal number of characters of a fragment. Longer fragments are returned as null. Default is 16M.
+ * multiDocument	optional	Possible values are 'true' and 'false'. Default is 'false'. If set to 'true', the input may contain many XML documents,
+ * 						one after another and without a common root, like log files. Each document is parsed on its own and its rows
+ * 						are numbered in column "docno" from 1 on within the row, partition or ZIP entry. id, first_sub_id and includecount restart
+ * 						with each document. A document with an error is dropped from the point of the error and parsing continues with the next one.
+ * 						Requires parser('reader') and can not be combined with "threads".
+ * dtdCatalog	optional	Directory on the workers with DTD and entity files. External DTDs and entities are never loaded from the network.
+ * 						Without this parameter they are not loaded at all, so that entities declared in an external DTD are unknown.
+ * 						With this parameter they are read from the directory by the file name of their system id, e.g. "feed.dtd"
+ * 						for "http://example.com/dtd/feed.dtd", and cached once per JVM. Entities not found in the directory are empty.
+ * rowCache	optional	If set, the rows of each ZIP entry are kept in a cache of at most this many megabytes, that is shared by all partitions
+ * 						of a vworker. An entry with the same CRC, size and parameters, like a reference file contained in many archives, is
+ * 						returned from the cache instead of parsed again. The least recently used entries are removed first. See RowCache.
+ * 						The content is not compared: Two entries with equal CRC32 and size are treated as the same entry, even if their content differs.
+ * 						Entries with an error are not cached. ZIP files, that write CRC and size behind the entry, are not cached at all.
+ * 						Cached entries are still inflated to reach the next entry. Requires "unzip" and can not be combined with "multiDocument".
+ * limit	optional	If set, parsing of a document, that is a row, partition or ZIP entry, stops as soon as n rows were returned ('rows', the default)
+ * 						or the includecount exceeds n ('includecount'). The rest of the document is not parsed, like with "skipafter".
+ * 						'rows' counts the rows found by the parser. With "columns" use 'includecount' to limit the number of wide rows.
+ * 						With "threads" documents are parsed completely in their thread and only the rows returned are limited.
+ * sample	optional	If set, only a random sample of the documents is parsed. fraction is the probability of each document to be part of
+ * 						the sample, e.g. 0.01 for 1%. The documents are ZIP entries, if "unzip" is set, else rows or partitions.
+ * 						Each document is decided by a hash of the seed and its key: the partition key of a partition, the document of a row
+ * 						and name, CRC and size of a ZIP entry. So the sample does not depend on the order of the input or on the vworker.
+ * 						Partitions not sampled are not even read, rows not sampled are not parsed. With "unzip" all input is still read and
+ * 						inflated, because ZIP entries can only be reached one after the other, but entries not sampled are not parsed.
+ * 						The optional seed defaults to 0, so that the same input returns the same sample.
  * stopOnError	optional	Possible values are 'true' and 'false'. If set to 'true' the function stops when it occurs an error while reading the partitions.
  * 							'false' indicates, that the function continues, ignoring the partition and continuing with the next one. Default is 'false'.
  * 							The exception along with information about the partition is written to the log and returned to the user (stopOnError=true).
@@ -75,6 +198,18 @@ import com.asterdata.ncluster.sqlmr.data.SqlType;
  * LOCALNAMES	optional	An item of this list contains either the local name of a node element or a regular expression.
  * 							See INCLUDE/EXCLUDE for rules on how regular expressions and the local name are interpreted.
  * 							The XML returns only rows with of of the local names of this list. If the list is omitted all local names are returned.
+ * SELECT	optional	An item of this list contains an XPath expression. Only elements and attributes matching one of the expressions are returned.
+ * 							The expressions are evaluated while parsing, in one pass and without building the document in memory.
+ * 							Supported are the child ("/") and descendant ("//") axis, "*" as any element, "@name" and "@*" as last step
+ * 							and predicates on attributes like [@type='x'] or [@type]. Names are compared by local name.
+ * 							Sub nodes of a selected element are only returned, if they match an expression themselves, e.g. '//item//*'.
+ * 							SELECT is combined with INCLUDE/EXCLUDE, SKIPAFTER and LOCALNAMES. A row is returned, if it is selected and included.
+ * COLUMNS	optional	If set, the function returns one wide row per instance of an include parent instead of one row per node.
+ * 							Each item defines one output column as "name:type=localname" or "name:type=/regex/", where the regular expression is
+ * 							matched against the full path like in INCLUDE/EXCLUDE. Types are varchar, integer, bigint, double and timestamp.
+ * 							The value of the first node within the instance, that matches, is converted to the type of the column.
+ * 							Values, that cannot be converted, and columns without a matching node are returned as null.
+ * 							An instance is returned, when the next instance starts or the document ends. An incomplete instance at a parse error is dropped.
  * 
  * INCLUDE/EXCLUDE	optional
  * An item of each list either contains the local name of a node element or a regular expression.
@@ -90,6 +225,7 @@ import com.asterdata.ncluster.sqlmr.data.SqlType;
  * 			B1a
  * 
  * the full path for B1a is "/B/B1/B1a/" and the regular expression is checked against this full path.
+ * A "=" as first character indicates a literal full path like "=/B/B1/B1a/", which must match the full path exactly.
  * 
  * Each one list or both lists can be empty or null, which leads to different behavior:
  * 1. If both lists are empty or null, all nodes are included. No filtering applies.
@@ -108,11 +244,13 @@ import com.asterdata.ncluster.sqlmr.data.SqlType;
  * A word about performance:
  * Basically two rules apply considering performance on this function.
  * 1. Keep the include and exclude list as simple as possible and use direct comparison instead of regular expressions where possible.
+ * 		Use literal full paths for long lists of paths. They cost the same no matter how many are listed.
  * 2. Accumulate as least columns as possible, especially do not accumulate the XML column itself, as it can be large which needs a lot
  * 		time to copy into the result set. Keep in mind that the result set has significantly more rows then the input.
  * 
  * Output:
  * The result consists of the uncompressed and parsed content and optionally meta data stored in each ZIP entry if paramter "unzip" was set to true.
+ * If "columns" is set, the result consists of includeparent, includecount and the columns defined followed by the meta data of the ZIP entry.
  *
  * uri	character varying	is the URI of the element or attribute.
  * localname	character varying	is the local name of the element or attribute.
@@ -126,6 +264,18 @@ import com.asterdata.ncluster.sqlmr.data.SqlType;
  * id	integer	is a unique id within the XML document. Each XML document in each input row restarts the id.
  * first_sub_id	integer	is the id of the first tag or attribute that is below this node.
  * 		The column is useful to select parts in the XML. See examples below on how to use this column.
+ * parent_id	integer	only if "hierarchy" is set. first_sub_id of the parent tag, null for the root. The id of the parent is not known yet,
+ * 		when a node is returned. Select the parent with: <code>where parent.first_sub_id = child.parent_id and parent.depth = child.depth-1 and parent.type = 'T'</code>
+ * depth	integer	only if "hierarchy" is set. 1 for the root, 2 for its attributes and sub tags and so on.
+ * ordinal	integer	only if "hierarchy" is set. Position of a tag among the sub tags of its parent or of an attribute among the attributes of its tag,
+ * 		starting with 1. Select the second sibling with: <code>where sibling.parent_id = this.parent_id and sibling.depth = this.depth and sibling.ordinal = 2</code>
+ * valuechunk	integer	only if "maxValueChars" is set. 0 for tags and attributes, 1, 2, ... for continuation rows.
+ * path_id	bigint	only if "pathDictionary" is set. Id of fullpath, uri, localname and qname.
+ * fingerprint	bigint	only if "fingerprint" is set. Fingerprint of the tag and its sub tree. Null for attributes and continuation rows.
+ * binarychunk	integer	only if "binaryNodes" is set. 1, 2, ... for the rows of type 'B' of a tag, null for all other rows.
+ * binary	bytea	only if "binaryNodes" is set. Decoded content of a binary tag for rows of type 'B', null for all other rows.
+ * fragment	character varying	only if "fragment" is set. Original XML of the tag for rows of type 'T' of matching tags, null for all other rows.
+ * docno	integer	only if "multiDocument" is set. Number of the document within the input. It is the first column behind the accumulated columns.
  * 
  * Additional output is written if "unzip" is set to true. See SQL-MR function "unzip" for a description of the additional fields.
  * 
@@ -146,7 +296,33 @@ public final class XMLFastFilter implements RowFunction, PartitionFunction, Drai
 	private XMLReaderService xmlReaderService = null;
 	private Accumulator accumulator = null;
 	private CharsetDecoder charsetDecoder = null; // if null, UNZIP was not set. Input is plain XML.
+	private boolean isFastParser = false; // if true, zip entries are tokenized as UTF-8 bytes
+	private boolean isByteParser = false; // if true, zip entries are passed as bytes to SAX
+	private boolean isEventParser = false; // if true, input is an event stream of XMLPreParse
 	private ErrorHandler errorHandler = null;
+	private XMLReaderServicePool xmlReaderServicePool = null; // if not null, zip entries are parsed in parallel
+	private XMLSplitParser xmlSplitParser = null; // if not null, documents are split and segments are parsed in parallel
+	private XMLShredder xmlShredder = null; // if not null, one wide row per include parent instance is returned
+	private int maxValueChars = 0; // if more then 0, values are returned in chunks of this size
+	private PathDictionary pathDictionary = null; // if not null, path strings are replaced by ids
+	private int limit = 0; // if more then 0, parsing of a document stops at this number of rows or include count
+	private boolean isLimitOnIncludeCount = false; // if true, limit applies to includecount instead of rows
+	private Sampler sampler = null; // if not null, only sampled documents are parsed
+	private boolean isMultiDocument = false; // if true, the input contains concatenated documents
+	private int docNo = 0; // number of the current document within the input, if isMultiDocument is set
+	private boolean isFingerprinted = false; // if true, the fingerprint of each tag is returned
+	private boolean isFingerprintOnly = false; // if true, only the rows of the include parents are returned
+	private boolean isHierarchy = false; // if true, parent_id, depth and ordinal are returned
+	private boolean isValueFiltered = false; // if true, only rows with values in valueSet are returned
+	private List<String> values = null; // values of parameter "values"
+	private String valuesFile = null; // file with more values
+	private StringHashSet valueSet = null; // created on first use
+	private HashSet<String> valueNames = null; // if not null, only these local names are compared
+	private boolean isValueRecord = false; // if true, all rows of an include parent are returned, if one matches
+	private boolean hasBinaryNodes = false; // if true, rows of type 'B' with decoded content are returned
+	private boolean hasFragments = false; // if true, the original XML of matching tags is returned
+	private RowCache rowCache = null; // if not null, rows of ZIP entries are cached
+	private XMLRowBuffer recording = null; // if not null, rows of the current ZIP entry are kept for the cache
 
 	/* 
 	 * The constructor establishes the RuntimeContract between
@@ -164,19 +340,167 @@ public final class XMLFastFilter implements RowFunction, PartitionFunction, Drai
 				Utils.getSingleBooleanFromParameter(contract, "stoponerror", false),
 				Utils.getSingleIntFromParameter(contract, "log", Integer.MAX_VALUE));
 		
+		String parser = Utils.getSingleStringFromParameter(contract, "parser", "reader");
+		if("fast".equalsIgnoreCase(parser)) {
+			if(charsetDecoder == null || !charsetDecoder.charset().name().equals("UTF-8"))
+				throw new IllegalUsageException("parser('fast') requires unzip('UTF-8')");
+			isFastParser = true;
+		}
+		else if("bytes".equalsIgnoreCase(parser)) {
+			if(charsetDecoder == null) throw new IllegalUsageException("parser('bytes') requires unzip to be set");
+			isByteParser = true;
+		}
+		else if("events".equalsIgnoreCase(parser)) {
+			if(charsetDecoder != null) throw new IllegalUsageException("parser('events') can not be combined with unzip");
+			isEventParser = true;
+		}
+		else if(!"reader".equalsIgnoreCase(parser))
+			throw new IllegalUsageException("parser: unexpected value '" + parser + "'. Expected one of 'reader', 'bytes', 'fast' or 'events'");
+		
+		int threads = Utils.getSingleIntFromParameter(contract, "threads", 1);
+		String splitRecord = Utils.getSingleStringFromParameter(contract, "splitrecord", null);
+		int splitSize = Utils.getSingleIntFromParameter(contract, "splitsize", 4194304);
+		if(splitRecord != null) {
+			if(threads <= 1) throw new IllegalUsageException("splitrecord requires threads to be more then 1");
+			if(isFastParser || isByteParser || isEventParser) throw new IllegalUsageException("splitrecord requires parser('reader')");
+			if(contract.hasArgumentClause("select")) throw new IllegalUsageException("splitrecord can not be combined with select");
+			if(splitSize <= 0) throw new IllegalUsageException("splitsize must be more then 0");
+		}
+		else if(threads > 1 && charsetDecoder == null) throw new IllegalUsageException("threads requires unzip or splitrecord to be set");
+		
+		maxValueChars = Utils.getSingleIntFromParameter(contract, "maxvaluechars", 0);
+		if(maxValueChars < 0) throw new IllegalUsageException("maxValueChars must not be negative");
+		if(maxValueChars > 0 && contract.hasArgumentClause("columns")) throw new IllegalUsageException("maxValueChars can not be combined with columns");
+		
+		if(contract.hasArgumentClause("limit")) {
+			List<String> values = contract.useArgumentClause("limit").getValues();
+			if(values.size() > 2) throw new IllegalUsageException("limit: expected a number and optional 'rows' or 'includecount'");
+			try {
+				limit = Integer.parseInt(values.get(0));
+			} catch(NumberFormatException e) {
+				throw new IllegalUsageException("limit: unexpected value '" + values.get(0) + "'. Expected an integer number");
+			}
+			if(limit <= 0) throw new IllegalUsageException("limit must be more then 0");
+			if(values.size() > 1 && "includecount".equalsIgnoreCase(values.get(1))) isLimitOnIncludeCount = true;
+			else if(values.size() > 1 && !"rows".equalsIgnoreCase(values.get(1)))
+				throw new IllegalUsageException("limit: unexpected value '" + values.get(1) + "'. Expected one of 'rows' or 'includecount'");
+		}
+		sampler = Sampler.getSampler(contract, "sample");
+		
+		isMultiDocument = Utils.getSingleBooleanFromParameter(contract, "multidocument", false);
+		if(isMultiDocument && (isFastParser || isByteParser || isEventParser)) throw new IllegalUsageException("multiDocument requires parser('reader')");
+		if(isMultiDocument && threads > 1) throw new IllegalUsageException("multiDocument can not be combined with threads");
+		
+		if(Utils.getSingleBooleanFromParameter(contract, "pathdictionary", false)) {
+			if(contract.hasArgumentClause("columns")) throw new IllegalUsageException("pathDictionary can not be combined with columns");
+			pathDictionary = new PathDictionary();
+		}
+		
+		String fingerprint = Utils.getSingleStringFromParameter(contract, "fingerprint", "false");
+		if("only".equalsIgnoreCase(fingerprint)) isFingerprinted = isFingerprintOnly = true;
+		else if("true".equalsIgnoreCase(fingerprint)) isFingerprinted = true;
+		else if(!"false".equalsIgnoreCase(fingerprint))
+			throw new IllegalUsageException("fingerprint: unexpected value '" + fingerprint + "'. Expected one of 'true', 'false' or 'only'");
+		if(isFingerprinted && contract.hasArgumentClause("columns")) throw new IllegalUsageException("fingerprint can not be combined with columns");
+		if(isFingerprinted && splitRecord != null) throw new IllegalUsageException("fingerprint can not be combined with splitrecord");
+		
+		isHierarchy = Utils.getSingleBooleanFromParameter(contract, "hierarchy", false);
+		if(isHierarchy && contract.hasArgumentClause("columns")) throw new IllegalUsageException("hierarchy can not be combined with columns");
+		
+		isValueFiltered = contract.hasArgumentClause("values") || contract.hasArgumentClause("valuesfile");
+		if(contract.hasArgumentClause("values")) values = contract.useArgumentClause("values").getValues();
+		valuesFile = Utils.getSingleStringFromParameter(contract, "valuesfile", null);
+		if(contract.hasArgumentClause("valuenames")) {
+			if(!isValueFiltered) throw new IllegalUsageException("valueNames requires values or valuesFile");
+			valueNames = new HashSet<String>(contract.useArgumentClause("valuenames").getValues());
+		}
+		String valueMatch = Utils.getSingleStringFromParameter(contract, "valuematch", "node");
+		if("record".equalsIgnoreCase(valueMatch)) isValueRecord = true;
+		else if(!"node".equalsIgnoreCase(valueMatch))
+			throw new IllegalUsageException("valueMatch: unexpected value '" + valueMatch + "'. Expected one of 'node' or 'record'");
+		if(isValueRecord && !isValueFiltered) throw new IllegalUsageException("valueMatch requires values or valuesFile");
+		
+		List<String> binaryNodes = contract.hasArgumentClause("binarynodes")? contract.useArgumentClause("binarynodes").getValues():null;
+		int binaryChunk = Utils.getSingleIntFromParameter(contract, "binarychunk", Utils.CHUNK_SIZE);
+		hasBinaryNodes = (binaryNodes != null);
+		if(hasBinaryNodes) {
+			if(contract.hasArgumentClause("columns")) throw new IllegalUsageException("binaryNodes can not be combined with columns");
+			if(binaryChunk <= 0) throw new IllegalUsageException("binaryChunk must be more then 0");
+		}
+		
+		List<String> fragmentNodes = contract.hasArgumentClause("fragment")? contract.useArgumentClause("fragment").getValues():null;
+		int fragmentChars = Utils.getSingleIntFromParameter(contract, "fragmentchars", Utils.CHUNK_SIZE);
+		hasFragments = (fragmentNodes != null);
+		if(hasFragments) {
+			if(isFastParser || isByteParser || isEventParser) throw new IllegalUsageException("fragment requires parser('reader')");
+			if(contract.hasArgumentClause("columns")) throw new IllegalUsageException("fragment can not be combined with columns");
+			if(fragmentChars <= 0) throw new IllegalUsageException("fragmentChars must be more then 0");
+		}
+		
+		int rowCacheMB = Utils.getSingleIntFromParameter(contract, "rowcache", 0);
+		if(rowCacheMB < 0) throw new IllegalUsageException("rowCache must not be negative");
+		if(rowCacheMB > 0) {
+			if(charsetDecoder == null) throw new IllegalUsageException("rowCache requires unzip to be set");
+			if(isMultiDocument) throw new IllegalUsageException("rowCache can not be combined with multiDocument");
+			
+			// Rows are cached as found by the parser. Parameters applied when emitting them, like values or columns, are not part of the key.
+			StringBuilder config = new StringBuilder();
+			for(String clause : new String[] {"include", "exclude", "skipafter", "localnames", "select", "unzip", "parser", "dtdcatalog", "limit"})
+				if(contract.hasArgumentClause(clause)) config.append(clause).append(contract.useArgumentClause(clause).getValues()).append('\n');
+			rowCache = new RowCache(rowCacheMB*1024L*1024L, config.toString());
+			errorHandler.addCounters("row cache", rowCache);
+		}
+		
+		if(contract.hasArgumentClause("columns")) try {
+			xmlShredder = new XMLShredder(contract.useArgumentClause("columns").getValues());
+		}
+		catch(IllegalArgumentException e) {
+			throw new IllegalUsageException("columns: " + e.getMessage());
+		}
+		
 		// Initialize the XML parser
 		try {
-			xmlReaderService = new XMLReaderService(
-					contract.hasArgumentClause("include")? contract.useArgumentClause("include").getValues():null,
-					contract.hasArgumentClause("exclude")? contract.useArgumentClause("exclude").getValues():null,
-					contract.hasArgumentClause("skipafter")? contract.useArgumentClause("skipafter").getValues():null,
-					contract.hasArgumentClause("localnames")? contract.useArgumentClause("localnames").getValues():null);
+			List<String> included = contract.hasArgumentClause("include")? contract.useArgumentClause("include").getValues():null;
+			List<String> excluded = contract.hasArgumentClause("exclude")? contract.useArgumentClause("exclude").getValues():null;
+			List<String> skip = contract.hasArgumentClause("skipafter")? contract.useArgumentClause("skipafter").getValues():null;
+			List<String> localnames = contract.hasArgumentClause("localnames")? contract.useArgumentClause("localnames").getValues():null;
+			List<String> select = contract.hasArgumentClause("select")? contract.useArgumentClause("select").getValues():null;
+			xmlReaderService = new XMLReaderService(included, excluded, skip, localnames, select);
+			xmlReaderService.setMaxValueChars(maxValueChars);
+			xmlReaderService.setFingerprint(isFingerprinted);
+			xmlReaderService.setBinaryNodes(binaryNodes, binaryChunk);
+			xmlReaderService.setFragments(fragmentNodes, fragmentChars);
+			if(threads > 1) {
+				xmlReaderServicePool = new XMLReaderServicePool(threads, included, excluded, skip, localnames, select);
+				xmlReaderServicePool.setMaxValueChars(maxValueChars);
+				xmlReaderServicePool.setFingerprint(isFingerprinted);
+				xmlReaderServicePool.setBinaryNodes(binaryNodes, binaryChunk);
+				xmlReaderServicePool.setFragments(fragmentNodes, fragmentChars);
+			}
+			String dtdCatalog = Utils.getSingleStringFromParameter(contract, "dtdcatalog", null);
+			xmlReaderService.setDTDCatalog(dtdCatalog);
+			if(xmlReaderServicePool != null) xmlReaderServicePool.setDTDCatalog(dtdCatalog);
+			errorHandler.addCounters("names", xmlReaderService.getNameInterner());
+			errorHandler.addCounters("entities", xmlReaderService.getEntityResolver());
+			if(xmlReaderServicePool != null) for(int i = 0; i < threads; i++) {
+				errorHandler.addCounters("names of thread " + i, xmlReaderServicePool.getNameInterners().get(i));
+				errorHandler.addCounters("entities of thread " + i, xmlReaderServicePool.getEntityResolvers().get(i));
+			}
+			if(splitRecord != null) xmlSplitParser = new XMLSplitParser(xmlReaderServicePool, splitRecord, splitSize);
 		} catch (SAXException e) {
 			throw new ClientVisibleException(e.getMessage());
+		} catch (IllegalArgumentException e) {
+			throw new IllegalUsageException("select: " + e.getMessage());
 		}
 
 		// Verify that the function accepts the given input schema depending on UNZIP is set or not.
-		if(charsetDecoder != null && !SqlType.getType("bytea").equals(contract.getInputInfo().getColumnType(xmlArgumentIdx))) {
+		if(isEventParser) {
+			if(!SqlType.getType("bytea").equals(contract.getInputInfo().getColumnType(xmlArgumentIdx)))
+				throw new IllegalUsageException(
+						"When parser('events') is set, type (bytea) expected for events column \"" +
+						contract.useArgumentClause("xml").getSingleValue() + "\"");
+		}
+		else if(charsetDecoder != null && !SqlType.getType("bytea").equals(contract.getInputInfo().getColumnType(xmlArgumentIdx))) {
 			throw new IllegalUsageException(
 					"When 'zipped' is set, type (bytea) expected for zipped column \"" +
 					contract.useArgumentClause("xml").getSingleValue() + "\"");
@@ -190,16 +514,34 @@ public final class XMLFastFilter implements RowFunction, PartitionFunction, Drai
 		// Construct the output schema
 		List<ColumnDefinition> outputColumns = new ArrayList<ColumnDefinition>();
 		accumulator.constructOutputSchema(contract, outputColumns);
+		if(isMultiDocument) outputColumns.add(new ColumnDefinition("docno", SqlType.getType("integer")));
 		outputColumns.add(new ColumnDefinition("includeparent", SqlType.getType("character varying")));
 		outputColumns.add(new ColumnDefinition("includecount", SqlType.getType("integer")));
-		outputColumns.add(new ColumnDefinition("fullpath", SqlType.getType("character varying")));
-		outputColumns.add(new ColumnDefinition("uri", SqlType.getType("character varying")));
-		outputColumns.add(new ColumnDefinition("localname", SqlType.getType("character varying")));
-		outputColumns.add(new ColumnDefinition("qname", SqlType.getType("character varying")));
-		outputColumns.add(new ColumnDefinition("type", SqlType.getType("character (1)")));
-		outputColumns.add(new ColumnDefinition("value", SqlType.getType("character varying")));
-		outputColumns.add(new ColumnDefinition("id", SqlType.getType("integer")));
-		outputColumns.add(new ColumnDefinition("first_sub_id", SqlType.getType("integer")));
+		if(xmlShredder != null)
+			xmlShredder.constructOutputSchema(outputColumns);
+		else {
+			if(pathDictionary != null) outputColumns.add(new ColumnDefinition("path_id", SqlType.getType("bigint")));
+			outputColumns.add(new ColumnDefinition("fullpath", SqlType.getType("character varying")));
+			outputColumns.add(new ColumnDefinition("uri", SqlType.getType("character varying")));
+			outputColumns.add(new ColumnDefinition("localname", SqlType.getType("character varying")));
+			outputColumns.add(new ColumnDefinition("qname", SqlType.getType("character varying")));
+			outputColumns.add(new ColumnDefinition("type", SqlType.getType("character (1)")));
+			outputColumns.add(new ColumnDefinition("value", SqlType.getType("character varying")));
+			outputColumns.add(new ColumnDefinition("id", SqlType.getType("integer")));
+			outputColumns.add(new ColumnDefinition("first_sub_id", SqlType.getType("integer")));
+			if(isHierarchy) {
+				outputColumns.add(new ColumnDefinition("parent_id", SqlType.getType("integer")));
+				outputColumns.add(new ColumnDefinition("depth", SqlType.getType("integer")));
+				outputColumns.add(new ColumnDefinition("ordinal", SqlType.getType("integer")));
+			}
+			if(maxValueChars > 0) outputColumns.add(new ColumnDefinition("valuechunk", SqlType.getType("integer")));
+			if(isFingerprinted) outputColumns.add(new ColumnDefinition("fingerprint", SqlType.getType("bigint")));
+			if(hasBinaryNodes) {
+				outputColumns.add(new ColumnDefinition("binarychunk", SqlType.getType("integer")));
+				outputColumns.add(new ColumnDefinition("binary", SqlType.getType("bytea")));
+			}
+			if(hasFragments) outputColumns.add(new ColumnDefinition("fragment", SqlType.getType("character varying")));
+		}
 
 		if(charsetDecoder != null) {
 			outputColumns.add(new ColumnDefinition("file", SqlType.getType("character varying")));
@@ -225,13 +567,19 @@ public final class XMLFastFilter implements RowFunction, PartitionFunction, Drai
 	 */
 	public void operateOnSomeRows(RowIterator inputIterator, RowEmitter outputEmitter) {
 		while (inputIterator.advanceToNextRow()) {
+			if(charsetDecoder == null && sampler != null && !sampler.isSampled(inputIterator, xmlArgumentIdx)) continue; // Not part of the sample
 			errorHandler.enterOperateOnRow(inputIterator, outputEmitter);
 			if(inputIterator.isNullAt(xmlArgumentIdx)) {
 				errorHandler.skipRow();
 				continue;
 			}
 
-			if(charsetDecoder == null) // is input compressed?
+			if(isEventParser)
+				byteXmlFilter(xmlReaderService, new ByteArrayInputStream(inputIterator.getBytesAt(xmlArgumentIdx)),
+						null, accumulator, null, inputIterator, outputEmitter);
+			else if(charsetDecoder == null && isMultiDocument)
+				documentsXmlFilter(new StringReader(inputIterator.getStringAt(xmlArgumentIdx)), null, accumulator, inputIterator, outputEmitter);
+			else if(charsetDecoder == null) // is input compressed?
 				xmlFilter(xmlReaderService, new StringReader(inputIterator.getStringAt(xmlArgumentIdx)),
 						null, accumulator, inputIterator, outputEmitter);
 			else
@@ -249,8 +597,14 @@ public final class XMLFastFilter implements RowFunction, PartitionFunction, Drai
 	 * Rows within the partition are chunks (parts, pieces) of the document in correct order.
 	 */
 	public void operateOnPartition(PartitionDefinition definition, RowIterator inputIterator, RowEmitter outputEmitter) {
+		if(charsetDecoder == null && sampler != null && !sampler.isSampled(definition)) return; // Not part of the sample
 		errorHandler.enterOperateOnPartition(definition, inputIterator, outputEmitter);
-		if(charsetDecoder == null) // is input compressed?
+		if(isEventParser)
+			byteXmlFilter(xmlReaderService, new PartitionInputStream(inputIterator, xmlArgumentIdx),
+					null, accumulator, null, inputIterator, outputEmitter);
+		else if(charsetDecoder == null && isMultiDocument)
+			documentsXmlFilter(new PartitionReader(inputIterator, xmlArgumentIdx), null, accumulator, inputIterator, outputEmitter);
+		else if(charsetDecoder == null) // is input compressed?
 			xmlFilter(xmlReaderService, new PartitionReader(inputIterator, xmlArgumentIdx),
 					null, accumulator, inputIterator, outputEmitter);
 		else
@@ -265,6 +619,8 @@ public final class XMLFastFilter implements RowFunction, PartitionFunction, Drai
 	 * Send last logging information
 	 */
 	public void drainOutputRows(RowEmitter outputEmitter) {
+		if(xmlReaderServicePool != null) xmlReaderServicePool.shutdown();
+		if(pathDictionary != null) emitPathDictionary(outputEmitter);
 		errorHandler.drainOutputRows();
 	}
 	
@@ -282,44 +638,324 @@ public final class XMLFastFilter implements RowFunction, PartitionFunction, Drai
 			final RowIterator inputIterator, final RowEmitter outputEmitter) {
 		
 		try {
-			xmlReaderService.parse(reader, new XMLReaderService.XMLReaderCallback() {
-				// Construct row on each callback and emit the row
-				public void newRow(String includeParent, int includeCount, String fullPath,
-						String uri, String localName, String qName, String type, String value, int id, int first_sub_id) {
-					
-					// accumulate
-					accumulator.emit(inputIterator, outputEmitter);
+			if(xmlSplitParser != null)
+				xmlSplitParser.parse(reader, newRowEmitter(null, zipEntry, accumulator, inputIterator, outputEmitter));
+			else
+				xmlReaderService.parse(reader, newRowEmitter(xmlReaderService, zipEntry, accumulator, inputIterator, outputEmitter));
+			emitRecord(zipEntry, accumulator, inputIterator, outputEmitter);
+		} catch (SAXException e) {
+			if(xmlShredder != null) xmlShredder.clear();
+			errorHandler.catchException(e);
+			return; // End this row and go to next if stopOnError is set to false (otherwise exception is thrown)
+		} catch (IOException e) {
+			if(xmlShredder != null) xmlShredder.clear();
+			errorHandler.catchException(e);
+			return; // End this row and go to next if stopOnError is set to false (otherwise exception is thrown)
+		}
+	}
+	
+	/**
+	 * Parse the concatenated XML documents read from one reader one after another. Emit the rows to Aster.
+	 * Errors end the document, in which they occur, only.
+	 * @param reader to read the XML documents from.
+	 * @param zipEntry might be null. If not null, contains the meta data of the ZIP entry to be emitted with each row.
+	 * @param accumulator
+	 * @param inputIterator
+	 * @param outputEmitter
+	 */
+	private void documentsXmlFilter(Reader reader, ZipEntry zipEntry, Accumulator accumulator,
+			RowIterator inputIterator, RowEmitter outputEmitter) {
+		
+		XMLDocumentReader xmlDocumentReader = new XMLDocumentReader(reader);
+		try {
+			for(docNo = 1; xmlDocumentReader.nextDocument(); docNo++)
+				xmlFilter(xmlReaderService, xmlDocumentReader, zipEntry, accumulator, inputIterator, outputEmitter);
+		} catch (IOException e) {
+			errorHandler.catchException(e);
+		}
+	}
+	
+	/**
+	 * Create the callback, that emits each row found by the XML parser to Aster, if its value matches.
+	 * @param xmlReaderService parsing the document, which is stopped at the limit, or null, if the rows are replayed.
+	 * @param zipEntry might be null. If not null, contains the meta data of the ZIP entry to be emitted with each row.
+	 * @param accumulator
+	 * @param inputIterator
+	 * @param outputEmitter
+	 * @return the callback to pass to the XMLReaderService.
+	 */
+	private XMLReaderService.XMLReaderCallback newRowEmitter(XMLReaderService xmlReaderService, ZipEntry zipEntry, Accumulator accumulator,
+			RowIterator inputIterator, RowEmitter outputEmitter) {
+		XMLReaderCallback xmlReaderCallback = newUnfilteredRowEmitter(xmlReaderService, zipEntry, accumulator, inputIterator, outputEmitter);
+		if(isValueFiltered) xmlReaderCallback = newValueFilter(getValueSet(), xmlReaderCallback);
+		return (recording == null)? xmlReaderCallback:newRecorder(recording, xmlReaderCallback);
+	}
+	
+	/**
+	 * Create the callback, that keeps each row for the cache before it is passed on. Rows beyond the size of the cache are not kept.
+	 * @param recording to keep the rows in.
+	 * @param xmlReaderCallback to pass the rows to.
+	 * @return the callback to pass to the XMLReaderService.
+	 */
+	private XMLReaderCallback newRecorder(final XMLRowBuffer recording, final XMLReaderCallback xmlReaderCallback) {
+		return new XMLRowAdapter() {
+			public void newRow(XMLEvent row) {
+				if(recording.getBytes() <= rowCache.getMaxBytes()) recording.newRow(row);
+				row.replay(xmlReaderCallback);
+			}
+		};
+	}
+	
+	/**
+	 * Create the callback, that passes rows with a value in the set only.
+	 * @param valueSet
+	 * @param xmlReaderCallback to pass the matching rows to.
+	 * @return the callback to pass to the XMLReaderService.
+	 */
+	private XMLReaderCallback newValueFilter(final StringHashSet valueSet, final XMLReaderCallback xmlReaderCallback) {
+		if(!isValueRecord) return new XMLRowAdapter() {
+			public void newRow(XMLEvent row) {
+				if(isMatch(valueSet, row.getLocalName(), row.getType(), row.getValueString())) row.replay(xmlReaderCallback);
+			}
+		};
+		
+		return new XMLRowAdapter() {
+			private XMLRowBuffer record = new XMLRowBuffer(); // Rows of the current include parent
+			private boolean isMatched = false;
+			
+			// Keep the rows until the include parent ends, which is its last row
+			public void newRow(XMLEvent row) {
+				record.newRow(row);
+				if(!isMatched) isMatched = isMatch(valueSet, row.getLocalName(), row.getType(), row.getValueString());
+				if(!"T".equals(row.getType()) || !row.isIncludeParent()) return;
+				
+				if(isMatched) record.replay(xmlReaderCallback);
+				record.clear();
+				isMatched = false;
+			}
+		};
+	}
+	
+	/**
+	 * @param valueSet
+	 * @param localName
+	 * @param type
+	 * @param value
+	 * @return true, if the value of a tag or attribute is in the set. Continuation rows never match.
+	 */
+	private boolean isMatch(StringHashSet valueSet, String localName, String type, String value) {
+		if(!"T".equals(type) && !"A".equals(type)) return false;
+		if(valueNames != null && !valueNames.contains(localName)) return false;
+		return valueSet.contains(value);
+	}
+	
+	/**
+	 * Load the values on first use. They are not read while planning, where the values file might not exist.
+	 * @return the set of values to filter with.
+	 */
+	private StringHashSet getValueSet() {
+		if(valueSet == null) try {
+			valueSet = StringHashSet.load(values, valuesFile);
+			errorHandler.addCounters("values", valueSet);
+		} catch(IOException e) {
+			throw new ClientVisibleException("valuesFile: " + e.getMessage());
+		}
+		return valueSet;
+	}
+	
+	/**
+	 * Create the callback, that emits each row found by the XML parser to Aster.
+	 * @param xmlReaderService parsing the document, which is stopped at the limit, or null, if the rows are replayed.
+	 * @param zipEntry might be null. If not null, contains the meta data of the ZIP entry to be emitted with each row.
+	 * @param accumulator
+	 * @param inputIterator
+	 * @param outputEmitter
+	 * @return the callback to pass to the XMLReaderService.
+	 */
+	private XMLReaderService.XMLReaderCallback newUnfilteredRowEmitter(final XMLReaderService xmlReaderService, final ZipEntry zipEntry,
+			final Accumulator accumulator, final RowIterator inputIterator, final RowEmitter outputEmitter) {
+		if(xmlShredder != null) return new XMLReaderService.XMLReaderCallback() {
+			private int rows = 0; // Rows found in this document
+			
+			// Collect values of the record and emit the previous record, when a new one starts
+			public void newRow(String includeParent, int includeCount, String fullPath,
+					String uri, String localName, String qName, String type, String value, int id, int first_sub_id) {
+				if(isBeyondLimit(xmlReaderService, ++rows, includeCount)) return;
+				if(xmlShredder.isNewRecord(includeParent, includeCount)) emitRecord(zipEntry, accumulator, inputIterator, outputEmitter);
+				xmlShredder.collect(includeParent, includeCount, fullPath, localName, value);
+			}
+		};
+		
+		return new XMLRowAdapter() {
+			private int rows = 0; // Rows found in this document
+			
+			// Construct row on each callback and emit the row. The row carries all its values, also if it is replayed.
+			public void newRow(XMLEvent row) {
+				if(isFingerprintOnly && !("T".equals(row.getType()) && row.isIncludeParent())) return;
+				if(isBeyondLimit(xmlReaderService, ++rows, row.getIncludeCount())) return;
+				
+				// accumulate
+				accumulator.emit(inputIterator, outputEmitter);
 
-					// XML part
-					Utils.emitNullableString(outputEmitter, includeParent);
-					outputEmitter.addInt(includeCount);
-					outputEmitter.addString(fullPath);
-					outputEmitter.addString(uri);
-					outputEmitter.addString(localName);
-					outputEmitter.addString(qName);
-					outputEmitter.addString(type);
-					outputEmitter.addString(value);
-					outputEmitter.addInt(id);
-					outputEmitter.addInt(first_sub_id);
-					
-					// ZIP part
-					if(zipEntry != null) {
-						Utils.emitNullableString(outputEmitter, zipEntry.getName());
-						Utils.emitNullableTimestamp(outputEmitter, zipEntry.getTime(), -1L);
-						Utils.emitNullableInteger(outputEmitter, zipEntry.getSize(), -1L);
-						Utils.emitNullableInteger(outputEmitter, zipEntry.getCompressedSize(), -1L);
-						outputEmitter.addString(zipEntry.isDirectory()? "T":"F");
-						outputEmitter.addInt(zipEntry.getMethod());
-						Utils.emitNullableInteger(outputEmitter, zipEntry.getCrc(), -1L);
-						Utils.emitNullableString(outputEmitter, zipEntry.getComment());
+				// XML part
+				if(isMultiDocument) outputEmitter.addInt(docNo);
+				Utils.emitNullableString(outputEmitter, row.getIncludeParent());
+				outputEmitter.addInt(row.getIncludeCount());
+				if(pathDictionary != null) {
+					outputEmitter.addLong(pathDictionary.getPathId(row.getFullPath(), row.getUri(), row.getLocalName(), row.getQName()));
+					for(int i = 0; i < 4; i++) outputEmitter.addNull();
+				}
+				else {
+					outputEmitter.addString(row.getFullPathString());
+					outputEmitter.addString(row.getUri());
+					outputEmitter.addString(row.getLocalName());
+					outputEmitter.addString(row.getQName());
+				}
+				outputEmitter.addString(row.getType());
+				Utils.emitNullableString(outputEmitter, row.getValueString());
+				outputEmitter.addInt(row.getId());
+				outputEmitter.addInt(row.getFirstSubId());
+				if(isHierarchy) {
+					if(row.getParentId() < 0) outputEmitter.addNull();
+					else outputEmitter.addInt(row.getParentId());
+					outputEmitter.addInt(row.getDepth());
+					outputEmitter.addInt(row.getOrdinal());
+				}
+				if(maxValueChars > 0) outputEmitter.addInt(row.getValueChunk());
+				if(isFingerprinted) {
+					if("T".equals(row.getType())) outputEmitter.addLong(row.getFingerprint());
+					else outputEmitter.addNull();
+				}
+				if(hasBinaryNodes) {
+					if(row.getBytes() == null) {
+						outputEmitter.addNull();
+						outputEmitter.addNull();
+					}
+					else {
+						outputEmitter.addInt(row.getBinaryChunk());
+						outputEmitter.addBytes(row.getBytes(), row.getOffset(), row.getLength());
 					}
-					outputEmitter.emitRow();
 				}
-			});
+				if(hasFragments) Utils.emitNullableString(outputEmitter, row.getFragment());
+				
+				// ZIP part
+				emitZipEntry(zipEntry, outputEmitter);
+				outputEmitter.emitRow();
+			}
+		};
+	}
+	
+	/**
+	 * Check the limit of the current document and stop parsing, when it is reached.
+	 * @param xmlReaderService parsing the document or null, if the rows are replayed. Replayed rows beyond the limit are only dropped.
+	 * @param rows number of rows found in the document including the current one.
+	 * @param includeCount of the current row.
+	 * @return true, if the current row is beyond the limit and must not be returned.
+	 */
+	private boolean isBeyondLimit(XMLReaderService xmlReaderService, int rows, int includeCount) {
+		if(limit == 0) return false;
+		if(isLimitOnIncludeCount? includeCount > limit:rows > limit) {
+			if(xmlReaderService != null) xmlReaderService.stop();
+			return true;
+		}
+		if(!isLimitOnIncludeCount && rows == limit && xmlReaderService != null) xmlReaderService.stop();
+		return false;
+	}
+	
+	/**
+	 * Emit one row of type 'P' for each distinct path found.
+	 * @param outputEmitter
+	 */
+	private void emitPathDictionary(RowEmitter outputEmitter) {
+		for(long pathId : pathDictionary.getPathIds()) {
+			String[] path = pathDictionary.getPath(pathId);
+			accumulator.emitNulls(outputEmitter);
+			if(isMultiDocument) outputEmitter.addNull(); // docno
+			outputEmitter.addNull(); // includeparent
+			outputEmitter.addNull(); // includecount
+			outputEmitter.addLong(pathId);
+			for(String s : path) outputEmitter.addString(s);
+			outputEmitter.addString("P");
+			outputEmitter.addNull(); // value
+			outputEmitter.addNull(); // id
+			outputEmitter.addNull(); // first_sub_id
+			if(isHierarchy) for(int i = 0; i < 3; i++) outputEmitter.addNull(); // parent_id, depth, ordinal
+			if(maxValueChars > 0) outputEmitter.addNull(); // valuechunk
+			if(isFingerprinted) outputEmitter.addNull(); // fingerprint
+			if(hasBinaryNodes) for(int i = 0; i < 2; i++) outputEmitter.addNull(); // binarychunk, binary
+			if(hasFragments) outputEmitter.addNull(); // fragment
+			if(charsetDecoder != null) for(int i = 0; i < 8; i++) outputEmitter.addNull(); // ZIP part
+			outputEmitter.emitRow();
+		}
+		pathDictionary.clear();
+	}
+	
+	/**
+	 * Emit the record collected by the shredder as one wide row, if there is one.
+	 * @param zipEntry might be null. If not null, contains the meta data of the ZIP entry to be emitted with the row.
+	 * @param accumulator
+	 * @param inputIterator
+	 * @param outputEmitter
+	 */
+	private void emitRecord(ZipEntry zipEntry, Accumulator accumulator, RowIterator inputIterator, RowEmitter outputEmitter) {
+		if(xmlShredder == null || !xmlShredder.hasRecord()) return;
+		
+		accumulator.emit(inputIterator, outputEmitter);
+		if(isMultiDocument) outputEmitter.addInt(docNo);
+		Utils.emitNullableString(outputEmitter, xmlShredder.getIncludeParent());
+		outputEmitter.addInt(xmlShredder.getIncludeCount());
+		xmlShredder.emit(outputEmitter);
+		emitZipEntry(zipEntry, outputEmitter);
+		outputEmitter.emitRow();
+	}
+	
+	/**
+	 * Add the meta data of the ZIP entry to the current output row.
+	 * @param zipEntry might be null. If null, nothing is added.
+	 * @param outputEmitter
+	 */
+	private void emitZipEntry(ZipEntry zipEntry, RowEmitter outputEmitter) {
+		if(zipEntry == null) return;
+		
+		Utils.emitNullableString(outputEmitter, zipEntry.getName());
+		Utils.emitNullableTimestamp(outputEmitter, zipEntry.getTime(), -1L);
+		Utils.emitNullableInteger(outputEmitter, zipEntry.getSize(), -1L);
+		Utils.emitNullableInteger(outputEmitter, zipEntry.getCompressedSize(), -1L);
+		outputEmitter.addString(zipEntry.isDirectory()? "T":"F");
+		outputEmitter.addInt(zipEntry.getMethod());
+		Utils.emitNullableInteger(outputEmitter, zipEntry.getCrc(), -1L);
+		Utils.emitNullableString(outputEmitter, zipEntry.getComment());
+	}
+	
+	/**
+	 * Parse the bytes of one XML document, not compressed and complete, or replay an event stream. Emit the row to Aster and handle skipping if detected.
+	 * @param xmlReaderService containing processing information like include and exclude lists.
+	 * @param inputStream to read the XML or, if parser('events') is set, the event stream from.
+	 * @param zipEntry might be null. If not null, contains the meta data of the ZIP entry to be emitted with each row.
+	 * @param accumulator
+	 * @param charsetDecoder if null, the bytes are passed to SAX. Else the UTF-8 bytes are tokenized and this decoder
+	 * 		is used for documents, the tokenizer does not support.
+	 * @param inputIterator
+	 * @param outputEmitter
+	 */
+	private void byteXmlFilter(XMLReaderService xmlReaderService,
+			InputStream inputStream, final ZipEntry zipEntry, final Accumulator accumulator, CharsetDecoder charsetDecoder,
+			final RowIterator inputIterator, final RowEmitter outputEmitter) {
+		
+		try {
+			if(isEventParser)
+				xmlReaderService.parseEvents(inputStream, newRowEmitter(xmlReaderService, zipEntry, accumulator, inputIterator, outputEmitter));
+			else if(charsetDecoder != null)
+				xmlReaderService.parse(inputStream, charsetDecoder, newRowEmitter(xmlReaderService, zipEntry, accumulator, inputIterator, outputEmitter));
+			else
+				xmlReaderService.parse(inputStream, newRowEmitter(xmlReaderService, zipEntry, accumulator, inputIterator, outputEmitter));
+			emitRecord(zipEntry, accumulator, inputIterator, outputEmitter);
 		} catch (SAXException e) {
+			if(xmlShredder != null) xmlShredder.clear();
 			errorHandler.catchException(e);
 			return; // End this row and go to next if stopOnError is set to false (otherwise exception is thrown)
 		} catch (IOException e) {
+			if(xmlShredder != null) xmlShredder.clear();
 			errorHandler.catchException(e);
 			return; // End this row and go to next if stopOnError is set to false (otherwise exception is thrown)
 		}
@@ -339,18 +975,144 @@ public final class XMLFastFilter implements RowFunction, PartitionFunction, Drai
 			final Accumulator accumulator, final CharsetDecoder charsetDecoder,
 			final RowIterator inputIterator, final RowEmitter outputEmitter) {
 		
+		final LinkedList<PendingEntry> pendingEntries = new LinkedList<PendingEntry>(); // Entries parsed in parallel
 		try {
 			// The unzip of the file
 			Utils.unzip(inputStream, new UnzipCallback() {
 				public void newZipEntry(final ZipEntry zipEntry, InputStream inputStream) {
-					xmlFilter(xmlReaderService, new InputStreamReader(inputStream, charsetDecoder), zipEntry, accumulator, inputIterator, outputEmitter);
+					if(sampler != null && !sampler.isSampled(zipEntry)) return; // Not part of the sample, but inflated to reach the next entry
+					
+					// Replay cached rows or keep the rows of this entry for the cache. The pool keeps the rows of its entries anyway.
+					boolean isParallel = (xmlReaderServicePool != null && xmlSplitParser == null);
+					String key = (rowCache == null)? null:rowCache.getKey(zipEntry);
+					if(key != null) {
+						XMLRowBuffer rows = rowCache.get(key);
+						if(rows != null && isParallel)
+							pendingEntries.add(new PendingEntry(zipEntry, rows)); // Keep the order of entries
+						else if(rows != null) {
+							rows.replay(newRowEmitter(null, zipEntry, accumulator, inputIterator, outputEmitter));
+							emitRecord(zipEntry, accumulator, inputIterator, outputEmitter);
+						}
+						if(rows != null) return;
+						if(!isParallel) recording = new XMLRowBuffer();
+					}
+					
+					int exceptions = errorHandler.getExceptions();
+					try {
+						if(isParallel)
+							parallelXmlFilter(inputStream, zipEntry, key, pendingEntries, accumulator, charsetDecoder, inputIterator, outputEmitter);
+						else if(isFastParser || isByteParser)
+							byteXmlFilter(xmlReaderService, inputStream, zipEntry, accumulator, isFastParser? charsetDecoder:null, inputIterator, outputEmitter);
+						else if(isMultiDocument)
+							documentsXmlFilter(new InputStreamReader(inputStream, charsetDecoder), zipEntry, accumulator, inputIterator, outputEmitter);
+						else
+							xmlFilter(xmlReaderService, new InputStreamReader(inputStream, charsetDecoder), zipEntry, accumulator, inputIterator, outputEmitter);
+					}
+					finally {
+						if(recording != null && errorHandler.getExceptions() == exceptions) rowCache.put(key, recording);
+						recording = null;
+					}
 				}
 			});
 			inputStream.close();
 		}
 		catch(IOException e) {
 			errorHandler.catchException(e);
-			return; // End this row and go to next if stopOnError is set to false (otherwise exception is thrown)
 		}
+		
+		// Emit rows of entries still parsed
+		while(!pendingEntries.isEmpty()) emitPendingEntry(pendingEntries.removeFirst(), accumulator, inputIterator, outputEmitter);
+	}
+	
+	/**
+	 * Read one ZIP entry into memory and parse it in a thread of the pool. Emit rows of the oldest entries when too many are pending.
+	 * @param inputStream to read the uncompressed XML from.
+	 * @param zipEntry contains the meta data of the ZIP entry to be emitted with each row.
+	 * @param key to cache the rows of the entry with or null.
+	 * @param pendingEntries entries submitted to the pool in order of submission.
+	 * @param accumulator
+	 * @param charsetDecoder
+	 * @param inputIterator
+	 * @param outputEmitter
+	 */
+	private void parallelXmlFilter(InputStream inputStream, ZipEntry zipEntry, String key, LinkedList<PendingEntry> pendingEntries,
+			Accumulator accumulator, final CharsetDecoder charsetDecoder,
+			RowIterator inputIterator, RowEmitter outputEmitter) {
+		
+		final byte[] content;
+		try {
+			content = Utils.toByteArray(inputStream);
+		}
+		catch(IOException e) {
+			errorHandler.catchException(e);
+			return; // End this entry and go to next if stopOnError is set to false (otherwise exception is thrown)
+		}
+		
+		// Parse in pool. Each thread needs its own decoder.
+		pendingEntries.add(new PendingEntry(zipEntry, key, xmlReaderServicePool.submit(new ParseJob() {
+			public void parse(XMLReaderService xmlReaderService, XMLReaderCallback xmlReaderCallback) throws SAXException, IOException {
+				CharsetDecoder decoder = Utils.getEncoding(charsetDecoder.charset().name());
+				if(isFastParser)
+					xmlReaderService.parse(new ByteArrayInputStream(content), decoder, xmlReaderCallback);
+				else if(isByteParser)
+					xmlReaderService.parse(new ByteArrayInputStream(content), xmlReaderCallback);
+				else
+					xmlReaderService.parse(new InputStreamReader(new ByteArrayInputStream(content), decoder), xmlReaderCallback);
+			}
+		})));
+		
+		// Limit memory by emitting the oldest entries
+		while(pendingEntries.size() >= 2*xmlReaderServicePool.getThreads())
+			emitPendingEntry(pendingEntries.removeFirst(), accumulator, inputIterator, outputEmitter);
+	}
+	
+	/**
+	 * Wait for the rows of a pending entry and emit them to Aster. Keep them in the cache, if the entry has a key and no error.
+	 * @param pendingEntry
+	 * @param accumulator
+	 * @param inputIterator
+	 * @param outputEmitter
+	 */
+	private void emitPendingEntry(PendingEntry pendingEntry, Accumulator accumulator, RowIterator inputIterator, RowEmitter outputEmitter) {
+		try {
+			XMLRowBuffer xmlRowBuffer = pendingEntry.get();
+			xmlRowBuffer.replay(newRowEmitter(null, pendingEntry.zipEntry, accumulator, inputIterator, outputEmitter));
+			if(xmlRowBuffer.getException() != null) {
+				if(xmlShredder != null) xmlShredder.clear();
+				errorHandler.catchException(xmlRowBuffer.getException());
+			}
+			else {
+				emitRecord(pendingEntry.zipEntry, accumulator, inputIterator, outputEmitter);
+				if(pendingEntry.key != null) rowCache.put(pendingEntry.key, xmlRowBuffer);
+			}
+		} catch (InterruptedException e) {
+			errorHandler.catchException(e);
+		} catch (ExecutionException e) {
+			errorHandler.catchException(e);
+		}
+	}
+	
+	// ZIP entry parsed by the pool or found in the cache
+	private static class PendingEntry {
+		final ZipEntry zipEntry;
+		final String key; // Key to cache the rows with or null
+		final Future<XMLRowBuffer> future; // Null, if the rows were cached
+		final XMLRowBuffer rows;
+		
+		public PendingEntry(ZipEntry zipEntry, String key, Future<XMLRowBuffer> future) {
+			this.zipEntry = zipEntry;
+			this.key = key;
+			this.future = future;
+			this.rows = null;
+		}
+		
+		public PendingEntry(ZipEntry zipEntry, XMLRowBuffer rows) {
+			this.zipEntry = zipEntry;
+			this.key = null;
+			this.future = null;
+			this.rows = rows;
+		}
+		
+		XMLRowBuffer get() throws InterruptedException, ExecutionException {return (future == null)? rows:future.get();}
 	}
 }
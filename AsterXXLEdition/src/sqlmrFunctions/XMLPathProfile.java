@@ -0,0 +1,326 @@
+package sqlmrFunctions;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.CharsetDecoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+
+import org.xml.sax.SAXException;
+
+import utils.Accumulator;
+import utils.ErrorHandler;
+import utils.PartitionInputStream;
+import utils.PartitionReader;
+import utils.PathProfile;
+import utils.Utils;
+import utils.Utils.UnzipCallback;
+import utils.XMLReaderService;
+
+import com.asterdata.ncluster.sqlmr.ClientVisibleException;
+import com.asterdata.ncluster.sqlmr.Drainable;
+import com.asterdata.ncluster.sqlmr.IllegalUsageException;
+import com.asterdata.ncluster.sqlmr.OutputInfo;
+import com.asterdata.ncluster.sqlmr.PartitionFunction;
+import com.asterdata.ncluster.sqlmr.RowFunction;
+import com.asterdata.ncluster.sqlmr.RuntimeContract;
+import com.asterdata.ncluster.sqlmr.data.ColumnDefinition;
+import com.asterdata.ncluster.sqlmr.data.PartitionDefinition;
+import com.asterdata.ncluster.sqlmr.data.RowEmitter;
+import com.asterdata.ncluster.sqlmr.data.RowIterator;
+import com.asterdata.ncluster.sqlmr.data.SqlType;
+
+/**
+ * @author Juergen Boiselle
+ *
+ * Profiles the paths of XML documents instead of returning their nodes. Use it to learn the structure of a new feed,
+ * before the include and exclude lists of XMLFastFilter are defined. The documents are read like in XMLFastFilter and
+ * the nodes are aggregated in memory by path. Only the profile is returned: One row per distinct path and type.
+ *
+ * Syntax:
+ * 	SELECT * FROM XMLPathProfile(
+ * 		ON { table_name | view_name | (query) }
+ * 		[PARTITION BY partition_column1, ... ORDER BY chunk]
+ * 		XML('column_name')
+ * 		[INCLUDE('included_node_localname|included_regex'[, ...])]
+ * 		[EXCLUDE('excluded_node_localname|excluded_regex'[, ...])]
+ * 		[SKIPAFTER('localname|regex'[, ...])]
+ * 		[LOCALNAMES('localname|regex'[, ...])]
+ * 		[SELECT('xpath'[, ...])]
+ * 		[samples(n)]
+ * 		[accumulate('passed_thru_column_name'[, ...])]
+ * 		[unzip(character encoding)]
+ * 		[parser('reader'|'bytes'|'fast')]
+ * 		[dtdCatalog('directory')]
+ * 		[stopOnError('true'|'false')]
+ * 		[log(infoN)]
+ *
+ * Parameter:
+ * XML, INCLUDE, EXCLUDE, SKIPAFTER, LOCALNAMES, SELECT, unzip, parser, dtdCatalog, stopOnError, log	See XMLFastFilter.
+ * samples	optional	Number of distinct values returned as samples per path. Default is 3.
+ * accumulate	optional	Copy columns of input to each output row. The values are taken from the last document of the profile.
+ *
+ * The profile is returned at the end of each partition, if the function is called with PARTITION BY. Each partition has its own profile.
+ * Without PARTITION BY all documents of a vworker are aggregated into one profile, which is returned after the last row.
+ * Aggregate the profiles of all vworkers with GROUP BY fullpath, type.
+ *
+ * Output:
+ * fullpath, uri, localname, qname, type	as in XMLFastFilter. uri and qname are taken from the first node found.
+ * depth	integer	is the number of local names in fullpath.
+ * count	bigint	is the number of nodes found with this path.
+ * valuecount	bigint	is the number of nodes with a value, that is not empty or only white space.
+ * minlength, maxlength	integer	are the minimal and maximal number of characters of these values. Null, if no value was found.
+ * sample1, ..., samplen	character varying	are the first distinct values found, cut to 100 characters. Null, if less values were found.
+ *
+ * Error handling:
+ * - Whenever a Java exception is thrown such as ZipException, XMLParsing or an IOException, the document is aborted.
+ * 		Nodes found before the exception are part of the profile.
+ * - The exception and the stack is printed in the Aster log file. Processing continues with next partition.
+ */
+public final class XMLPathProfile implements RowFunction, PartitionFunction, Drainable {
+	// These member variables will be populated with the values of the argument clauses passed to the SQL-MR function.
+	private int xmlArgumentIdx = 0;
+	private XMLReaderService xmlReaderService = null;
+	private Accumulator accumulator = null;
+	private CharsetDecoder charsetDecoder = null; // if null, UNZIP was not set. Input is plain XML.
+	private boolean isFastParser = false; // if true, zip entries are tokenized as UTF-8 bytes
+	private boolean isByteParser = false; // if true, zip entries are passed as bytes to SAX
+	private ErrorHandler errorHandler = null;
+	private int samples = 3;
+	private PathProfile pathProfile = null;
+
+	/*
+	 * The constructor establishes the RuntimeContract between
+	 * the SQL-MR function and Aster Database. During query planning,
+	 * the function will constructed on a single node. During
+	 * query execution, it will be constructed and run on one or more nodes.
+	 */
+	public XMLPathProfile(RuntimeContract contract) {
+		// Read argument clauses into appropriate member variables.
+		xmlArgumentIdx = contract.getInputInfo().getColumnIndex(contract.useArgumentClause("xml").getSingleValue());
+		accumulator = new Accumulator(contract);
+		charsetDecoder = Utils.getEncoding(contract, "unzip");
+		errorHandler = new ErrorHandler(
+				this.getClass().getName(),
+				Utils.getSingleBooleanFromParameter(contract, "stoponerror", false),
+				Utils.getSingleIntFromParameter(contract, "log", Integer.MAX_VALUE));
+
+		String parser = Utils.getSingleStringFromParameter(contract, "parser", "reader");
+		if("fast".equalsIgnoreCase(parser)) {
+			if(charsetDecoder == null || !charsetDecoder.charset().name().equals("UTF-8"))
+				throw new IllegalUsageException("parser('fast') requires unzip('UTF-8')");
+			isFastParser = true;
+		}
+		else if("bytes".equalsIgnoreCase(parser)) {
+			if(charsetDecoder == null) throw new IllegalUsageException("parser('bytes') requires unzip to be set");
+			isByteParser = true;
+		}
+		else if(!"reader".equalsIgnoreCase(parser))
+			throw new IllegalUsageException("parser: unexpected value '" + parser + "'. Expected one of 'reader', 'bytes' or 'fast'");
+
+		samples = Utils.getSingleIntFromParameter(contract, "samples", 3);
+		if(samples < 0) throw new IllegalUsageException("samples must not be negative");
+		pathProfile = new PathProfile(samples);
+
+		// Initialize the XML parser
+		try {
+			xmlReaderService = new XMLReaderService(
+					contract.hasArgumentClause("include")? contract.useArgumentClause("include").getValues():null,
+					contract.hasArgumentClause("exclude")? contract.useArgumentClause("exclude").getValues():null,
+					contract.hasArgumentClause("skipafter")? contract.useArgumentClause("skipafter").getValues():null,
+					contract.hasArgumentClause("localnames")? contract.useArgumentClause("localnames").getValues():null,
+					contract.hasArgumentClause("select")? contract.useArgumentClause("select").getValues():null);
+			xmlReaderService.setDTDCatalog(Utils.getSingleStringFromParameter(contract, "dtdcatalog", null));
+		} catch (SAXException e) {
+			throw new ClientVisibleException(e.getMessage());
+		} catch (IllegalArgumentException e) {
+			throw new IllegalUsageException("select: " + e.getMessage());
+		}
+
+		// Verify that the function accepts the given input schema depending on UNZIP is set or not.
+		if(charsetDecoder != null && !SqlType.getType("bytea").equals(contract.getInputInfo().getColumnType(xmlArgumentIdx))) {
+			throw new IllegalUsageException(
+					"When 'zipped' is set, type (bytea) expected for zipped column \"" +
+					contract.useArgumentClause("xml").getSingleValue() + "\"");
+		}
+		else if(charsetDecoder == null && !SqlType.getType("character varying").equals(contract.getInputInfo().getColumnType(xmlArgumentIdx))) {
+			throw new IllegalUsageException(
+					"When 'zipped' not set, type (character varying) expected for xml column \"" +
+					contract.useArgumentClause("xml").getSingleValue() + "\"");
+		}
+
+		// Construct the output schema
+		List<ColumnDefinition> outputColumns = new ArrayList<ColumnDefinition>();
+		accumulator.constructOutputSchema(contract, outputColumns);
+		outputColumns.add(new ColumnDefinition("fullpath", SqlType.getType("character varying")));
+		outputColumns.add(new ColumnDefinition("uri", SqlType.getType("character varying")));
+		outputColumns.add(new ColumnDefinition("localname", SqlType.getType("character varying")));
+		outputColumns.add(new ColumnDefinition("qname", SqlType.getType("character varying")));
+		outputColumns.add(new ColumnDefinition("type", SqlType.getType("character (1)")));
+		outputColumns.add(new ColumnDefinition("depth", SqlType.getType("integer")));
+		outputColumns.add(new ColumnDefinition("count", SqlType.getType("bigint")));
+		outputColumns.add(new ColumnDefinition("valuecount", SqlType.getType("bigint")));
+		outputColumns.add(new ColumnDefinition("minlength", SqlType.getType("integer")));
+		outputColumns.add(new ColumnDefinition("maxlength", SqlType.getType("integer")));
+		for(int i = 1; i <= samples; i++) outputColumns.add(new ColumnDefinition("sample" + i, SqlType.getType("character varying")));
+		contract.setOutputInfo(new OutputInfo(outputColumns));
+
+		// Complete the contract
+		contract.complete();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.asterdata.ncluster.sqlmr.RowFunction#operateOnSomeRows(com.asterdata.ncluster.sqlmr.data.RowIterator, com.asterdata.ncluster.sqlmr.data.RowEmitter)
+	 *
+	 * Operate of rows of input. SQL-MR function was called as a map function without partitions.
+	 * Each row is expected to be one complete XML Document, either compressed or plain. All rows are aggregated into one profile.
+	 */
+	public void operateOnSomeRows(RowIterator inputIterator, RowEmitter outputEmitter) {
+		while (inputIterator.advanceToNextRow()) {
+			errorHandler.enterOperateOnRow(inputIterator, outputEmitter);
+			if(inputIterator.isNullAt(xmlArgumentIdx)) {
+				errorHandler.skipRow();
+				continue;
+			}
+
+			if(charsetDecoder == null) // is input compressed?
+				xmlProfile(new StringReader(inputIterator.getStringAt(xmlArgumentIdx)), inputIterator);
+			else
+				zippedXmlProfile(new ByteArrayInputStream(inputIterator.getBytesAt(xmlArgumentIdx)), inputIterator);
+			errorHandler.exitOperateOnRow();
+		}
+		emitProfile(outputEmitter);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.asterdata.ncluster.sqlmr.PartitionFunction#operateOnPartition(com.asterdata.ncluster.sqlmr.data.PartitionDefinition, com.asterdata.ncluster.sqlmr.data.RowIterator, com.asterdata.ncluster.sqlmr.data.RowEmitter)
+	 *
+	 * Operate of rows of input. SQL-MR function was called as a reduce function with partitions.
+	 * Each partition is expected to be one complete XML Document, either compressed or plain.
+	 * Rows within the partition are chunks (parts, pieces) of the document in correct order.
+	 */
+	public void operateOnPartition(PartitionDefinition definition, RowIterator inputIterator, RowEmitter outputEmitter) {
+		errorHandler.enterOperateOnPartition(definition, inputIterator, outputEmitter);
+		if(charsetDecoder == null) // is input compressed?
+			xmlProfile(new PartitionReader(inputIterator, xmlArgumentIdx), inputIterator);
+		else
+			zippedXmlProfile(new PartitionInputStream(inputIterator, xmlArgumentIdx), inputIterator);
+		emitProfile(outputEmitter);
+		errorHandler.exitOperateOnPartition();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.asterdata.ncluster.sqlmr.Drainable#drainOutputRows(com.asterdata.ncluster.sqlmr.data.RowEmitter)
+	 *
+	 * Send last logging information
+	 */
+	public void drainOutputRows(RowEmitter outputEmitter) {
+		errorHandler.drainOutputRows();
+	}
+
+	/**
+	 * Parse one XML document, not compressed and complete, and add its nodes to the profile.
+	 * @param reader to read the XML from.
+	 * @param inputIterator to read the accumulated columns from.
+	 */
+	private void xmlProfile(Reader reader, RowIterator inputIterator) {
+		try {
+			xmlReaderService.parse(reader, newProfiler(inputIterator));
+		} catch (SAXException e) {
+			errorHandler.catchException(e);
+		} catch (IOException e) {
+			errorHandler.catchException(e);
+		}
+	}
+
+	/**
+	 * Parse the bytes of one XML document, not compressed and complete, and add its nodes to the profile.
+	 * @param inputStream to read the XML from.
+	 * @param inputIterator to read the accumulated columns from.
+	 */
+	private void byteXmlProfile(InputStream inputStream, RowIterator inputIterator) {
+		try {
+			if(isFastParser)
+				xmlReaderService.parse(inputStream, charsetDecoder, newProfiler(inputIterator));
+			else
+				xmlReaderService.parse(inputStream, newProfiler(inputIterator));
+		} catch (SAXException e) {
+			errorHandler.catchException(e);
+		} catch (IOException e) {
+			errorHandler.catchException(e);
+		}
+	}
+
+	/**
+	 * Uncompress and profile each ZIP entry as one XML document.
+	 * @param inputStream to read the compressed content from.
+	 * @param inputIterator to read the accumulated columns from.
+	 */
+	private void zippedXmlProfile(InputStream inputStream, final RowIterator inputIterator) {
+		try {
+			// The unzip of the file
+			Utils.unzip(inputStream, new UnzipCallback() {
+				public void newZipEntry(ZipEntry zipEntry, InputStream inputStream) {
+					if(isFastParser || isByteParser)
+						byteXmlProfile(inputStream, inputIterator);
+					else
+						xmlProfile(new InputStreamReader(inputStream, charsetDecoder), inputIterator);
+				}
+			});
+			inputStream.close();
+		}
+		catch(IOException e) {
+			errorHandler.catchException(e);
+		}
+	}
+
+	/**
+	 * Create the callback, that adds each row found by the XML parser to the profile.
+	 * The accumulated columns are read with the first row, while the iterator is positioned on the document.
+	 * @param inputIterator
+	 * @return the callback to pass to the XMLReaderService.
+	 */
+	private XMLReaderService.XMLReaderCallback newProfiler(final RowIterator inputIterator) {
+		return new XMLReaderService.XMLReaderCallback() {
+			private boolean isFirst = true;
+
+			public void newRow(String includeParent, int includeCount, String fullPath,
+					String uri, String localName, String qName, String type, String value, int id, int first_sub_id) {
+				if(isFirst) {
+					accumulator.read(inputIterator);
+					isFirst = false;
+				}
+				pathProfile.add(fullPath, uri, localName, qName, type, value);
+			}
+		};
+	}
+
+	/**
+	 * Emit one row per path of the profile and start a new profile.
+	 * @param outputEmitter
+	 */
+	private void emitProfile(RowEmitter outputEmitter) {
+		for(PathProfile.Node node : pathProfile.getNodes()) {
+			accumulator.emit(null, outputEmitter);
+			outputEmitter.addString(node.getFullPath());
+			Utils.emitNullableString(outputEmitter, node.getUri());
+			outputEmitter.addString(node.getLocalName());
+			Utils.emitNullableString(outputEmitter, node.getQName());
+			outputEmitter.addString(node.getType());
+			outputEmitter.addInt(node.getDepth());
+			outputEmitter.addLong(node.getCount());
+			outputEmitter.addLong(node.getValueCount());
+			Utils.emitNullableInteger(outputEmitter, node.getMinLength(), -1L);
+			Utils.emitNullableInteger(outputEmitter, node.getMaxLength(), -1L);
+			List<String> values = node.getSamples();
+			for(int i = 0; i < samples; i++) Utils.emitNullableString(outputEmitter, (i < values.size())? values.get(i):null);
+			outputEmitter.emitRow();
+		}
+		pathProfile.clear();
+	}
+}
@@ -0,0 +1,289 @@
+package sqlmrFunctions;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.CharsetDecoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+
+import org.xml.sax.SAXException;
+
+import utils.Accumulator;
+import utils.ErrorHandler;
+import utils.PartitionInputStream;
+import utils.PartitionReader;
+import utils.Utils;
+import utils.Utils.UnzipCallback;
+import utils.XMLEventEncoder;
+import utils.XMLReaderService;
+
+import com.asterdata.ncluster.sqlmr.ClientVisibleException;
+import com.asterdata.ncluster.sqlmr.Drainable;
+import com.asterdata.ncluster.sqlmr.IllegalUsageException;
+import com.asterdata.ncluster.sqlmr.OutputInfo;
+import com.asterdata.ncluster.sqlmr.PartitionFunction;
+import com.asterdata.ncluster.sqlmr.RowFunction;
+import com.asterdata.ncluster.sqlmr.RuntimeContract;
+import com.asterdata.ncluster.sqlmr.data.ColumnDefinition;
+import com.asterdata.ncluster.sqlmr.data.PartitionDefinition;
+import com.asterdata.ncluster.sqlmr.data.RowEmitter;
+import com.asterdata.ncluster.sqlmr.data.RowIterator;
+import com.asterdata.ncluster.sqlmr.data.SqlType;
+
+/**
+ * @author Juergen Boiselle
+ *
+ * Parses XML documents once and stores them as compact binary event streams. XMLFastFilter reads these streams with parser('events')
+ * and returns the same rows as for the original documents, but without decompression and parsing. Use it for archives, that are
+ * queried many times with different include and exclude lists. See XMLEventEncoder for the format.
+ *
+ * Syntax:
+ * 	SELECT * FROM XMLPreParse(
+ * 		ON { table_name | view_name | (query) }
+ * 		[PARTITION BY partition_column1, ... ORDER BY chunk]
+ * 		XML('column_name')
+ * 		[accumulate('passed_thru_column_name'[, ...])]
+ * 		[unzip(character encoding)]
+ * 		[dtdCatalog('directory')]
+ * 		[chunk(chunk size)]
+ * 		[stopOnError('true'|'false')]
+ * 		[log(infoN)]
+ *
+ * Parameter:
+ * XML, accumulate, unzip, dtdCatalog, stopOnError, log	See XMLFastFilter.
+ * chunk	optional	Maximal size of one chunk of the event stream. Default is 16MB.
+ *
+ * Output:
+ * One event stream per document, that is per row, partition or ZIP entry, divided into chunks.
+ * Store the result in a table and call XMLFastFilter with PARTITION BY the accumulated columns and file ORDER BY chunk.
+ *
+ * file, time, size, compressedSize, isDirectory, method, crc, comment	only if "unzip" is set. The meta data of the ZIP entry as in XMLFastFilter.
+ * chunk	integer	is the number of the chunk within the event stream, starting with 0.
+ * events	bytea	is the chunk of the event stream.
+ *
+ * Error handling:
+ * - If parsing fails, the event stream is ended with the error. XMLFastFilter returns the rows found before the error and reports the error,
+ * 		like for the original document.
+ * - Whenever another Java exception is thrown such as ZipException or an IOException, the partition is aborted and no more rows are returned.
+ * - The exception and the stack is printed in the Aster log file. Processing continues with next partition.
+ */
+public final class XMLPreParse implements RowFunction, PartitionFunction, Drainable {
+	// These member variables will be populated with the values of the argument clauses passed to the SQL-MR function.
+	private int xmlArgumentIdx = 0;
+	private XMLReaderService xmlReaderService = null;
+	private Accumulator accumulator = null;
+	private CharsetDecoder charsetDecoder = null; // if null, UNZIP was not set. Input is plain XML.
+	private int chunkSize = Utils.CHUNK_SIZE;
+	private ErrorHandler errorHandler = null;
+
+	/*
+	 * The constructor establishes the RuntimeContract between
+	 * the SQL-MR function and Aster Database. During query planning,
+	 * the function will constructed on a single node. During
+	 * query execution, it will be constructed and run on one or more nodes.
+	 */
+	public XMLPreParse(RuntimeContract contract) {
+		// Read argument clauses into appropriate member variables.
+		xmlArgumentIdx = contract.getInputInfo().getColumnIndex(contract.useArgumentClause("xml").getSingleValue());
+		accumulator = new Accumulator(contract);
+		charsetDecoder = Utils.getEncoding(contract, "unzip");
+		chunkSize = Utils.getSingleIntFromParameter(contract, "chunk", Utils.CHUNK_SIZE);
+		if(chunkSize <= 0) throw new IllegalUsageException("chunk must be more then 0");
+		errorHandler = new ErrorHandler(
+				this.getClass().getName(),
+				Utils.getSingleBooleanFromParameter(contract, "stoponerror", false),
+				Utils.getSingleIntFromParameter(contract, "log", Integer.MAX_VALUE));
+
+		// Initialize the XML parser without filtering
+		try {
+			xmlReaderService = new XMLReaderService(null, null, null, null);
+			xmlReaderService.setDTDCatalog(Utils.getSingleStringFromParameter(contract, "dtdcatalog", null));
+		} catch (SAXException e) {
+			throw new ClientVisibleException(e.getMessage());
+		}
+
+		// Verify that the function accepts the given input schema depending on UNZIP is set or not.
+		if(charsetDecoder != null && !SqlType.getType("bytea").equals(contract.getInputInfo().getColumnType(xmlArgumentIdx))) {
+			throw new IllegalUsageException(
+					"When 'zipped' is set, type (bytea) expected for zipped column \"" +
+					contract.useArgumentClause("xml").getSingleValue() + "\"");
+		}
+		else if(charsetDecoder == null && !SqlType.getType("character varying").equals(contract.getInputInfo().getColumnType(xmlArgumentIdx))) {
+			throw new IllegalUsageException(
+					"When 'zipped' not set, type (character varying) expected for xml column \"" +
+					contract.useArgumentClause("xml").getSingleValue() + "\"");
+		}
+
+		// Construct the output schema
+		List<ColumnDefinition> outputColumns = new ArrayList<ColumnDefinition>();
+		accumulator.constructOutputSchema(contract, outputColumns);
+		if(charsetDecoder != null) {
+			outputColumns.add(new ColumnDefinition("file", SqlType.getType("character varying")));
+			outputColumns.add(new ColumnDefinition("time", SqlType.getType("timestamp with time zone")));
+			outputColumns.add(new ColumnDefinition("size", SqlType.getType("integer")));
+			outputColumns.add(new ColumnDefinition("compressedSize", SqlType.getType("integer")));
+			outputColumns.add(new ColumnDefinition("isDirectory", SqlType.getType("character(1)")));
+			outputColumns.add(new ColumnDefinition("method", SqlType.getType("integer")));
+			outputColumns.add(new ColumnDefinition("crc", SqlType.getType("integer")));
+			outputColumns.add(new ColumnDefinition("comment", SqlType.getType("character varying")));
+		}
+		outputColumns.add(new ColumnDefinition("chunk", SqlType.getType("integer")));
+		outputColumns.add(new ColumnDefinition("events", SqlType.getType("bytea")));
+		contract.setOutputInfo(new OutputInfo(outputColumns));
+
+		// Complete the contract
+		contract.complete();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.asterdata.ncluster.sqlmr.RowFunction#operateOnSomeRows(com.asterdata.ncluster.sqlmr.data.RowIterator, com.asterdata.ncluster.sqlmr.data.RowEmitter)
+	 *
+	 * Operate of rows of input. SQL-MR function was called as a map function without partitions.
+	 * Each row is expected to be one complete XML Document, either compressed or plain.
+	 */
+	public void operateOnSomeRows(RowIterator inputIterator, RowEmitter outputEmitter) {
+		while (inputIterator.advanceToNextRow()) {
+			errorHandler.enterOperateOnRow(inputIterator, outputEmitter);
+			if(inputIterator.isNullAt(xmlArgumentIdx)) {
+				errorHandler.skipRow();
+				continue;
+			}
+
+			if(charsetDecoder == null) // is input compressed?
+				xmlEncode(new StringReader(inputIterator.getStringAt(xmlArgumentIdx)), null, inputIterator, outputEmitter);
+			else
+				zippedXmlEncode(new ByteArrayInputStream(inputIterator.getBytesAt(xmlArgumentIdx)), inputIterator, outputEmitter);
+			errorHandler.exitOperateOnRow();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.asterdata.ncluster.sqlmr.PartitionFunction#operateOnPartition(com.asterdata.ncluster.sqlmr.data.PartitionDefinition, com.asterdata.ncluster.sqlmr.data.RowIterator, com.asterdata.ncluster.sqlmr.data.RowEmitter)
+	 *
+	 * Operate of rows of input. SQL-MR function was called as a reduce function with partitions.
+	 * Each partition is expected to be one complete XML Document, either compressed or plain.
+	 * Rows within the partition are chunks (parts, pieces) of the document in correct order.
+	 */
+	public void operateOnPartition(PartitionDefinition definition, RowIterator inputIterator, RowEmitter outputEmitter) {
+		errorHandler.enterOperateOnPartition(definition, inputIterator, outputEmitter);
+		if(charsetDecoder == null) // is input compressed?
+			xmlEncode(new PartitionReader(inputIterator, xmlArgumentIdx), null, inputIterator, outputEmitter);
+		else
+			zippedXmlEncode(new PartitionInputStream(inputIterator, xmlArgumentIdx), inputIterator, outputEmitter);
+		errorHandler.exitOperateOnPartition();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.asterdata.ncluster.sqlmr.Drainable#drainOutputRows(com.asterdata.ncluster.sqlmr.data.RowEmitter)
+	 *
+	 * Send last logging information
+	 */
+	public void drainOutputRows(RowEmitter outputEmitter) {
+		errorHandler.drainOutputRows();
+	}
+
+	/**
+	 * Parse one XML document and emit its event stream in chunks. A parse error ends the event stream.
+	 * @param reader to read the XML from.
+	 * @param zipEntry might be null. If not null, contains the meta data of the ZIP entry to be emitted with each row.
+	 * @param inputIterator
+	 * @param outputEmitter
+	 */
+	private void xmlEncode(Reader reader, ZipEntry zipEntry, RowIterator inputIterator, RowEmitter outputEmitter) {
+		ChunkOutputStream chunkOutputStream = new ChunkOutputStream(zipEntry, inputIterator, outputEmitter);
+		XMLEventEncoder xmlEventEncoder = new XMLEventEncoder(chunkOutputStream);
+		try {
+			try {
+				xmlReaderService.encode(reader, xmlEventEncoder);
+			} catch (SAXException e) {
+				xmlEventEncoder.abort(e.getMessage());
+			}
+			chunkOutputStream.close();
+		} catch (IOException e) {
+			errorHandler.catchException(e);
+		}
+	}
+
+	/**
+	 * Uncompress and encode each ZIP entry as one XML document.
+	 * @param inputStream to read the compressed content from.
+	 * @param inputIterator
+	 * @param outputEmitter
+	 */
+	private void zippedXmlEncode(InputStream inputStream, final RowIterator inputIterator, final RowEmitter outputEmitter) {
+		try {
+			// The unzip of the file
+			Utils.unzip(inputStream, new UnzipCallback() {
+				public void newZipEntry(ZipEntry zipEntry, InputStream inputStream) {
+					xmlEncode(new InputStreamReader(inputStream, charsetDecoder), zipEntry, inputIterator, outputEmitter);
+				}
+			});
+			inputStream.close();
+		}
+		catch(IOException e) {
+			errorHandler.catchException(e);
+		}
+	}
+
+	// Collect the event stream and emit a row, whenever a chunk is full and at close.
+	private class ChunkOutputStream extends OutputStream {
+		private final ZipEntry zipEntry;
+		private final RowIterator inputIterator;
+		private final RowEmitter outputEmitter;
+		private byte[] buf = new byte[Math.min(chunkSize, 1024*1024)];
+		private int len = 0;
+		private int chunk = 0;
+
+		public ChunkOutputStream(ZipEntry zipEntry, RowIterator inputIterator, RowEmitter outputEmitter) {
+			this.zipEntry = zipEntry;
+			this.inputIterator = inputIterator;
+			this.outputEmitter = outputEmitter;
+		}
+
+		public void write(int b) throws IOException {write(new byte[] {(byte) b}, 0, 1);}
+
+		public void write(byte[] b, int off, int n) throws IOException {
+			while(n > 0) {
+				if(len == chunkSize) emitChunk();
+				if(len == buf.length) { // Grow up to chunk size
+					byte[] newBuf = new byte[Math.min(chunkSize, 2*buf.length)];
+					System.arraycopy(buf, 0, newBuf, 0, len);
+					buf = newBuf;
+				}
+				int m = Math.min(n, buf.length - len);
+				System.arraycopy(b, off, buf, len, m);
+				len += m;
+				off += m;
+				n -= m;
+			}
+		}
+
+		public void close() throws IOException {
+			if(len > 0 || chunk == 0) emitChunk();
+		}
+
+		private void emitChunk() {
+			accumulator.emit(inputIterator, outputEmitter);
+			if(zipEntry != null) {
+				Utils.emitNullableString(outputEmitter, zipEntry.getName());
+				Utils.emitNullableTimestamp(outputEmitter, zipEntry.getTime(), -1L);
+				Utils.emitNullableInteger(outputEmitter, zipEntry.getSize(), -1L);
+				Utils.emitNullableInteger(outputEmitter, zipEntry.getCompressedSize(), -1L);
+				outputEmitter.addString(zipEntry.isDirectory()? "T":"F");
+				outputEmitter.addInt(zipEntry.getMethod());
+				Utils.emitNullableInteger(outputEmitter, zipEntry.getCrc(), -1L);
+				Utils.emitNullableString(outputEmitter, zipEntry.getComment());
+			}
+			outputEmitter.addInt(chunk++);
+			outputEmitter.addBytes(buf, 0, len);
+			outputEmitter.emitRow();
+			len = 0;
+		}
+	}
+}
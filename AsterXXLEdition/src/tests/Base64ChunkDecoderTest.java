@@ -0,0 +1,100 @@
+package tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.SAXException;
+
+import utils.Base64ChunkDecoder;
+import utils.Chunkifier.ByteChunkListener;
+import utils.Utils;
+import utils.XMLReaderService;
+import utils.XMLReaderService.XMLBinaryCallback;
+
+public class Base64ChunkDecoderTest extends TestCase {
+	public final void testDecode() {
+		byte[] content = new byte[1000];
+		for(int i = 0; i < content.length; i++) content[i] = (byte) (i * 31);
+		String base64 = encode(content);
+		
+		// Text in pieces of any size, with line breaks, to chunks of any size
+		for(int piece = 1; piece < 10; piece++) {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final List<Integer> chunks = new ArrayList<Integer>();
+			Base64ChunkDecoder base64ChunkDecoder = new Base64ChunkDecoder(7*piece, new ByteChunkListener() {
+				public void newChunk(int chunk, byte[] buf, int off, int len) {
+					chunks.add(chunk);
+					out.write(buf, off, len);
+				}
+			});
+			char[] text = base64.replaceAll("(.{76})", "$1\r\n").toCharArray();
+			for(int i = 0; i < text.length; i += piece) base64ChunkDecoder.decode(text, i, Math.min(piece, text.length - i));
+			assertEquals("chunks", (content.length + 7*piece - 1) / (7*piece), base64ChunkDecoder.finish());
+			assertTrue("decoded " + piece, Arrays.equals(content, out.toByteArray()));
+			assertEquals("numbered from 0", Integer.valueOf(0), chunks.get(0));
+		}
+		
+		// Invalid characters
+		Base64ChunkDecoder base64ChunkDecoder = new Base64ChunkDecoder(10, new ByteChunkListener() {
+			public void newChunk(int chunk, byte[] buf, int off, int len) {}
+		});
+		try {
+			base64ChunkDecoder.decode("QUJD*");
+			fail("invalid character");
+		}
+		catch(IllegalArgumentException e) {
+			assertTrue("message", e.getMessage().startsWith("Invalid base64 character '*'"));
+		}
+	}
+	
+	public final void testBinaryNodes() throws SAXException, IOException {
+		String xml = "<invoice><no>1</no><pdf name=\"a.pdf\">" + encode("Hello PDF".getBytes("UTF-8")) + "</pdf></invoice>";
+		XMLReaderService xmlReaderService = new XMLReaderService(null, null, null, null);
+		xmlReaderService.setBinaryNodes(Arrays.asList(new String[] {"pdf"}), 4);
+		
+		final List<String> rows = new ArrayList<String>();
+		XMLBinaryCallback xmlBinaryCallback = new XMLBinaryCallback() {
+			public void newRow(String includeParent, int includeCount, String fullPath,
+					String uri, String localName, String qName, String type, String value, int id, int first_sub_id) {
+				rows.add(type + " " + localName + " " + value + " " + id + "/" + first_sub_id);
+			}
+			
+			public void newBinaryChunk(String includeParent, int includeCount, String fullPath,
+					String uri, String localName, String qName, int chunk, byte[] buf, int off, int len, int id) {
+				try {
+					rows.add("B " + localName + " " + chunk + " " + new String(buf, off, len, "UTF-8") + " " + id);
+				} catch (IOException e) {
+					fail(e.getMessage());
+				}
+			}
+		};
+		List<String> expected = Arrays.asList(new String[] {
+				"T no 1 0/0", "A name a.pdf 1/1", "B pdf 1 Hell 1", "B pdf 2 o PD 1", "B pdf 3 F 1", "T pdf null 2/1", "T invoice  3/0"});
+		
+		xmlReaderService.parse(new StringReader(xml), xmlBinaryCallback);
+		assertEquals("SAX", expected, rows);
+		
+		rows.clear();
+		xmlReaderService.parse(new ByteArrayInputStream(xml.getBytes("UTF-8")), Utils.getEncoding("UTF-8"), xmlBinaryCallback);
+		assertEquals("tokenizer", expected, rows);
+	}
+	
+	// Plain base64 encoding with padding
+	private static String encode(byte[] b) {
+		String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < b.length; i += 3) {
+			int n = Math.min(3, b.length - i);
+			int bits = (b[i] & 0xff) << 16 | ((n > 1)? (b[i+1] & 0xff) << 8:0) | ((n > 2)? b[i+2] & 0xff:0);
+			for(int j = 0; j < 4; j++) sb.append((j <= n)? alphabet.charAt((bits >>> (18 - 6*j)) & 0x3f):'=');
+		}
+		return sb.toString();
+	}
+}
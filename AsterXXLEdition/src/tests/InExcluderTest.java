@@ -1,7 +1,9 @@
 package tests;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EmptyStackException;
+import java.util.List;
 
 import junit.framework.TestCase;
 import utils.InExcluder;
@@ -46,6 +48,21 @@ public class InExcluderTest extends TestCase {
 				new InExcluder(Arrays.asList(new String[] {"/A/", "/B/B1/B1a/"}), Arrays.asList(new String[] {"/B/", "/.*/A2/"}), null, null),
 				false, true, true, true, false, true, false, false, false, true, false, false, false, false, false);
 
+		// walk thru with just A included, A2 excluded, B excluded and B1a included. Literal full paths
+		walkThruTree(
+				"walk thru with just A included, A2 excluded, B excluded and B1a included. Literal full paths",
+				new InExcluder(Arrays.asList(new String[] {"=/A/", "=/B/B1/B1a"}), Arrays.asList(new String[] {"=/B/", "=/A/A2/"}), null, null),
+				false, true, true, true, false, true, false, false, false, true, false, false, false, false, false);
+		
+		// walk thru with thousands of literal full paths, that do not match
+		List<String> paths = new ArrayList<String>();
+		for(int i = 0; i < 10000; i++) paths.add("=/B/B1/B1a" + i + "/");
+		paths.add("=/B/B1/B1a/");
+		walkThruTree(
+				"walk thru with thousands of literal full paths",
+				new InExcluder(paths, null, null, null),
+				false, false, false, false, false, false, false, false, false, true, false, false, false, false, false);
+
 		// walk thru with all included. Skipped at A2
 		walkThruTreeSkipTest(
 				"walk thru with all included. Skipped at A2",
@@ -0,0 +1,98 @@
+package tests;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import utils.JSONReaderService;
+import utils.XMLReaderService.XMLReaderCallback;
+
+public class JSONReaderServiceTest extends TestCase {
+	private static final String json = "" +
+			"{\"order\": {\"no\": -1.5e3, \"paid\": true, \"note\": null," +
+					" \"items\": [{\"sku\": \"A\\\"\\u00e4\\n\"}, {\"sku\": \"B\"}]," +
+					" \"matrix\": [[1, 2], []]}}";
+	
+	public final void testParse() throws IOException {
+		JSONReaderService jsonReaderService = new JSONReaderService(null, null, null, null);
+		check("check well formed JSON", jsonReaderService, json,
+				"null, 0, /root/order/no/, no, N, -1.5e3, 0, 0",
+				"null, 0, /root/order/paid/, paid, B, true, 1, 1",
+				"null, 0, /root/order/note/, note, Z, null, 2, 2",
+				"null, 0, /root/order/items/sku/, sku, S, A\"\u00e4\n, 3, 3",
+				"null, 0, /root/order/items/, items, O, , 4, 3",
+				"null, 0, /root/order/items/sku/, sku, S, B, 5, 5",
+				"null, 0, /root/order/items/, items, O, , 6, 5",
+				"null, 0, /root/order/matrix/item/, item, N, 1, 7, 7",
+				"null, 0, /root/order/matrix/item/, item, N, 2, 8, 8",
+				"null, 0, /root/order/matrix/, matrix, L, , 9, 7",
+				"null, 0, /root/order/matrix/, matrix, L, , 10, 10",
+				"null, 0, /root/order/, order, O, , 11, 0",
+				"null, 0, /root/, root, O, , 12, 0");
+		
+		// Include each item and skip after the second
+		jsonReaderService = new JSONReaderService(Arrays.asList(new String[] {"items"}), null, Arrays.asList(new String[] {"/.*/items/$"}), Arrays.asList(new String[] {"sku"}));
+		check("check include and skip", jsonReaderService, json,
+				"items, 1, /root/order/items/sku/, sku, S, A\"\u00e4\n, 3, 3");
+		
+		// Root array
+		jsonReaderService = new JSONReaderService(null, null, null, null);
+		check("check root array", jsonReaderService, " [\"x\", {}] ",
+				"null, 0, /root/item/, item, S, x, 0, 0",
+				"null, 0, /root/item/, item, O, , 1, 1",
+				"null, 0, /root/, root, L, , 2, 0");
+	}
+	
+	public final void testSurrogates() throws IOException {
+		// Pair split between two reads of 64K chars
+		StringBuilder padding = new StringBuilder();
+		while(padding.length() < 64*1024 - 2) padding.append(' ');
+		JSONReaderService jsonReaderService = new JSONReaderService(null, null, null, null);
+		check("pair between buffers", jsonReaderService, padding + "\"\ud83d\ude00 \ud83d\"",
+				"null, 0, /root/, root, S, \ud83d\ude00 ?, 0, 0");
+		
+		// Escaped pair and escaped single surrogates
+		check("escaped pair", jsonReaderService, "\"\\ud83d\\ude00 \\ud83d \\ude00 \\u0001\"",
+				"null, 0, /root/, root, S, \ud83d\ude00 ? ? ?, 0, 0");
+	}
+	
+	public final void testEmptyArray() throws IOException {
+		JSONReaderService jsonReaderService = new JSONReaderService(null, null, null, null);
+		check("member with empty array has no node", jsonReaderService, "{\"a\": [], \"b\": 1}",
+				"null, 0, /root/b/, b, N, 1, 0, 0",
+				"null, 0, /root/, root, O, , 1, 0");
+	}
+	
+	public final void testErrors() {
+		JSONReaderService jsonReaderService = new JSONReaderService(null, null, null, null);
+		String[] wrong = {"", "{", "{\"a\" 1}", "{\"a\": 1,}", "[1 2]", "{\"a\": tru}", "\"abc", "{} {}", "{\"a\": \"\\x\"}", "{a: 1}",
+				"1.2.3", "-", "1e", "01", "1.", ".5", "1e+", "--1", "1-"};
+		for(String document : wrong) {
+			boolean ok = false;
+			try {
+				check("error", jsonReaderService, document);
+			}
+			catch(JSONReaderService.JSONException e) {
+				System.out.println(e.getMessage());
+				ok = true; // Thats OK behavior
+			}
+			catch(IOException e) {}
+			assertTrue("error expected for " + document, ok);
+		}
+	}
+	
+	private void check(String msg, JSONReaderService jsonReaderService, String document, String... expected) throws IOException {
+		final List<String> rows = new ArrayList<String>();
+		jsonReaderService.parse(new StringReader(document), new XMLReaderCallback() {
+			public void newRow(String includeParent, int includeCount, String fullPath,
+					String uri, String localName, String qName, String type, String value, int id, int first_sub_id) {
+				rows.add(includeParent + ", " + includeCount + ", " + fullPath + ", " + localName + ", " + type + ", " + value + ", " + id + ", " + first_sub_id);
+			}
+		});
+		assertEquals(msg, Arrays.asList(expected), rows);
+	}
+}
@@ -0,0 +1,52 @@
+package tests;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.SAXException;
+
+import utils.XMLReaderService;
+import utils.XMLReaderService.XMLReaderCallback;
+
+public class OfflineEntityResolverTest extends TestCase {
+	private static final String xml = "<?xml version=\"1.0\"?>" +
+			"<!DOCTYPE root SYSTEM \"http://unreachable.invalid/dtd/feed.dtd\">" +
+			"<root><A>%s</A></root>";
+	
+	private String value = null;
+	
+	public final void testResolveEntity() throws SAXException, IOException {
+		XMLReaderService xmlReaderService = new XMLReaderService(null, null, null, null);
+		XMLReaderCallback xmlReaderCallback = new XMLReaderCallback() {
+			public void newRow(String includeParent, int includeCount, String fullPath,
+					String uri, String localName, String qName, String type, String value, int id, int first_sub_id) {
+				if(localName.equals("A")) OfflineEntityResolverTest.this.value = value;
+			}
+		};
+		
+		// Without catalog the DTD is not loaded
+		long start = System.currentTimeMillis();
+		xmlReaderService.parse(new StringReader(String.format(xml, "plain")), xmlReaderCallback);
+		assertEquals("parsed without DTD", "plain", value);
+		assertTrue("no network timeout", System.currentTimeMillis() - start < 1000L);
+		
+		// With catalog the DTD is read from the directory
+		File catalog = new File(System.getProperty("java.io.tmpdir"), "OfflineEntityResolverTest");
+		catalog.mkdirs();
+		FileWriter fileWriter = new FileWriter(new File(catalog, "feed.dtd"));
+		fileWriter.write("<!ENTITY greeting \"hello\">");
+		fileWriter.close();
+		xmlReaderService.setDTDCatalog(catalog.getPath());
+		xmlReaderService.parse(new StringReader(String.format(xml, "&greeting;")), xmlReaderCallback);
+		assertEquals("entity from catalog", "hello", value);
+		assertEquals("counters", "resolved from catalog: 1", xmlReaderService.getEntityResolver().getCounters()[0]);
+		
+		// Missing files are empty
+		xmlReaderService.parse(new StringReader(String.format(xml.replace("feed.dtd", "missing.dtd"), "plain")), xmlReaderCallback);
+		assertEquals("counters", "resolved empty: 1", xmlReaderService.getEntityResolver().getCounters()[1]);
+	}
+}
@@ -0,0 +1,24 @@
+package tests;
+
+import junit.framework.TestCase;
+
+import utils.PathDictionary;
+
+public class PathDictionaryTest extends TestCase {
+	public final void testGetPathId() {
+		PathDictionary pathDictionary = new PathDictionary();
+		long a = pathDictionary.getPathId("/root/A/", "", "A", "A");
+		long b = pathDictionary.getPathId("/root/B/", "", "B", "B");
+		long ns = pathDictionary.getPathId("/root/A/", "urn:x", "A", "x:A");
+		
+		assertEquals("same path same id", a, pathDictionary.getPathId("/root/A/", "", "A", "A"));
+		assertEquals("same id on other instances", a, new PathDictionary().getPathId("/root/A/", "", "A", "A"));
+		assertTrue("different paths", a != b && a != ns && b != ns);
+		assertTrue("strings are not just concatenated", pathDictionary.getPathId("/a", "b", "", "") != pathDictionary.getPathId("/", "ab", "", ""));
+		assertEquals("distinct paths kept", 5, pathDictionary.size());
+		assertEquals("path of id", "x:A", pathDictionary.getPath(ns)[3]);
+		
+		pathDictionary.clear();
+		assertNull("cleared", pathDictionary.getPath(a));
+	}
+}
@@ -0,0 +1,46 @@
+package tests;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.SAXException;
+
+import utils.PathProfile;
+import utils.XMLReaderService;
+import utils.XMLReaderService.XMLReaderCallback;
+
+public class PathProfileTest extends TestCase {
+	public final void testProfile() throws SAXException, IOException {
+		final PathProfile pathProfile = new PathProfile(2);
+		XMLReaderService xmlReaderService = new XMLReaderService(null, null, null, null);
+		XMLReaderCallback xmlReaderCallback = new XMLReaderCallback() {
+			public void newRow(String includeParent, int includeCount, String fullPath,
+					String uri, String localName, String qName, String type, String value, int id, int first_sub_id) {
+				pathProfile.add(fullPath, uri, localName, qName, type, value);
+			}
+		};
+		xmlReaderService.parse(new StringReader("<root><A a=\"1\">x</A><A a=\"22\">yyy</A><B><A a=\"1\"/></B></root>"), xmlReaderCallback);
+		xmlReaderService.parse(new StringReader("<root><A>x</A><A>zz</A></root>"), xmlReaderCallback);
+		
+		List<String> actual = new ArrayList<String>();
+		for(PathProfile.Node node : pathProfile.getNodes())
+			actual.add(node.getFullPath() + ", " + node.getLocalName() + ", " + node.getType() + ", " + node.getDepth() + ", " + node.getCount() + ", " +
+					node.getValueCount() + ", " + node.getMinLength() + ", " + node.getMaxLength() + ", " + node.getSamples());
+		assertEquals("profile parent before child", Arrays.asList(new String[] {
+				"/root/, root, T, 1, 2, 0, -1, -1, []",
+				"/root/A/, A, T, 2, 4, 4, 1, 3, [x, yyy]",
+				"/root/A/a/, a, A, 3, 2, 2, 1, 2, [1, 22]",
+				"/root/B/, B, T, 2, 1, 0, -1, -1, []",
+				"/root/B/A/, A, T, 3, 1, 0, -1, -1, []",
+				"/root/B/A/a/, a, A, 4, 1, 1, 1, 1, [1]"}), actual);
+		assertEquals("distinct paths", 6, pathProfile.size());
+		
+		pathProfile.clear();
+		assertTrue("cleared", pathProfile.getNodes().isEmpty());
+	}
+}
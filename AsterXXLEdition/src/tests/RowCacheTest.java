@@ -0,0 +1,119 @@
+package tests;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.SAXException;
+
+import utils.RowCache;
+import utils.XMLEvent;
+import utils.XMLReaderService;
+import utils.XMLReaderService.XMLReaderCallback;
+import utils.XMLReaderService.XMLRowAdapter;
+import utils.XMLRowBuffer;
+
+public class RowCacheTest extends TestCase {
+	protected void setUp() throws Exception {RowCache.clear();}
+	
+	public final void testHitAndMiss() {
+		RowCache rowCache = new RowCache(1024*1024, "include[a]");
+		String key = rowCache.getKey(newZipEntry(4711L, 100L));
+		assertNull("not cached yet", rowCache.get(key));
+		
+		XMLRowBuffer rows = newRows(3, 10);
+		rowCache.put(key, rows);
+		assertSame("cached", rows, rowCache.get(rowCache.getKey(newZipEntry(4711L, 100L))));
+		assertNull("other size", rowCache.get(rowCache.getKey(newZipEntry(4711L, 101L))));
+		assertEquals("hits", "hits: 1", rowCache.getCounters()[0]);
+		assertEquals("misses", "misses: 2", rowCache.getCounters()[1]);
+		assertEquals("entries", "cached entries: 1", rowCache.getCounters()[4]);
+	}
+	
+	public final void testConfiguration() {
+		ZipEntry zipEntry = newZipEntry(4711L, 100L);
+		assertFalse("configuration is part of the key",
+				new RowCache(1024, "include[a]").getKey(zipEntry).equals(new RowCache(1024, "include[b]").getKey(zipEntry)));
+		assertEquals("same configuration, same key", new RowCache(1024, "include[a]").getKey(zipEntry), new RowCache(2048, "include[a]").getKey(zipEntry));
+	}
+	
+	public final void testNotCacheable() {
+		RowCache rowCache = new RowCache(1024, "");
+		assertNull("no crc", rowCache.getKey(new ZipEntry("a.xml")));
+		assertEquals("counted", "not cacheable: 1", rowCache.getCounters()[2]);
+	}
+	
+	public final void testEviction() {
+		XMLRowBuffer rows = newRows(10, 10);
+		RowCache rowCache = new RowCache(3*rows.getBytes(), "");
+		String[] keys = new String[4];
+		for(int i = 0; i < keys.length; i++) keys[i] = rowCache.getKey(newZipEntry(i, 100L));
+		
+		rowCache.put(keys[0], newRows(10, 10));
+		rowCache.put(keys[1], newRows(10, 10));
+		rowCache.put(keys[2], newRows(10, 10));
+		assertNotNull("touch oldest", rowCache.get(keys[0]));
+		rowCache.put(keys[3], newRows(10, 10));
+		assertNotNull("recently used kept", rowCache.get(keys[0]));
+		assertNull("least recently used removed", rowCache.get(keys[1]));
+		assertNotNull("kept", rowCache.get(keys[2]));
+		assertNotNull("added", rowCache.get(keys[3]));
+		assertEquals("bytes bounded", "cached bytes: " + 3*rows.getBytes(), rowCache.getCounters()[5]);
+		
+		rowCache.put(keys[1], newRows(40, 10));
+		assertNull("larger then cache", rowCache.get(keys[1]));
+		assertEquals("too large", "too large: 1", rowCache.getCounters()[3]);
+	}
+	
+	public final void testRowState() throws SAXException, IOException {
+		String xml = "<R a=\"1\"><P><C>c</C></P><P x=\"3\"/></R>";
+		XMLReaderService xmlReaderService = new XMLReaderService(null, null, null, null);
+		xmlReaderService.setFingerprint(true);
+		List<String> expected = new ArrayList<String>();
+		xmlReaderService.parse(new StringReader(xml), collect(expected));
+		
+		XMLRowBuffer rows = new XMLRowBuffer();
+		xmlReaderService.parse(new StringReader(xml), rows);
+		List<String> actual = new ArrayList<String>();
+		rows.replay(collect(actual));
+		assertEquals("parent, depth, ordinal and fingerprint kept", expected, actual);
+	}
+	
+	public final void testBytes() {
+		XMLRowBuffer rows = newRows(2, 10);
+		long bytes = rows.getBytes();
+		assertTrue("estimated", bytes > 2*2*10);
+		rows.newRow("a", 1, "/a/b", "", "b", "b", "T", null, 3, 3);
+		assertTrue("grows with rows", rows.getBytes() > bytes);
+		rows.clear();
+		assertEquals("cleared", 0L, rows.getBytes());
+	}
+	
+	private ZipEntry newZipEntry(long crc, long size) {
+		ZipEntry zipEntry = new ZipEntry("entry.xml");
+		zipEntry.setCrc(crc);
+		zipEntry.setSize(size);
+		return zipEntry;
+	}
+	
+	private XMLReaderCallback collect(final List<String> rows) {
+		return new XMLRowAdapter() {
+			public void newRow(XMLEvent row) {
+				rows.add(row.getFullPathString() + ", " + row.getValueString() + ", " + row.getParentId() + ", " + row.getDepth() + ", " +
+						row.getOrdinal() + ", " + row.getFingerprint());
+			}
+		};
+	}
+	
+	private XMLRowBuffer newRows(int n, int valueLength) {
+		StringBuilder value = new StringBuilder();
+		for(int i = 0; i < valueLength; i++) value.append('x');
+		XMLRowBuffer rows = new XMLRowBuffer();
+		for(int i = 0; i < n; i++) rows.newRow("a", 1, "/a/b", "", "b", "b", "T", value.toString(), i + 1, i + 1);
+		return rows;
+	}
+}
@@ -0,0 +1,45 @@
+package tests;
+
+import java.util.zip.ZipEntry;
+
+import junit.framework.TestCase;
+
+import utils.Sampler;
+
+public class SamplerTest extends TestCase {
+	public final void testFraction() {
+		Sampler sampler = new Sampler(0.1, 0L);
+		int sampled = 0;
+		for(int i = 0; i < 100000; i++) if(sampler.isSampled("document " + i)) sampled++;
+		assertTrue("about 10% sampled: " + sampled, sampled > 9000 && sampled < 11000);
+		
+		sampler = new Sampler(1.0, 0L);
+		for(int i = 0; i < 100; i++) assertTrue("all sampled", sampler.isSampled("document " + i));
+	}
+	
+	public final void testStable() {
+		// Same decision in any order and for any instance
+		Sampler sampler = new Sampler(0.5, 42L);
+		boolean[] decisions = new boolean[1000];
+		for(int i = 0; i < decisions.length; i++) decisions[i] = sampler.isSampled("document " + i);
+		Sampler other = new Sampler(0.5, 42L);
+		for(int i = decisions.length - 1; i >= 0; i--) assertEquals("document " + i, decisions[i], other.isSampled("document " + i));
+		
+		// Another seed draws another sample
+		other = new Sampler(0.5, 43L);
+		int same = 0;
+		for(int i = 0; i < decisions.length; i++) if(decisions[i] == other.isSampled("document " + i)) same++;
+		assertTrue("independent seeds: " + same, same > 400 && same < 600);
+	}
+	
+	public final void testZipEntry() {
+		Sampler sampler = new Sampler(0.5, 0L);
+		ZipEntry a = new ZipEntry("a.xml");
+		a.setCrc(12345L);
+		a.setSize(100L);
+		ZipEntry b = new ZipEntry("a.xml");
+		b.setCrc(12345L);
+		b.setSize(100L);
+		assertEquals("same entry, same decision", sampler.isSampled(a), sampler.isSampled(b));
+	}
+}
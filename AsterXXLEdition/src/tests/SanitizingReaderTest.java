@@ -0,0 +1,98 @@
+package tests;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import utils.SanitizingReader;
+import utils.Utils;
+
+public class SanitizingReaderTest extends TestCase {
+	private static final String text = "clean\t\u00e4\u20ac\u0001\uffff\ud83d\ude00 \ud83d lone \ude00\r\n";
+	private static final String sanitized = "clean\t\u00e4\u20ac??\ud83d\ude00 ? lone ?\r\n";
+	
+	public final void testReplaceInvalid() {
+		char[] b = ("xx" + text + "xx").toCharArray();
+		assertEquals("replaced", 4, Utils.replaceInvalid(b, 2, text.length()));
+		assertEquals("sanitized in place", "xx" + sanitized + "xx", new String(b));
+		
+		b = "\ud83d".toCharArray();
+		assertEquals("high surrogate at the end", 1, Utils.replaceInvalid(b, 0, 1));
+		
+		// Same as char by char for all chars except surrogates
+		b = new char[0x10000];
+		for(int c = 0; c < b.length; c++) b[c] = (char) c;
+		Utils.replaceInvalid(b, 0, b.length);
+		for(int c = 0; c < b.length; c++)
+			if(!Character.isSurrogate((char) c)) assertEquals("char " + c, Utils.replaceInvalid((char) c), b[c]);
+	}
+	
+	public final void testRead() throws IOException {
+		assertEquals("one buffer", sanitized, readAll(new SanitizingReader(new StringReader(text)), 1024));
+		
+		// Pairs split between reads of the underlying reader and of the caller
+		for(int chunk = 1; chunk < 5; chunk++) {
+			for(int len = 1; len < 5; len++)
+				assertEquals("chunks of " + chunk + ", reads of " + len, sanitized, readAll(new SanitizingReader(new ChunkReader(text, chunk)), len));
+		}
+		assertEquals("empty", "", readAll(new SanitizingReader(new StringReader("")), 10));
+	}
+	
+	// Compare the time of the bulk check with the former loop of NonClosingReader, that checked char by char
+	public final void testTiming() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		while(sb.length() < 8*1024*1024) sb.append("<record id=\"42\"><name>M\u00fcller \u20ac</name><value>\u0001</value></record>\n");
+		String xml = sb.toString();
+		char[] b = new char[64*1024];
+		
+		long loop = Long.MAX_VALUE, bulk = Long.MAX_VALUE;
+		for(int round = 0; round < 5; round++) {
+			long start = System.nanoTime();
+			Reader reader = new StringReader(xml);
+			int replaced = 0;
+			for(int n = reader.read(b, 0, b.length); n != -1; n = reader.read(b, 0, b.length))
+				for(int i = 0; i < n; i++) if((b[i] = Utils.replaceInvalid(b[i])) == '?') replaced++;
+			loop = Math.min(loop, System.nanoTime() - start);
+			
+			start = System.nanoTime();
+			reader = new SanitizingReader(new StringReader(xml));
+			int replacedBulk = 0;
+			for(int n = reader.read(b, 0, b.length); n != -1; n = reader.read(b, 0, b.length))
+				for(int i = 0; i < n; i++) if(b[i] == '?') replacedBulk++;
+			bulk = Math.min(bulk, System.nanoTime() - start);
+			assertEquals("same chars replaced", replaced, replacedBulk);
+		}
+		System.out.println("SanitizingReaderTest: " + xml.length() + " chars, char by char " + loop/1000000 + " ms, bulk " + bulk/1000000 + " ms");
+	}
+	
+	private String readAll(Reader reader, int len) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		char[] b = new char[len];
+		for(int n = reader.read(b, 0, len); n != -1; n = reader.read(b, 0, len)) sb.append(b, 0, n);
+		return sb.toString();
+	}
+	
+	// Returns at most chunk chars per read
+	private static class ChunkReader extends Reader {
+		private final String s;
+		private final int chunk;
+		private int pos = 0;
+		
+		public ChunkReader(String s, int chunk) {
+			this.s = s;
+			this.chunk = chunk;
+		}
+		
+		public int read(char[] b, int off, int len) {
+			if(pos == s.length()) return -1;
+			int n = Math.min(Math.min(len, chunk), s.length() - pos);
+			s.getChars(pos, pos + n, b, off);
+			pos += n;
+			return n;
+		}
+		
+		public void close() {}
+	}
+}
@@ -0,0 +1,62 @@
+package tests;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import utils.BloomFilter;
+import utils.StringHashSet;
+
+public class StringHashSetTest extends TestCase {
+	public final void testContains() {
+		StringHashSet stringHashSet = new StringHashSet(Arrays.asList(new String[] {"4711", "0815", "4711", null, ""}));
+		assertEquals("distinct values", 3, stringHashSet.size());
+		assertTrue("contained", stringHashSet.contains("4711"));
+		assertTrue("contained", stringHashSet.contains(new String("0815")));
+		assertTrue("empty string", stringHashSet.contains(""));
+		assertFalse("not contained", stringHashSet.contains("4712"));
+		assertFalse("null", stringHashSet.contains(null));
+		assertEquals("no bloom filter for small sets", "rejected by bloom filter: 0", stringHashSet.getCounters()[2]);
+	}
+	
+	public final void testLargeSet() {
+		List<String> values = new ArrayList<String>();
+		for(int i = 0; i < 2*StringHashSet.BLOOM_THRESHOLD; i += 2) values.add("C" + i);
+		StringHashSet stringHashSet = new StringHashSet(values);
+		
+		int found = 0;
+		for(int i = 0; i < 2*StringHashSet.BLOOM_THRESHOLD; i++) if(stringHashSet.contains("C" + i)) found++;
+		assertEquals("all values found, no other", StringHashSet.BLOOM_THRESHOLD, found);
+		long rejected = Long.parseLong(stringHashSet.getCounters()[2].substring("rejected by bloom filter: ".length()));
+		assertTrue("most misses rejected by bloom filter", rejected > 0.95*StringHashSet.BLOOM_THRESHOLD);
+	}
+	
+	public final void testBloomFilter() {
+		BloomFilter bloomFilter = new BloomFilter(1000, 10);
+		for(long i = 0; i < 1000; i++) bloomFilter.add(i * 0x9e3779b97f4a7c15L);
+		int falsePositives = 0;
+		for(long i = 0; i < 100000; i++) {
+			if(i < 1000) assertTrue("no false negatives", bloomFilter.mightContain(i * 0x9e3779b97f4a7c15L));
+			else if(bloomFilter.mightContain(i * 0x9e3779b97f4a7c15L)) falsePositives++;
+		}
+		assertTrue("about 1% false positives", falsePositives < 0.03*99000);
+	}
+	
+	public final void testLoad() throws IOException {
+		File file = File.createTempFile("StringHashSetTest", ".txt");
+		file.deleteOnExit();
+		FileWriter fileWriter = new FileWriter(file);
+		fileWriter.write("A\nB\n");
+		fileWriter.close();
+		
+		StringHashSet stringHashSet = StringHashSet.load(Arrays.asList(new String[] {"C"}), file.getPath());
+		assertEquals("values and lines", 3, stringHashSet.size());
+		assertTrue("line", stringHashSet.contains("B"));
+		assertTrue("value", stringHashSet.contains("C"));
+	}
+}
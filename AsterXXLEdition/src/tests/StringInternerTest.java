@@ -0,0 +1,43 @@
+package tests;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.SAXException;
+
+import utils.StringInterner;
+import utils.XMLReaderService;
+import utils.XMLReaderService.XMLReaderCallback;
+
+public class StringInternerTest extends TestCase {
+	public final void testIntern() {
+		StringInterner stringInterner = new StringInterner(10);
+		String a = stringInterner.intern(new String("name"));
+		assertSame("same instance for same content", a, stringInterner.intern(new String("name")));
+		assertNull("null", stringInterner.intern(null));
+		assertEquals("hits", 1L, stringInterner.getHits());
+		assertEquals("misses", 1L, stringInterner.getMisses());
+		
+		// Table is bounded, but still returns equal strings
+		for(int i = 0; i < 10000; i++) assertEquals("equal content", "s" + i, stringInterner.intern("s" + i));
+		assertEquals("counters", "hit rate [%]: 0", stringInterner.getCounters()[2]);
+	}
+	
+	public final void testNames() throws SAXException, IOException {
+		final List<String> localNames = new ArrayList<String>();
+		XMLReaderService xmlReaderService = new XMLReaderService(null, null, null, null);
+		xmlReaderService.parse(new StringReader("<root><A a=\"1\"/><A a=\"2\"/></root>"), new XMLReaderCallback() {
+			public void newRow(String includeParent, int includeCount, String fullPath,
+					String uri, String localName, String qName, String type, String value, int id, int first_sub_id) {
+				localNames.add(localName);
+			}
+		});
+		assertSame("attribute names are canonical", localNames.get(0), localNames.get(2));
+		assertSame("element names are canonical", localNames.get(1), localNames.get(3));
+		assertTrue("hits counted", xmlReaderService.getNameInterner().getHits() > 0L);
+	}
+}
@@ -0,0 +1,80 @@
+package tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.SAXException;
+
+import utils.Utils;
+import utils.XMLReaderService;
+import utils.XMLReaderService.XMLReaderCallback;
+
+public class SubtreeFingerprintTest extends TestCase {
+	private static final String xml = "<root><R k=\"1\" v=\"a\"><A>x</A><B>y</B></R><R k=\"2\" v=\"b\"><A>x</A><B>z</B></R></root>";
+	
+	public final void testFingerprint() throws SAXException, IOException {
+		List<String> records = Arrays.asList(new String[] {"R"});
+		List<Long> expected = fingerprints(records, null, xml);
+		assertEquals("one per include parent", 2, expected.size());
+		assertTrue("different records", expected.get(0).longValue() != expected.get(1).longValue());
+		
+		// Canonical: order of attributes, prefixes and indentation do not matter
+		assertEquals("same content", expected, fingerprints(records, null,
+				"<root xmlns:p=\"urn:p\">\n\t<R v=\"a\" k=\"1\">\n\t\t<A>x</A>\n\t\t<B>y</B>\n\t</R>\n\t<R v=\"b\" k=\"2\"><A>x</A><B>z</B></R>\n</root>"));
+		
+		// Changes
+		assertEquals("changed value", expected.get(0), fingerprints(records, null, xml.replace("<B>z</B>", "<B>zz</B>")).get(0));
+		assertFalse("changed value", expected.get(1).equals(fingerprints(records, null, xml.replace("<B>z</B>", "<B>zz</B>")).get(1)));
+		assertFalse("changed attribute", expected.get(0).equals(fingerprints(records, null, xml.replace("v=\"a\"", "v=\"c\"")).get(0)));
+		assertFalse("changed order of tags", expected.get(0).equals(fingerprints(records, null, xml.replace("<A>x</A><B>y</B>", "<B>y</B><A>x</A>")).get(0)));
+		assertFalse("value moved to other tag", expected.get(0).equals(fingerprints(records, null, xml.replace("<A>x</A><B>y</B>", "<A>xy</A><B></B>")).get(0)));
+		
+		// Excluded nodes are not part of the fingerprint
+		List<String> excluded = Arrays.asList(new String[] {"B"});
+		assertEquals("excluded tag changed", fingerprints(records, excluded, xml),
+				fingerprints(records, excluded, xml.replace("<B>y</B>", "<B>w</B>").replace("<B>z</B>", "<B>w</B>")));
+		
+		// Root is the include parent without include list
+		assertEquals("root", 1, fingerprints(null, null, xml).size());
+	}
+	
+	public final void testParsers() throws SAXException, IOException {
+		List<String> records = Arrays.asList(new String[] {"R"});
+		List<Long> expected = fingerprints(records, null, xml);
+		
+		final List<Long> actual = new ArrayList<Long>();
+		final XMLReaderService xmlReaderService = new XMLReaderService(records, null, null, null);
+		xmlReaderService.setFingerprint(true);
+		xmlReaderService.parse(new ByteArrayInputStream(xml.getBytes("UTF-8")), Utils.getEncoding("UTF-8"), collect(xmlReaderService, actual));
+		assertEquals("tokenizer", expected, actual);
+		
+		actual.clear();
+		xmlReaderService.setMaxValueChars(1);
+		xmlReaderService.parse(new StringReader(xml), collect(xmlReaderService, actual));
+		assertEquals("value chunks", expected, actual);
+	}
+	
+	private List<Long> fingerprints(List<String> included, List<String> excluded, String xml) throws SAXException, IOException {
+		List<Long> fingerprints = new ArrayList<Long>();
+		XMLReaderService xmlReaderService = new XMLReaderService(included, excluded, null, null);
+		xmlReaderService.setFingerprint(true);
+		xmlReaderService.parse(new StringReader(xml), collect(xmlReaderService, fingerprints));
+		return fingerprints;
+	}
+	
+	// Collect the fingerprints of the include parents
+	private XMLReaderCallback collect(final XMLReaderService xmlReaderService, final List<Long> fingerprints) {
+		return new XMLReaderCallback() {
+			public void newRow(String includeParent, int includeCount, String fullPath,
+					String uri, String localName, String qName, String type, String value, int id, int first_sub_id) {
+				if("T".equals(type) && xmlReaderService.isIncludeParent()) fingerprints.add(xmlReaderService.getFingerprint());
+			}
+		};
+	}
+}
@@ -0,0 +1,88 @@
+package tests;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import utils.TextSplitterService;
+import utils.TextSplitterService.SplitterCallback;
+import utils.TextSplitterService.SplitterSliceCallback;
+import utils.TextSplitterService.SplitterType;
+
+public class TextSplitterServiceTest extends TestCase {
+	public final void testSplit() throws IOException {
+		assertEquals("groups", Arrays.asList(new String[] {
+				"LETTER_DIGIT Hallo", "WHITESPACE  ", "LETTER_DIGIT Welt", "OTHER ,", "WHITESPACE  \n", "LETTER_DIGIT W\u00fcrde42", "OTHER !?"}),
+				split(new StringReader("Hallo Welt, \nW\u00fcrde42!?")));
+		assertEquals("empty text", new ArrayList<String>(), split(new StringReader("")));
+	}
+	
+	public final void testSurrogates() throws IOException {
+		// U+1D400 MATHEMATICAL BOLD CAPITAL A is a letter, U+1F600 GRINNING FACE is not
+		assertEquals("supplementary characters by code point", Arrays.asList(new String[] {
+				"LETTER_DIGIT a\ud835\udc00b", "OTHER \ud83d\ude00", "WHITESPACE  "}),
+				split(new StringReader("a\ud835\udc00b\ud83d\ude00 ")));
+		assertEquals("unpaired surrogates", Arrays.asList(new String[] {
+				"LETTER_DIGIT a", "OTHER \udc00\ud835", "LETTER_DIGIT b", "OTHER \ud835"}),
+				split(new StringReader("a\udc00\ud835b\ud835")));
+		assertEquals("pair split between reads", Arrays.asList(new String[] {"LETTER_DIGIT a\ud835\udc00b"}),
+				split(new OneCharReader("a\ud835\udc00b")));
+	}
+	
+	public final void testBlocks() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for(int i = 0; i < 100000; i++) text.append((char) ('a' + i % 26));
+		text.append(". ");
+		List<String> rows = split(new StringReader(text.toString()));
+		assertEquals("groups longer then the buffer", 3, rows.size());
+		assertEquals("complete group", "LETTER_DIGIT " + text.substring(0, 100000), rows.get(0));
+		assertEquals("one char at a time", rows, split(new OneCharReader(text.toString())));
+	}
+	
+	public final void testSlices() throws IOException {
+		final List<String> rows = new ArrayList<String>();
+		new TextSplitterService().split(new StringReader("ab cd"), new SplitterSliceCallback() {
+			public void newRow(SplitterType splitterType, String value) {
+				fail("newRow called for slice callback");
+			}
+			
+			public void newSlice(SplitterType splitterType, char[] buf, int off, int len) {
+				rows.add(splitterType + " " + new String(buf, off, len));
+			}
+		});
+		assertEquals("slices", Arrays.asList(new String[] {"LETTER_DIGIT ab", "WHITESPACE  ", "LETTER_DIGIT cd"}), rows);
+	}
+	
+	public final void testStop() throws IOException {
+		final TextSplitterService textSplitterService = new TextSplitterService();
+		final List<String> rows = new ArrayList<String>();
+		textSplitterService.split(new StringReader("a b c"), new SplitterCallback() {
+			public void newRow(SplitterType splitterType, String value) {
+				rows.add(value);
+				if(rows.size() == 2) textSplitterService.stop();
+			}
+		});
+		assertEquals("stopped", Arrays.asList(new String[] {"a", " "}), rows);
+	}
+	
+	private List<String> split(Reader reader) throws IOException {
+		final List<String> rows = new ArrayList<String>();
+		new TextSplitterService().split(reader, new SplitterCallback() {
+			public void newRow(SplitterType splitterType, String value) {
+				rows.add(splitterType + " " + value);
+			}
+		});
+		return rows;
+	}
+	
+	// Return one character per read to split groups and surrogate pairs between reads
+	private static class OneCharReader extends StringReader {
+		public OneCharReader(String s) {super(s);}
+		public int read(char[] cbuf, int off, int len) throws IOException {return super.read(cbuf, off, Math.min(len, 1));}
+	}
+}
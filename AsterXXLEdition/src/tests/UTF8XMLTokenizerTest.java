@@ -0,0 +1,97 @@
+package tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.SAXException;
+
+import utils.Utils;
+import utils.XMLReaderService;
+import utils.XMLReaderService.XMLReaderCallback;
+
+public class UTF8XMLTokenizerTest extends TestCase {
+	private static final String[] wellFormedXML = {
+		"<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+			"<root><A>HAllo</A><B a1=\"x\" a2='y'/><B a1=\"1\" a2=\"2\"><B1>Welt</B1></B></root>",
+		"\uFEFF<?xml version=\"1.0\"?>\r\n<!-- comment --><?pi data?>" +
+			"<root>\r\n\t<A>a &lt;&amp;&gt; &#65;&#x42; ä€\r\nline</A>" +
+			"<B  a1 = \"x\ty\r\nz\" >text<![CDATA[<cdata> & ]]]]>more</B></root>\n<!-- trailing -->",
+		"<p:root xmlns:p=\"urn:p\" xmlns=\"urn:default\"><A p:a=\"1\" b=\"2\"><p:B/></A><C xmlns=\"\">x</C></p:root>",
+		"<root><A>\u0001invalid\u0002</A><B a=\"&quot;&apos;\"/></root>",
+		"<root><A>\ufffe\uffff\uefbf\ufeff&#0000000000065;&#x00000042;&#x1F600;</A><B a=\"\uffff\ufffd\"><![CDATA[\ufffe]]></B></root>"
+	};
+
+	public final void testSameAsSAX() throws SAXException, IOException {
+		XMLReaderService xmlReaderService = new XMLReaderService(null, null, null, null);
+		for(String xml : wellFormedXML) {
+			assertEquals(xml, parseSAX(xmlReaderService, xml), parseFast(xmlReaderService, xml));
+		}
+		
+		// U+FFFF split between two reads of 64K bytes
+		StringBuilder padding = new StringBuilder();
+		while(padding.length() < 64*1024 - "<root><A>".length() - 1) padding.append('x');
+		String xml = "<root><A>" + padding + "\uffff</A></root>";
+		assertEquals("split non-character", parseSAX(xmlReaderService, xml), parseFast(xmlReaderService, xml));
+
+		// With in- and exclusion
+		xmlReaderService = new XMLReaderService(Arrays.asList(new String[] {"a2", "B"}), Arrays.asList(new String[] {"B1"}), null, null);
+		assertEquals(wellFormedXML[0], parseSAX(xmlReaderService, wellFormedXML[0]), parseFast(xmlReaderService, wellFormedXML[0]));
+		
+		// With skip
+		xmlReaderService = new XMLReaderService(null, null, Arrays.asList(new String[] {"A"}), null);
+		assertEquals(wellFormedXML[0], parseSAX(xmlReaderService, wellFormedXML[0]), parseFast(xmlReaderService, wellFormedXML[0]));
+	}
+	
+	public final void testFallback() throws SAXException, IOException {
+		XMLReaderService xmlReaderService = new XMLReaderService(null, null, null, null);
+		String xml = "<?xml version=\"1.0\"?><!DOCTYPE root [<!ENTITY e \"entity\">]><root><A>&e;</A></root>";
+		List<String> rows = parseFast(xmlReaderService, xml);
+		assertEquals("fallback on DOCTYPE", parseSAX(xmlReaderService, xml), rows);
+		assertTrue("fallback on DOCTYPE", rows.get(0).contains("entity"));
+	}
+	
+	public final void testUnbalanced() throws IOException, SAXException {
+		XMLReaderService xmlReaderService = new XMLReaderService(null, null, null, null);
+		String[] wrongXML = {"<root><A>HAllo</A><B></root>", "<root><A HAllo</A></root>", "<root><A>&unknown;</A></root>", "<root><A>",
+				"<root>&#-5;</root>", "<root>&#;</root>", "<root>&#x;</root>", "<root>&#12a;</root>", "<root>&#0;</root>", "<root>&#1;</root>",
+				"<root>&#x110000;</root>", "<root a=\"&#+5;\"/>"};
+		for(String xml : wrongXML) {
+			boolean ok = false;
+			try {
+				parseFast(xmlReaderService, xml);
+			}
+			catch(SAXException e) {
+				System.out.println(e.getMessage());
+				ok = true;
+			}
+			assertTrue(xml, ok);
+		}
+	}
+	
+	private List<String> parseSAX(XMLReaderService xmlReaderService, String xml) throws SAXException, IOException {
+		List<String> rows = new ArrayList<String>();
+		xmlReaderService.parse(new StringReader(xml.startsWith("\uFEFF")? xml.substring(1):xml), collect(rows));
+		return rows;
+	}
+	
+	private List<String> parseFast(XMLReaderService xmlReaderService, String xml) throws SAXException, IOException {
+		List<String> rows = new ArrayList<String>();
+		xmlReaderService.parse(new ByteArrayInputStream(xml.getBytes("UTF-8")), Utils.getEncoding("UTF-8"), collect(rows));
+		return rows;
+	}
+	
+	private XMLReaderCallback collect(final List<String> rows) {
+		return new XMLReaderCallback() {
+			public void newRow(String includeParent, int includeCount, String fullPath,
+					String uri, String localName, String qName, String type, String value, int id, int first_sub_id) {
+				rows.add(includeParent + ", " + includeCount + ", " + fullPath + ", " + uri + ", " + localName + ", " + qName + ", " + type + ", " + value + ", " + id + ", " + first_sub_id);
+			}
+		};
+	}
+}
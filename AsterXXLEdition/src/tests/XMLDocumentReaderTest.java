@@ -0,0 +1,63 @@
+package tests;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.SAXException;
+
+import utils.XMLDocumentReader;
+import utils.XMLReaderService;
+import utils.XMLReaderService.XMLReaderCallback;
+
+public class XMLDocumentReaderTest extends TestCase {
+	public final void testDocuments() throws IOException {
+		String xml = "<?xml version=\"1.0\"?><a x=\"/>\"><!-- </a> --><b/></a>\n" +
+				"<?xml version=\"1.0\"?>\r\n<!DOCTYPE c [<!ELEMENT c ANY>]><c><![CDATA[</c>]]></c>" +
+				"<d/>  <e><?pi </e>?></e>";
+		XMLDocumentReader xmlDocumentReader = new XMLDocumentReader(new StringReader(xml));
+		List<String> documents = new ArrayList<String>();
+		char[] buf = new char[7];
+		while(xmlDocumentReader.nextDocument()) {
+			StringBuilder document = new StringBuilder();
+			for(int len = xmlDocumentReader.read(buf); len != -1; len = xmlDocumentReader.read(buf)) document.append(buf, 0, len);
+			documents.add(document.toString());
+		}
+		assertEquals("documents", Arrays.asList(new String[] {
+				"<?xml version=\"1.0\"?><a x=\"/>\"><!-- </a> --><b/></a>",
+				"<?xml version=\"1.0\"?>\r\n<!DOCTYPE c [<!ELEMENT c ANY>]><c><![CDATA[</c>]]></c>",
+				"<d/>",
+				"<e><?pi </e>?></e>"}), documents);
+	}
+	
+	public final void testParse() throws SAXException, IOException {
+		XMLReaderService xmlReaderService = new XMLReaderService(null, null, null, null);
+		XMLDocumentReader xmlDocumentReader = new XMLDocumentReader(new StringReader(
+				"<root><A>1</A></root><root><A>2</A><B x=2/></root>\n<root><A>3</A></root>"));
+		final List<String> rows = new ArrayList<String>();
+		XMLReaderCallback xmlReaderCallback = new XMLReaderCallback() {
+			public void newRow(String includeParent, int includeCount, String fullPath,
+					String uri, String localName, String qName, String type, String value, int id, int first_sub_id) {
+				rows.add(localName + ", " + value + ", " + id);
+			}
+		};
+		
+		// Documents with errors end, but the next document is parsed again
+		int errors = 0;
+		while(xmlDocumentReader.nextDocument()) {
+			try {
+				xmlReaderService.parse(xmlDocumentReader, xmlReaderCallback);
+			}
+			catch(SAXException e) {
+				errors++;
+			}
+		}
+		assertEquals("one broken document", 1, errors);
+		assertEquals("ids restart per document", Arrays.asList(new String[] {
+				"A, 1, 0", "root, , 1", "A, 2, 0", "A, 3, 0", "root, , 1"}), rows);
+	}
+}
@@ -0,0 +1,89 @@
+package tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.SAXException;
+
+import utils.XMLEventEncoder;
+import utils.XMLReaderService;
+import utils.XMLReaderService.XMLReaderCallback;
+
+public class XMLEventEncoderTest extends TestCase {
+	private static final String xml = "<?xml version=\"1.0\"?><root xmlns:n=\"urn:n\"><A a=\"1\">Hällo &amp; <![CDATA[<Welt>]]></A>" +
+			"<n:B n:b=\"x\"><C>c1</C><!-- comment --><C>c2</C>mixed</n:B><A a=\"2\"/></root>";
+	
+	public final void testRoundTrip() throws SAXException, IOException {
+		XMLReaderService encoder = new XMLReaderService(null, null, null, null);
+		ByteArrayOutputStream events = new ByteArrayOutputStream();
+		encoder.encode(new StringReader(xml), new XMLEventEncoder(events));
+		encoder.encode(new StringReader(xml), new XMLEventEncoder(events)); // Concatenated streams
+		assertTrue("compact", events.size() < 2*xml.length());
+		
+		// Same rows with and without filtering
+		List<List<String>> filters = Arrays.asList(null, Arrays.asList(new String[] {"B"}), Arrays.asList(new String[] {"/.*/C/"}));
+		for(List<String> included : filters) {
+			XMLReaderService xmlReaderService = new XMLReaderService(included, null, null, null);
+			List<String> expected = new ArrayList<String>();
+			xmlReaderService.parse(new StringReader(xml), collect(expected));
+			xmlReaderService.parse(new StringReader(xml), collect(expected));
+			List<String> actual = new ArrayList<String>();
+			xmlReaderService.parseEvents(new ByteArrayInputStream(events.toByteArray()), collect(actual));
+			assertEquals("same rows for " + included, expected, actual);
+		}
+		
+		// Skipping ends the current document only
+		XMLReaderService xmlReaderService = new XMLReaderService(null, null, Arrays.asList(new String[] {"A"}), null);
+		List<String> actual = new ArrayList<String>();
+		xmlReaderService.parseEvents(new ByteArrayInputStream(events.toByteArray()), collect(actual));
+		assertEquals("skipped in each document", 4, actual.size());
+	}
+	
+	public final void testAbort() throws SAXException, IOException {
+		XMLReaderService encoder = new XMLReaderService(null, null, null, null);
+		ByteArrayOutputStream events = new ByteArrayOutputStream();
+		XMLEventEncoder xmlEventEncoder = new XMLEventEncoder(events);
+		try {
+			encoder.encode(new StringReader("<root><A>1</A><B></root>"), xmlEventEncoder);
+			fail("parse error expected");
+		}
+		catch(SAXException e) {
+			xmlEventEncoder.abort(e.getMessage());
+		}
+		
+		List<String> actual = new ArrayList<String>();
+		try {
+			encoder.parseEvents(new ByteArrayInputStream(events.toByteArray()), collect(actual));
+			fail("parse error expected");
+		}
+		catch(SAXException e) {
+			assertEquals("rows before error", 1, actual.size());
+		}
+		
+		// Truncated streams are detected
+		byte[] truncated = Arrays.copyOf(events.toByteArray(), 6);
+		try {
+			encoder.parseEvents(new ByteArrayInputStream(truncated), collect(actual));
+			fail("invalid stream expected");
+		}
+		catch(SAXException e) {
+			assertTrue("invalid stream", e.getMessage().startsWith("Invalid event stream"));
+		}
+	}
+	
+	private XMLReaderCallback collect(final List<String> rows) {
+		return new XMLReaderCallback() {
+			public void newRow(String includeParent, int includeCount, String fullPath,
+					String uri, String localName, String qName, String type, String value, int id, int first_sub_id) {
+				rows.add(includeParent + ", " + includeCount + ", " + fullPath + ", " + uri + ", " + localName + ", " + qName + ", " + type + ", " + value + ", " + id + ", " + first_sub_id);
+			}
+		};
+	}
+}
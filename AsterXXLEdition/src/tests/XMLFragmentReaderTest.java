@@ -0,0 +1,75 @@
+package tests;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.SAXException;
+
+import utils.XMLFragmentReader;
+import utils.XMLReaderService;
+import utils.XMLReaderService.XMLReaderCallback;
+
+public class XMLFragmentReaderTest extends TestCase {
+	public final void testFragments() throws IOException {
+		String xml = "<?xml version=\"1.0\"?><!DOCTYPE r [<!ENTITY e \"x\">]>" +
+				"<r><a id=\"1\" t='>'>one<!-- <a> --><b/></a><c/><p:a>&e;<![CDATA[</a>]]><a>nested</a></p:a><a/></r>";
+		XMLFragmentReader reader = new XMLFragmentReader(new StringReader(xml), Arrays.asList(new String[] {"a"}), 1000);
+		assertEquals("passed through unchanged", xml, read(reader));
+		assertEquals("first element with attributes, comment and empty tag", "<a id=\"1\" t='>'>one<!-- <a> --><b/></a>", reader.poll(2));
+		assertEquals("prefix, entity and CDATA, nested element not kept", "<p:a>&e;<![CDATA[</a>]]><a>nested</a></p:a>", reader.poll(5));
+		assertNull("nested element", reader.poll(6));
+		assertEquals("empty element", "<a/>", reader.poll(7));
+		assertNull("no more", reader.poll(8));
+	}
+	
+	public final void testSelection() throws IOException {
+		String xml = "<r><a><b>1</b></a><b>2</b></r>";
+		XMLFragmentReader reader = new XMLFragmentReader(new StringReader(xml), Arrays.asList(new String[] {"=/r/b"}), 1000);
+		read(reader);
+		assertNull("other path", reader.poll(3));
+		assertEquals("literal full path", "<b>2</b>", reader.poll(4));
+		
+		reader = new XMLFragmentReader(new StringReader(xml), Arrays.asList(new String[] {"/.*/a/b/"}), 1000);
+		read(reader);
+		assertEquals("regular expression", "<b>1</b>", reader.poll(3));
+		assertNull("not matching", reader.poll(4));
+	}
+	
+	public final void testTooLong() throws IOException {
+		XMLFragmentReader reader = new XMLFragmentReader(new StringReader("<r><a>1234</a><a>1</a></r>"), Arrays.asList(new String[] {"a"}), 8);
+		read(reader);
+		assertNull("too long", reader.poll(2));
+		assertEquals("short enough", "<a>1</a>", reader.poll(3));
+	}
+	
+	public final void testService() throws SAXException, IOException {
+		final XMLReaderService xmlReaderService = new XMLReaderService(null, null, null, null);
+		xmlReaderService.setFragments(Arrays.asList(new String[] {"item"}), 1000);
+		final List<String> rows = new ArrayList<String>();
+		xmlReaderService.parse(new StringReader("<list><item n=\"1\"><v>a</v></item><item n=\"2\"/></list>"), new XMLReaderCallback() {
+			public void newRow(String includeParent, int includeCount, String fullPath,
+					String uri, String localName, String qName, String type, String value, int id, int first_sub_id) {
+				rows.add(localName + " " + type + " " + xmlReaderService.getFragment());
+			}
+		});
+		assertEquals("fragments of tags", Arrays.asList(new String[] {
+				"n A null",
+				"v T null",
+				"item T <item n=\"1\"><v>a</v></item>",
+				"n A null",
+				"item T <item n=\"2\"/>",
+				"list T null"}), rows);
+	}
+	
+	private String read(XMLFragmentReader reader) throws IOException {
+		StringBuilder s = new StringBuilder();
+		char[] buf = new char[7]; // Tags span reads
+		for(int n = reader.read(buf, 0, buf.length); n != -1; n = reader.read(buf, 0, buf.length)) s.append(buf, 0, n);
+		return s.toString();
+	}
+}
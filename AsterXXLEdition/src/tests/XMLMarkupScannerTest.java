@@ -0,0 +1,59 @@
+package tests;
+
+import junit.framework.TestCase;
+import utils.XMLMarkupScanner;
+
+public class XMLMarkupScannerTest extends TestCase {
+	public final void testEvents() {
+		assertEquals("tags, attributes and empty elements", "< s1:r < s2:p:a < s3:b E3 e3 < e2 < e1 ",
+				scan("<r><p:a x=\"/>\" y='>'><b/></p:a></r>"));
+		assertEquals("empty root", "< s1:r E1 e1 ", scan("<r />"));
+		assertEquals("unbalanced end tag", "< s1:r E1 e1 < ", scan("<r/></r>"));
+	}
+	
+	public final void testMarkup() {
+		assertEquals("prolog, comment, CDATA and PI", "< < < s1:r < < < < e1 ",
+				scan("<?xml version=\"1.0\"?><!-- <a> --><r><!----><![CDATA[<a>]]><?pi <a>?></r>"));
+		assertEquals("shortest markup", "< < < s1:r < < < < e1 ", scan("<??><!----><r><!--->--><![CDATA[]]><??></r>"));
+		assertEquals("DOCTYPE with internal subset", "< < s1:r E1 e1 ",
+				scan("<!DOCTYPE r [<!ENTITY e \"]>\"><!ENTITY f '<a>'><!-- ]> don't -->]><r/>"));
+		assertEquals("DOCTYPE with system literal", "< < s1:r E1 e1 ", scan("<!DOCTYPE r SYSTEM \"]>.dtd\"><r/>"));
+	}
+	
+	public final void testState() {
+		final StringBuilder names = new StringBuilder();
+		final XMLMarkupScanner[] scanner = new XMLMarkupScanner[1];
+		scanner[0] = new XMLMarkupScanner(new XMLMarkupScanner.MarkupAdapter() {
+			public void startElement(int depth) {names.append(scanner[0].getQName()).append(' ').append(scanner[0].getLocalName()).append(' ');}
+		});
+		String xml = "<r><p:a>";
+		for(int i = 0; i < xml.length(); i++) scanner[0].scan(xml.charAt(i));
+		assertEquals("names", "r r p:a a ", names.toString());
+		assertEquals("depth", 2, scanner[0].getDepth());
+		assertFalse("text", scanner[0].isInMarkup());
+		
+		scanner[0].scan('<');
+		assertTrue("markup", scanner[0].isInMarkup());
+		assertTrue("start tag", scanner[0].isInStartTag());
+		scanner[0].scan('!');
+		assertFalse("comment", scanner[0].isInStartTag());
+		
+		scanner[0].clear();
+		assertEquals("new document", 0, scanner[0].getDepth());
+		assertFalse("new document", scanner[0].isInMarkup());
+	}
+	
+	// Events as string: "<" start of markup, "s<depth>:<qName>" start element, "E<depth>" end of empty start tag, "e<depth>" end element
+	private static String scan(String xml) {
+		final StringBuilder events = new StringBuilder();
+		final XMLMarkupScanner[] scanner = new XMLMarkupScanner[1];
+		scanner[0] = new XMLMarkupScanner(new XMLMarkupScanner.MarkupListener() {
+			public void startMarkup() {events.append("< ");}
+			public void startElement(int depth) {events.append('s').append(depth).append(':').append(scanner[0].getQName()).append(' ');}
+			public void endStartTag(int depth, boolean isEmpty) {if(isEmpty) events.append('E').append(depth).append(' ');}
+			public void endElement(int depth) {events.append('e').append(depth).append(' ');}
+		});
+		for(int i = 0; i < xml.length(); i++) scanner[0].scan(xml.charAt(i));
+		return events.toString();
+	}
+}
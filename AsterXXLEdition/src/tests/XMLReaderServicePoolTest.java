@@ -0,0 +1,71 @@
+package tests;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.SAXException;
+
+import utils.XMLReaderService;
+import utils.XMLReaderService.XMLReaderCallback;
+import utils.XMLReaderServicePool;
+import utils.XMLReaderServicePool.ParseJob;
+import utils.XMLRowBuffer;
+
+public class XMLReaderServicePoolTest extends TestCase {
+	public final void testSubmit() throws SAXException, IOException, InterruptedException, ExecutionException {
+		XMLReaderServicePool xmlReaderServicePool = new XMLReaderServicePool(4, null, null, null, null);
+		XMLReaderService xmlReaderService = new XMLReaderService(null, null, null, null);
+		
+		// Parse documents in parallel and sequential
+		List<Future<XMLRowBuffer>> futures = new ArrayList<Future<XMLRowBuffer>>();
+		List<String> expected = new ArrayList<String>();
+		for(int i = 0; i < 20; i++) {
+			final String xml = document(i);
+			futures.add(xmlReaderServicePool.submit(new ParseJob() {
+				public void parse(XMLReaderService xmlReaderService, XMLReaderCallback xmlReaderCallback) throws SAXException, IOException {
+					xmlReaderService.parse(new StringReader(xml), xmlReaderCallback);
+				}
+			}));
+			xmlReaderService.parse(new StringReader(xml), collect(expected));
+		}
+		
+		// Replay in order of submission
+		List<String> actual = new ArrayList<String>();
+		for(Future<XMLRowBuffer> future : futures) {
+			assertNull("no exception", future.get().getException());
+			future.get().replay(collect(actual));
+		}
+		assertEquals("same rows in same order", expected, actual);
+		
+		// Exceptions are kept with the rows found before
+		XMLRowBuffer xmlRowBuffer = xmlReaderServicePool.submit(new ParseJob() {
+			public void parse(XMLReaderService xmlReaderService, XMLReaderCallback xmlReaderCallback) throws SAXException, IOException {
+				xmlReaderService.parse(new StringReader("<root><A>1</A><B></root>"), xmlReaderCallback);
+			}
+		}).get();
+		assertEquals("rows before exception", 1, xmlRowBuffer.size());
+		assertTrue("exception kept", xmlRowBuffer.getException() instanceof SAXException);
+		xmlReaderServicePool.shutdown();
+	}
+	
+	private String document(int n) {
+		StringBuilder xml = new StringBuilder("<root n=\"" + n + "\">");
+		for(int i = 0; i < 1000; i++) xml.append("<A a=\"" + i + "\">value " + n + "/" + i + "</A>");
+		return xml.append("</root>").toString();
+	}
+	
+	private XMLReaderCallback collect(final List<String> rows) {
+		return new XMLReaderCallback() {
+			public void newRow(String includeParent, int includeCount, String fullPath,
+					String uri, String localName, String qName, String type, String value, int id, int first_sub_id) {
+				rows.add(includeParent + ", " + includeCount + ", " + fullPath + ", " + uri + ", " + localName + ", " + qName + ", " + type + ", " + value + ", " + id + ", " + first_sub_id);
+			}
+		};
+	}
+}
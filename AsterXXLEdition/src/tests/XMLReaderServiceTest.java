@@ -1,14 +1,19 @@
 package tests;
 
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import junit.framework.TestCase;
 
 import org.xml.sax.SAXException;
 
+import utils.Utils;
+import utils.XMLEvent;
 import utils.XMLReaderService;
 import utils.XMLReaderService.XMLReaderCallback;
 
@@ -145,6 +150,162 @@ public class XMLReaderServiceTest extends TestCase {
 				new RowParameter("", "a2", "a2", "A", "y", 2,2));
 	}
 	
+	public final void testByteInput() throws SAXException, IOException {
+		XMLReaderService xmlReaderService = new XMLReaderService(null, null, null, null);
+		
+		// Encoding is taken from the XML declaration
+		String xml = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><root><A>H\u00e4llo\u0001</A></root>";
+		i = 0;
+		xmlReaderService.parse(new ByteArrayInputStream(xml.getBytes("ISO-8859-1")), new XMLReaderCallback() {
+			public void newRow(String includeParent, int includeCount, String fullPath,
+					String uri, String localName, String qName, String type, String value, int id, int first_sub_id) {
+				if(i++ == 0) assertEquals("check encoding from declaration", "H\u00e4llo?", value);
+			}
+		});
+		assertEquals("check encoding from declaration", 2, i);
+		
+		// UTF-16 is detected from byte order mark
+		i = 0;
+		xmlReaderService.parse(new ByteArrayInputStream(secondXML.replace("UTF-8", "UTF-16").getBytes("UTF-16")), new XMLReaderCallback() {
+			public void newRow(String includeParent, int includeCount, String fullPath,
+					String uri, String localName, String qName, String type, String value, int id, int first_sub_id) {
+				i++;
+			}
+		});
+		assertEquals("check UTF-16 with byte order mark", 9, i);
+	}
+	
+	public final void testMaxValueChars() throws SAXException, IOException {
+		String value = "0123456789\u00e4\u00f6\u00fc<&>abcdefghijklmnopqrstuvwxyz";
+		String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><root><A a=\"1\">" + value.replace("&", "&amp;").replace("<", "&lt;") +
+				"</A><B>short</B><C><![CDATA[" + value + "]]></C></root>";
+		final XMLReaderService xmlReaderService = new XMLReaderService(null, null, null, null);
+		xmlReaderService.setMaxValueChars(10);
+		final List<String> rows = new ArrayList<String>();
+		XMLReaderCallback xmlReaderCallback = new XMLReaderCallback() {
+			public void newRow(String includeParent, int includeCount, String fullPath,
+					String uri, String localName, String qName, String type, String value, int id, int first_sub_id) {
+				assertTrue("chunk not larger then max", value.length() <= 10);
+				rows.add(localName + ", " + type + ", " + xmlReaderService.getValueChunk() + ", " + value + ", " + id + ", " + first_sub_id);
+			}
+		};
+		String[] expected = {
+				"a, A, 0, 1, 0, 0",
+				"A, C, 1, \u00e4\u00f6\u00fc<&>abcd, 0, 0",
+				"A, C, 2, efghijklmn, 0, 0",
+				"A, C, 3, opqrstuvwx, 0, 0",
+				"A, C, 4, yz, 0, 0",
+				"A, T, 0, 0123456789, 1, 0",
+				"B, T, 0, short, 2, 2",
+				"C, C, 1, \u00e4\u00f6\u00fc<&>abcd, 3, 3",
+				"C, C, 2, efghijklmn, 3, 3",
+				"C, C, 3, opqrstuvwx, 3, 3",
+				"C, C, 4, yz, 3, 3",
+				"C, T, 0, 0123456789, 3, 3",
+				"root, T, 0, , 4, 0"};
+		
+		// SAX
+		xmlReaderService.parse(new StringReader(xml), xmlReaderCallback);
+		assertEquals("chunks with SAX", Arrays.asList(expected), rows);
+		
+		// Tokenizer
+		rows.clear();
+		xmlReaderService.parse(new ByteArrayInputStream(xml.getBytes("UTF-8")), Utils.getEncoding("UTF-8"), xmlReaderCallback);
+		assertEquals("chunks with tokenizer", Arrays.asList(expected), rows);
+	}
+	
+	public final void testStop() throws SAXException, IOException {
+		final XMLReaderService xmlReaderService = new XMLReaderService(null, null, null, null);
+		XMLReaderCallback xmlReaderCallback = new XMLReaderCallback() {
+			public void newRow(String includeParent, int includeCount, String fullPath,
+					String uri, String localName, String qName, String type, String value, int id, int first_sub_id) {
+				if(++i == 3) xmlReaderService.stop();
+			}
+		};
+		
+		// SAX
+		i = 0;
+		xmlReaderService.parse(new StringReader(firstXML), xmlReaderCallback);
+		assertEquals("rows of the event stopping", 3, i);
+		assertTrue("stopped counts as skipped", xmlReaderService.isSkipped());
+		
+		// Tokenizer
+		i = 0;
+		xmlReaderService.parse(new ByteArrayInputStream(firstXML.getBytes("UTF-8")), Utils.getEncoding("UTF-8"), xmlReaderCallback);
+		assertEquals("rows of the event stopping", 3, i);
+		
+		// Next document is parsed completely
+		i = 0;
+		xmlReaderService.parse(new StringReader(secondXML), new XMLReaderCallback() {
+			public void newRow(String includeParent, int includeCount, String fullPath,
+					String uri, String localName, String qName, String type, String value, int id, int first_sub_id) {
+				i++;
+			}
+		});
+		assertEquals("all rows after stop", 9, i);
+		assertFalse("not skipped", xmlReaderService.isSkipped());
+	}
+	
+	public final void testHierarchy() throws SAXException, IOException {
+		final XMLReaderService xmlReaderService = new XMLReaderService(null, null, null, null);
+		final List<String> rows = new ArrayList<String>();
+		xmlReaderService.parse(new StringReader("<R a=\"1\" b=\"2\"><P><C/></P><P x=\"3\"/></R>"), new XMLReaderCallback() {
+			public void newRow(String includeParent, int includeCount, String fullPath,
+					String uri, String localName, String qName, String type, String value, int id, int first_sub_id) {
+				rows.add(localName + " " + id + "/" + first_sub_id + " parent " + xmlReaderService.getParentId() +
+						" depth " + xmlReaderService.getDepth() + " ordinal " + xmlReaderService.getOrdinal());
+			}
+		});
+		assertEquals("hierarchy", Arrays.asList(new String[] {
+				"a 0/0 parent 0 depth 2 ordinal 1",
+				"b 1/1 parent 0 depth 2 ordinal 2",
+				"C 2/2 parent 2 depth 3 ordinal 1", // Parent P shares first_sub_id 2 with C, but has another depth
+				"P 3/2 parent 0 depth 2 ordinal 1",
+				"x 4/4 parent 4 depth 3 ordinal 1",
+				"P 5/4 parent 0 depth 2 ordinal 2",
+				"R 6/0 parent -1 depth 1 ordinal 1"}), rows);
+	}
+	
+	public final void testEvents() throws SAXException, IOException {
+		StringBuilder xml = new StringBuilder("<R a=\"1\">");
+		for(int j = 0; j < XMLReaderService.EVENT_BATCH; j++) xml.append("<P x=\"").append(j).append("\">v").append(j).append("</P>");
+		xml.append("<E/></R>");
+		
+		// Rows one by one
+		final XMLReaderService xmlReaderService = new XMLReaderService(null, null, null, null);
+		final List<String> expected = new ArrayList<String>();
+		xmlReaderService.parse(new StringReader(xml.toString()), new XMLReaderCallback() {
+			public void newRow(String includeParent, int includeCount, String fullPath,
+					String uri, String localName, String qName, String type, String value, int id, int first_sub_id) {
+				expected.add(includeParent + " " + includeCount + " " + fullPath + " " + localName + " " + type + " " + value + " " + id + "/" + first_sub_id +
+						" parent " + xmlReaderService.getParentId() + " depth " + xmlReaderService.getDepth() + " ordinal " + xmlReaderService.getOrdinal());
+			}
+		});
+		
+		// Same rows in batches
+		final List<String> rows = new ArrayList<String>();
+		final List<Integer> batches = new ArrayList<Integer>();
+		xmlReaderService.parse(new StringReader(xml.toString()), new XMLReaderService.XMLEventCallback() {
+			public void newRow(String includeParent, int includeCount, String fullPath,
+					String uri, String localName, String qName, String type, String value, int id, int first_sub_id) {
+				fail("newRow called for event callback");
+			}
+			
+			public void newEvents(XMLEvent[] events, int count) {
+				batches.add(count);
+				for(int j = 0; j < count; j++) {
+					XMLEvent e = events[j];
+					rows.add(e.getIncludeParent() + " " + e.getIncludeCount() + " " + e.getFullPath() + " " + e.getLocalName() + " " + e.getType() +
+							" " + e.getValue() + " " + e.getId() + "/" + e.getFirstSubId() +
+							" parent " + e.getParentId() + " depth " + e.getDepth() + " ordinal " + e.getOrdinal());
+				}
+			}
+		});
+		assertEquals("same rows", expected, rows);
+		assertEquals("full batches and rest at the end", Arrays.asList(new Integer[] {
+				XMLReaderService.EVENT_BATCH, XMLReaderService.EVENT_BATCH, expected.size() - 2*XMLReaderService.EVENT_BATCH}), batches);
+	}
+	
 	private int i = 0;
 	private void check(final String msg, XMLReaderService xmlReaderService, String xml, final RowParameter... rowParameters) throws SAXException, IOException {
 		i = 0;
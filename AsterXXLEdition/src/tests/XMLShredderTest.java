@@ -0,0 +1,73 @@
+package tests;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.SAXException;
+
+import utils.XMLReaderService;
+import utils.XMLReaderService.XMLReaderCallback;
+import utils.XMLShredder;
+
+public class XMLShredderTest extends TestCase {
+	private static final String xml = "" +
+			"<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+			"<root>" +
+					"<order no=\"1\"><amount>10.5</amount><date>2014-03-01T12:30:00.25Z</date><item>A</item><item>B</item></order>" +
+					"<other>x</other>" +
+					"<order no=\"2\"><amount>7</amount></order>" +
+			"</root>";
+	
+	public final void testCollect() throws SAXException, IOException {
+		final XMLShredder xmlShredder = new XMLShredder(Arrays.asList(new String[] {
+				"no:integer=/root/order/no/", "amount:double=amount", "date:timestamp=/.*/date/", "item:varchar=item"}));
+		final List<String> records = new ArrayList<String>();
+		
+		new XMLReaderService(Arrays.asList(new String[] {"order"}), null, null, null).parse(new StringReader(xml), new XMLReaderCallback() {
+			public void newRow(String includeParent, int includeCount, String fullPath,
+					String uri, String localName, String qName, String type, String value, int id, int first_sub_id) {
+				if(xmlShredder.isNewRecord(includeParent, includeCount)) records.add(record(xmlShredder));
+				xmlShredder.collect(includeParent, includeCount, fullPath, localName, value);
+			}
+		});
+		if(xmlShredder.hasRecord()) records.add(record(xmlShredder));
+		
+		assertEquals("one record per include parent", Arrays.asList(new String[] {
+				"order, 1, 1, 10.5, 2014-03-01T12:30:00.25Z, A",
+				"order, 2, 2, 7, null, null"}), records);
+	}
+	
+	public final void testParseTimestamp() {
+		assertTrue(Arrays.equals(new int[] {2014, 3, 1, 0, 0, 0, 0}, XMLShredder.parseTimestamp("2014-03-01")));
+		assertTrue(Arrays.equals(new int[] {2014, 3, 1, 12, 30, 0, 0}, XMLShredder.parseTimestamp("2014-03-01 12:30")));
+		assertTrue(Arrays.equals(new int[] {2014, 3, 1, 12, 30, 5, 250000000}, XMLShredder.parseTimestamp(" 2014-03-01T12:30:05.25+01:00 ")));
+		assertNull(XMLShredder.parseTimestamp("01.03.2014"));
+	}
+	
+	public final void testColumns() {
+		String[] wrong = {"no", "no:integer", "no:integer=", ":integer=no", "no:blob=no"};
+		for(String column : wrong) {
+			boolean ok = false;
+			try {
+				new XMLShredder(Arrays.asList(new String[] {column}));
+			}
+			catch(IllegalArgumentException e) {
+				ok = true; // Thats OK behavior
+			}
+			assertTrue("error expected for " + column, ok);
+		}
+	}
+	
+	// Read and clear the collected record
+	private String record(XMLShredder xmlShredder) {
+		String record = xmlShredder.getIncludeParent() + ", " + xmlShredder.getIncludeCount();
+		for(int i = 0; i < 4; i++) record += ", " + xmlShredder.getValue(i);
+		xmlShredder.clear();
+		return record;
+	}
+}
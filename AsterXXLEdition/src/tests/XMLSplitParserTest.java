@@ -0,0 +1,140 @@
+package tests;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.SAXException;
+
+import utils.XMLEvent;
+import utils.XMLReaderService;
+import utils.XMLReaderService.XMLReaderCallback;
+import utils.XMLReaderService.XMLRowAdapter;
+import utils.XMLReaderServicePool;
+import utils.XMLSplitParser;
+import utils.XMLSplitter;
+
+public class XMLSplitParserTest extends TestCase {
+	private static final String header = "" +
+			"<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+			"<!-- <record> in comment -->" +
+			"<ns:root xmlns:ns=\"urn:test\" a=\"1\">" +
+			"<header><![CDATA[<record>]]></header>";
+	
+	public final void testSplitter() throws IOException, SAXException {
+		XMLSplitter xmlSplitter = new XMLSplitter(new StringReader(document(10)));
+		List<String> segments = new ArrayList<String>();
+		for(String segment = xmlSplitter.nextSegment("record", 200); segment != null; segment = xmlSplitter.nextSegment("record", 200))
+			segments.add(segment);
+		
+		assertTrue("more then one segment", segments.size() > 1);
+		assertEquals("root found", "ns:root", xmlSplitter.getRootQName());
+		assertTrue("first segment has root attributes", segments.get(0).startsWith(header));
+		for(int i = 1; i < segments.size(); i++)
+			assertTrue("segment starts with namespaces of root", segments.get(i).contains("<ns:root xmlns:ns=\"urn:test\"><ns:record "));
+		for(int i = 0; i < segments.size(); i++)
+			assertTrue("segment is closed", segments.get(i).endsWith("</ns:root>"));
+	}
+	
+	public final void testParse() throws IOException, SAXException {
+		XMLReaderServicePool xmlReaderServicePool = new XMLReaderServicePool(3, null, null, null, null);
+		check("no filtering", xmlReaderServicePool, new XMLReaderService(null, null, null, null));
+		xmlReaderServicePool.shutdown();
+		
+		List<String> included = Arrays.asList(new String[] {"record", "a"});
+		List<String> excluded = Arrays.asList(new String[] {"B"});
+		xmlReaderServicePool = new XMLReaderServicePool(3, included, excluded, null, null);
+		check("include and exclude", xmlReaderServicePool, new XMLReaderService(included, excluded, null, null));
+		xmlReaderServicePool.shutdown();
+		
+		included = Arrays.asList(new String[] {"root"});
+		xmlReaderServicePool = new XMLReaderServicePool(3, included, excluded, null, null);
+		check("root included", xmlReaderServicePool, new XMLReaderService(included, excluded, null, null));
+		xmlReaderServicePool.shutdown();
+		
+		List<String> skip = Arrays.asList(new String[] {"/.*/record/B/$"});
+		xmlReaderServicePool = new XMLReaderServicePool(3, null, null, skip, null);
+		check("skip", xmlReaderServicePool, new XMLReaderService(null, null, skip, null));
+		xmlReaderServicePool.shutdown();
+		
+		// Error in the middle of the document
+		xmlReaderServicePool = new XMLReaderServicePool(3, null, null, null, null);
+		boolean ok = false;
+		try {
+			new XMLSplitParser(xmlReaderServicePool, "record", 200).parse(
+					new StringReader(document(100).replace("<A>50</A>", "<A>50</X>")), collect(new ArrayList<String>()));
+		}
+		catch(SAXException e) {
+			ok = true; // Thats OK behavior
+		}
+		assertTrue("error in segment", ok);
+		xmlReaderServicePool.shutdown();
+	}
+	
+	public final void testHierarchy() throws IOException, SAXException {
+		String xml = document(100);
+		List<String> expected = new ArrayList<String>();
+		new XMLReaderService(null, null, null, null).parse(new StringReader(xml), collectHierarchy(expected));
+		
+		List<String> actual = new ArrayList<String>();
+		XMLReaderServicePool xmlReaderServicePool = new XMLReaderServicePool(3, null, null, null, null);
+		new XMLSplitParser(xmlReaderServicePool, "record", 200).parse(new StringReader(xml), collectHierarchy(actual));
+		xmlReaderServicePool.shutdown();
+		assertEquals("parent, depth and ordinal carried with the rows", expected, actual);
+	}
+	
+	public final void testEmptyRoot() throws IOException, SAXException {
+		String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><root a=\"1\"/>";
+		XMLSplitter xmlSplitter = new XMLSplitter(new StringReader(xml));
+		assertEquals("one segment", xml, xmlSplitter.nextSegment("record", 0));
+		assertEquals("root found", "root", xmlSplitter.getRootQName());
+		assertNull("no more segments", xmlSplitter.nextSegment("record", 0));
+		
+		List<String> expected = new ArrayList<String>();
+		new XMLReaderService(null, null, null, null).parse(new StringReader(xml), collect(expected));
+		List<String> actual = new ArrayList<String>();
+		XMLReaderServicePool xmlReaderServicePool = new XMLReaderServicePool(3, null, null, null, null);
+		new XMLSplitParser(xmlReaderServicePool, "record", 0).parse(new StringReader(xml), collect(actual));
+		xmlReaderServicePool.shutdown();
+		assertEquals("same as sequential parse", expected, actual);
+	}
+	
+	// Compare parallel parsing of segments with parsing the document as a whole
+	private void check(String msg, XMLReaderServicePool xmlReaderServicePool, XMLReaderService xmlReaderService) throws IOException, SAXException {
+		String xml = document(100);
+		List<String> expected = new ArrayList<String>();
+		xmlReaderService.parse(new StringReader(xml), collect(expected));
+		
+		List<String> actual = new ArrayList<String>();
+		new XMLSplitParser(xmlReaderServicePool, "record", 200).parse(new StringReader(xml), collect(actual));
+		assertEquals(msg, expected, actual);
+	}
+	
+	private String document(int n) {
+		StringBuilder xml = new StringBuilder(header);
+		for(int i = 0; i < n; i++)
+			xml.append("<ns:record a=\"" + i + "\"><A>" + i + "</A>" + (i == 60? "<B>b</B>":"") + "<C c=\"" + i + "\"/></ns:record>");
+		return xml.append("<trailer/></ns:root>").toString();
+	}
+	
+	private XMLReaderCallback collectHierarchy(final List<String> rows) {
+		return new XMLRowAdapter() {
+			public void newRow(XMLEvent row) {
+				rows.add(row.getFullPathString() + ", " + row.getId() + ", " + row.getParentId() + ", " + row.getDepth() + ", " + row.getOrdinal());
+			}
+		};
+	}
+	
+	private XMLReaderCallback collect(final List<String> rows) {
+		return new XMLReaderCallback() {
+			public void newRow(String includeParent, int includeCount, String fullPath,
+					String uri, String localName, String qName, String type, String value, int id, int first_sub_id) {
+				rows.add(includeParent + ", " + includeCount + ", " + fullPath + ", " + uri + ", " + localName + ", " + qName + ", " + type + ", " + value + ", " + id + ", " + first_sub_id);
+			}
+		};
+	}
+}
@@ -0,0 +1,84 @@
+package tests;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.SAXException;
+
+import utils.XMLReaderService;
+import utils.XMLReaderService.XMLReaderCallback;
+import utils.XPathSelector;
+
+public class XPathSelectorTest extends TestCase {
+	private static final String xml = "" +
+			"<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+			"<root xmlns:p=\"urn:p\">" +
+					"<item type=\"x\" id=\"1\"><name>A</name><price>1</price></item>" +
+					"<item type=\"y\" id=\"2\"><name>B</name><price>2</price></item>" +
+					"<group>" +
+						"<p:item type=\"x\" id=\"3\"><name>C</name><sub><name>D</name></sub></p:item>" +
+					"</group>" +
+			"</root>";
+	
+	public final void testSelect() throws SAXException, IOException {
+		check("child axis", rows("/root/item/name"), "T name A", "T name B");
+		check("descendant axis", rows("//name"), "T name A", "T name B", "T name C", "T name D");
+		check("relative is descendant", rows("item/name"), "T name A", "T name B", "T name C");
+		check("mixed axis", rows("/root//item//name"), "T name A", "T name B", "T name C", "T name D");
+		check("wildcard", rows("/root/*/price"), "T price 1", "T price 2");
+		check("predicate", rows("//item[@type='x']/name"), "T name A", "T name C");
+		check("predicate double quoted", rows("//item[@type=\"y\"]/price"), "T price 2");
+		check("several predicates", rows("//item[@type='x'][ @id = '3' ]/name"), "T name C");
+		check("existence predicate", rows("//*[@id]"), "T item ", "T item ", "T item ");
+		check("attribute", rows("/root/item/@id"), "A id 1", "A id 2");
+		check("any attribute", rows("//item[@id='2']/@*"), "A type y", "A id 2");
+		check("descendant attribute", rows("//@type"), "A type x", "A type y", "A type x");
+		check("several expressions", rows("//price", "//group/item/@id"), "T price 1", "T price 2", "A id 3");
+		check("no match", rows("/item"));
+		assertEquals("all without expressions", 18, rows().size());
+		
+		// Combined with include list
+		List<String> rows = new ArrayList<String>();
+		new XMLReaderService(Arrays.asList(new String[] {"group"}), null, null, null, Arrays.asList(new String[] {"//name"})).parse(new StringReader(xml), collect(rows));
+		check("combined with include", rows, "T name C", "T name D");
+	}
+	
+	public final void testCompile() {
+		String[] wrong = {"/", "//item/", "/item[", "/item[@type='x]", "/item[name='x']", "/@id/name", "/item[@]", "/item@id"};
+		for(String expression : wrong) {
+			boolean ok = false;
+			try {
+				new XPathSelector(Arrays.asList(new String[] {expression}));
+			}
+			catch(IllegalArgumentException e) {
+				System.out.println(e.getMessage());
+				ok = true; // Thats OK behavior
+			}
+			assertTrue("compile error expected for " + expression, ok);
+		}
+	}
+	
+	private List<String> rows(String... select) throws SAXException, IOException {
+		List<String> rows = new ArrayList<String>();
+		new XMLReaderService(null, null, null, null, select.length == 0? null:Arrays.asList(select)).parse(new StringReader(xml), collect(rows));
+		return rows;
+	}
+	
+	private void check(String msg, List<String> actual, String... expected) {
+		assertEquals(msg, Arrays.asList(expected), actual);
+	}
+	
+	private XMLReaderCallback collect(final List<String> rows) {
+		return new XMLReaderCallback() {
+			public void newRow(String includeParent, int includeCount, String fullPath,
+					String uri, String localName, String qName, String type, String value, int id, int first_sub_id) {
+				rows.add(type + " " + localName + " " + value);
+			}
+		};
+	}
+}
@@ -0,0 +1,23 @@
+-- Simple check with direct includes
+SELECT count(*)
+FROM JSONFastFilter(
+	ON(	select	data
+		from	table_from_afs(
+					on dummy
+					path('/home/beehive/json/*.zip')
+					input_format('com.asterdata.ncluster.sqlmr.dfsinput.WholeFileAsBinaryInputFormat')
+					outputs('data bytea')
+				)
+    )
+	json('data')
+	unzip('UTF-8')
+	include('items'));
+
+-- Plain JSON in chunks, partitioned by document
+SELECT *
+FROM JSONFastFilter(
+	ON json_chunks PARTITION BY doc_id ORDER BY chunk
+	json('content')
+	accumulate('doc_id')
+	include('/root/order/items/$')
+	localnames('sku', 'quantity'));
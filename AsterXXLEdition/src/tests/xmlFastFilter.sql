@@ -91,3 +91,140 @@ FROM XMLFastFilter(
 	unzip('UTF-8')
 	include('language')
 	skipAfter('language'));
+
+-- unzip and tokenize UTF-8 bytes with the fast tokenizer
+SELECT count(*)
+FROM XMLFastFilter(
+	ON(	select	data
+		from	table_from_afs(
+					on dummy
+					path('/home/beehive/xml/*.zip')
+					input_format('com.asterdata.ncluster.sqlmr.dfsinput.WholeFileAsBinaryInputFormat')
+					outputs('data bytea')
+				)
+    )
+	xml('data')
+	unzip('UTF-8')
+	parser('fast')
+	include('Diagnostic_Tree', 'XDSystemError'));
+
+-- unzip large documents, split them before each Diagnostic_Tree and parse the segments in 4 threads
+SELECT count(*)
+FROM XMLFastFilter(
+	ON(	select	data
+		from	table_from_afs(
+					on dummy
+					path('/home/beehive/xml/*.zip')
+					input_format('com.asterdata.ncluster.sqlmr.dfsinput.WholeFileAsBinaryInputFormat')
+					outputs('data bytea')
+				)
+    )
+	xml('data')
+	unzip('UTF-8')
+	threads(4)
+	splitrecord('Diagnostic_Tree')
+	include('Diagnostic_Tree', 'XDSystemError'));
+
+-- select with XPath instead of include lists
+SELECT *
+FROM XMLFastFilter(
+	ON(	select	data
+		from	table_from_afs(
+					on dummy
+					path('/home/beehive/xml/*.zip')
+					input_format('com.asterdata.ncluster.sqlmr.dfsinput.WholeFileAsBinaryInputFormat')
+					outputs('data bytea')
+				)
+    )
+	xml('data')
+	unzip('UTF-8')
+	select('//Diagnostic_Tree//XDSystemError[@severity=''high'']/*', '//Diagnostic_Tree/@id'));
+
+-- one typed row per Diagnostic_Tree instead of pivoting narrow rows
+SELECT *
+FROM XMLFastFilter(
+	ON(	select	data
+		from	table_from_afs(
+					on dummy
+					path('/home/beehive/xml/*.zip')
+					input_format('com.asterdata.ncluster.sqlmr.dfsinput.WholeFileAsBinaryInputFormat')
+					outputs('data bytea')
+				)
+    )
+	xml('data')
+	unzip('UTF-8')
+	include('Diagnostic_Tree')
+	columns('tree_id:integer=/.*/Diagnostic_Tree/id/', 'severity:varchar=severity', 'created:timestamp=/.*/Diagnostic_Tree/created/'));
+
+-- Diagnostic_Trees changed between two snapshots, compared by fingerprint
+SELECT	coalesce(new.file, old.file) as file, new.includecount as new_count, old.includecount as old_count
+FROM (	SELECT	file, includecount, fingerprint
+		FROM XMLFastFilter(
+			ON (select data from snapshot_new)
+			xml('data')
+			unzip('UTF-8')
+			include('Diagnostic_Tree')
+			fingerprint('only'))
+	) new
+FULL OUTER JOIN (
+		SELECT	file, includecount, fingerprint
+		FROM XMLFastFilter(
+			ON (select data from snapshot_old)
+			xml('data')
+			unzip('UTF-8')
+			include('Diagnostic_Tree')
+			fingerprint('only'))
+	) old
+ON new.fingerprint = old.fingerprint
+WHERE new.fingerprint IS NULL OR old.fingerprint IS NULL;
+
+-- Only the Diagnostic_Trees of some systems, filtered before the rows leave the worker
+SELECT *
+FROM XMLFastFilter(
+	ON(	select	data
+		from	table_from_afs(
+					on dummy
+					path('/home/beehive/xml/*.zip')
+					input_format('com.asterdata.ncluster.sqlmr.dfsinput.WholeFileAsBinaryInputFormat')
+					outputs('data bytea')
+				)
+    )
+	xml('data')
+	unzip('UTF-8')
+	include('Diagnostic_Tree')
+	values('4711', '0815')
+	valueNames('systemId')
+	valueMatch('record'));
+
+-- Reference files contained in many archives are parsed once per vworker and returned from a cache of 256MB afterwards
+SELECT *
+FROM XMLFastFilter(
+	ON(	select	data
+		from	table_from_afs(
+					on dummy
+					path('/home/beehive/xml/*.zip')
+					input_format('com.asterdata.ncluster.sqlmr.dfsinput.WholeFileAsBinaryInputFormat')
+					outputs('data bytea')
+				)
+    )
+	xml('data')
+	unzip('UTF-8')
+	include('Diagnostic_Tree')
+	rowCache(256));
+
+-- Original XML of each Diagnostic_Tree next to its shredded rows, e.g. to archive the records of some systems
+SELECT includecount, fragment
+FROM XMLFastFilter(
+	ON(	select	data
+		from	table_from_afs(
+					on dummy
+					path('/home/beehive/xml/*.zip')
+					input_format('com.asterdata.ncluster.sqlmr.dfsinput.WholeFileAsBinaryInputFormat')
+					outputs('data bytea')
+				)
+    )
+	xml('data')
+	unzip('UTF-8')
+	include('Diagnostic_Tree')
+	fragment('Diagnostic_Tree'))
+WHERE fragment IS NOT NULL;
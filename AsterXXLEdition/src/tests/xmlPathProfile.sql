@@ -0,0 +1,34 @@
+-- Profile of all paths per file
+SELECT *
+FROM XMLPathProfile(
+	ON(	select	filename, data
+		from	table_from_afs(
+					on dummy
+					path('/home/beehive/xml/*.zip')
+					input_format('com.asterdata.ncluster.sqlmr.dfsinput.WholeFileAsBinaryInputFormat')
+					outputs('filename varchar', 'data bytea')
+				)
+    )
+	PARTITION BY filename
+	xml('data')
+	unzip('UTF-8')
+	accumulate('filename')
+	samples(5))
+ORDER BY filename, fullpath, type;
+
+-- Profile of all files, aggregated over all vworkers
+SELECT	fullpath, type, sum(count) as count, sum(valuecount) as valuecount, min(minlength) as minlength, max(maxlength) as maxlength
+FROM XMLPathProfile(
+	ON(	select	data
+		from	table_from_afs(
+					on dummy
+					path('/home/beehive/xml/*.zip')
+					input_format('com.asterdata.ncluster.sqlmr.dfsinput.WholeFileAsBinaryInputFormat')
+					outputs('data bytea')
+				)
+    )
+	xml('data')
+	unzip('UTF-8')
+	parser('fast'))
+GROUP BY fullpath, type
+ORDER BY fullpath, type;
@@ -0,0 +1,28 @@
+-- Parse all files once and store the event streams
+CREATE TABLE xml_events DISTRIBUTE BY HASH(filename) AS
+SELECT *
+FROM XMLPreParse(
+	ON(	select	filename, data
+		from	table_from_afs(
+					on dummy
+					path('/home/beehive/xml/*.zip')
+					input_format('com.asterdata.ncluster.sqlmr.dfsinput.WholeFileAsBinaryInputFormat')
+					outputs('filename varchar', 'data bytea')
+				)
+    )
+	PARTITION BY filename
+	xml('data')
+	unzip('UTF-8')
+	accumulate('filename'));
+
+-- Query the event streams without unzipping and parsing
+SELECT *
+FROM XMLFastFilter(
+	ON xml_events
+	PARTITION BY filename, file
+	ORDER BY chunk
+	xml('events')
+	parser('events')
+	accumulate('filename', 'file')
+	include('/.*/A/'))
+ORDER BY filename, file, id;
@@ -54,9 +54,26 @@ public class Accumulator {
 	 * @param outputEmitter
 	 */
 	public void emit(RowIterator inputIterator, RowEmitter outputEmitter) {
-		for(int idx : argumentIdx) {
-			if(inputIterator != null) inputIterator.getValueAt(idx, valueHolders.get(idx));
-			outputEmitter.addValue(valueHolders.get(idx));
+		for(int i = 0; i < argumentIdx.size(); i++) {
+			if(inputIterator != null) inputIterator.getValueAt(argumentIdx.get(i), valueHolders.get(i));
+			outputEmitter.addValue(valueHolders.get(i));
 		}
 	}
+	
+	/**
+	 * Read columns referenced in accumulate argument without putting them to an output row. Use <code>emit</code> with a null iterator
+	 * to copy them to output rows later.
+	 * @param inputIterator with row and column values to keep.
+	 */
+	public void read(RowIterator inputIterator) {
+		for(int i = 0; i < argumentIdx.size(); i++) inputIterator.getValueAt(argumentIdx.get(i), valueHolders.get(i));
+	}
+	
+	/**
+	 * Put nulls for all columns referenced in accumulate argument to the current output row. The method does not call emitRow.
+	 * @param outputEmitter
+	 */
+	public void emitNulls(RowEmitter outputEmitter) {
+		for(int i = 0; i < argumentIdx.size(); i++) outputEmitter.addNull();
+	}
 }
@@ -0,0 +1,97 @@
+package utils;
+
+import utils.Chunkifier.ByteChunkListener;
+
+/**
+ * @author Juergen Boiselle
+ *
+ * Decode base64 text incrementally, as it is passed in pieces by the XML parser, and deliver the bytes in chunks of a fixed size
+ * like Chunkifier does. Neither the text nor the complete content is kept in memory, only one chunk.
+ * White space, like line breaks of MIME encoded content, is ignored. Padding with '=' ends the content.
+ * This class is not thread safe.
+ */
+public class Base64ChunkDecoder {
+	private static final int[] DECODE = new int[128]; // Value of each base64 char, -1 for white space and -2 for invalid chars
+	static {
+		for(int i = 0; i < DECODE.length; i++) DECODE[i] = Character.isWhitespace((char) i)? -1:-2;
+		String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+		for(int i = 0; i < alphabet.length(); i++) DECODE[alphabet.charAt(i)] = i;
+	}
+	
+	private final ByteChunkListener byteChunkListener;
+	private final byte[] buf;
+	private int len = 0; // Bytes in buf
+	private int chunk = 0; // Number of the next chunk
+	private int bits = 0, numBits = 0; // Decoded bits not yet complete to a byte
+	private boolean isPadded = false; // '=' was found
+	
+	/**
+	 * @param chunkSize maximal number of bytes passed at once.
+	 * @param byteChunkListener to pass the chunks to.
+	 */
+	public Base64ChunkDecoder(int chunkSize, ByteChunkListener byteChunkListener) {
+		this.buf = new byte[chunkSize];
+		this.byteChunkListener = byteChunkListener;
+	}
+	
+	/**
+	 * Decode the next piece of text.
+	 * @param ch
+	 * @param start
+	 * @param length
+	 * @throws IllegalArgumentException if the text contains chars, that are not base64 or white space.
+	 */
+	public void decode(char[] ch, int start, int length) throws IllegalArgumentException {
+		for(int i = start; i < start + length; i++) {
+			char c = ch[i];
+			int value = (c < 128)? DECODE[c]:-2;
+			if(value >= 0 && !isPadded) {
+				bits = ((bits << 6) | value) & 0xffffff;
+				numBits += 6;
+				if(numBits >= 8) {
+					numBits -= 8;
+					buf[len++] = (byte) (bits >>> numBits);
+					if(len == buf.length) flush();
+				}
+			}
+			else if(c == '=') isPadded = true;
+			else if(value != -1) throw new IllegalArgumentException("Invalid base64 character '" + c + "' (" + (int) c + ")");
+		}
+	}
+	
+	/**
+	 * Decode the next piece of text.
+	 * @param s
+	 * @throws IllegalArgumentException if the text contains chars, that are not base64 or white space.
+	 */
+	public void decode(String s) throws IllegalArgumentException {
+		char[] ch = s.toCharArray();
+		decode(ch, 0, ch.length);
+	}
+	
+	/**
+	 * End the content, pass the last chunk and start over with the next content.
+	 * @return number of chunks passed for the content.
+	 */
+	public int finish() {
+		if(len > 0) flush();
+		int chunks = chunk;
+		chunk = 0;
+		bits = numBits = 0;
+		isPadded = false;
+		return chunks;
+	}
+	
+	/**
+	 * Drop the current content without passing the rest, e.g. after a parse error.
+	 */
+	public void clear() {
+		len = 0;
+		finish();
+	}
+	
+	private void flush() {
+		byteChunkListener.newChunk(chunk++, buf, 0, len);
+		len = 0;
+	}
+}
@@ -0,0 +1,52 @@
+package utils;
+
+/**
+ * @author Juergen Boiselle
+ *
+ * Bloom filter on 64 bit hashes. It answers, if a value might be in a set, with a small array of bits, that fits into the CPU caches
+ * even for large sets. Values not in the set are rejected without touching the set itself, values in the set are never rejected.
+ * With 10 bits per value, about 1% of the values not in the set pass the filter.
+ * The positions of the bits are derived from the two halves of the hash, so the hash must be well mixed.
+ * This class is not thread safe for adding.
+ */
+public class BloomFilter {
+	private final long[] bits;
+	private final long numBits;
+	private final int numHashes;
+	
+	/**
+	 * @param expectedValues number of values, that will be added.
+	 * @param bitsPerValue size of the filter. More bits mean less false positives.
+	 */
+	public BloomFilter(int expectedValues, int bitsPerValue) {
+		bits = new long[(int) Math.max(1, ((long) expectedValues * bitsPerValue + 63) / 64)];
+		numBits = 64L * bits.length;
+		numHashes = Math.max(1, (int) Math.round(bitsPerValue * Math.log(2)));
+	}
+	
+	/**
+	 * @param hash of the value to add.
+	 */
+	public void add(long hash) {
+		int h1 = (int) hash, h2 = (int) (hash >>> 32);
+		for(int i = 1; i <= numHashes; i++) {
+			long bit = position(h1 + i*h2);
+			bits[(int) (bit >>> 6)] |= 1L << bit;
+		}
+	}
+	
+	/**
+	 * @param hash of the value to check.
+	 * @return false, if the value was not added for sure. true, if it was probably added.
+	 */
+	public boolean mightContain(long hash) {
+		int h1 = (int) hash, h2 = (int) (hash >>> 32);
+		for(int i = 1; i <= numHashes; i++) {
+			long bit = position(h1 + i*h2);
+			if((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) return false;
+		}
+		return true;
+	}
+	
+	private long position(int combined) {return ((combined < 0)? ~combined:combined) % numBits;}
+}
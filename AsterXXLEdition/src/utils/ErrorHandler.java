@@ -1,6 +1,8 @@
 package utils;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
@@ -36,6 +38,18 @@ import com.asterdata.ncluster.sqlmr.data.SqlType;
  * All parameters like name of the logger and level is written to standard error at the beginning.
  */
 public class ErrorHandler {
+	/**
+	 * @author Juergen Boiselle
+	 *
+	 * Implement this interface to log additional counters of a function together with the counters of the ErrorHandler.
+	 */
+	public interface Counters {
+		/**
+		 * @return current counters as text, one counter per item, e.g. "hits: 10".
+		 */
+		public String[] getCounters();
+	}
+	
 	private Logger logger = null;
 	private boolean stopOnError = false;
 	private int infoN = 0;
@@ -47,6 +61,8 @@ public class ErrorHandler {
 	private int cntPartitionsEntered = 0, cntPartitionsExited = 0, cntPartitionsSkipped = 0;
 	private int cntExceptions = 0;
 	private long elapsedMs = 0L, inRowMs = 0L, inPartitionMs = 0L;
+	private List<String> counterNames = new ArrayList<String>();
+	private List<Counters> counters = new ArrayList<Counters>();
 	
 	/**
 	 * Create a new ErrorHandler.
@@ -74,6 +90,16 @@ public class ErrorHandler {
 		elapsedMs -= System.currentTimeMillis();
 	}
 
+	/**
+	 * Register additional counters, that are logged whenever the counters of the ErrorHandler are logged.
+	 * @param name of the counters in the log.
+	 * @param counters
+	 */
+	public void addCounters(String name, Counters counters) {
+		counterNames.add(name);
+		this.counters.add(counters);
+	}
+	
 	/**
 	 * Call whenever starting to work on a single row, usually at the beginning of a loop thru rows in "operateOnPartition"
 	 * 
@@ -176,6 +202,11 @@ public class ErrorHandler {
 		if(outputEmitter != null) outputEmitter.clearRow();
 	}
 	
+	/**
+	 * @return number of exceptions caught so far. Compare before and after a call to find out, if it failed.
+	 */
+	public int getExceptions() {return cntExceptions;}
+	
 	/**
 	 * Call in the "drainOutputRows" method. Logs all final counters and timings.
 	 */
@@ -250,6 +281,18 @@ public class ErrorHandler {
 			log.append("\n)\n");
 		}
 		
+		// Counters of the function
+		for(int i = 0; i < counters.size(); i++) {
+			log.append(counterNames.get(i));
+			log.append("(\n");
+			for(String counter : counters.get(i).getCounters()) {
+				log.append('\t');
+				log.append(counter);
+				log.append('\n');
+			}
+			log.append(")\n");
+		}
+		
 		// Extras
 		if(msgs.length > 0) {
 			log.append("extra(\n");
@@ -1,5 +1,6 @@
 package utils;
 import java.util.EmptyStackException;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Stack;
@@ -27,6 +28,7 @@ import java.util.regex.Pattern;
  * 			B1a
  * 
  * the full path for B1a is "/B/B1/B1a/" and the regular expression is checked against this full path.
+ * A "=" as first character of the item indicates a literal full path like "=/B/B1/B1a/". The trailing "/" is optional.
  * 
  * Each one list or both lists can be empty or null, which leads to different behavior:
  * 1. If both lists are empty or null, all nodes are included. No filtering applies.
@@ -46,6 +48,8 @@ import java.util.regex.Pattern;
  * All items in the excluded and included list are checked against each node in the tree. So keep in mind that long and complex lists of
  * exclusions or inclusions will need a lot of comparisons. Direct comparison against the local name of the node is done with hash access, so quite fast,
  * whereas matching regular expression is done by matching expression by expression against node by node. This can make a huge difference. 
+ * Literal full paths are kept in a trie of local names, that is followed while walking thru the tree. They cost one hash access per node,
+ * no matter how many are listed. Use them instead of regular expressions for long generated lists of paths.
  */
 public class InExcluder {
 	private enum InOut {INCLUDE, EXCLUDE, UNCHANGED}
@@ -55,6 +59,7 @@ public class InExcluder {
 	private CompareList excluded = null;
 	private CompareList skipped = null;
 	private CompareList localnames = null;
+	private CompareList binaries = new CompareList(null);
 
 	// Current status
 	private Stack<NodeInfo> nodeStack = new Stack<NodeInfo>();
@@ -76,13 +81,23 @@ public class InExcluder {
 		includeParent = null;
 		includeCount = 0;
 		nodeStack.clear();
-		nodeStack.push(new NodeInfo(included.isEmpty(), false, localnames.isEmpty(), 0));
+		nodeStack.push(new NodeInfo(included.isEmpty(), false, localnames.isEmpty(), false, false, 0));
+		included.clear();
+		excluded.clear();
+		skipped.clear();
+		localnames.clear();
+		binaries.clear();
 	}
 	
 	public void enterNode(String localName) {
 		// maintain full path
 		fullPath.append(localName);
 		fullPath.append("/");
+		included.enterNode(localName);
+		excluded.enterNode(localName);
+		skipped.enterNode(localName);
+		localnames.enterNode(localName);
+		binaries.enterNode(localName);
 		
 		// Check for in- or excluded
 		boolean isIncluded = isIncluded();
@@ -96,12 +111,19 @@ public class InExcluder {
 			isIncluded = false;
 
 		// maintain node stack. Java 1.5+ efficiently reuses objects.
-		nodeStack.push(new NodeInfo(isIncluded, skipped.contains(localName, fullPath), localnames.isEmpty()? true:localnames.contains(localName, fullPath), localName.length()));
+		// The root is the include parent, if there is no include list.
+		boolean isIncludeParent = (inOut == InOut.INCLUDE) || (included.isEmpty() && nodeStack.size() == 1);
+		nodeStack.push(new NodeInfo(isIncluded, skipped.contains(localName, fullPath), localnames.isEmpty()? true:localnames.contains(localName, fullPath), isIncludeParent, !binaries.isEmpty() && binaries.contains(localName, fullPath), localName.length()));
 	}
 	
 	public void exitNode() throws EmptyStackException {
 		NodeInfo nodeInfo = nodeStack.pop();
 		if(nodeStack.isEmpty()) throw new EmptyStackException(); // Tree is unbalanced
+		included.exitNode();
+		excluded.exitNode();
+		skipped.exitNode();
+		localnames.exitNode();
+		binaries.exitNode();
 
 		fullPath.setLength(fullPath.length() - nodeInfo.getNameLen() -1);
 	}
@@ -109,7 +131,27 @@ public class InExcluder {
 	public boolean isIncluded() {return nodeStack.peek().isIncluded();}
 	public boolean isSkipped() {return nodeStack.peek().isSkipped();}
 	public boolean matchesLocalname() {return nodeStack.peek().matchesLocalname();}
+	public boolean isIncludeParent() {return nodeStack.peek().isIncludeParent();}
+	
+	/**
+	 * Set the nodes, whose content is binary. Items are local names, regular expressions or literal full paths as in the other lists.
+	 * @param binaries might be null.
+	 */
+	public void setBinaries(List<String> binaries) {
+		this.binaries = new CompareList(binaries);
+		clear();
+	}
+	
+	/**
+	 * @return true, if the current node matches the list set with <code>setBinaries</code>. Only the node itself matches, not its sub nodes.
+	 */
+	public boolean isBinary() {return nodeStack.peek().isBinary();}
 	public String getFullPath() {return fullPath.toString();}
+	
+	/**
+	 * @return the full path as a view, that changes with the next node.
+	 */
+	public CharSequence getFullPathChars() {return fullPath;}
 	public String getIncludeParent() {return includeParent;}
 	public int getIncludeCount() {return includeCount;}
 	
@@ -132,18 +174,24 @@ public class InExcluder {
 		final boolean isIncluded;
 		final boolean isSkipped;
 		final boolean matchesLocalname;
+		final boolean isIncludeParent;
+		final boolean isBinary;
 		final int nameLen;
 		
-		public NodeInfo(boolean isIncluded, boolean isSkipped, boolean matchesLocalname, int nameLen) {
+		public NodeInfo(boolean isIncluded, boolean isSkipped, boolean matchesLocalname, boolean isIncludeParent, boolean isBinary, int nameLen) {
 			this.isIncluded = isIncluded;
 			this.isSkipped = isSkipped;
 			this.matchesLocalname = matchesLocalname;
+			this.isIncludeParent = isIncludeParent;
+			this.isBinary = isBinary;
 			this.nameLen = nameLen;
 		}
 		
 		public boolean isIncluded() {return isIncluded;}
 		public boolean isSkipped() {return isSkipped;}
 		public boolean matchesLocalname() {return matchesLocalname;}
+		public boolean isIncludeParent() {return isIncludeParent;}
+		public boolean isBinary() {return isBinary;}
 		public int getNameLen() {return nameLen;}
 	}
 	
@@ -151,21 +199,52 @@ public class InExcluder {
 	private class CompareList {
 		private HashSet<String> localNames = new HashSet<String>();
 		private Vector<Pattern> path = new Vector<Pattern>();
+		private TrieNode literals = null; // Root of the literal full paths, if there are any
+		private TrieNode[] trieStack = new TrieNode[64]; // Trie node of each open node or null, if no literal starts with its path
+		private int depth = 0;
 		
 		public CompareList(List<String> localNames) {
 			if(localNames == null) return;
 			for(String s : localNames) {
 				if(s.startsWith("/"))
 					this.path.add(Pattern.compile(s)); // Regular expression
+				else if(s.startsWith("="))
+					addLiteral(s.substring(1)); // Full path
 				else
 					this.localNames.add(s); // Direct comparison
 			}
+			clear();
+		}
+		
+		// Start at the root of the tree
+		public void clear() {
+			depth = 0;
+			trieStack[0] = literals;
+		}
+		
+		// Follow the trie one level down
+		public void enterNode(String localName) {
+			if(literals == null) return;
+			TrieNode trieNode = trieStack[depth];
+			if(++depth == trieStack.length) {
+				TrieNode[] t = new TrieNode[2*trieStack.length];
+				System.arraycopy(trieStack, 0, t, 0, trieStack.length);
+				trieStack = t;
+			}
+			trieStack[depth] = (trieNode == null || trieNode.children == null)? null:trieNode.children.get(localName);
+		}
+		
+		public void exitNode() {
+			if(literals != null && depth > 0) depth--;
 		}
 		
 		public boolean contains(String localName, StringBuilder fullPath) {
 			// Direct comparison
 			if(localNames.contains(localName)) return true;
 			
+			// Literal full path
+			if(literals != null && trieStack[depth] != null && trieStack[depth].isPath) return true;
+			
 			// Regular expression comparison
 			for(Pattern pattern : path)
 				if(pattern.matcher(fullPath).matches()) return true;
@@ -174,6 +253,29 @@ public class InExcluder {
 			return false;
 		}
 		
-		public boolean isEmpty() {return localNames.isEmpty() && path.isEmpty();}
+		public boolean isEmpty() {return localNames.isEmpty() && path.isEmpty() && literals == null;}
+		
+		// Add the local names of a full path like "/B/B1/B1a/" to the trie
+		private void addLiteral(String fullPath) {
+			if(literals == null) literals = new TrieNode();
+			TrieNode trieNode = literals;
+			for(String localName : fullPath.split("/")) {
+				if(localName.length() == 0) continue;
+				if(trieNode.children == null) trieNode.children = new HashMap<String, TrieNode>();
+				TrieNode child = trieNode.children.get(localName);
+				if(child == null) {
+					child = new TrieNode();
+					trieNode.children.put(localName, child);
+				}
+				trieNode = child;
+			}
+			trieNode.isPath = true;
+		}
+	}
+	
+	// Node of the trie of literal full paths
+	private static class TrieNode {
+		HashMap<String, TrieNode> children = null;
+		boolean isPath = false; // A literal full path ends here
 	}
 }
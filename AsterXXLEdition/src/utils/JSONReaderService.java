@@ -0,0 +1,299 @@
+package utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.EmptyStackException;
+import java.util.List;
+
+import utils.XMLReaderService.XMLReaderCallback;
+
+/**
+ * @author Juergen Boiselle
+ * 
+ * Parse a JSON document with a hand-written scanner and provide results in the same event driven callback routine as XMLReaderService.
+ * The document is mapped to a tree of nodes like an XML document:
+ * - The top level value is the root node named "root".
+ * - Each member of an object is a node named by its key.
+ * - An array, that is the value of a member, is not a node by itself. Each of its items is a node named by the key of the member,
+ * 		like repeated elements in XML. Items of the root array and of arrays within arrays are named "item".
+ * 		A member with an empty array therefore has no node and no row, like a missing member.
+ * 
+ * Nodes are passed to the callback, after all their sub nodes were passed, with id and first_sub_id as in XMLReaderService.
+ * The type of a node is 'O' for objects, 'L' for arrays within arrays or at root, 'S' for strings, 'N' for numbers, 'B' for booleans
+ * and 'Z' for null. The value is the unescaped string, the number or boolean as written in the document, null for null and an empty
+ * string for objects and arrays. uri is always empty, qName is the same as the local name.
+ * Include, exclude, skip and local name lists are evaluated with InExcluder on the path of keys.
+ * This class is not thread safe.
+ */
+public class JSONReaderService {
+	/**
+	 * @author Juergen Boiselle
+	 *
+	 * Thrown, if the document is not well formed JSON.
+	 */
+	public static class JSONException extends IOException {
+		private static final long serialVersionUID = 1L;
+		public JSONException(String message) {super(message);}
+	}
+	
+	// Thrown to end parsing, when a node of the skip list was found
+	private static class SkippedException extends IOException {
+		private static final long serialVersionUID = 1L;
+	}
+	
+	private XMLReaderCallback xmlReaderCallback;
+	private InExcluder inExcluder;
+	private int id = 0;
+	
+	// Input
+	private Reader reader;
+	private char[] buf = new char[64*1024];
+	private int pos = 0, limit = 0;
+	private long offset = 0; // Characters read before buf
+	private StringBuilder text = new StringBuilder();
+	private char[] chars = new char[1024]; // Complete string to replace invalid XML chars in
+	
+	public JSONReaderService(List<String> included, List<String> excluded, List<String> skip, List<String> localnames) {
+		inExcluder = new InExcluder(included, excluded, skip, localnames);
+	}
+	
+	/**
+	 * Parse one JSON document.
+	 * @param reader to read the document from. The reader is not closed.
+	 * @param xmlReaderCallback
+	 * @throws JSONException if the document is not well formed.
+	 * @throws IOException if reading failed.
+	 */
+	public void parse(Reader reader, XMLReaderCallback xmlReaderCallback) throws IOException {
+		this.xmlReaderCallback = xmlReaderCallback;
+		this.reader = reader;
+		pos = limit = 0;
+		offset = 0;
+		id = 0;
+		inExcluder.clear();
+		
+		try {
+			parseValue("root", nextToken());
+			if(nextToken() != -1) throw error("end of document expected");
+		} catch (SkippedException e) {
+			// Do nothing when skipped
+		} finally {
+			this.reader = null;
+		}
+	}
+	
+	// Parse a value, that is a node, starting with c.
+	private void parseValue(String name, int c) throws IOException {
+		inExcluder.enterNode(name);
+		int first_sub_id = id;
+		String type, value;
+		
+		switch(c) {
+		case '{':
+			parseObject();
+			type = "O";
+			value = "";
+			break;
+		case '[':
+			parseItems("item");
+			type = "L";
+			value = "";
+			break;
+		case '"':
+			type = "S";
+			value = parseString();
+			break;
+		case 't': case 'f':
+			type = "B";
+			value = parseLiteral((char) c);
+			if(!value.equals("true") && !value.equals("false")) throw error("unexpected '" + value + "'");
+			break;
+		case 'n':
+			type = "Z";
+			if(!parseLiteral((char) c).equals("null")) throw error("unexpected literal");
+			value = null;
+			break;
+		default:
+			if(c != '-' && (c < '0' || c > '9')) throw error(c == -1? "unexpected end of document":"unexpected character '" + (char) c + "'");
+			type = "N";
+			value = parseNumber((char) c);
+		}
+		
+		if(inExcluder.isIncluded() && inExcluder.matchesLocalname())
+			xmlReaderCallback.newRow(inExcluder.getIncludeParent(), inExcluder.getIncludeCount(), inExcluder.getFullPath(),
+					"", name, name, type, value, id, first_sub_id);
+		id++;
+		exitNode();
+	}
+	
+	// Parse members of an object after '{'
+	private void parseObject() throws IOException {
+		int c = nextToken();
+		if(c == '}') return;
+		
+		for(;;) {
+			if(c != '"') throw error("key expected");
+			String key = parseString();
+			if(nextToken() != ':') throw error("':' expected");
+			
+			c = nextToken();
+			if(c == '[') parseItems(key); // Items are named by the key
+			else parseValue(key, c);
+			
+			c = nextToken();
+			if(c == '}') return;
+			if(c != ',') throw error("',' or '}' expected");
+			c = nextToken();
+		}
+	}
+	
+	// Parse items of an array after '['
+	private void parseItems(String name) throws IOException {
+		int c = nextToken();
+		if(c == ']') return;
+		
+		for(;;) {
+			parseValue(name, c);
+			c = nextToken();
+			if(c == ']') return;
+			if(c != ',') throw error("',' or ']' expected");
+			c = nextToken();
+		}
+	}
+	
+	// Parse string after '"'
+	private String parseString() throws IOException {
+		text.setLength(0);
+		for(;;) {
+			// Copy unescaped characters at once
+			int start = pos;
+			while(pos < limit && buf[pos] != '"' && buf[pos] != '\\') pos++;
+			text.append(buf, start, pos - start);
+			
+			int c = read();
+			if(c == '"') return sanitize();
+			if(c == -1) throw error("unterminated string");
+			if(c != '\\') { // Buffer was empty
+				pos--;
+				continue;
+			}
+			
+			c = read();
+			switch(c) {
+			case '"': case '\\': case '/': text.append((char) c); break;
+			case 'b': text.append('?'); break; // Not a valid XML character
+			case 'f': text.append('?'); break;
+			case 'n': text.append('\n'); break;
+			case 'r': text.append('\r'); break;
+			case 't': text.append('\t'); break;
+			case 'u':
+				int u = 0;
+				for(int i = 0; i < 4; i++) {
+					int d = Character.digit(read(), 16);
+					if(d == -1) throw error("invalid unicode escape");
+					u = u*16 + d;
+				}
+				text.append((char) u); // Unpaired surrogates are replaced, when the string is complete
+				break;
+			default:
+				throw error("invalid escape");
+			}
+		}
+	}
+	
+	// Replace invalid XML chars in the complete string, so that surrogate pairs split between two reads stay valid
+	private String sanitize() {
+		int len = text.length();
+		if(chars.length < len) chars = new char[Math.max(len, 2*chars.length)];
+		text.getChars(0, len, chars, 0);
+		Utils.replaceInvalid(chars, 0, len);
+		return new String(chars, 0, len);
+	}
+	
+	// Parse number starting with c
+	private String parseNumber(char c) throws IOException {
+		text.setLength(0);
+		text.append(c);
+		for(int n = peek(); (n >= '0' && n <= '9') || n == '.' || n == 'e' || n == 'E' || n == '+' || n == '-'; n = peek()) text.append((char) read());
+		if(!isNumber(text)) throw error("invalid number '" + text + "'");
+		return text.toString();
+	}
+	
+	// Check the grammar of JSON numbers: -?(0|[1-9][0-9]*)(.[0-9]+)?([eE][+-]?[0-9]+)?
+	private static boolean isNumber(CharSequence s) {
+		int i = 0, len = s.length();
+		if(i < len && s.charAt(i) == '-') i++;
+		if(i < len && s.charAt(i) == '0') i++;
+		else if(i < len && s.charAt(i) >= '1' && s.charAt(i) <= '9') i = digits(s, i);
+		else return false;
+		
+		if(i < len && s.charAt(i) == '.') {
+			int j = digits(s, i+1);
+			if(j == i+1) return false;
+			i = j;
+		}
+		if(i < len && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+			i++;
+			if(i < len && (s.charAt(i) == '+' || s.charAt(i) == '-')) i++;
+			int j = digits(s, i);
+			if(j == i) return false;
+			i = j;
+		}
+		return i == len;
+	}
+	
+	// Position behind the digits starting at i
+	private static int digits(CharSequence s, int i) {
+		while(i < s.length() && s.charAt(i) >= '0' && s.charAt(i) <= '9') i++;
+		return i;
+	}
+	
+	// Parse true, false or null starting with c
+	private String parseLiteral(char c) throws IOException {
+		text.setLength(0);
+		text.append(c);
+		for(int n = peek(); n >= 'a' && n <= 'z'; n = peek()) text.append((char) read());
+		return text.toString();
+	}
+	
+	// Leave node and stop, if it is in the skip list
+	private void exitNode() throws IOException {
+		if(inExcluder.isSkipped()) throw new SkippedException();
+		try {
+			inExcluder.exitNode();
+		}
+		catch(EmptyStackException e) {
+			throw error("JSON unbalanced");
+		}
+	}
+	
+	// Return next character, that is not white space, or -1 at end of document
+	private int nextToken() throws IOException {
+		int c = read();
+		while(c == ' ' || c == '\n' || c == '\r' || c == '\t') c = read();
+		return c;
+	}
+	
+	private int peek() throws IOException {
+		if(pos == limit && !fill()) return -1;
+		return buf[pos];
+	}
+	
+	private int read() throws IOException {
+		if(pos == limit && !fill()) return -1;
+		return buf[pos++];
+	}
+	
+	private boolean fill() throws IOException {
+		offset += limit;
+		pos = limit = 0;
+		int n = reader.read(buf, 0, buf.length);
+		if(n <= 0) return false;
+		limit = n;
+		return true;
+	}
+	
+	private JSONException error(String message) {
+		return new JSONException("JSON: " + message + " at character " + (offset + pos));
+	}
+}
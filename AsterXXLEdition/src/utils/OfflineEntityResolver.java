@@ -0,0 +1,91 @@
+package utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * @author Juergen Boiselle
+ *
+ * Resolve external DTDs and entities without network access. The vworkers have no outbound network and the default resolver of the
+ * XML parser would wait for a connection timeout on each document, that declares a DTD.
+ * If a catalog directory is given, an entity is resolved by the file name of its system id, e.g. "http://example.com/dtd/feed.dtd"
+ * is read from "catalog/feed.dtd". The content of the files is cached for all instances in the JVM, so that each file is read once.
+ * All other entities, and all entities if no catalog is given, resolve to an empty document.
+ * Instances are not thread safe. The cache is.
+ */
+public class OfflineEntityResolver implements EntityResolver, ErrorHandler.Counters {
+	private static final byte[] EMPTY = new byte[0];
+	private static final ConcurrentHashMap<String, byte[]> cache = new ConcurrentHashMap<String, byte[]>(); // Content by absolute file name
+
+	private final File catalog;
+	private long resolved = 0L, empty = 0L;
+
+	/**
+	 * @param catalog directory with DTD and entity files or null, if all entities are resolved to an empty document.
+	 */
+	public OfflineEntityResolver(String catalog) {this.catalog = (catalog == null)? null:new File(catalog);}
+
+	/* (non-Javadoc)
+	 * @see org.xml.sax.EntityResolver#resolveEntity(java.lang.String, java.lang.String)
+	 *
+	 * Never touches the network. Files of the catalog, that cannot be read, resolve to an empty document.
+	 */
+	public InputSource resolveEntity(String publicId, String systemId) throws SAXException, IOException {
+		byte[] content = (catalog == null || systemId == null)? EMPTY:getContent(new File(catalog, fileName(systemId)));
+		if(content.length == 0) empty++;
+		else resolved++;
+
+		InputSource inputSource = new InputSource(new ByteArrayInputStream(content));
+		inputSource.setPublicId(publicId);
+		inputSource.setSystemId(systemId);
+		return inputSource;
+	}
+
+	/**
+	 * @return true, if a catalog directory is configured.
+	 */
+	public boolean hasCatalog() {return catalog != null;}
+
+	/* (non-Javadoc)
+	 * @see utils.ErrorHandler.Counters#getCounters()
+	 */
+	public String[] getCounters() {
+		return new String[] {"resolved from catalog: " + resolved, "resolved empty: " + empty};
+	}
+
+	// Read file once per JVM. Missing files are cached as empty.
+	private static byte[] getContent(File file) {
+		String key = file.getAbsolutePath();
+		byte[] content = cache.get(key);
+		if(content != null) return content;
+
+		try {
+			InputStream inputStream = new FileInputStream(file);
+			try {
+				content = Utils.toByteArray(inputStream);
+			}
+			finally {
+				inputStream.close();
+			}
+		}
+		catch(IOException e) {
+			content = EMPTY;
+		}
+		cache.putIfAbsent(key, content);
+		return content;
+	}
+
+	// File name is the last part of the system id. Directories of the system id are not part of the catalog.
+	private static String fileName(String systemId) {
+		int idx = Math.max(systemId.lastIndexOf('/'), systemId.lastIndexOf('\\'));
+		return systemId.substring(idx + 1);
+	}
+}
@@ -0,0 +1,49 @@
+package utils;
+
+import java.util.Collection;
+import java.util.HashMap;
+
+/**
+ * @author Juergen Boiselle
+ *
+ * Encode the path strings of a row, that is full path, uri, local name and qName, as one 64 bit id and keep the distinct paths.
+ * The id is a hash of the strings. It is the same on all vworkers and in all partitions, so that rows of different instances
+ * can be joined to any dictionary entry with the same id. Collisions of different paths are very unlikely with 64 bits, but not impossible.
+ * This class is not thread safe.
+ */
+public class PathDictionary {
+	private HashMap<Long, String[]> paths = new HashMap<Long, String[]>();
+	
+	/**
+	 * Get the id of a path and remember the path, if it is new.
+	 * @param fullPath might be a view like a StringBuilder. It is copied to a string only, if the path is new.
+	 * @param uri
+	 * @param localName
+	 * @param qName
+	 * @return id of the path.
+	 */
+	public long getPathId(CharSequence fullPath, String uri, String localName, String qName) {
+		long pathId = hash(localName, hash(qName, hash(uri, hash(fullPath, Utils.FNV_OFFSET))));
+		if(!paths.containsKey(pathId)) paths.put(pathId, new String[] {fullPath.toString(), uri, localName, qName});
+		return pathId;
+	}
+	
+	/**
+	 * @param pathId
+	 * @return full path, uri, local name and qName of the id or null, if the id was not returned by <code>getPathId</code>.
+	 */
+	public String[] getPath(long pathId) {return paths.get(pathId);}
+	
+	/**
+	 * @return ids of all paths found.
+	 */
+	public Collection<Long> getPathIds() {return paths.keySet();}
+	
+	public int size() {return paths.size();}
+	
+	// Remove all paths found
+	public void clear() {paths.clear();}
+	
+	// 64 bit FNV-1a over the characters of s followed by a separator, that cannot be part of a string
+	private static long hash(CharSequence s, long hash) {return (Utils.fnv1a64(s, hash) ^ 0xffff) * Utils.FNV_PRIME;}
+}
@@ -0,0 +1,183 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * @author Juergen Boiselle
+ *
+ * Aggregate the rows of XMLReaderService into a profile of the distinct paths found. The paths are kept in a trie of local names,
+ * so that the profile can be listed parent before child in the order, the paths were found first.
+ * For each path and type ('T' or 'A') the number of nodes, the number of nodes with a value, the minimal and maximal length of these
+ * values and the first distinct values as samples are kept. A value is counted, if it contains other characters then white space.
+ * This class is not thread safe.
+ */
+public class PathProfile {
+	private static final int MAX_SAMPLE_CHARS = 100; // Samples are cut to this length
+
+	private final int samples; // Number of samples kept per path
+	private Node root = new Node(null, null, 0);
+	private HashMap<String, Node> elements = new HashMap<String, Node>(); // Nodes of tags by full path
+	private HashMap<String, Node> attributes = new HashMap<String, Node>(); // Nodes of attributes by full path
+
+	/**
+	 * @param samples number of distinct values kept per path.
+	 */
+	public PathProfile(int samples) {this.samples = samples;}
+
+	/**
+	 * Add one row of XMLReaderService to the profile.
+	 * @param fullPath
+	 * @param uri
+	 * @param localName
+	 * @param qName
+	 * @param type 'T' for tags and 'A' for attributes. Other rows are ignored.
+	 * @param value
+	 */
+	public void add(String fullPath, String uri, String localName, String qName, String type, String value) {
+		boolean isAttribute = "A".equals(type);
+		if(!isAttribute && !"T".equals(type)) return;
+
+		HashMap<String, Node> nodes = isAttribute? attributes:elements;
+		Node node = nodes.get(fullPath);
+		if(node == null) {
+			node = find(fullPath, isAttribute);
+			nodes.put(fullPath, node);
+		}
+		node.add(uri, qName, value);
+	}
+
+	/**
+	 * @return all paths found with at least one node, parent before child. Attributes of an element are listed before its sub elements.
+	 */
+	public List<Node> getNodes() {
+		List<Node> nodes = new ArrayList<Node>();
+		collect(root, nodes);
+		return nodes;
+	}
+
+	public int size() {return elements.size() + attributes.size();}
+
+	// Remove all paths found
+	public void clear() {
+		root = new Node(null, null, 0);
+		elements.clear();
+		attributes.clear();
+	}
+
+	// Walk down the trie along the local names of the full path and create missing nodes
+	private Node find(String fullPath, boolean isAttribute) {
+		Node node = root;
+		int start = fullPath.startsWith("/")? 1:0;
+		while(start < fullPath.length()) {
+			int end = fullPath.indexOf('/', start);
+			if(end == -1) end = fullPath.length();
+			String localName = fullPath.substring(start, end);
+			start = end + 1;
+			node = node.child(localName, isAttribute && start >= fullPath.length());
+		}
+		return node;
+	}
+
+	private static void collect(Node node, List<Node> nodes) {
+		if(node.count > 0) nodes.add(node);
+		if(node.attributes != null) for(Node attribute : node.attributes.values()) collect(attribute, nodes);
+		if(node.elements != null) for(Node element : node.elements.values()) collect(element, nodes);
+	}
+
+	/**
+	 * Statistics of one path.
+	 */
+	public class Node {
+		private final Node parent;
+		private final String localName;
+		private final int depth;
+		private final boolean isAttribute;
+		private LinkedHashMap<String, Node> elements = null;
+		private LinkedHashMap<String, Node> attributes = null;
+		private String uri = null;
+		private String qName = null;
+		private long count = 0;
+		private long valueCount = 0;
+		private int minLength = Integer.MAX_VALUE;
+		private int maxLength = 0;
+		private List<String> samples = new ArrayList<String>();
+
+		private Node(Node parent, String localName, int depth) {this(parent, localName, depth, false);}
+
+		private Node(Node parent, String localName, int depth, boolean isAttribute) {
+			this.parent = parent;
+			this.localName = localName;
+			this.depth = depth;
+			this.isAttribute = isAttribute;
+		}
+
+		private Node child(String localName, boolean isAttribute) {
+			if(isAttribute && attributes == null) attributes = new LinkedHashMap<String, Node>();
+			else if(!isAttribute && elements == null) elements = new LinkedHashMap<String, Node>();
+			LinkedHashMap<String, Node> children = isAttribute? attributes:elements;
+
+			Node child = children.get(localName);
+			if(child == null) {
+				child = new Node(this, localName, depth + 1, isAttribute);
+				children.put(localName, child);
+			}
+			return child;
+		}
+
+		private void add(String uri, String qName, String value) {
+			if(count++ == 0) {
+				this.uri = uri;
+				this.qName = qName;
+			}
+			if(value == null || isBlank(value)) return;
+
+			valueCount++;
+			minLength = Math.min(minLength, value.length());
+			maxLength = Math.max(maxLength, value.length());
+			if(this.samples.size() < PathProfile.this.samples) {
+				String sample = (value.length() > MAX_SAMPLE_CHARS)? value.substring(0, MAX_SAMPLE_CHARS):value;
+				if(!this.samples.contains(sample)) this.samples.add(sample);
+			}
+		}
+
+		/**
+		 * @return the full path like XMLReaderService returns it.
+		 */
+		public String getFullPath() {
+			StringBuilder fullPath = new StringBuilder();
+			for(Node node = this; node.parent != null; node = node.parent) fullPath.insert(0, '/').insert(1, node.localName);
+			return fullPath.append('/').toString();
+		}
+
+		public String getUri() {return uri;}
+		public String getLocalName() {return localName;}
+		public String getQName() {return qName;}
+		public String getType() {return isAttribute? "A":"T";}
+		public int getDepth() {return depth;}
+		public long getCount() {return count;}
+		public long getValueCount() {return valueCount;}
+
+		/**
+		 * @return minimal length of the values or -1, if no value was found.
+		 */
+		public int getMinLength() {return (valueCount == 0)? -1:minLength;}
+
+		/**
+		 * @return maximal length of the values or -1, if no value was found.
+		 */
+		public int getMaxLength() {return (valueCount == 0)? -1:maxLength;}
+
+		/**
+		 * @return the first distinct values in order of appearance, cut to 100 characters.
+		 */
+		public List<String> getSamples() {return samples;}
+	}
+
+	private static boolean isBlank(String s) {
+		for(int i = 0; i < s.length(); i++) if(!Character.isWhitespace(s.charAt(i))) return false;
+		return true;
+	}
+}
@@ -0,0 +1,110 @@
+package utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.zip.ZipEntry;
+
+/**
+ * @author Juergen Boiselle
+ *
+ * Keep the rows parsed from ZIP entries, so that an entry seen before, like a reference file contained in many archives,
+ * is replayed instead of parsed again. Entries are identified by their CRC, their size and the configuration of the parse,
+ * e.g. include and exclude lists. The content is not compared, so two different entries with equal CRC32 and size share the cached rows.
+ * The cache is shared by all instances in the JVM and therefore by all partitions of a vworker.
+ * Its memory is bounded by the estimated bytes of the rows. The least recently used entries are removed first.
+ * Each instance counts its own hits and misses. Instances are not thread safe. The cache is.
+ */
+public class RowCache implements ErrorHandler.Counters {
+	private static final LinkedHashMap<String, XMLRowBuffer> cache = new LinkedHashMap<String, XMLRowBuffer>(16, 0.75f, true); // In access order
+	private static long bytes = 0L; // Estimated bytes of all cached rows
+
+	private final long maxBytes;
+	private final String configHash;
+	private long hits = 0L, misses = 0L, uncacheable = 0L, tooLarge = 0L;
+
+	/**
+	 * @param maxBytes estimated memory of all cached rows. If a cache of another configuration is larger, the smaller bound
+	 * 		applies to the entries added by this instance.
+	 * @param config all parameters of the parse, that change the rows, e.g. the include list. Entries are cached per configuration.
+	 */
+	public RowCache(long maxBytes, String config) {
+		this.maxBytes = maxBytes;
+		configHash = Long.toHexString(Utils.fnv1a64(config));
+	}
+
+	/**
+	 * @param zipEntry
+	 * @return the key of the entry or null, if the ZIP does not contain CRC and size in front of the entry.
+	 */
+	public String getKey(ZipEntry zipEntry) {
+		if(zipEntry.getCrc() == -1L || zipEntry.getSize() == -1L) {
+			uncacheable++;
+			return null;
+		}
+		return Long.toHexString(zipEntry.getCrc()) + ":" + zipEntry.getSize() + ":" + configHash;
+	}
+
+	/**
+	 * @param key of the entry.
+	 * @return the cached rows of the entry or null, if it was not cached. The rows must not be changed.
+	 */
+	public XMLRowBuffer get(String key) {
+		XMLRowBuffer rows;
+		synchronized(cache) {
+			rows = cache.get(key);
+		}
+		if(rows == null) misses++;
+		else hits++;
+		return rows;
+	}
+
+	/**
+	 * Cache the rows of an entry and remove the least recently used entries, until the rows fit.
+	 * @param key of the entry.
+	 * @param rows all rows of the entry. Rows larger then the cache are not cached. The rows must not be changed afterwards.
+	 */
+	public void put(String key, XMLRowBuffer rows) {
+		if(rows.getBytes() > maxBytes) {
+			tooLarge++;
+			return;
+		}
+		synchronized(cache) {
+			XMLRowBuffer old = cache.put(key, rows);
+			if(old != null) bytes -= old.getBytes();
+			bytes += rows.getBytes();
+			for(Iterator<XMLRowBuffer> it = cache.values().iterator(); bytes > maxBytes && it.hasNext();) {
+				bytes -= it.next().getBytes();
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * @return the estimated bytes of a rows buffer, that can still be cached.
+	 */
+	public long getMaxBytes() {return maxBytes;}
+
+	/**
+	 * Remove all entries of all configurations.
+	 */
+	public static void clear() {
+		synchronized(cache) {
+			cache.clear();
+			bytes = 0L;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see utils.ErrorHandler.Counters#getCounters()
+	 */
+	public String[] getCounters() {
+		int entries;
+		long cachedBytes;
+		synchronized(cache) {
+			entries = cache.size();
+			cachedBytes = bytes;
+		}
+		return new String[] {"hits: " + hits, "misses: " + misses, "not cacheable: " + uncacheable, "too large: " + tooLarge,
+				"cached entries: " + entries, "cached bytes: " + cachedBytes};
+	}
+}
@@ -0,0 +1,105 @@
+package utils;
+
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+
+import com.asterdata.ncluster.sqlmr.IllegalUsageException;
+import com.asterdata.ncluster.sqlmr.RuntimeContract;
+import com.asterdata.ncluster.sqlmr.data.RowView;
+import com.asterdata.ncluster.sqlmr.data.SqlType;
+import com.asterdata.ncluster.sqlmr.data.ValueHolder;
+
+/**
+ * @author Juergen Boiselle
+ *
+ * Decide for each document, ZIP entry or partition, if it is part of a random sample. The decision is a hash of the seed and a key,
+ * that identifies the document: The partition key of a partition, the document of a row and name, CRC and size of a ZIP entry.
+ * The sample therefore depends neither on the order of the input nor on the vworker, and the decisions for different keys are independent.
+ * Documents with the same key are sampled together. Partitions are decided before they are read.
+ * This class is not thread safe.
+ */
+public class Sampler {
+	private final double fraction;
+	private final long seed;
+	
+	/**
+	 * @param fraction of documents to sample, more then 0 and at most 1.
+	 * @param seed of the random numbers.
+	 */
+	public Sampler(double fraction, long seed) {
+		this.fraction = fraction;
+		this.seed = seed;
+	}
+	
+	/**
+	 * Create a sampler from the optional parameter with the fraction and an optional seed, e.g. sample('0.01', '42').
+	 * @param contract
+	 * @param parameter
+	 * @return null, if the parameter is not set.
+	 * @throws IllegalUsageException if the parameter does not contain a valid fraction and seed.
+	 */
+	public static Sampler getSampler(RuntimeContract contract, String parameter) throws IllegalUsageException {
+		if(!contract.hasArgumentClause(parameter)) return null;
+		
+		List<String> values = contract.useArgumentClause(parameter).getValues();
+		if(values.size() < 1 || values.size() > 2)
+			throw new IllegalUsageException(parameter + ": expected a fraction and an optional seed");
+		try {
+			double fraction = Double.parseDouble(values.get(0));
+			if(!(fraction > 0.0 && fraction <= 1.0))
+				throw new IllegalUsageException(parameter + ": unexpected fraction '" + values.get(0) + "'. Expected more then 0 and at most 1");
+			return new Sampler(fraction, (values.size() > 1)? Long.parseLong(values.get(1)):0L);
+		} catch(NumberFormatException e) {
+			throw new IllegalUsageException(parameter + ": unexpected value '" + values + "'. Expected a fraction and an integer seed");
+		}
+	}
+	
+	/**
+	 * Decide for a document by its key.
+	 * @param key identifying the document.
+	 * @return true, if the document is part of the sample.
+	 */
+	public boolean isSampled(CharSequence key) {return isSampled(Utils.fnv1a64(key, Utils.FNV_OFFSET ^ seed));}
+	
+	/**
+	 * Decide for a partition by its partition key.
+	 * @param definition of the partition.
+	 * @return true, if the partition is part of the sample.
+	 */
+	public boolean isSampled(RowView definition) {
+		StringBuilder key = new StringBuilder();
+		for(int i = 0; i < definition.getColumnCount(); i++) {
+			ValueHolder valueHolder = new ValueHolder(definition.getColumnTypes().get(i));
+			definition.getValueAt(i, valueHolder);
+			if(!valueHolder.isNull()) valueHolder.toString(key);
+			key.append('\0'); // Separates the values
+		}
+		return isSampled(key);
+	}
+	
+	/**
+	 * Decide for a row by its document.
+	 * @param row
+	 * @param column of the document, either bytea or character varying.
+	 * @return true, if the row is part of the sample.
+	 */
+	public boolean isSampled(RowView row, int column) {
+		if(row.isNullAt(column)) return isSampled("");
+		if(row.getColumnTypes().get(column) == SqlType.getType("bytea")) {
+			byte[] b = row.getBytesAt(column);
+			return isSampled(Utils.fnv1a64(b, 0, b.length, Utils.FNV_OFFSET ^ seed));
+		}
+		return isSampled(row.getStringAt(column));
+	}
+	
+	/**
+	 * Decide for a ZIP entry by its name, CRC and size. The entry was opened by the ZipInputStream already.
+	 * @param zipEntry
+	 * @return true, if the entry is part of the sample.
+	 */
+	public boolean isSampled(ZipEntry zipEntry) {return isSampled(zipEntry.getName() + ":" + zipEntry.getCrc() + ":" + zipEntry.getSize());}
+	
+	// A random number seeded with the hash spreads all bits of the hash
+	private boolean isSampled(long hash) {return fraction >= 1.0 || new Random(hash).nextDouble() < fraction;}
+}
@@ -0,0 +1,87 @@
+package utils;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * @author Juergen Boiselle
+ *
+ * Replace invalid XML chars by '?' while reading, so that the XML parser does not fail on them. Whole buffers are checked at once
+ * with <code>Utils.replaceInvalid</code>. A high surrogate at the end of a buffer is kept back for the next read, so that surrogate pairs
+ * split between two reads of the underlying reader stay valid.
+ * Mark and reset are not supported. This class is not thread safe.
+ */
+public class SanitizingReader extends FilterReader {
+	private int pending = -1; // Char kept back from the last read or -1
+	private boolean isPendingPaired = false; // pending is the low surrogate of a pair, whose high surrogate was returned already
+	private final char[] single = new char[1]; // Buffer of read()
+	
+	/**
+	 * @param reader to read from.
+	 */
+	public SanitizingReader(Reader reader) {super(reader);}
+	
+	/* (non-Javadoc)
+	 * @see java.io.FilterReader#read()
+	 */
+	public int read() throws IOException {
+		return (read(single, 0, 1) == -1)? -1:single[0];
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.io.FilterReader#read(char[], int, int)
+	 */
+	public int read(char[] b, int off, int len) throws IOException {
+		if(len == 0) return 0;
+		int n = 0, checked = 0;
+		if(pending != -1) {
+			b[off] = (char) pending;
+			if(isPendingPaired) checked = 1;
+			pending = -1;
+			isPendingPaired = false;
+			n = 1;
+		}
+		if(n < len) {
+			int ret = in.read(b, off + n, len - n);
+			if(ret == -1 && n == 0) return -1;
+			if(ret > 0) n += ret;
+		}
+		
+		// Keep a high surrogate at the end for the next read, its low surrogate might follow
+		if(n > checked && Character.isHighSurrogate(b[off + n - 1])) {
+			if(n > 1) {
+				pending = b[off + --n];
+			}
+			else { // Single char, decide now
+				int next = in.read();
+				if(next != -1) pending = next;
+				if(next != -1 && Character.isLowSurrogate((char) next)) {
+					isPendingPaired = true; // Valid pair, returned in two reads
+					return 1;
+				}
+			}
+		}
+		Utils.replaceInvalid(b, off + checked, n - checked);
+		return n;
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.io.FilterReader#skip(long)
+	 */
+	public long skip(long n) throws IOException {
+		char[] b = new char[(int) Math.min(n, 8192)];
+		long skipped = 0;
+		while(skipped < n) {
+			int ret = read(b, 0, (int) Math.min(n - skipped, b.length));
+			if(ret == -1) break;
+			skipped += ret;
+		}
+		return skipped;
+	}
+	
+	public boolean ready() throws IOException {return pending != -1 || in.ready();}
+	public boolean markSupported() {return false;}
+	public void mark(int readAheadLimit) throws IOException {throw new IOException("mark not supported");}
+	public void reset() throws IOException {throw new IOException("reset not supported");}
+}
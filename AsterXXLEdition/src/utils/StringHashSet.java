@@ -0,0 +1,119 @@
+package utils;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * @author Juergen Boiselle
+ *
+ * Fixed set of strings to check values against, e.g. a list of customer ids. The strings are kept in an open addressing table
+ * with linear probing and their 64 bit hashes, so that most lookups compare a hash and touch one slot only.
+ * Sets with at least BLOOM_THRESHOLD strings get a BloomFilter as front end, that rejects most values not in the set without
+ * touching the large table.
+ * Lookups are not thread safe, because they are counted.
+ */
+public class StringHashSet implements ErrorHandler.Counters {
+	public static final int BLOOM_THRESHOLD = 16384;
+	
+	private final String[] keys;
+	private final long[] hashes;
+	private final int mask;
+	private final BloomFilter bloomFilter;
+	private int size = 0;
+	private long lookups = 0L, rejected = 0L, found = 0L;
+	
+	/**
+	 * @param values strings of the set. Null and duplicates are ignored.
+	 */
+	public StringHashSet(Collection<String> values) {
+		int capacity = Math.max(16, Integer.highestOneBit(Math.max(1, 2*values.size() - 1)) << 1); // At most half full
+		keys = new String[capacity];
+		hashes = new long[capacity];
+		mask = capacity - 1;
+		bloomFilter = (values.size() >= BLOOM_THRESHOLD)? new BloomFilter(values.size(), 10):null;
+		for(String value : values) add(value);
+	}
+	
+	/**
+	 * Create a set from values and the lines of a file.
+	 * @param values might be null.
+	 * @param file might be null. Name of a UTF-8 encoded file with one value per line.
+	 * @return the set.
+	 * @throws IOException if the file cannot be read.
+	 */
+	public static StringHashSet load(List<String> values, String file) throws IOException {
+		List<String> all = new ArrayList<String>();
+		if(values != null) all.addAll(values);
+		if(file != null) {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+			try {
+				for(String line = reader.readLine(); line != null; line = reader.readLine()) all.add(line);
+			}
+			finally {
+				reader.close();
+			}
+		}
+		return new StringHashSet(all);
+	}
+	
+	/**
+	 * @param value
+	 * @return true, if the value is in the set.
+	 */
+	public boolean contains(String value) {
+		lookups++;
+		if(value == null) return false;
+		long hash = hash(value);
+		if(bloomFilter != null && !bloomFilter.mightContain(hash)) {
+			rejected++;
+			return false;
+		}
+		
+		for(int i = (int) hash & mask; keys[i] != null; i = (i + 1) & mask) {
+			if(hashes[i] == hash && keys[i].equals(value)) {
+				found++;
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @return number of distinct strings in the set.
+	 */
+	public int size() {return size;}
+	
+	/* (non-Javadoc)
+	 * @see utils.ErrorHandler.Counters#getCounters()
+	 */
+	public String[] getCounters() {
+		return new String[] {"values: " + size, "lookups: " + lookups, "rejected by bloom filter: " + rejected, "found: " + found};
+	}
+	
+	private void add(String value) {
+		if(value == null) return;
+		long hash = hash(value);
+		int i = (int) hash & mask;
+		for(; keys[i] != null; i = (i + 1) & mask) if(hashes[i] == hash && keys[i].equals(value)) return;
+		keys[i] = value;
+		hashes[i] = hash;
+		size++;
+		if(bloomFilter != null) bloomFilter.add(hash);
+	}
+	
+	// 64 bit FNV-1a, mixed with the finalizer of MurmurHash3, so that the low bits select the slot
+	private static long hash(String s) {
+		long h = Utils.fnv1a64(s);
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,67 @@
+package utils;
+
+/**
+ * @author Juergen Boiselle
+ *
+ * Bounded table of canonical strings. <code>intern</code> returns an instance with the same content, that was seen before,
+ * so that repeated names share one instance and new instances can be garbage collected at once.
+ * The table has a fixed size. Each string is searched in a few slots only. If all of them are taken, the string replaces
+ * the first one. Therefore the table never grows, but very many distinct strings reduce the hit rate.
+ * This class is not thread safe. Use one instance per thread.
+ */
+public class StringInterner implements ErrorHandler.Counters {
+	private static final int PROBES = 4;
+	
+	private final String[] table;
+	private final int mask;
+	private long hits = 0L, misses = 0L;
+	
+	/**
+	 * @param capacity maximal number of strings kept. Rounded up to a power of 2.
+	 */
+	public StringInterner(int capacity) {
+		int size = 1;
+		while(size < capacity) size <<= 1;
+		table = new String[size];
+		mask = size - 1;
+	}
+	
+	/**
+	 * @param s
+	 * @return an instance equal to s, which is the same instance for equal strings as long as it is kept in the table. Null for null.
+	 */
+	public String intern(String s) {
+		if(s == null) return null;
+		int hash = s.hashCode();
+		int idx = (hash ^ (hash >>> 16)) & mask;
+		
+		for(int probe = 0; probe < PROBES; probe++) {
+			String t = table[(idx + probe) & mask];
+			if(t == null) {
+				table[(idx + probe) & mask] = s;
+				misses++;
+				return s;
+			}
+			if(t == s || (t.hashCode() == hash && t.equals(s))) {
+				hits++;
+				return t;
+			}
+		}
+		table[idx] = s; // Replace
+		misses++;
+		return s;
+	}
+	
+	public long getHits() {return hits;}
+	public long getMisses() {return misses;}
+	
+	/* (non-Javadoc)
+	 * @see utils.ErrorHandler.Counters#getCounters()
+	 */
+	public String[] getCounters() {
+		return new String[] {
+				"hits: " + hits,
+				"misses: " + misses,
+				"hit rate [%]: " + ((hits + misses == 0L)? 0L:(100L*hits)/(hits + misses))};
+	}
+}
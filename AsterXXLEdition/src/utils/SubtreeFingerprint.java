@@ -0,0 +1,128 @@
+package utils;
+
+/**
+ * @author Juergen Boiselle
+ *
+ * Compute a 64 bit fingerprint of each element and its sub tree while streaming, to detect changed records between two versions of a document.
+ * The fingerprint covers the name (uri and local name) of the element, its attributes with their values, its value and the fingerprints of its
+ * sub elements in document order. The order of attributes and namespace prefixes do not change the fingerprint.
+ * The value of an element is the text behind its last sub element, as in the rows of XMLReaderService. Values, that contain white space only,
+ * like the indentation between sub elements, count as empty.
+ * Elements and attributes, that are not included, are left out. Their included sub elements are still part of the fingerprint of the parent.
+ * Like the path ids of PathDictionary, fingerprints are the same on all vworkers. Collisions are very unlikely, but not impossible.
+ * This class is not thread safe.
+ */
+public class SubtreeFingerprint {
+	private static final long FNV_OFFSET = Utils.FNV_OFFSET;
+	private static final long FNV_PRIME = Utils.FNV_PRIME;
+	
+	private long[] names = new long[64]; // Hash of the name of each open element
+	private long[] attributes = new long[64]; // Sum of the attribute hashes of each open element, independent of their order
+	private long[] children = new long[64]; // Hash of the sub elements of each open element in document order
+	private int depth = 0;
+	private long text = FNV_OFFSET; // Hash of the current value
+	private boolean isBlank = true; // Current value contains white space only
+	
+	// Start a new document
+	public void clear() {
+		depth = 0;
+		clearText();
+	}
+	
+	/**
+	 * Called at the start of an element.
+	 * @param uri
+	 * @param localName
+	 */
+	public void enterElement(String uri, String localName) {
+		if(depth == names.length) grow();
+		names[depth] = hash(localName, hash(uri, FNV_OFFSET));
+		attributes[depth] = 0L;
+		children[depth] = FNV_OFFSET;
+		depth++;
+		clearText();
+	}
+	
+	/**
+	 * Add an included attribute to the current element.
+	 * @param uri
+	 * @param localName
+	 * @param value
+	 */
+	public void addAttribute(String uri, String localName, String value) {
+		attributes[depth-1] += mix(hash(value, hash(localName, hash(uri, FNV_OFFSET))));
+	}
+	
+	/**
+	 * Add characters to the value of the current element.
+	 * @param ch
+	 * @param start
+	 * @param length
+	 */
+	public void characters(char[] ch, int start, int length) {
+		text = Utils.fnv1a64(ch, start, length, text);
+		for(int i = start; isBlank && i < start + length; i++) if(!Character.isWhitespace(ch[i])) isBlank = false;
+	}
+	
+	/**
+	 * Add characters to the value of the current element.
+	 * @param s
+	 */
+	public void characters(String s) {
+		text = Utils.fnv1a64(s, text);
+		for(int i = 0; isBlank && i < s.length(); i++) if(!Character.isWhitespace(s.charAt(i))) isBlank = false;
+	}
+	
+	/**
+	 * Called at the end of an element.
+	 * @param isIncluded true, if the element itself is part of the fingerprint.
+	 * @return fingerprint of the element and its sub tree.
+	 */
+	public long exitElement(boolean isIncluded) {
+		depth--;
+		long fingerprint;
+		boolean hasContent = isIncluded || children[depth] != FNV_OFFSET;
+		if(isIncluded) {
+			long hash = combine(names[depth], attributes[depth]);
+			hash = combine(hash, children[depth]);
+			fingerprint = combine(hash, isBlank? FNV_OFFSET:(text ^ 0xffff) * FNV_PRIME);
+		}
+		else
+			fingerprint = mix(children[depth]);
+		
+		if(depth > 0 && hasContent) children[depth-1] = combine(children[depth-1], fingerprint);
+		clearText();
+		return fingerprint;
+	}
+	
+	private void clearText() {
+		text = FNV_OFFSET;
+		isBlank = true;
+	}
+	
+	private void grow() {
+		long[] n = new long[2*names.length], a = new long[2*names.length], c = new long[2*names.length];
+		System.arraycopy(names, 0, n, 0, depth);
+		System.arraycopy(attributes, 0, a, 0, depth);
+		System.arraycopy(children, 0, c, 0, depth);
+		names = n;
+		attributes = a;
+		children = c;
+	}
+	
+	// Order dependent combination of two hashes
+	private static long combine(long hash, long value) {return mix(hash * FNV_PRIME + value);}
+	
+	// Finalizer of MurmurHash3. Spreads every bit of the input to all bits of the output.
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+	
+	// 64 bit FNV-1a followed by a separator like in PathDictionary
+	private static long hash(String s, long hash) {return (Utils.fnv1a64(s, hash) ^ 0xffff) * FNV_PRIME;}
+}
@@ -7,6 +7,8 @@ import java.io.Reader;
  * @author jb185040
  *
  * Group characters of same type (as defined in Unicode) together. 
+ * The text is read in blocks and the characters of the Basic Multilingual Plane are classified with a table.
+ * Supplementary characters, that are surrogate pairs in UTF-16, are classified by their code point. Unpaired surrogates are OTHER.
  */
 public class TextSplitterService {
 	/**
@@ -24,6 +26,23 @@ public class TextSplitterService {
 		public void newRow(SplitterType splitterType, String value);
 	}
 	
+	/**
+	 * @author jb185040
+	 *
+	 * Implement this interface additionally to get each group as a slice of the read buffer instead of a string.
+	 * <code>newRow</code> is not called then.
+	 */
+	public interface SplitterSliceCallback extends SplitterCallback {
+		/**
+		 * Called whenever a new group of characters was found.
+		 * @param splitterType of the group.
+		 * @param buf contains the characters of the group. The buffer is reused for the next group.
+		 * @param off first character of the group.
+		 * @param len number of characters of the group. A supplementary character counts two.
+		 */
+		public void newSlice(SplitterType splitterType, char[] buf, int off, int len);
+	}
+	
 	/**
 	 * @author jb185040
 	 *
@@ -31,6 +50,17 @@ public class TextSplitterService {
 	 */
 	public enum SplitterType {WHITESPACE, LETTER_DIGIT, OTHER}
 
+	private static final SplitterType[] TYPES = SplitterType.values();
+	private static final byte SURROGATE = (byte) TYPES.length; // Classified with the next character
+	private static final byte[] BMP = new byte[Character.MAX_VALUE + 1]; // Ordinal of the type of each character
+	static {
+		for(int c = 0; c <= Character.MAX_VALUE; c++)
+			BMP[c] = (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE)? SURROGATE:(byte) classify(c).ordinal();
+	}
+	
+	private boolean isStopped = false; // Callback asked to end splitting of current document
+	private char[] buf = new char[64*1024]; // Group not yet passed and characters not yet classified
+	
 	/**
 	 * Do the grouping.
 	 * 
@@ -39,37 +69,78 @@ public class TextSplitterService {
 	 * @throws IOException thrown when reading from reader failed.
 	 */
 	public void split(Reader reader, SplitterCallback splitterCallback) throws IOException {
-		SplitterType prevType = SplitterType.OTHER;
-		StringBuilder value = null;
+		int start = 0, pos = 0, limit = 0; // Current group is buf[start, pos), buf[pos, limit) is not classified yet
+		int type = -1; // Type of the current group
+		boolean isEOF = false;
+		isStopped = false;
 		
-		for(int c = reader.read(); c != -1L; c = reader.read()) {
-			SplitterType currentType = SplitterType.OTHER;
-			if(Character.isWhitespace(c))
-				currentType = SplitterType.WHITESPACE;
-			else if(Character.isLetterOrDigit(c))
-				currentType = SplitterType.LETTER_DIGIT;
-			
-			// new group detected
-			if(value == null || currentType != prevType) {
-				value = sendValue(splitterCallback, prevType, value);
-				prevType = currentType;
+		for(;;) {
+			while(pos < limit) {
+				char c = buf[pos];
+				int currentType = BMP[c];
+				int n = 1;
+				if(currentType == SURROGATE) {
+					if(Character.isHighSurrogate(c) && pos + 1 == limit && !isEOF) break; // Low surrogate is not read yet
+					if(Character.isHighSurrogate(c) && pos + 1 < limit && Character.isLowSurrogate(buf[pos + 1])) {
+						currentType = classify(Character.toCodePoint(c, buf[pos + 1])).ordinal();
+						n = 2;
+					}
+					else
+						currentType = SplitterType.OTHER.ordinal();
+				}
+				
+				// new group detected
+				if(currentType != type) {
+					if(pos > start) {
+						sendValue(splitterCallback, TYPES[type], start, pos - start);
+						if(isStopped) return;
+					}
+					start = pos;
+					type = currentType;
+				}
+				pos += n;
 			}
+			if(isEOF) break;
 			
-			value.append((char) c);
+			// Keep the current group at the beginning of the buffer and read the next block behind it
+			if(start > 0) {
+				System.arraycopy(buf, start, buf, 0, limit - start);
+				pos -= start;
+				limit -= start;
+				start = 0;
+			}
+			if(limit == buf.length) {
+				char[] b = new char[2*buf.length];
+				System.arraycopy(buf, 0, b, 0, limit);
+				buf = b;
+			}
+			int n = reader.read(buf, limit, buf.length - limit);
+			if(n == -1) isEOF = true;
+			else limit += n;
 		}
 		
 		// The last group
-		if(value != null) sendValue(splitterCallback, prevType, value);
+		if(pos > start) sendValue(splitterCallback, TYPES[type], start, pos - start);
 	}
 	
-	// Inform callback and reset value
-	private StringBuilder sendValue(SplitterCallback splitterCallback, SplitterType splitterType, StringBuilder value) {
-		if(value != null) {
-			splitterCallback.newRow(splitterType, value.toString());
-			value.setLength(0);
-		}
+	/**
+	 * Called by the callback to end splitting of the current document, e.g. when enough rows were found.
+	 * The rest of the document is not read.
+	 */
+	public void stop() {isStopped = true;}
+	
+	// Inform callback
+	private void sendValue(SplitterCallback splitterCallback, SplitterType splitterType, int off, int len) {
+		if(splitterCallback instanceof SplitterSliceCallback)
+			((SplitterSliceCallback) splitterCallback).newSlice(splitterType, buf, off, len);
 		else
-			value = new StringBuilder();
-		return value;
+			splitterCallback.newRow(splitterType, new String(buf, off, len));
+	}
+	
+	// Type of a code point
+	private static SplitterType classify(int codePoint) {
+		if(Character.isWhitespace(codePoint)) return SplitterType.WHITESPACE;
+		if(Character.isLetterOrDigit(codePoint)) return SplitterType.LETTER_DIGIT;
+		return SplitterType.OTHER;
 	}
 }
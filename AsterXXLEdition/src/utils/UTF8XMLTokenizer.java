@@ -0,0 +1,672 @@
+package utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+/**
+ * @author Juergen Boiselle
+ *
+ * Tokenize UTF-8 encoded XML directly on bytes and report the elements to a SAX ContentHandler.
+ * Only the subset of XML used by usual data feeds is supported: Elements, attributes, text, CDATA sections, comments,
+ * processing instructions, namespaces, the predefined entities and character references.
+ *
+ * Names are interned from byte slices. Values are kept as bytes and decoded to a String only when requested with
+ * <code>getText</code> or <code>Attributes.getValue</code>. Therefore <code>characters</code> is not called on the ContentHandler,
+ * unless a limit for the text is set with <code>setMaxText</code> and a text exceeds it.
+ * Invalid XML characters are replaced by '?' as <code>Utils.replaceInvalid</code> does, line ends are normalized as an XML parser does.
+ * Character references to invalid XML characters are errors as in SAX.
+ *
+ * Documents with a DOCTYPE or a declared encoding other then UTF-8 are not tokenized. Instead an <code>UnsupportedException</code>
+ * is thrown before any element was reported. The full document can then be re-read from <code>getReplayStream</code>.
+ * This class is not thread safe. Use one instance per thread.
+ */
+public class UTF8XMLTokenizer {
+	/**
+	 * @author Juergen Boiselle
+	 *
+	 * Thrown when the document uses constructs the tokenizer does not handle. Nothing was reported to the ContentHandler yet.
+	 */
+	public static class UnsupportedException extends Exception {
+		private static final long serialVersionUID = 1L;
+		private final InputStream replayStream;
+
+		public UnsupportedException(String message, InputStream replayStream) {
+			super(message);
+			this.replayStream = replayStream;
+		}
+
+		/**
+		 * @return a stream, that delivers the complete document from its first byte on.
+		 */
+		public InputStream getReplayStream() {return replayStream;}
+	}
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String XML_NS = "http://www.w3.org/XML/1998/namespace";
+	private static final String EOF = "XML document structures must start and end within the same entity.";
+
+	// Input buffer. Bytes from mark on are kept when refilling.
+	private InputStream inputStream = null;
+	private byte[] buf = new byte[64*1024];
+	private int pos = 0, limit = 0, mark = -1;
+	private int lastChar = 0; // The byte that terminated the last name
+
+	// Values and names as bytes
+	private Bytes text = new Bytes();
+	private int maxText = 0; // If more then 0, text is passed to characters when it reaches this number of bytes
+	private boolean isFlushed = false; // Text of the current element was passed to characters
+	private ContentHandler handler = null;
+	private Bytes attrValues = new Bytes();
+	private Bytes name = new Bytes();
+	private NameTable nameTable = new NameTable();
+
+	// Open elements and namespace bindings
+	private int depth = 0;
+	private Name[] elements = new Name[64];
+	private String[] elementURIs = new String[64];
+	private int[] nsMarks = new int[64];
+	private int nsCount = 0;
+	private String[] nsPrefixes = new String[16];
+	private String[] nsURIs = new String[16];
+	private FastAttributes attributes = new FastAttributes();
+
+	/**
+	 * Tokenize one document and report elements to the handler.
+	 * @param inputStream to read the UTF-8 encoded document from. The stream is not closed.
+	 * @param handler to report startDocument, startElement, endElement and endDocument to.
+	 * @throws SAXException if the document is not well formed or the handler throws it.
+	 * @throws IOException if reading from inputStream failed.
+	 * @throws UnsupportedException if the document uses a construct, that is not supported. Nothing was reported then.
+	 */
+	public void parse(InputStream inputStream, ContentHandler handler) throws SAXException, IOException, UnsupportedException {
+		this.inputStream = inputStream;
+		this.handler = handler;
+		pos = limit = 0;
+		mark = 0; // Keep prolog for replay
+		depth = nsCount = 0;
+		text.len = 0;
+		isFlushed = false;
+
+		int c = prolog();
+		mark = -1;
+		handler.startDocument();
+		startTag(c, handler);
+		while(depth > 0) {
+			characters();
+			c = next();
+			if(c == '/') endTag(handler);
+			else if(c == '!') commentOrCData();
+			else if(c == '?') processingInstruction();
+			else startTag(c, handler);
+		}
+		epilog();
+		handler.endDocument();
+	}
+
+	/**
+	 * @return text of the current element as collected since the last start or end of an element.
+	 */
+	public String getText() {return text.decode(0, text.len);}
+	
+	/**
+	 * @return true, if a part of the text of the current element was already passed to <code>characters</code> of the handler.
+	 * 		<code>getText</code> returns the rest of the text then.
+	 */
+	public boolean isFlushed() {return isFlushed;}
+	
+	/**
+	 * Limit the memory used for text. Text is passed to <code>characters</code> of the handler, whenever it has reached the limit.
+	 * @param maxText in bytes. 0 for no limit, which is the default.
+	 */
+	public void setMaxText(int maxText) {this.maxText = maxText;}
+
+	// Skip byte order mark, XML declaration, comments and processing instructions. Return first byte of root element name.
+	private int prolog() throws SAXException, IOException, UnsupportedException {
+		int c = read();
+		if(c == 0xef) {
+			if(read() != 0xbb || read() != 0xbf) throw unsupported("Unknown byte order mark");
+			c = read();
+		}
+		else if(c == 0xfe || c == 0xff || c == 0) throw unsupported("Document is not UTF-8 encoded");
+
+		for(;; c = read()) {
+			if(c == -1) throw new SAXException("Premature end of file.");
+			if(isWhitespace(c)) continue;
+			if(c != '<') throw new SAXException("Content is not allowed in prolog.");
+
+			c = next();
+			if(c == '?') {
+				if(!xmlDeclaration()) throw unsupported("Declared encoding is not UTF-8");
+			}
+			else if(c == '!') {
+				if(next() != '-') throw unsupported("DOCTYPE is not supported");
+				comment();
+			}
+			else return c;
+		}
+	}
+
+	// Skip whitespace, comments and processing instructions after the root element.
+	private void epilog() throws SAXException, IOException {
+		for(int c = read(); c != -1; c = read()) {
+			if(isWhitespace(c)) continue;
+			if(c != '<') throw new SAXException("Content is not allowed in trailing section.");
+
+			c = next();
+			if(c == '?') processingInstruction();
+			else if(c == '!' && next() == '-') comment();
+			else throw new SAXException("The markup in the document following the root element must be well-formed.");
+		}
+	}
+
+	// Read a start tag with its attributes. c is the first byte of the name.
+	private void startTag(int c, ContentHandler handler) throws SAXException, IOException {
+		Name element = readName(c);
+		int nsMark = nsCount;
+		boolean isEmpty = false;
+
+		// Attributes
+		attributes.clear();
+		attrValues.len = 0;
+		for(c = skipWhitespace(lastChar);; c = skipWhitespace(next())) {
+			if(c == '>') break;
+			if(c == '/') {
+				if(next() != '>') throw new SAXException("Element type \"" + element.qName + "\" must be followed by either attribute specifications, \">\" or \"/>\".");
+				isEmpty = true;
+				break;
+			}
+
+			Name attribute = readName(c);
+			if(skipWhitespace(lastChar) != '=') throw new SAXException("Attribute name \"" + attribute.qName + "\" must be followed by the ' = ' character.");
+			c = skipWhitespace(next());
+			if(c != '"' && c != '\'') throw new SAXException("Open quote is expected for attribute \"" + attribute.qName + "\".");
+			int start = attrValues.len;
+			attributeValue(c);
+
+			if(attribute.isXmlns) declare(attribute.prefix == null? "":attribute.localName, attrValues.decode(start, attrValues.len - start));
+			else attributes.add(attribute, start, attrValues.len);
+		}
+
+		// Resolve namespaces and report
+		attributes.resolve();
+		if(depth == elements.length) grow();
+		elements[depth] = element;
+		elementURIs[depth] = element.prefix == null? lookup(""):lookup(element.prefix, element);
+		nsMarks[depth] = nsMark;
+		depth++;
+		text.len = 0;
+		isFlushed = false;
+		handler.startElement(elementURIs[depth-1], element.localName, element.qName, attributes);
+		if(isEmpty) endElement(handler);
+	}
+
+	// Read an end tag and check it against the open element. The '/' was already read.
+	private void endTag(ContentHandler handler) throws SAXException, IOException {
+		Name element = readName(next());
+		if(skipWhitespace(lastChar) != '>') throw new SAXException("The end-tag for element type \"" + element.qName + "\" must end with a '>' delimiter.");
+		if(!element.qName.equals(elements[depth-1].qName))
+			throw new SAXException("The element type \"" + elements[depth-1].qName + "\" must be terminated by the matching end-tag \"</" + elements[depth-1].qName + ">\".");
+		endElement(handler);
+	}
+
+	private void endElement(ContentHandler handler) throws SAXException {
+		depth--;
+		handler.endElement(elementURIs[depth], elements[depth].localName, elements[depth].qName);
+		nsCount = nsMarks[depth];
+		text.len = 0;
+		isFlushed = false;
+	}
+	
+	// Pass text up to the last complete character to the handler and keep the rest
+	private void flush() throws SAXException {
+		int cut = text.len;
+		if(text.b[cut-1] < 0) { // Do not split a multi byte character
+			while(cut > 0 && (text.b[cut-1] & 0xc0) == 0x80) cut--;
+			if(cut > 0) cut--;
+		}
+		
+		char[] chars = text.decode(0, cut).toCharArray();
+		System.arraycopy(text.b, cut, text.b, 0, text.len - cut);
+		text.len -= cut;
+		isFlushed = true;
+		handler.characters(chars, 0, chars.length);
+	}
+
+	// Read character data up to the next '<', which is consumed.
+	private void characters() throws SAXException, IOException {
+		for(;;) {
+			if(pos == limit && !fill()) throw new SAXException(EOF);
+
+			// Fast path: copy plain bytes as a block. 0xEF might start U+FFFE or U+FFFF.
+			int start = pos;
+			for(byte b = buf[pos]; (b < 0 && b != (byte) 0xef) || (b >= 0x20 && b != '<' && b != '&'); b = buf[pos]) {
+				if(++pos == limit) break;
+			}
+			text.add(buf, start, pos - start);
+			if(maxText > 0 && text.len >= maxText) flush();
+			if(pos == limit) continue;
+
+			// Slow path: markup, entities, line ends and invalid characters
+			int c = buf[pos++];
+			if(c == '<') return;
+			else if(c == '&') entity(text);
+			else if(c == '\r') lineEnd(text);
+			else if(c == (byte) 0xef) nonCharacter(text);
+			else text.add(c == '\n' || c == '\t'? c:'?');
+		}
+	}
+
+	// Read attribute value up to the closing quote. Whitespace is normalized to spaces.
+	private void attributeValue(int quote) throws SAXException, IOException {
+		for(int c = next(); c != quote; c = next()) {
+			if(c == '&') entity(attrValues);
+			else if(c == '<') throw new SAXException("The value of attribute must not contain the '<' character.");
+			else if(c == '\r') {
+				lineEnd(attrValues);
+				attrValues.b[attrValues.len-1] = ' ';
+			}
+			else if(c < 0x20) attrValues.add(c == '\n' || c == '\t'? ' ':'?');
+			else if(c == 0xef) nonCharacter(attrValues);
+			else attrValues.add(c);
+		}
+	}
+
+	// Normalize "\r\n" and "\r" into "\n". The '\r' was already read.
+	private void lineEnd(Bytes out) throws IOException {
+		out.add('\n');
+		if((pos < limit || fill()) && buf[pos] == '\n') pos++;
+	}
+
+	// U+FFFE and U+FFFF are encoded as EF BF BE and EF BF BF. Replace them, because they are not valid XML characters. The 0xEF was already read.
+	private void nonCharacter(Bytes out) throws IOException {
+		mark = pos; // Keep the next two bytes, if the buffer must be refilled. mark is only used in the prolog otherwise.
+		boolean isNonCharacter = (pos < limit || fill()) && buf[pos] == (byte) 0xbf
+				&& (pos + 1 < limit || fill()) && (buf[pos+1] == (byte) 0xbe || buf[pos+1] == (byte) 0xbf);
+		mark = -1;
+		if(isNonCharacter) {
+			out.add('?');
+			pos += 2;
+		}
+		else
+			out.add(0xef);
+	}
+
+	// Resolve an entity reference. The '&' was already read.
+	private void entity(Bytes out) throws SAXException, IOException {
+		int c = next();
+		if(c == '#') {
+			characterReference(out);
+			return;
+		}
+		
+		name.len = 0;
+		for(; c != ';'; c = next()) {
+			if(name.len > 10 || c == '<' || c == '&' || isWhitespace(c)) throw new SAXException("The entity name must immediately be followed by the ';' delimiter in the entity reference.");
+			name.add(c);
+		}
+
+		String entity = name.decode(0, name.len);
+		if(entity.equals("lt")) out.add('<');
+		else if(entity.equals("gt")) out.add('>');
+		else if(entity.equals("amp")) out.add('&');
+		else if(entity.equals("quot")) out.add('"');
+		else if(entity.equals("apos")) out.add('\'');
+		else throw new SAXException("The entity \"" + entity + "\" was referenced, but not declared.");
+	}
+
+	// Resolve a character reference with any number of decimal or hexadecimal digits. "&#" was already read.
+	private void characterReference(Bytes out) throws SAXException, IOException {
+		int c = next();
+		boolean isHex = (c == 'x');
+		if(isHex) c = next();
+		
+		name.len = 0;
+		int codePoint = 0;
+		for(; c != ';'; c = next()) {
+			int digit = (c >= '0' && c <= '9')? c - '0':(isHex && c >= 'a' && c <= 'f')? c - 'a' + 10:(isHex && c >= 'A' && c <= 'F')? c - 'A' + 10:-1;
+			if(digit == -1 && name.len > 0) throw new SAXException("The character reference must end with the ';' delimiter.");
+			if(digit == -1) break;
+			codePoint = Math.min(codePoint*(isHex? 16:10) + digit, 0x110000); // Larger values are invalid anyway
+			name.add(c);
+		}
+		if(name.len == 0) throw new SAXException(isHex? "A hexadecimal representation must immediately follow the \"&#x\" in a character reference."
+				:"A decimal representation must immediately follow the \"&#\" in a character reference.");
+		if(!isValid(codePoint)) throw new SAXException("Character reference \"&#" + (isHex? "x":"") + name.decode(0, name.len) + "\" is an invalid XML character.");
+		out.addCodePoint(codePoint);
+	}
+
+	// Skip a comment or read a CDATA section. "<!" was already read.
+	private void commentOrCData() throws SAXException, IOException {
+		int c = next();
+		if(c == '-') {
+			comment();
+			return;
+		}
+		if(c != '[' || next() != 'C' || next() != 'D' || next() != 'A' || next() != 'T' || next() != 'A' || next() != '[')
+			throw new SAXException("The markup declarations contained or pointed to by the document type declaration must be well-formed.");
+
+		// CDATA content is taken as is, up to "]]>"
+		for(int brackets = 0;; ) {
+			c = next();
+			if(c == '>' && brackets >= 2) {
+				text.len -= 2;
+				return;
+			}
+			brackets = (c == ']')? brackets+1:0;
+			if(c == '\r') lineEnd(text);
+			else if(c < 0x20 && c != '\n' && c != '\t') text.add('?');
+			else if(c == 0xef) nonCharacter(text);
+			else text.add(c);
+			if(maxText > 0 && text.len >= maxText && brackets == 0) flush(); // Keep "]]" until the section ends
+		}
+	}
+
+	// Skip comment. "<!-" was already read.
+	private void comment() throws SAXException, IOException {
+		if(next() != '-') throw new SAXException("Comment must start with \"<!--\".");
+		for(int dashes = 0;; ) {
+			int c = next();
+			if(c == '>' && dashes >= 2) return;
+			dashes = (c == '-')? dashes+1:0;
+		}
+	}
+
+	// Skip processing instruction. "<?" was already read.
+	private void processingInstruction() throws SAXException, IOException {
+		for(int c = next(), prev = 0;; prev = c, c = next()) {
+			if(c == '>' && prev == '?') return;
+		}
+	}
+
+	// Read XML declaration or processing instruction in prolog. "<?" was already read. Return false if encoding is not supported.
+	private boolean xmlDeclaration() throws SAXException, IOException {
+		name.len = 0;
+		for(int c = next(), prev = 0; c != '>' || prev != '?'; prev = c, c = next()) name.add(c);
+
+		String declaration = name.decode(0, name.len);
+		if(!declaration.startsWith("xml ")) return true; // Just a processing instruction
+		int idx = declaration.indexOf("encoding");
+		if(idx == -1) return true; // UTF-8 is the default
+
+		String encoding = declaration.substring(idx + "encoding".length()).replaceFirst("^\\s*=\\s*['\"]([^'\"]*)['\"][\\s\\S]*", "$1");
+		return encoding.equalsIgnoreCase("UTF-8") || encoding.equalsIgnoreCase("UTF8") || encoding.equalsIgnoreCase("US-ASCII");
+	}
+
+	// Read a name, starting with c. The terminating byte is in lastChar.
+	private Name readName(int c) throws SAXException, IOException {
+		name.len = 0;
+		for(; c != '>' && c != '/' && c != '=' && !isWhitespace(c); c = next()) {
+			if(c == '<' || c == '"' || c == '\'' || c == '&') throw new SAXException("Invalid character '" + (char) c + "' in name.");
+			name.add(c);
+		}
+		if(name.len == 0) throw new SAXException("The markup in the document must be well-formed.");
+		lastChar = c;
+		return nameTable.intern(name.b, name.len);
+	}
+
+	// Namespace handling
+	private void declare(String prefix, String uri) {
+		if(nsCount == nsPrefixes.length) {
+			String[] prefixes = new String[nsCount*2];
+			String[] uris = new String[nsCount*2];
+			System.arraycopy(nsPrefixes, 0, prefixes, 0, nsCount);
+			System.arraycopy(nsURIs, 0, uris, 0, nsCount);
+			nsPrefixes = prefixes;
+			nsURIs = uris;
+		}
+		nsPrefixes[nsCount] = prefix;
+		nsURIs[nsCount++] = uri;
+	}
+
+	private String lookup(String prefix) {
+		for(int i = nsCount-1; i >= 0; i--)
+			if(nsPrefixes[i].equals(prefix)) return nsURIs[i];
+		return prefix.equals("xml")? XML_NS:(prefix.length() == 0? "":null);
+	}
+
+	private String lookup(String prefix, Name name) throws SAXException {
+		String uri = lookup(prefix);
+		if(uri == null) throw new SAXException("The prefix \"" + prefix + "\" for \"" + name.qName + "\" is not bound.");
+		return uri;
+	}
+
+	private void grow() {
+		Name[] names = new Name[depth*2];
+		String[] uris = new String[depth*2];
+		int[] marks = new int[depth*2];
+		System.arraycopy(elements, 0, names, 0, depth);
+		System.arraycopy(elementURIs, 0, uris, 0, depth);
+		System.arraycopy(nsMarks, 0, marks, 0, depth);
+		elements = names;
+		elementURIs = uris;
+		nsMarks = marks;
+	}
+
+	// Input handling
+	private int read() throws IOException {
+		if(pos < limit || fill()) return buf[pos++] & 0xff;
+		return -1;
+	}
+
+	private int next() throws SAXException, IOException {
+		if(pos < limit || fill()) return buf[pos++] & 0xff;
+		throw new SAXException(EOF);
+	}
+
+	// Refill buffer. Keep bytes from mark on and grow the buffer if necessary.
+	private boolean fill() throws IOException {
+		if(mark < 0)
+			pos = limit = 0;
+		else if(mark > 0) {
+			System.arraycopy(buf, mark, buf, 0, limit - mark);
+			pos -= mark;
+			limit -= mark;
+			mark = 0;
+		}
+		if(limit == buf.length) {
+			byte[] b = new byte[buf.length*2];
+			System.arraycopy(buf, 0, b, 0, limit);
+			buf = b;
+		}
+
+		int len = inputStream.read(buf, limit, buf.length - limit);
+		if(len <= 0) return false;
+		limit += len;
+		return true;
+	}
+
+	private UnsupportedException unsupported(String message) {
+		return new UnsupportedException(message, new SequenceInputStream(new ByteArrayInputStream(buf, 0, limit), inputStream));
+	}
+
+	private int skipWhitespace(int c) throws SAXException, IOException {
+		while(isWhitespace(c)) c = next();
+		return c;
+	}
+
+	private static boolean isWhitespace(int c) {return c == ' ' || c == '\n' || c == '\r' || c == '\t';}
+
+	private static boolean isValid(int c) {
+		return (0x20 <= c && c <= 0xd7ff) || c == 0x9 || c == 0xa || c == 0xd || (0xe000 <= c && c <= 0xfffd) || (0x10000 <= c && c <= 0x10ffff);
+	}
+
+	// Growing byte array
+	private static class Bytes {
+		byte[] b = new byte[1024];
+		int len = 0;
+
+		void add(int c) {
+			if(len == b.length) ensure(1);
+			b[len++] = (byte) c;
+		}
+
+		void add(byte[] src, int off, int count) {
+			if(len + count > b.length) ensure(count);
+			System.arraycopy(src, off, b, len, count);
+			len += count;
+		}
+
+		void addCodePoint(int c) {
+			if(c < 0x80) add(c);
+			else if(c < 0x800) {
+				add(0xc0 | (c >> 6));
+				add(0x80 | (c & 0x3f));
+			}
+			else if(c < 0x10000) {
+				add(0xe0 | (c >> 12));
+				add(0x80 | ((c >> 6) & 0x3f));
+				add(0x80 | (c & 0x3f));
+			}
+			else {
+				add(0xf0 | (c >> 18));
+				add(0x80 | ((c >> 12) & 0x3f));
+				add(0x80 | ((c >> 6) & 0x3f));
+				add(0x80 | (c & 0x3f));
+			}
+		}
+
+		String decode(int off, int count) {
+			// Pure ASCII is the most common case and needs no decoder
+			char[] chars = new char[count];
+			for(int i = 0; i < count; i++) {
+				if(b[off+i] < 0) return UTF8.decode(ByteBuffer.wrap(b, off, count)).toString();
+				chars[i] = (char) b[off+i];
+			}
+			return new String(chars);
+		}
+
+		private void ensure(int count) {
+			byte[] bytes = new byte[Math.max(b.length*2, len + count)];
+			System.arraycopy(b, 0, bytes, 0, len);
+			b = bytes;
+		}
+	}
+
+	// Name split into prefix and local name.
+	private static class Name {
+		final String qName, prefix, localName;
+		final boolean isXmlns;
+
+		Name(String qName) {
+			int idx = qName.indexOf(':');
+			this.qName = qName;
+			this.prefix = (idx == -1)? null:qName.substring(0, idx);
+			this.localName = (idx == -1)? qName:qName.substring(idx+1);
+			this.isXmlns = qName.equals("xmlns") || "xmlns".equals(prefix);
+		}
+	}
+
+	// Bounded hash table of names, keyed by their bytes. When full, new names are not kept.
+	private static class NameTable {
+		private static final int SIZE = 4096; // Power of 2
+		private byte[][] keys = new byte[SIZE][];
+		private Name[] names = new Name[SIZE];
+		private int count = 0;
+
+		Name intern(byte[] b, int len) {
+			int hash = 0;
+			for(int i = 0; i < len; i++) hash = 31*hash + b[i];
+
+			for(int idx = hash & (SIZE-1);; idx = (idx+1) & (SIZE-1)) {
+				byte[] key = keys[idx];
+				if(key == null) break;
+				if(equals(key, b, len)) return names[idx];
+			}
+
+			// Not found
+			Name name = new Name(decode(b, len));
+			if(count < SIZE/2) {
+				int idx = hash & (SIZE-1);
+				while(keys[idx] != null) idx = (idx+1) & (SIZE-1);
+				byte[] key = new byte[len];
+				System.arraycopy(b, 0, key, 0, len);
+				keys[idx] = key;
+				names[idx] = name;
+				count++;
+			}
+			return name;
+		}
+
+		private static boolean equals(byte[] key, byte[] b, int len) {
+			if(key.length != len) return false;
+			for(int i = 0; i < len; i++) if(key[i] != b[i]) return false;
+			return true;
+		}
+
+		private static String decode(byte[] b, int len) {
+			return UTF8.decode(ByteBuffer.wrap(b, 0, len)).toString();
+		}
+	}
+
+	// Attributes of the current start tag. Values are decoded on first request.
+	private class FastAttributes implements Attributes {
+		private int length = 0;
+		private Name[] names = new Name[16];
+		private String[] uris = new String[16];
+		private String[] values = new String[16];
+		private int[] starts = new int[16], ends = new int[16];
+
+		void clear() {length = 0;}
+
+		void add(Name name, int start, int end) {
+			if(length == names.length) {
+				Name[] n = new Name[length*2];
+				String[] v = new String[length*2];
+				int[] s = new int[length*2], e = new int[length*2];
+				System.arraycopy(names, 0, n, 0, length);
+				System.arraycopy(values, 0, v, 0, length);
+				System.arraycopy(starts, 0, s, 0, length);
+				System.arraycopy(ends, 0, e, 0, length);
+				names = n;
+				uris = new String[length*2];
+				values = v;
+				starts = s;
+				ends = e;
+			}
+			names[length] = name;
+			values[length] = null;
+			starts[length] = start;
+			ends[length++] = end;
+		}
+
+		void resolve() throws SAXException {
+			for(int i = 0; i < length; i++) uris[i] = names[i].prefix == null? "":lookup(names[i].prefix, names[i]);
+		}
+
+		public int getLength() {return length;}
+		public String getURI(int index) {return (index < 0 || index >= length)? null:uris[index];}
+		public String getLocalName(int index) {return (index < 0 || index >= length)? null:names[index].localName;}
+		public String getQName(int index) {return (index < 0 || index >= length)? null:names[index].qName;}
+		public String getType(int index) {return (index < 0 || index >= length)? null:"CDATA";}
+		public String getValue(int index) {
+			if(index < 0 || index >= length) return null;
+			if(values[index] == null) values[index] = attrValues.decode(starts[index], ends[index] - starts[index]);
+			return values[index];
+		}
+
+		public int getIndex(String uri, String localName) {
+			for(int i = 0; i < length; i++)
+				if(uris[i].equals(uri) && names[i].localName.equals(localName)) return i;
+			return -1;
+		}
+
+		public int getIndex(String qName) {
+			for(int i = 0; i < length; i++)
+				if(names[i].qName.equals(qName)) return i;
+			return -1;
+		}
+
+		public String getType(String uri, String localName) {return getType(getIndex(uri, localName));}
+		public String getType(String qName) {return getType(getIndex(qName));}
+		public String getValue(String uri, String localName) {return getValue(getIndex(uri, localName));}
+		public String getValue(String qName) {return getValue(getIndex(qName));}
+	}
+}
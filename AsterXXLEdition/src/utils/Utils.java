@@ -1,5 +1,6 @@
 package utils;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PipedInputStream;
@@ -47,6 +48,12 @@ public class Utils {
 	 */
 	public static final int CHUNK_SIZE = 16*1024*1204;
 	
+	/**
+	 * Offset basis and prime of the 64 bit FNV-1a hash, see <code>fnv1a64</code>.
+	 */
+	public static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	public static final long FNV_PRIME = 0x100000001b3L;
+	
 	/**
 	 * Return boolean from optional parameter with single value. Return default value if parameter was not set.
 	 * @param contract
@@ -270,6 +277,19 @@ public class Utils {
 		}
 	}
 
+	/**
+	 * Read the input stream up to its end into a byte array. The input stream is not closed.
+	 * @param inputStream
+	 * @return all bytes read.
+	 * @throws IOException
+	 */
+	public static byte[] toByteArray(InputStream inputStream) throws IOException {
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		byte[] buf = new byte[64*1024];
+		for(int len = inputStream.read(buf); len != -1; len = inputStream.read(buf)) content.write(buf, 0, len);
+		return content.toByteArray();
+	}
+
 	/**
 	 * Compress input stream and provide result as chunks. Starts its own thread for piping the data.
 	 * @param inputStream to read uncompressed data from.
@@ -311,6 +331,7 @@ public class Utils {
 	}
 	
 	// replace one invalid XML char. Tests are done in order of most occurrences.
+	// Surrogates are replaced, as a single char cannot be part of a pair. Use the bulk version for text.
 	static public char replaceInvalid(char in) {
 		if(0x20 <= in && in <= 0xd7ff) return in;
 		if(in == 0x9 || in == 0xa || in == 0xd) return in;
@@ -318,7 +339,87 @@ public class Utils {
 		if(0x10000 <= in && in <= 0x10ffff) return in;
 		return '?';
 	}
+	
+	/**
+	 * Replace invalid XML chars by '?' in place. Most text is clean, so each char is checked with one range comparison first
+	 * and only the rare chars outside the range are checked further. Valid surrogate pairs are kept, single surrogates are replaced.
+	 * A high surrogate at the end of the range is replaced, so do not split pairs between calls. See SanitizingReader.
+	 * @param b chars to check.
+	 * @param off first char to check.
+	 * @param len number of chars to check.
+	 * @return number of chars replaced.
+	 */
+	static public int replaceInvalid(char[] b, int off, int len) {
+		int replaced = 0;
+		int end = off + len;
+		for(int i = off; i < end; i++) {
+			char c = b[i];
+			if(0x20 <= c && c < 0xd800) continue; // Clean text
+			if(c == 0x9 || c == 0xa || c == 0xd) continue;
+			if(0xe000 <= c && c <= 0xfffd) continue;
+			if(Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(b[i+1])) {
+				i++; // Valid pair
+				continue;
+			}
+			b[i] = '?';
+			replaced++;
+		}
+		return replaced;
+	}
 
+	/**
+	 * 64 bit FNV-1a hash of a string. Each char is hashed as two bytes, low byte first.
+	 * The hash is the same on all vworkers, e.g. for path ids and fingerprints.
+	 * @param s
+	 * @return hash of s.
+	 */
+	static public long fnv1a64(CharSequence s) {return fnv1a64(s, FNV_OFFSET);}
+	
+	/**
+	 * Continue a 64 bit FNV-1a hash with the chars of a string, e.g. to hash several strings one after the other.
+	 * @param s chars to add. null adds nothing.
+	 * @param hash so far. FNV_OFFSET starts a new hash.
+	 * @return hash including s.
+	 */
+	static public long fnv1a64(CharSequence s, long hash) {
+		if(s != null) for(int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+			hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+		}
+		return hash;
+	}
+	
+	/**
+	 * Continue a 64 bit FNV-1a hash with chars of an array, like <code>fnv1a64(CharSequence, long)</code>.
+	 * @param ch
+	 * @param off first char to add.
+	 * @param len number of chars to add.
+	 * @param hash so far. FNV_OFFSET starts a new hash.
+	 * @return hash including the chars.
+	 */
+	static public long fnv1a64(char[] ch, int off, int len, long hash) {
+		for(int i = off; i < off + len; i++) {
+			char c = ch[i];
+			hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+			hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+		}
+		return hash;
+	}
+	
+	/**
+	 * Continue a 64 bit FNV-1a hash with bytes.
+	 * @param b
+	 * @param off first byte to add.
+	 * @param len number of bytes to add.
+	 * @param hash so far. FNV_OFFSET starts a new hash.
+	 * @return hash including the bytes.
+	 */
+	static public long fnv1a64(byte[] b, int off, int len, long hash) {
+		for(int i = off; i < off + len; i++) hash = (hash ^ (b[i] & 0xff)) * FNV_PRIME;
+		return hash;
+	}
+	
 	/**
 	 * Find max long value in a list of longs
 	 * @param values
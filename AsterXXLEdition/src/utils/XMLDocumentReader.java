@@ -0,0 +1,93 @@
+package utils;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * @author Juergen Boiselle
+ *
+ * Read a stream of concatenated XML documents, one after another and without a common root, as a sequence of documents.
+ * The characters are passed through unchanged, but the reader signals the end of the stream right behind the end of each root element.
+ * <code>nextDocument</code> continues with the next document on the same stream, so that one reader and one XML parser can be used
+ * for all documents without copying them.
+ * The boundaries are found with XMLMarkupScanner, that tracks markup, comments, CDATA sections,
+ * processing instructions, the DOCTYPE and the depth of elements. Characters between documents, that are white space, are skipped.
+ * Names of tags are not compared. A document with more start then end tags therefore hides all documents behind it.
+ * This class is not thread safe.
+ */
+public class XMLDocumentReader extends Reader {
+	private Reader reader;
+	private char[] buf = new char[64*1024];
+	private int pos = 0, limit = 0;
+	private boolean isEOF = false;
+
+	private boolean isEnded = true; // End of the current document was passed to the caller
+	private final XMLMarkupScanner scanner = new XMLMarkupScanner(new XMLMarkupScanner.MarkupAdapter() {
+		public void endElement(int depth) {if(depth == 1) isEnded = true;} // Root element closed
+	});
+
+	/**
+	 * @param reader to read the concatenated documents from.
+	 */
+	public XMLDocumentReader(Reader reader) {this.reader = reader;}
+
+	/**
+	 * Skip the rest of the current document, e.g. after a parse error, and the white space behind it and start reading the next document.
+	 * @return false, if there is no more document.
+	 * @throws IOException if reading failed.
+	 */
+	public boolean nextDocument() throws IOException {
+		// Drain the current document
+		char[] rest = new char[1024];
+		while(read(rest, 0, rest.length) != -1);
+
+		// Skip white space between documents
+		for(;;) {
+			if(pos == limit && !fill()) return false;
+			if(!Character.isWhitespace(buf[pos]) && buf[pos] != '\uFEFF') break;
+			pos++;
+		}
+
+		scanner.clear();
+		isEnded = false;
+		return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.Reader#read(char[], int, int)
+	 *
+	 * Read up to the end of the current document.
+	 */
+	public int read(char[] cbuf, int off, int len) throws IOException {
+		if(isEnded || len == 0) return isEnded? -1:0;
+		if(pos == limit && !fill()) {
+			isEnded = true;
+			return -1;
+		}
+
+		int n = 0;
+		while(n < len && pos < limit && !isEnded) {
+			char c = buf[pos++];
+			cbuf[off + n++] = c;
+			scanner.scan(c);
+		}
+		return n;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.Reader#close()
+	 */
+	public void close() throws IOException {reader.close();}
+
+	// Read the next characters into the buffer. Return false at end of stream.
+	private boolean fill() throws IOException {
+		if(isEOF) return false;
+		limit = reader.read(buf, 0, buf.length);
+		pos = 0;
+		if(limit == -1) {
+			limit = 0;
+			isEOF = true;
+		}
+		return !isEOF;
+	}
+}
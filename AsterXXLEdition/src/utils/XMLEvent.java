@@ -0,0 +1,189 @@
+package utils;
+
+/**
+ * @author Juergen Boiselle
+ *
+ * One row found by XMLReaderService, passed in batches to an <code>XMLReaderService.XMLEventCallback</code> or one by one to an
+ * <code>XMLReaderService.XMLRowCallback</code>. Besides the parameters of <code>XMLReaderCallback.newRow</code> an event carries the values,
+ * that are otherwise only valid during the callback, like the fingerprint or the position in the hierarchy, and the bytes of binary chunks.
+ * Rows can therefore be kept and replayed later, e.g. by XMLRowBuffer, without losing them.
+ * Events are flyweights: The service reuses the same objects for the next row or batch. In a batch, full path and value are copied into
+ * buffers of the event, so that no strings are created for them. Call <code>getFullPathString</code> or <code>getValueString</code> for the columns,
+ * that are actually returned. Names are interned by the parser and shared by all events.
+ * This class is not thread safe.
+ */
+public class XMLEvent {
+	private String includeParent;
+	private int includeCount;
+	private CharSequence fullPath; // Copy in fullPathBuffer, view or string
+	private final StringBuilder fullPathBuffer = new StringBuilder();
+	private String uri, localName, qName;
+	private String type;
+	private CharSequence value; // Copy in valueBuffer, view, string or null
+	private final StringBuilder valueBuffer = new StringBuilder();
+	private int id, firstSubId;
+	private int parentId, depth, ordinal, valueChunk;
+	private long fingerprint;
+	private boolean isIncludeParent;
+	private String fragment;
+	private int binaryChunk;
+	private byte[] buf;
+	private int off, len;
+
+	// Copy a row into this event. The character sequences are copied, not kept.
+	void set(String includeParent, int includeCount, CharSequence fullPath,
+			String uri, String localName, String qName, String type, CharSequence value, int id, int firstSubId) {
+		fullPathBuffer.setLength(0);
+		fullPathBuffer.append(fullPath);
+		valueBuffer.setLength(0);
+		if(value != null) valueBuffer.append(value);
+		wrap(includeParent, includeCount, fullPathBuffer, uri, localName, qName, type, (value == null)? null:valueBuffer, id, firstSubId);
+	}
+
+	// Keep a row in this event. The character sequences are kept and must not change, while the event is used.
+	void wrap(String includeParent, int includeCount, CharSequence fullPath,
+			String uri, String localName, String qName, String type, CharSequence value, int id, int firstSubId) {
+		this.includeParent = includeParent;
+		this.includeCount = includeCount;
+		this.fullPath = fullPath;
+		this.uri = uri;
+		this.localName = localName;
+		this.qName = qName;
+		this.type = type;
+		this.value = value;
+		this.id = id;
+		this.firstSubId = firstSubId;
+		buf = null;
+	}
+
+	// Values only valid during a callback of XMLReaderService
+	void setState(int parentId, int depth, int ordinal, int valueChunk, long fingerprint, boolean isIncludeParent, String fragment) {
+		this.parentId = parentId;
+		this.depth = depth;
+		this.ordinal = ordinal;
+		this.valueChunk = valueChunk;
+		this.fingerprint = fingerprint;
+		this.isIncludeParent = isIncludeParent;
+		this.fragment = fragment;
+	}
+
+	// Make this event a binary chunk of type 'B'. The bytes are kept and must not change, while the event is used.
+	void setBinary(int binaryChunk, byte[] buf, int off, int len) {
+		type = "B";
+		this.binaryChunk = binaryChunk;
+		this.buf = buf;
+		this.off = off;
+		this.len = len;
+	}
+
+	// Shift the numbers of a row of a part of a document to the numbers in the whole document
+	void renumber(int includeCount, int id, int firstSubId) {
+		this.includeCount = includeCount;
+		this.id = id;
+		this.firstSubId = firstSubId;
+	}
+
+	/**
+	 * @return see <code>XMLReaderCallback.newRow</code>.
+	 */
+	public String getIncludeParent() {return includeParent;}
+
+	/**
+	 * @return see <code>XMLReaderCallback.newRow</code>.
+	 */
+	public int getIncludeCount() {return includeCount;}
+
+	/**
+	 * @return the full path as a view, that changes with the next row or batch.
+	 */
+	public CharSequence getFullPath() {return fullPath;}
+
+	/**
+	 * @return the full path as a string. It is only copied, if the event does not keep a string already.
+	 */
+	public String getFullPathString() {return fullPath.toString();}
+
+	public String getUri() {return uri;}
+	public String getLocalName() {return localName;}
+	public String getQName() {return qName;}
+
+	/**
+	 * @return 'T', 'A' or 'C' as in <code>XMLReaderCallback.newRow</code> or 'B' for a binary chunk.
+	 */
+	public String getType() {return type;}
+
+	/**
+	 * @return the value as a view, that changes with the next row or batch, or null, e.g. for binary nodes.
+	 */
+	public CharSequence getValue() {return value;}
+
+	/**
+	 * @return the value as a string or null. It is only copied, if the event does not keep a string already.
+	 */
+	public String getValueString() {return (value == null)? null:value.toString();}
+
+	public int getId() {return id;}
+	public int getFirstSubId() {return firstSubId;}
+
+	/**
+	 * @return see <code>XMLReaderService.getParentId</code>.
+	 */
+	public int getParentId() {return parentId;}
+
+	/**
+	 * @return see <code>XMLReaderService.getDepth</code>.
+	 */
+	public int getDepth() {return depth;}
+
+	/**
+	 * @return see <code>XMLReaderService.getOrdinal</code>.
+	 */
+	public int getOrdinal() {return ordinal;}
+
+	/**
+	 * @return see <code>XMLReaderService.getValueChunk</code>.
+	 */
+	public int getValueChunk() {return valueChunk;}
+
+	/**
+	 * @return see <code>XMLReaderService.getFingerprint</code>.
+	 */
+	public long getFingerprint() {return fingerprint;}
+
+	/**
+	 * @return see <code>XMLReaderService.isIncludeParent</code>.
+	 */
+	public boolean isIncludeParent() {return isIncludeParent;}
+
+	/**
+	 * @return see <code>XMLReaderService.getFragment</code>.
+	 */
+	public String getFragment() {return fragment;}
+
+	/**
+	 * @return number of a binary chunk, starting with 1, see <code>XMLBinaryCallback.newBinaryChunk</code>.
+	 */
+	public int getBinaryChunk() {return binaryChunk;}
+
+	/**
+	 * @return the decoded bytes of a binary chunk or null for all other rows. The buffer is reused for the next chunk.
+	 */
+	public byte[] getBytes() {return buf;}
+	public int getOffset() {return off;}
+	public int getLength() {return len;}
+
+	/**
+	 * Pass this event to a callback. An <code>XMLRowCallback</code> gets the event itself. Other callbacks get strings and
+	 * binary chunks only, if they are an <code>XMLBinaryCallback</code>.
+	 * @param xmlReaderCallback
+	 */
+	public void replay(XMLReaderService.XMLReaderCallback xmlReaderCallback) {
+		if(xmlReaderCallback instanceof XMLReaderService.XMLRowCallback)
+			((XMLReaderService.XMLRowCallback) xmlReaderCallback).newRow(this);
+		else if(buf == null)
+			xmlReaderCallback.newRow(includeParent, includeCount, getFullPathString(), uri, localName, qName, type, getValueString(), id, firstSubId);
+		else if(xmlReaderCallback instanceof XMLReaderService.XMLBinaryCallback)
+			((XMLReaderService.XMLBinaryCallback) xmlReaderCallback).newBinaryChunk(includeParent, includeCount, getFullPathString(),
+					uri, localName, qName, binaryChunk, buf, off, len, id);
+	}
+}
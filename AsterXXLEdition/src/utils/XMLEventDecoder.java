@@ -0,0 +1,152 @@
+package utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * @author Juergen Boiselle
+ *
+ * Replay an event stream written by XMLEventEncoder to a ContentHandler, as if the XML parser had read the original document.
+ * The stream is read sequentially, nothing is parsed or decompressed. Streams can be concatenated, e.g. the chunks of several
+ * ZIP entries in one partition. Each header starts a new name dictionary.
+ * This class is not thread safe.
+ */
+public class XMLEventDecoder {
+	private InputStream inputStream;
+	private byte[] buf = new byte[64*1024];
+	private int pos = 0, limit = 0;
+	private char[] chars = new char[1024];
+	private List<String[]> names = new ArrayList<String[]>(); // uri, local name and qName by id
+	private List<String[]> elements = new ArrayList<String[]>(); // Names of open elements
+	private AttributesImpl attributes = new AttributesImpl();
+
+	/**
+	 * @param inputStream to read the event stream from. The stream is not closed.
+	 */
+	public XMLEventDecoder(InputStream inputStream) {this.inputStream = inputStream;}
+
+	/**
+	 * Replay the next document of the stream.
+	 * @param contentHandler to pass the events to or null, to skip the document.
+	 * @return false, if the end of the stream was reached before a document started.
+	 * @throws SAXException if the stream is not a valid event stream, the document was aborted while encoding or the content handler throws it.
+	 * 		Call <code>parse</code> with a null content handler to skip the rest of the document.
+	 * @throws IOException if reading failed.
+	 */
+	public boolean parse(ContentHandler contentHandler) throws SAXException, IOException {
+		boolean isInDocument = false;
+		for(int event = read(); event != -1; event = read()) {
+			switch(event) {
+			case XMLEventEncoder.STREAM:
+				if(isInDocument) throw new SAXException("Invalid event stream: new stream within document");
+				if(readVarint() != XMLEventEncoder.VERSION) throw new SAXException("Unsupported version of event stream");
+				names.clear();
+				break;
+
+			case XMLEventEncoder.NAME:
+				names.add(new String[] {readString(), readString(), readString()});
+				break;
+
+			case XMLEventEncoder.START_DOCUMENT:
+				isInDocument = true;
+				elements.clear();
+				if(contentHandler != null) contentHandler.startDocument();
+				break;
+
+			case XMLEventEncoder.END_DOCUMENT:
+				if(contentHandler != null) contentHandler.endDocument();
+				return true;
+
+			case XMLEventEncoder.START_ELEMENT:
+				String[] name = name(readVarint());
+				attributes.clear();
+				for(int i = readVarint(); i > 0; i--) {
+					String[] attName = name(readVarint());
+					attributes.addAttribute(attName[0], attName[1], attName[2], "CDATA", readString());
+				}
+				elements.add(name);
+				if(contentHandler != null) contentHandler.startElement(name[0], name[1], name[2], attributes);
+				break;
+
+			case XMLEventEncoder.CHARACTERS:
+				String text = readString();
+				if(contentHandler == null) break;
+				if(text.length() > chars.length) chars = new char[Math.max(text.length(), 2*chars.length)];
+				text.getChars(0, text.length(), chars, 0);
+				contentHandler.characters(chars, 0, text.length());
+				break;
+
+			case XMLEventEncoder.END_ELEMENT:
+				if(elements.isEmpty()) throw new SAXException("Invalid event stream: end of element without start");
+				String[] end = elements.remove(elements.size()-1);
+				if(contentHandler != null) contentHandler.endElement(end[0], end[1], end[2]);
+				break;
+
+			case XMLEventEncoder.ABORT:
+				String message = readString();
+				if(contentHandler == null) return true;
+				throw new SAXException(message);
+
+			default:
+				throw new SAXException("Invalid event stream: unknown event " + event);
+			}
+		}
+		if(isInDocument) throw new SAXException("Invalid event stream: unexpected end of stream within document");
+		return false;
+	}
+
+	private String[] name(int nameId) throws SAXException {
+		if(nameId >= names.size()) throw new SAXException("Invalid event stream: unknown name " + nameId);
+		return names.get(nameId);
+	}
+
+	private String readString() throws SAXException, IOException {
+		int len = readVarint();
+		if(len <= limit - pos) {
+			String s = new String(buf, pos, len, XMLEventEncoder.UTF8);
+			pos += len;
+			return s;
+		}
+
+		// Longer then the rest of the buffer
+		byte[] bytes = new byte[len];
+		int off = Math.min(len, limit - pos);
+		System.arraycopy(buf, pos, bytes, 0, off);
+		pos += off;
+		while(off < len) {
+			int n = inputStream.read(bytes, off, len - off);
+			if(n == -1) throw new SAXException("Invalid event stream: unexpected end of stream within string");
+			off += n;
+		}
+		return new String(bytes, XMLEventEncoder.UTF8);
+	}
+
+	private int readVarint() throws SAXException, IOException {
+		int value = 0;
+		for(int shift = 0; shift < 35; shift += 7) {
+			int b = read();
+			if(b == -1) throw new SAXException("Invalid event stream: unexpected end of stream within number");
+			value |= (b & 0x7f) << shift;
+			if((b & 0x80) == 0) return value;
+		}
+		throw new SAXException("Invalid event stream: number too long");
+	}
+
+	private int read() throws IOException {
+		if(pos == limit) {
+			limit = inputStream.read(buf, 0, buf.length);
+			pos = 0;
+			if(limit <= 0) {
+				limit = 0;
+				return -1;
+			}
+		}
+		return buf[pos++] & 0xff;
+	}
+}
@@ -0,0 +1,185 @@
+package utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+
+/**
+ * @author Juergen Boiselle
+ *
+ * Write the events of an XML parser as a compact binary event stream, that XMLEventDecoder replays without parsing.
+ * The stream starts with a header and contains a sequence of events. Each event is one byte followed by its data:
+ * - Header: STREAM, version. Starts a new name dictionary.
+ * - NAME: uri, local name and qName as strings. Adds the next id to the name dictionary, starting with 0.
+ * - START_DOCUMENT, END_DOCUMENT
+ * - START_ELEMENT: name id, number of attributes and for each attribute its name id and value.
+ * - CHARACTERS: the text between two tags as one string. Adjacent character events of the parser are combined.
+ * - END_ELEMENT: The name is taken from the matching START_ELEMENT.
+ * - ABORT: message of the error, that ended parsing of the current document. Replaces END_DOCUMENT.
+ * Numbers are unsigned variable length integers with 7 bits per byte, low bits first. Strings are UTF-8 prefixed by their length in bytes.
+ * Names are written once per stream and referenced by their id afterwards.
+ * Events ignored by XMLReaderService, like processing instructions and ignorable white space, are not written.
+ * This class is not thread safe.
+ */
+public class XMLEventEncoder implements ContentHandler {
+	static final int STREAM = 0, NAME = 1, START_DOCUMENT = 2, END_DOCUMENT = 3, START_ELEMENT = 4, CHARACTERS = 5, END_ELEMENT = 6, ABORT = 7;
+	static final int VERSION = 1;
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private OutputStream outputStream;
+	private byte[] buf = new byte[64*1024];
+	private int pos = 0;
+	private HashMap<String, Integer> names = new HashMap<String, Integer>(); // Id by uri, local name and qName
+	private StringBuilder text = new StringBuilder(); // Characters not yet written
+	private StringBuilder key = new StringBuilder();
+
+	/**
+	 * Start a new stream and write its header.
+	 * @param outputStream to write the event stream to. It is flushed at the end of each document, but not closed.
+	 */
+	public XMLEventEncoder(OutputStream outputStream) {
+		this.outputStream = outputStream;
+		buf[pos++] = STREAM;
+		buf[pos++] = VERSION;
+	}
+
+	public void startDocument() throws SAXException {
+		text.setLength(0);
+		write(START_DOCUMENT);
+	}
+
+	public void endDocument() throws SAXException {
+		writeText();
+		write(END_DOCUMENT);
+		try {
+			flush();
+		} catch (IOException e) {
+			throw new SAXException(e);
+		}
+	}
+
+	public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+		writeText();
+		int nameId = nameId(uri, localName, qName);
+		int length = (atts == null)? 0:atts.getLength();
+		int[] attNameIds = new int[length];
+		for(int i = 0; i < length; i++) attNameIds[i] = nameId(atts.getURI(i), atts.getLocalName(i), atts.getQName(i));
+
+		write(START_ELEMENT);
+		writeVarint(nameId);
+		writeVarint(length);
+		for(int i = 0; i < length; i++) {
+			writeVarint(attNameIds[i]);
+			writeString(atts.getValue(i));
+		}
+	}
+
+	public void characters(char[] ch, int start, int length) throws SAXException {text.append(ch, start, length);}
+
+	public void endElement(String uri, String localName, String qName) throws SAXException {
+		writeText();
+		write(END_ELEMENT);
+	}
+
+	// All other events are ignored
+	public void endPrefixMapping(String prefix) throws SAXException {}
+	public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {}
+	public void processingInstruction(String target, String data) throws SAXException {}
+	public void setDocumentLocator(Locator locator) {}
+	public void skippedEntity(String name) throws SAXException {}
+	public void startPrefixMapping(String prefix, String uri) throws SAXException {}
+
+	/**
+	 * End the current document after a parse error. The decoder replays the events written so far and throws the error then.
+	 * @param message of the error.
+	 * @throws IOException if writing failed.
+	 */
+	public void abort(String message) throws IOException {
+		try {
+			writeText();
+			write(ABORT);
+			writeString(message);
+		} catch (SAXException e) {
+			throw new IOException(e.getMessage());
+		}
+		flush();
+	}
+	
+	/**
+	 * Write all buffered events to the output stream.
+	 * @throws IOException if writing failed.
+	 */
+	public void flush() throws IOException {
+		outputStream.write(buf, 0, pos);
+		outputStream.flush();
+		pos = 0;
+	}
+
+	// Id of a name. New names are written to the stream before they are used.
+	private int nameId(String uri, String localName, String qName) throws SAXException {
+		key.setLength(0);
+		key.append(uri).append('\0').append(localName).append('\0').append(qName);
+		String k = key.toString();
+		Integer nameId = names.get(k);
+		if(nameId != null) return nameId;
+
+		nameId = names.size();
+		names.put(k, nameId);
+		write(NAME);
+		writeString(uri);
+		writeString(localName);
+		writeString(qName);
+		return nameId;
+	}
+
+	private void writeText() throws SAXException {
+		if(text.length() == 0) return;
+		write(CHARACTERS);
+		writeString(text.toString());
+		text.setLength(0);
+	}
+
+	private void writeString(String s) throws SAXException {
+		byte[] bytes = (s == null)? new byte[0]:s.getBytes(UTF8);
+		writeVarint(bytes.length);
+		if(pos + bytes.length > buf.length) flushBuffer();
+		if(bytes.length > buf.length) {
+			try {
+				outputStream.write(bytes);
+			} catch (IOException e) {
+				throw new SAXException(e);
+			}
+			return;
+		}
+		System.arraycopy(bytes, 0, buf, pos, bytes.length);
+		pos += bytes.length;
+	}
+
+	private void writeVarint(int value) throws SAXException {
+		while((value & ~0x7f) != 0) {
+			write((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		write(value);
+	}
+
+	private void write(int b) throws SAXException {
+		if(pos == buf.length) flushBuffer();
+		buf[pos++] = (byte) b;
+	}
+
+	private void flushBuffer() throws SAXException {
+		try {
+			outputStream.write(buf, 0, pos);
+			pos = 0;
+		} catch (IOException e) {
+			throw new SAXException(e);
+		}
+	}
+}
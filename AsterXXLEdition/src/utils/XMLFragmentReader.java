@@ -0,0 +1,145 @@
+package utils;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * @author Juergen Boiselle
+ *
+ * Keep the original XML of selected elements, while the XML parser reads the document through this reader.
+ * The characters are passed through unchanged. XMLMarkupScanner follows the tags and their local names.
+ * Elements are selected by local name, regular expression or literal full path as in the include list of InExcluder.
+ * Like include parents, elements within a selected element are not selected on their own.
+ * The XML of a selected element, from the '<' of its start tag to the '>' of its end tag, is kept only until the element ends.
+ * Elements are numbered in the order of their start tags from 1 on. The parser reads ahead, so the XML of an element is complete
+ * at the latest, when the parser reports its end. Fetch it there with <code>poll</code> and the number of the element.
+ * Entities, CDATA sections and comments are kept as written. Names of end tags are not compared.
+ * This class is not thread safe.
+ */
+public class XMLFragmentReader extends FilterReader {
+	private final InExcluder inExcluder;
+	private final int maxChars;
+	private final XMLMarkupScanner scanner = new XMLMarkupScanner(new XMLMarkupScanner.MarkupAdapter() {
+		public void startElement(int depth) {XMLFragmentReader.this.startElement(depth);}
+		public void endElement(int depth) {XMLFragmentReader.this.endElement(depth);}
+	});
+	private StringBuilder tag = new StringBuilder(); // Current start tag, while no element is kept
+	private StringBuilder fragment = new StringBuilder(); // XML of the kept element so far
+	private int fragmentDepth = 0; // Depth of the kept element or 0
+	private int fragmentNo = 0; // Number of the kept element
+	private boolean isTooLong = false; // The kept element has more then maxChars characters
+	private int elements = 0; // Start tags found so far
+	private LinkedList<Fragment> fragments = new LinkedList<Fragment>(); // Complete elements not yet polled
+
+	/**
+	 * @param reader to read the XML document from.
+	 * @param selected local names, regular expressions or literal full paths of the elements to keep, see InExcluder.
+	 * @param maxChars maximal number of characters of an element. The XML of longer elements is not kept.
+	 */
+	public XMLFragmentReader(Reader reader, List<String> selected, int maxChars) {
+		super(reader);
+		inExcluder = new InExcluder(selected, null, null, null);
+		this.maxChars = maxChars;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.FilterReader#read(char[], int, int)
+	 */
+	public int read(char[] cbuf, int off, int len) throws IOException {
+		int n = in.read(cbuf, off, len);
+		for(int i = off; i < off + n; i++) scan(cbuf[i]);
+		return n;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.FilterReader#read()
+	 */
+	public int read() throws IOException {
+		int c = in.read();
+		if(c != -1) scan((char) c);
+		return c;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.FilterReader#skip(long)
+	 *
+	 * Skipped characters would not be scanned.
+	 */
+	public long skip(long n) throws IOException {
+		char[] buf = new char[(int) Math.min(n, 8192)];
+		return Math.max(0, read(buf, 0, buf.length));
+	}
+
+	public boolean markSupported() {return false;}
+	public void mark(int readAheadLimit) throws IOException {throw new IOException("mark() not supported");}
+	public void reset() throws IOException {throw new IOException("reset() not supported");}
+
+	/**
+	 * Get the XML of an element, if it was selected. Call it at the end of each element, so that the kept elements are fetched in the
+	 * order they end. The numbers of sub elements are higher then the number of their parent, but they end first.
+	 * @param element number of the element in the order of the start tags, starting with 1.
+	 * @return the XML of the element or null, if it was not selected, is not complete yet or was too long.
+	 */
+	public String poll(int element) {
+		if(fragments.isEmpty() || fragments.getFirst().element != element) return null;
+		return fragments.removeFirst().xml;
+	}
+
+	// Scan one character and keep it, if it is part of a selected element
+	private void scan(char c) {
+		if(fragmentDepth > 0) append(c);
+		else if(c == '<' && !scanner.isInMarkup()) {
+			tag.setLength(0);
+			tag.append(c);
+		}
+		else if(scanner.isInStartTag()) tag.append(c); // Might be a selected start tag
+		scanner.scan(c);
+	}
+
+	// Name of a start tag is complete. Start keeping the element, if it is selected.
+	private void startElement(int depth) {
+		elements++;
+		inExcluder.enterNode(scanner.getLocalName());
+		if(fragmentDepth > 0 || !inExcluder.isIncludeParent()) return;
+
+		fragmentDepth = depth;
+		fragmentNo = elements;
+		isTooLong = false;
+		fragment.setLength(0);
+		for(int i = 0; i < tag.length(); i++) append(tag.charAt(i));
+	}
+
+	// End of an element. Complete it, if it is kept.
+	private void endElement(int depth) {
+		if(depth == fragmentDepth) {
+			fragments.add(new Fragment(fragmentNo, isTooLong? null:fragment.toString()));
+			fragment.setLength(0);
+			fragmentDepth = 0;
+		}
+		inExcluder.exitNode();
+	}
+
+	private void append(char c) {
+		if(isTooLong) return;
+		if(fragment.length() == maxChars) {
+			isTooLong = true;
+			fragment.setLength(0);
+			return;
+		}
+		fragment.append(c);
+	}
+
+	// XML of a complete element
+	private static class Fragment {
+		final int element;
+		final String xml;
+
+		public Fragment(int element, String xml) {
+			this.element = element;
+			this.xml = xml;
+		}
+	}
+}
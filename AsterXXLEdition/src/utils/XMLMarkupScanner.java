@@ -0,0 +1,226 @@
+package utils;
+
+/**
+ * @author Juergen Boiselle
+ *
+ * Follow the markup of an XML document character by character without parsing it, to find the boundaries of elements in the characters,
+ * that an XML parser reads. The light weight state machine tracks start and end tags with quoted attribute values, comments,
+ * CDATA sections, processing instructions and the DOCTYPE with quoted literals and comments in its internal subset.
+ * It keeps the name of the current start tag and the depth of elements and reports them to a <code>MarkupListener</code>.
+ * Names of end tags are not compared and no values are decoded.
+ * This class is not thread safe.
+ */
+public class XMLMarkupScanner {
+	/**
+	 * @author Juergen Boiselle
+	 *
+	 * Implement this interface to get notified about the boundaries found by the scanner. Each method is called, after the character,
+	 * that completed the boundary, was scanned.
+	 */
+	public interface MarkupListener {
+		/**
+		 * The '<' of a tag, comment, CDATA section, processing instruction or DOCTYPE was scanned.
+		 */
+		public void startMarkup();
+		
+		/**
+		 * The name of a start tag is complete. Get it with <code>getQName</code> or <code>getLocalName</code>.
+		 * @param depth of the element, 1 for the root element.
+		 */
+		public void startElement(int depth);
+		
+		/**
+		 * The '>' of a start tag was scanned.
+		 * @param depth of the element.
+		 * @param isEmpty true, if the tag ends with "/>". <code>endElement</code> follows then.
+		 */
+		public void endStartTag(int depth, boolean isEmpty);
+		
+		/**
+		 * The '>' of an end tag or of an empty start tag was scanned. End tags without a start tag are not reported.
+		 * @param depth of the element, 1 for the root element, which closes the document.
+		 */
+		public void endElement(int depth);
+	}
+	
+	/**
+	 * @author Juergen Boiselle
+	 *
+	 * Empty implementation of all methods of <code>MarkupListener</code>. Extend it to implement only the methods needed.
+	 */
+	public static class MarkupAdapter implements MarkupListener {
+		public void startMarkup() {}
+		public void startElement(int depth) {}
+		public void endStartTag(int depth, boolean isEmpty) {}
+		public void endElement(int depth) {}
+	}
+	
+	// States of the scanner
+	private static final int TEXT = 0, MARKUP = 1, TAG_NAME = 2, IN_TAG = 3, DOUBLE_QUOTED = 4, SINGLE_QUOTED = 5,
+			END_TAG = 6, BANG = 7, COMMENT = 8, CDATA = 9, DOCTYPE = 10, DOCTYPE_LITERAL = 11, DOCTYPE_COMMENT = 12, PI = 13;
+	
+	private final MarkupListener listener;
+	private int state = TEXT;
+	private int depth = 0; // Open elements
+	private int markupLen = 0; // Characters of the current markup including '<'
+	private int brackets = 0; // Open brackets in DOCTYPE
+	private int commentLen = 0; // Characters of the current comment in the internal subset behind "<!--"
+	private char quote = 0; // Quote of the current literal in DOCTYPE
+	private char prev1 = 0, prev2 = 0, prev3 = 0; // Last three characters
+	private StringBuilder name = new StringBuilder(); // Qualified name of the current start tag
+	
+	/**
+	 * @param listener to notify about boundaries.
+	 */
+	public XMLMarkupScanner(MarkupListener listener) {this.listener = listener;}
+	
+	/**
+	 * Start a new document.
+	 */
+	public void clear() {
+		state = TEXT;
+		depth = 0;
+		prev1 = prev2 = prev3 = 0;
+	}
+	
+	/**
+	 * @return number of open elements.
+	 */
+	public int getDepth() {return depth;}
+	
+	/**
+	 * @return true, if the last character scanned is part of a tag, comment, CDATA section, processing instruction or DOCTYPE.
+	 */
+	public boolean isInMarkup() {return state != TEXT;}
+	
+	/**
+	 * @return true, if the last character scanned might be part of a start tag.
+	 */
+	public boolean isInStartTag() {return state >= MARKUP && state <= SINGLE_QUOTED;}
+	
+	/**
+	 * @return qualified name of the current or last start tag.
+	 */
+	public CharSequence getQName() {return name;}
+	
+	/**
+	 * @return local name of the current or last start tag.
+	 */
+	public String getLocalName() {
+		int idx = name.indexOf(":");
+		return (idx == -1)? name.toString():name.substring(idx+1);
+	}
+	
+	/**
+	 * Scan the next character of the document.
+	 * @param c
+	 */
+	public void scan(char c) {
+		if(state != TEXT) markupLen++;
+		
+		switch(state) {
+		case TEXT:
+			if(c == '<') {
+				markupLen = 1;
+				state = MARKUP;
+				listener.startMarkup();
+			}
+			break;
+			
+		case MARKUP:
+			if(c == '/') state = END_TAG;
+			else if(c == '?') state = PI;
+			else if(c == '!') state = BANG;
+			else {
+				name.setLength(0);
+				name.append(c);
+				state = TAG_NAME;
+			}
+			break;
+			
+		case TAG_NAME:
+			if(c == '>' || c == '/' || Character.isWhitespace(c)) {
+				state = IN_TAG;
+				listener.startElement(++depth);
+				if(c == '>') endStartTag(false);
+			}
+			else name.append(c);
+			break;
+			
+		case IN_TAG:
+			if(c == '"') state = DOUBLE_QUOTED;
+			else if(c == '\'') state = SINGLE_QUOTED;
+			else if(c == '>') endStartTag(prev1 == '/');
+			break;
+			
+		case DOUBLE_QUOTED:
+			if(c == '"') state = IN_TAG;
+			break;
+			
+		case SINGLE_QUOTED:
+			if(c == '\'') state = IN_TAG;
+			break;
+			
+		case END_TAG:
+			if(c == '>') {
+				state = TEXT;
+				if(depth > 0) listener.endElement(depth--); // Unbalanced otherwise, the parser reports it
+			}
+			break;
+			
+		case BANG:
+			if(c == '-') state = COMMENT;
+			else if(c == '[') state = CDATA;
+			else {
+				brackets = 0;
+				state = DOCTYPE;
+			}
+			break;
+			
+		case COMMENT:
+			if(c == '>' && prev1 == '-' && prev2 == '-' && markupLen >= 7) state = TEXT; // "<!---->" is the shortest comment
+			break;
+			
+		case CDATA:
+			if(c == '>' && prev1 == ']' && prev2 == ']' && markupLen >= 12) state = TEXT; // "<![CDATA[]]>"
+			break;
+			
+		case DOCTYPE:
+			if(c == '"' || c == '\'') {
+				quote = c;
+				state = DOCTYPE_LITERAL;
+			}
+			else if(c == '-' && prev1 == '-' && prev2 == '!' && prev3 == '<') {
+				commentLen = 0;
+				state = DOCTYPE_COMMENT;
+			}
+			else if(c == '[') brackets++;
+			else if(c == ']') brackets--;
+			else if(c == '>' && brackets == 0) state = TEXT;
+			break;
+			
+		case DOCTYPE_LITERAL:
+			if(c == quote) state = DOCTYPE;
+			break;
+			
+		case DOCTYPE_COMMENT:
+			commentLen++;
+			if(c == '>' && prev1 == '-' && prev2 == '-' && commentLen >= 3) state = DOCTYPE; // "<!---->"
+			break;
+			
+		case PI:
+			if(c == '>' && prev1 == '?' && markupLen >= 4) state = TEXT; // "<??>"
+			break;
+		}
+		prev3 = prev2;
+		prev2 = prev1;
+		prev1 = c;
+	}
+	
+	// End of a start tag. An empty element ends here.
+	private void endStartTag(boolean isEmpty) {
+		state = TEXT;
+		listener.endStartTag(depth, isEmpty);
+		if(isEmpty) listener.endElement(depth--);
+	}
+}
@@ -1,7 +1,12 @@
 package utils;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
 import java.io.Reader;
 import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
 import java.util.EmptyStackException;
 import java.util.List;
 import java.util.Stack;
@@ -14,6 +19,8 @@ import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.XMLReaderFactory;
 
+import utils.Chunkifier.ByteChunkListener;
+
 /**
  * @author Juergen Boiselle
  * 
@@ -47,51 +54,282 @@ public class XMLReaderService {
 				String uri, String localName, String qName, String type, String value, int id, int first_sub_id);
 	}
 	
+	/**
+	 * @author Juergen Boiselle
+	 *
+	 * Implement this interface additionally to get the decoded content of binary nodes. See <code>setBinaryNodes</code>.
+	 */
+	public interface XMLBinaryCallback extends XMLReaderCallback {
+		/**
+		 * Called for each chunk of the decoded content of a binary node, before the row of its tag.
+		 * @param includeParent see <code>newRow</code>.
+		 * @param includeCount see <code>newRow</code>.
+		 * @param fullPath of the tag.
+		 * @param uri of the tag.
+		 * @param localName of the tag.
+		 * @param qName of the tag.
+		 * @param chunk number of the chunk, starting with 1.
+		 * @param buf decoded bytes. The buffer is reused for the next chunk.
+		 * @param off first byte of the chunk.
+		 * @param len number of bytes of the chunk.
+		 * @param id is the first_sub_id of the tag, like for continuation rows.
+		 */
+		public void newBinaryChunk(String includeParent, int includeCount, String fullPath,
+				String uri, String localName, String qName, int chunk, byte[] buf, int off, int len, int id);
+	}
+	
+	/**
+	 * @author Juergen Boiselle
+	 *
+	 * Implement this interface additionally to get the rows in batches of reused XMLEvent objects instead of one call of
+	 * <code>newRow</code> per row with strings. <code>newRow</code> is not called then.
+	 * A batch is passed when it is full, before each binary chunk and when parsing of a document ends, also if it ends with an error.
+	 */
+	public interface XMLEventCallback extends XMLReaderCallback {
+		/**
+		 * Called with the next rows in the order they were found.
+		 * @param events the rows. The objects and their character sequences are reused for the next batch.
+		 * @param count number of events passed, starting at index 0.
+		 */
+		public void newEvents(XMLEvent[] events, int count);
+	}
+	
+	/**
+	 * @author Juergen Boiselle
+	 *
+	 * Implement this interface instead to get each row and each binary chunk as an XMLEvent, that carries the values, which are otherwise only
+	 * valid during the callback, like the fingerprint or the position in the hierarchy. Rows can then be kept and replayed later with these values.
+	 * <code>newRow</code> with strings and <code>newBinaryChunk</code> are not called by the service then. Extend <code>XMLRowAdapter</code>
+	 * to pass them as events, if other callers use them.
+	 */
+	public interface XMLRowCallback extends XMLBinaryCallback {
+		/**
+		 * Called whenever the parser has finished reading a tag or an attribute and for each binary chunk.
+		 * @param row the row. The object is reused for the next row. Full path and value are strings, that can be kept.
+		 */
+		public void newRow(XMLEvent row);
+	}
+	
+	/**
+	 * @author Juergen Boiselle
+	 *
+	 * Pass rows and binary chunks with strings as events to <code>newRow</code>. Values only valid during a callback of the service
+	 * are not known then: The parent id is -1 and all other values are 0, false or null.
+	 */
+	public static abstract class XMLRowAdapter implements XMLRowCallback {
+		private XMLEvent row = new XMLEvent();
+		
+		public void newRow(String includeParent, int includeCount, String fullPath,
+				String uri, String localName, String qName, String type, String value, int id, int first_sub_id) {
+			row.wrap(includeParent, includeCount, fullPath, uri, localName, qName, type, value, id, first_sub_id);
+			row.setState(-1, 0, 0, 0, 0L, false, null);
+			newRow(row);
+		}
+		
+		public void newBinaryChunk(String includeParent, int includeCount, String fullPath,
+				String uri, String localName, String qName, int chunk, byte[] buf, int off, int len, int id) {
+			row.wrap(includeParent, includeCount, fullPath, uri, localName, qName, "B", null, id, id);
+			row.setState(-1, 0, 0, 0, 0L, false, null);
+			row.setBinary(chunk, buf, off, len);
+			newRow(row);
+		}
+	}
+	
+	public static final int EVENT_BATCH = 256; // Events passed at once to an XMLEventCallback
+	
 	private XMLReader xmlReader;
+	private OfflineEntityResolver entityResolver = new OfflineEntityResolver(null); // Never loads entities from the network
 	private XMLReaderCallback xmlReaderCallback;
 	private InExcluder inExcluder;
+	private XPathSelector xPathSelector;
+	private UTF8XMLTokenizer utf8XMLTokenizer = null; // Created on first use
+	private UTF8XMLTokenizer textSource = null; // If set, the tokenizer provides the value of a tag instead of cdata
+	private int id = 0; // Next id to assign within the current document
+	private int rootIncludeCount = 0; // Include count after entering the root element
+	private int rootSubTags = 0; // Sub tags of the root element found so far
+	private boolean isSkipped = false; // Parsing of current document was skipped
+	private boolean isStopped = false; // Callback asked to end parsing of current document
+	private int maxValueChars = 0; // If more then 0, values are split into chunks of this size
+	private int valueChunk = 0; // Number of the chunk passed to the callback
+	private StringInterner nameInterner = new StringInterner(1024); // Canonical names of SAX. The tokenizer interns names itself.
+	private SubtreeFingerprint subtreeFingerprint = null; // If set, a fingerprint of each tag is computed
+	private long fingerprint = 0L; // Fingerprint of the tag passed to the callback
+	private int parentId = -1, depth = 0, ordinal = 0; // Position of the node passed to the callback
+	private boolean hasBinaryNodes = false; // If true, the content of binary nodes is decoded from base64
+	private int binaryChunkSize = Utils.CHUNK_SIZE; // Maximal number of decoded bytes passed at once
+	private XMLEvent[] events = null; // Batch of rows, if the callback is an XMLEventCallback. Created on first use.
+	private List<String> fragmentNodes = null; // If set, the XML of these elements is kept while reading
+	private int maxFragmentChars = Utils.CHUNK_SIZE; // XML of longer elements is not kept
+	private XMLFragmentReader fragmentReader = null; // Keeps the XML of the document being parsed, if fragmentNodes are set
+	private String fragment = null; // XML of the tag passed to the callback
+	private int eventCount = 0; // Events in the batch not yet passed
+	private XMLEvent rowEvent = null; // Row passed to an XMLRowCallback. Created on first use.
 
 	// Handle parser events and call when new rows were detected.
 	private ContentHandler contentHandler = new ContentHandler() {
 		private StringBuilder cdata = new StringBuilder(); // Contains the current value of a tag
-		private int id = 0;
 		private Stack<Integer> stack = new Stack<Integer>();
+		private StringBuilder chunk = new StringBuilder(); // Value behind maxValueChars not yet passed as continuation row
+		private int chunks = 0; // Continuation rows passed for the current value
+		private Stack<String[]> names = new Stack<String[]>(); // uri, local name and qName of open elements, if maxValueChars is set
+		private int[] parentIds = new int[64]; // first_sub_id of the parent of each open element by depth
+		private int[] ordinals = new int[64]; // Position of each open element among its sibling tags by depth
+		private int[] subTags = new int[64]; // Number of sub tags started so far by depth. 0 is the document.
+		private int[] elementNos = new int[64]; // Number of each open element in the order of start tags
+		private int elements = 0; // Start tags found so far
+		private Base64ChunkDecoder base64Decoder = null; // Created on first binary node
+		private int binaryLevel = 0; // Depth of the open binary node or 0
+		private String[] binaryName = null; // uri, local name and qName of the open binary node
 
 		public void startDocument() throws SAXException {
 			cdata.setLength(0);
+			chunk.setLength(0);
+			chunks = 0;
+			names.clear();
 			id = 0;
+			rootIncludeCount = 0;
+			rootSubTags = 0;
+			isSkipped = false;
+			isStopped = false;
 			stack.clear();
+			subTags[0] = 0;
+			elements = 0;
+			binaryLevel = 0;
+			if(base64Decoder != null) base64Decoder.clear();
 			inExcluder.clear();
+			xPathSelector.clear();
+			if(subtreeFingerprint != null) subtreeFingerprint.clear();
+			fingerprint = 0L;
 		}
 
 		public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+			checkStopped();
+			if(textSource == null) {
+				uri = nameInterner.intern(uri);
+				localName = nameInterner.intern(localName);
+				qName = nameInterner.intern(qName);
+			}
 			inExcluder.enterNode(localName);
+			xPathSelector.enterElement(localName, atts);
+			if(stack.isEmpty()) rootIncludeCount = inExcluder.getIncludeCount();
+			int level = stack.size() + 1;
+			if(level == parentIds.length) grow();
+			parentIds[level] = stack.isEmpty()? -1:stack.peek();
+			ordinals[level] = ++subTags[level-1];
+			if(level == 2) rootSubTags = subTags[1];
+			subTags[level] = 0;
+			elementNos[level] = ++elements;
 			stack.push(id); // Put on stack for reuse id at end of element as first
 			cdata.setLength(0);
+			if(maxValueChars > 0) {
+				names.push(new String[] {uri, localName, qName}); // Already interned
+				chunk.setLength(0);
+				chunks = 0;
+			}
+			if(subtreeFingerprint != null) subtreeFingerprint.enterElement(uri, localName);
+			if(hasBinaryNodes && inExcluder.isBinary() && inExcluder.isIncluded() && inExcluder.matchesLocalname()) startBinary(uri, localName, qName);
 			if(atts == null) return; // I've seen many implementations...
 			
 			// Write out attributes as new rows
 			for(int i = 0; i < atts.getLength(); i++) {
-				inExcluder.enterNode(atts.getLocalName(i));
-				if(inExcluder.isIncluded() && inExcluder.matchesLocalname())
-					xmlReaderCallback.newRow(inExcluder.getIncludeParent(), inExcluder.getIncludeCount(), inExcluder.getFullPath(),
-							atts.getURI(i), atts.getLocalName(i), atts.getQName(i), "A", atts.getValue(i), id+i, id+i);
+				parentId = id;
+				depth = level + 1;
+				ordinal = i + 1;
+				String attLocalName = (textSource == null)? nameInterner.intern(atts.getLocalName(i)):atts.getLocalName(i);
+				inExcluder.enterNode(attLocalName);
+				if(inExcluder.isIncluded() && inExcluder.matchesLocalname() && xPathSelector.isAttributeSelected(i)) {
+					if(subtreeFingerprint != null) subtreeFingerprint.addAttribute(atts.getURI(i), attLocalName, atts.getValue(i));
+					if(textSource == null)
+						passRow(nameInterner.intern(atts.getURI(i)), attLocalName, nameInterner.intern(atts.getQName(i)), "A", atts.getValue(i), id+i, id+i);
+					else
+						passRow(atts.getURI(i), attLocalName, atts.getQName(i), "A", atts.getValue(i), id+i, id+i);
+				}
 				exitNode();
 			}
 			id += atts.getLength();
 		}
 
 		public void characters(char[] ch, int start, int length) throws SAXException {
-			cdata.append(ch, start, length);
+			checkStopped();
+			if(subtreeFingerprint != null) subtreeFingerprint.characters(ch, start, length);
+			if(binaryLevel > 0 && binaryLevel == stack.size()) { // Decode instead of keeping the text
+				try {
+					base64Decoder.decode(ch, start, length);
+				}
+				catch(IllegalArgumentException e) {
+					throw new SAXException(e.getMessage());
+				}
+				return;
+			}
+			if(maxValueChars <= 0) {
+				cdata.append(ch, start, length);
+				return;
+			}
+			
+			// Keep the first maxValueChars as value of the tag and pass the rest in chunks
+			int head = Math.min(length, maxValueChars - cdata.length());
+			cdata.append(ch, start, head);
+			for(int i = start + head; i < start + length; ) {
+				int n = Math.min(start + length - i, maxValueChars - chunk.length());
+				chunk.append(ch, i, n);
+				i += n;
+				if(chunk.length() == maxValueChars) passChunk();
+			}
 		}
 
 		public void endElement(String uri, String localName, String qName) throws SAXException {
+			checkStopped();
+			boolean isSelected = inExcluder.isIncluded() && inExcluder.matchesLocalname() && xPathSelector.isSelected();
+			boolean isBinary = (binaryLevel > 0 && binaryLevel == stack.size());
+			
+			// Decode the text of the tokenizer only, if it is used. Otherwise the tokenizer drops it at the end of the element.
+			String value = null; // Taken from cdata
+			if(textSource != null && (isSelected || isBinary || subtreeFingerprint != null)) {
+				if(!textSource.isFlushed()) value = textSource.getText();
+				else { // Tokenizer has passed text already
+					char[] rest = textSource.getText().toCharArray();
+					characters(rest, 0, rest.length);
+				}
+			}
+			if(maxValueChars > 0) {
+				passChunk();
+				names.pop();
+			}
+			
+			setPosition(stack.size());
+			int element = elementNos[stack.size()];
 			int first_sub_id = stack.pop(); // pop id anyway
-			if(inExcluder.isIncluded() && inExcluder.matchesLocalname())
-				xmlReaderCallback.newRow(inExcluder.getIncludeParent(), inExcluder.getIncludeCount(), inExcluder.getFullPath(),
-						uri, localName, qName, "T", cdata.toString(), id, first_sub_id);
+			if(subtreeFingerprint != null) {
+				if(value != null) subtreeFingerprint.characters(value);
+				fingerprint = subtreeFingerprint.exitElement(isSelected);
+			}
+			if(isBinary) { // Pass the rest of the content. The tag has no value.
+				stack.push(first_sub_id); // Keep position for the chunks
+				try {
+					if(value != null) base64Decoder.decode(value);
+				}
+				catch(IllegalArgumentException e) {
+					throw new SAXException(e.getMessage());
+				}
+				base64Decoder.finish();
+				stack.pop();
+				binaryLevel = 0;
+			}
+			fragment = (fragmentReader == null)? null:fragmentReader.poll(element); // Fetch anyway to release it
+			if(isSelected) {
+				if(textSource == null) {
+					uri = nameInterner.intern(uri);
+					localName = nameInterner.intern(localName);
+					qName = nameInterner.intern(qName);
+				}
+				passRow(uri, localName, qName, "T", isBinary? null:(value == null)? cdata:value, id, first_sub_id);
+			}
+			fragment = null;
 			cdata.setLength(0);
+			chunk.setLength(0);
+			chunks = 0;
 			id++;
+			xPathSelector.exitElement();
 			exitNode();
 		}
 
@@ -104,9 +342,103 @@ public class XMLReaderService {
 		public void skippedEntity(String name) throws SAXException {}
 		public void startPrefixMapping(String prefix, String uri) throws SAXException {}
 		
+		// Pass the collected chunk as continuation row of the current tag
+		private void passChunk() {
+			if(chunk.length() == 0 || stack.isEmpty()) return;
+			setPosition(stack.size());
+			chunks++;
+			if(inExcluder.isIncluded() && inExcluder.matchesLocalname() && xPathSelector.isSelected()) {
+				String[] name = names.peek();
+				valueChunk = chunks;
+				passRow(name[0], name[1], name[2], "C", chunk, stack.peek(), stack.peek());
+				valueChunk = 0;
+			}
+			chunk.setLength(0);
+		}
+		
+		// Decode the content of the current element from base64 and pass it in chunks
+		private void startBinary(String uri, String localName, String qName) {
+			binaryLevel = stack.size();
+			binaryName = new String[] {uri, localName, qName};
+			if(base64Decoder == null) base64Decoder = new Base64ChunkDecoder(binaryChunkSize, new ByteChunkListener() {
+				public void newChunk(int chunk, byte[] buf, int off, int len) {
+					if(!(xmlReaderCallback instanceof XMLBinaryCallback) || !xPathSelector.isSelected()) return;
+					setPosition(stack.size());
+					flushEvents(); // Keep the order of rows
+					if(xmlReaderCallback instanceof XMLRowCallback) {
+						XMLEvent row = getRow();
+						row.wrap(inExcluder.getIncludeParent(), inExcluder.getIncludeCount(), inExcluder.getFullPath(),
+								binaryName[0], binaryName[1], binaryName[2], "B", null, stack.peek(), stack.peek());
+						row.setState(parentId, depth, ordinal, 0, 0L, inExcluder.isIncludeParent(), null);
+						row.setBinary(chunk + 1, buf, off, len);
+						((XMLRowCallback) xmlReaderCallback).newRow(row);
+						return;
+					}
+					((XMLBinaryCallback) xmlReaderCallback).newBinaryChunk(inExcluder.getIncludeParent(), inExcluder.getIncludeCount(), inExcluder.getFullPath(),
+							binaryName[0], binaryName[1], binaryName[2], chunk + 1, buf, off, len, stack.peek());
+				}
+			});
+		}
+		
+		// Pass a row of the current node to the callback or add it to the batch of events. Strings are not created for batches.
+		private void passRow(String uri, String localName, String qName, String type, CharSequence value, int id, int first_sub_id) {
+			if(xmlReaderCallback instanceof XMLRowCallback && !(xmlReaderCallback instanceof XMLEventCallback)) {
+				XMLEvent row = getRow();
+				row.wrap(inExcluder.getIncludeParent(), inExcluder.getIncludeCount(), inExcluder.getFullPath(),
+						uri, localName, qName, type, (value == null)? null:value.toString(), id, first_sub_id);
+				row.setState(parentId, depth, ordinal, valueChunk, fingerprint, inExcluder.isIncludeParent(), fragment);
+				((XMLRowCallback) xmlReaderCallback).newRow(row);
+				return;
+			}
+			if(!(xmlReaderCallback instanceof XMLEventCallback)) {
+				xmlReaderCallback.newRow(inExcluder.getIncludeParent(), inExcluder.getIncludeCount(), inExcluder.getFullPath(),
+						uri, localName, qName, type, (value == null)? null:value.toString(), id, first_sub_id);
+				return;
+			}
+			
+			if(events == null) {
+				events = new XMLEvent[EVENT_BATCH];
+				for(int i = 0; i < events.length; i++) events[i] = new XMLEvent();
+			}
+			XMLEvent event = events[eventCount++];
+			event.set(inExcluder.getIncludeParent(), inExcluder.getIncludeCount(), inExcluder.getFullPathChars(),
+					uri, localName, qName, type, value, id, first_sub_id);
+			event.setState(parentId, depth, ordinal, valueChunk, fingerprint, inExcluder.isIncludeParent(), fragment);
+			if(eventCount == events.length) flushEvents();
+		}
+		
+		// Position of the open element at the given depth for the callback
+		private void setPosition(int level) {
+			parentId = parentIds[level];
+			depth = level;
+			ordinal = ordinals[level];
+		}
+		
+		private void grow() {
+			int[] p = new int[2*parentIds.length], o = new int[2*parentIds.length], s = new int[2*parentIds.length], e = new int[2*parentIds.length];
+			System.arraycopy(parentIds, 0, p, 0, parentIds.length);
+			System.arraycopy(ordinals, 0, o, 0, ordinals.length);
+			System.arraycopy(subTags, 0, s, 0, subTags.length);
+			System.arraycopy(elementNos, 0, e, 0, elementNos.length);
+			parentIds = p;
+			ordinals = o;
+			subTags = s;
+			elementNos = e;
+		}
+		
+		// End parsing the same way as skipping, if the callback asked for it
+		private void checkStopped() throws SAXException {
+			if(!isStopped) return;
+			isSkipped = true;
+			throw new SAXException("skipped");
+		}
+		
 		// Unbalanced XML is detected when exit is called more often then enter
 		private void exitNode() throws SAXException {
-			if(inExcluder.isSkipped()) throw new SAXException("skipped"); // The documented way to interrupt parsing
+			if(inExcluder.isSkipped()) { // The documented way to interrupt parsing
+				isSkipped = true;
+				throw new SAXException("skipped");
+			}
 			try {
 				inExcluder.exitNode();
 			}
@@ -117,41 +449,340 @@ public class XMLReaderService {
 	};
 	
 	public XMLReaderService(List<String> included, List<String> excluded, List<String> skip, List<String> localnames) throws SAXException {
+		this(included, excluded, skip, localnames, null);
+	}
+	
+	/**
+	 * @param included see InExcluder
+	 * @param excluded see InExcluder
+	 * @param skip see InExcluder
+	 * @param localnames see InExcluder
+	 * @param select XPath expressions, see XPathSelector. Only nodes, that are selected and included, are passed to the callback.
+	 * @throws SAXException if the XML parser cannot be created.
+	 * @throws IllegalArgumentException if an XPath expression cannot be compiled.
+	 */
+	public XMLReaderService(List<String> included, List<String> excluded, List<String> skip, List<String> localnames, List<String> select) throws SAXException {
 		inExcluder = new InExcluder(included, excluded, skip, localnames);
+		xPathSelector = new XPathSelector(select);
 
 		xmlReader = XMLReaderFactory.createXMLReader();
 		xmlReader.setContentHandler(contentHandler);
+		setDTDCatalog(null);
+	}
+	
+	/**
+	 * Configure how external DTDs and entities are resolved. They are never loaded from the network.
+	 * Without a catalog, the parser does not load external DTDs and entities at all. Entities declared in an external DTD are unknown then.
+	 * With a catalog, they are loaded from the catalog directory by the file name of their system id. See OfflineEntityResolver.
+	 * @param catalog directory with DTD and entity files or null, which is the default.
+	 */
+	public void setDTDCatalog(String catalog) {
+		entityResolver = new OfflineEntityResolver(catalog);
+		xmlReader.setEntityResolver(entityResolver);
+		setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", catalog != null);
+		setFeature("http://xml.org/sax/features/external-general-entities", catalog != null);
+		setFeature("http://xml.org/sax/features/external-parameter-entities", catalog != null);
+	}
+	
+	/**
+	 * @return the resolver of external DTDs and entities.
+	 */
+	public OfflineEntityResolver getEntityResolver() {return entityResolver;}
+	
+	// Parsers not knowing a feature use the resolver only
+	private void setFeature(String feature, boolean value) {
+		try {
+			xmlReader.setFeature(feature, value);
+		} catch (SAXException e) {
+			// Not recognized or not supported by this parser
+		}
 	}
 	
 	public void parse(Reader reader, XMLReaderCallback xmlReaderCallback) throws SAXException, IOException {
 		this.xmlReaderCallback = xmlReaderCallback;
+		Reader sanitizingReader = new SanitizingReader(reader); // replace invalid XML chars
+		if(fragmentNodes != null) fragmentReader = new XMLFragmentReader(sanitizingReader, fragmentNodes, maxFragmentChars);
 		try {
-			xmlReader.parse(new InputSource(new NonClosingReader(reader)));
+			xmlReader.parse(new InputSource(new NonClosingReader((fragmentReader == null)? sanitizingReader:fragmentReader)));
 		} catch (SAXException e) {
 			if(!e.getMessage().equals("skipped")) throw e; // Do nothing when skipped
+		} finally {
+			flushEvents();
+			fragmentReader = null;
 		}
 	}
 	
-	private class NonClosingReader extends Reader {
-		private Reader reader;
-
-		public NonClosingReader(Reader reader) {this.reader = reader;}
-		public void close() throws IOException {} // reader.close(); Do not close this reader
+	/**
+	 * Parse UTF-8 encoded bytes with the hand-written <code>UTF8XMLTokenizer</code>. Values are only decoded when they are passed to the callback.
+	 * Documents using constructs the tokenizer does not support, like a DOCTYPE, are decoded with the given decoder and parsed by SAX instead.
+	 * @param inputStream to read the XML document from. The stream is not closed.
+	 * @param charsetDecoder to decode the document with, if it must be parsed by SAX.
+	 * @param xmlReaderCallback
+	 * @throws SAXException
+	 * @throws IOException
+	 */
+	public void parse(InputStream inputStream, CharsetDecoder charsetDecoder, XMLReaderCallback xmlReaderCallback) throws SAXException, IOException {
+		this.xmlReaderCallback = xmlReaderCallback;
+		if(utf8XMLTokenizer == null) utf8XMLTokenizer = new UTF8XMLTokenizer();
+		
+		try {
+			textSource = utf8XMLTokenizer;
+			utf8XMLTokenizer.setMaxText((maxValueChars > 0 || !hasBinaryNodes)? maxValueChars:64*1024); // Pass binary content in pieces
+			utf8XMLTokenizer.parse(inputStream, contentHandler);
+		} catch (UTF8XMLTokenizer.UnsupportedException e) {
+			textSource = null;
+			parse(new InputStreamReader(e.getReplayStream(), charsetDecoder), xmlReaderCallback); // Fall back to SAX
+		} catch (SAXException e) {
+			if(!"skipped".equals(e.getMessage())) throw e; // Do nothing when skipped
+		} finally {
+			textSource = null;
+			flushEvents();
+		}
+	}
+	
+	/**
+	 * Parse the bytes of an XML document with SAX. The parser detects the encoding from the byte order mark or XML declaration
+	 * and decodes itself. Invalid control characters are replaced at byte level, if the encoding is compatible to ASCII.
+	 * Other invalid characters like U+FFFE, U+FFFF or unpaired surrogates are multi byte sequences, that depend on the encoding.
+	 * They are not replaced and make the parser fail.
+	 * @param inputStream to read the XML document from. The stream is not closed.
+	 * @param xmlReaderCallback
+	 * @throws SAXException
+	 * @throws IOException
+	 */
+	public void parse(InputStream inputStream, XMLReaderCallback xmlReaderCallback) throws SAXException, IOException {
+		this.xmlReaderCallback = xmlReaderCallback;
+		try {
+			xmlReader.parse(new InputSource(new NonClosingInputStream(inputStream)));
+		} catch (SAXException e) {
+			if(!e.getMessage().equals("skipped")) throw e; // Do nothing when skipped
+		} finally {
+			flushEvents();
+		}
+	}
+	
+	/**
+	 * Replay a binary event stream written by <code>encode</code>. The rows are the same, as if the original documents were parsed.
+	 * Each document of the stream is a document of its own, e.g. ids restart. Skipping ends the current document only.
+	 * @param inputStream to read the event stream from. The stream is not closed.
+	 * @param xmlReaderCallback
+	 * @throws SAXException if the stream is not a valid event stream.
+	 * @throws IOException
+	 */
+	public void parseEvents(InputStream inputStream, XMLReaderCallback xmlReaderCallback) throws SAXException, IOException {
+		this.xmlReaderCallback = xmlReaderCallback;
+		XMLEventDecoder xmlEventDecoder = new XMLEventDecoder(inputStream);
+		for(;;) {
+			try {
+				if(!xmlEventDecoder.parse(contentHandler)) return;
+			} catch (SAXException e) {
+				if(!"skipped".equals(e.getMessage())) throw e;
+				xmlEventDecoder.parse(null); // Skip rest of document
+			} finally {
+				flushEvents();
+			}
+		}
+	}
+	
+	/**
+	 * Parse an XML document without filtering and write its events as a binary event stream, which <code>parseEvents</code>
+	 * replays much faster then parsing. Invalid XML characters are replaced and entities are resolved as with <code>parse</code>.
+	 * @param reader to read the XML document from.
+	 * @param xmlEventEncoder to write the events to.
+	 * @throws SAXException
+	 * @throws IOException
+	 */
+	public void encode(Reader reader, XMLEventEncoder xmlEventEncoder) throws SAXException, IOException {
+		xmlReader.setContentHandler(xmlEventEncoder);
+		try {
+			xmlReader.parse(new InputSource(new NonClosingReader(new SanitizingReader(reader))));
+		} finally {
+			xmlReader.setContentHandler(contentHandler);
+		}
+	}
+	
+	/**
+	 * Limit the memory needed for values of tags. The first maxValueChars characters are the value of the tag. The rest is passed to the
+	 * callback in continuation rows of type 'C' with at most maxValueChars characters each, while the document is read.
+	 * Continuation rows are passed before the row of their tag and have the full path of the tag. Their id and first_sub_id are both
+	 * the first_sub_id of the tag, which identifies the tag together with the full path. <code>getValueChunk</code> numbers them.
+	 * @param maxValueChars 0 for no limit, which is the default.
+	 */
+	public void setMaxValueChars(int maxValueChars) {this.maxValueChars = maxValueChars;}
+	
+	/**
+	 * Decode the content of binary nodes, like embedded documents, from base64 while reading. The text is never kept as a whole.
+	 * The decoded bytes are passed in chunks to <code>XMLBinaryCallback.newBinaryChunk</code>, if the callback implements it,
+	 * before the row of the tag. The value of the tag is null. Only the text directly in the tag is decoded.
+	 * @param binaryNodes local names, regular expressions or literal full paths like in the include list. Null for none, which is the default.
+	 * @param chunkSize maximal number of bytes passed at once. Set before the first document is parsed.
+	 */
+	public void setBinaryNodes(List<String> binaryNodes, int chunkSize) {
+		inExcluder.setBinaries(binaryNodes);
+		hasBinaryNodes = (binaryNodes != null && !binaryNodes.isEmpty());
+		binaryChunkSize = chunkSize;
+	}
+	
+	/**
+	 * @return during a callback the number of the chunk, 1 for the first continuation row, 2 for the second and so on.
+	 * 		0 for all other rows.
+	 */
+	public int getValueChunk() {return valueChunk;}
+	
+	/**
+	 * Compute a fingerprint of each tag and its sub tree while reading. See SubtreeFingerprint.
+	 * @param isFingerprinted false for no fingerprints, which is the default.
+	 */
+	public void setFingerprint(boolean isFingerprinted) {subtreeFingerprint = isFingerprinted? new SubtreeFingerprint():null;}
+	
+	/**
+	 * Keep the original XML of elements while reading, so that it is returned without a second parse. See XMLFragmentReader.
+	 * Only documents parsed from a Reader keep the XML. Tags within a kept element are not kept on their own.
+	 * @param fragmentNodes local names, regular expressions or literal full paths like in the include list. Null for none, which is the default.
+	 * @param maxChars XML of elements with more characters is not kept.
+	 */
+	public void setFragments(List<String> fragmentNodes, int maxChars) {
+		this.fragmentNodes = (fragmentNodes == null || fragmentNodes.isEmpty())? null:fragmentNodes;
+		maxFragmentChars = maxChars;
+	}
+	
+	/**
+	 * @return during the callback of a tag the original XML of the tag, if it matches <code>setFragments</code>.
+	 * 		Null for other tags, attributes, continuation rows and tags with too long XML.
+	 */
+	public String getFragment() {return fragment;}
+	
+	/**
+	 * @return during the callback of a tag the fingerprint of the tag and its sub tree, if <code>setFingerprint</code> is set.
+	 * 		Undefined for attributes and continuation rows.
+	 */
+	public long getFingerprint() {return fingerprint;}
+	
+	/**
+	 * @return during a callback true, if the tag or attribute is the include parent itself, that is the node that matched the include list.
+	 * 		If the include list is empty, the root element is the include parent.
+	 */
+	public boolean isIncludeParent() {return inExcluder.isIncludeParent();}
+	
+	/**
+	 * The ids are assigned after all sub nodes were read, so the id of the parent is not known, when the row of a node is passed.
+	 * Instead the first_sub_id of the parent is used, which is known when the parent starts. It is not unique on its own, because a parent
+	 * and its first sub tag can share it, but together with the depth it is:
+	 * <code>where parent.first_sub_id = child.parent_id and parent.depth = child.depth - 1 and parent.type = 'T'</code>
+	 * @return during a callback the first_sub_id of the parent tag or -1 for the root element.
+	 */
+	public int getParentId() {return parentId;}
+	
+	/**
+	 * @return during a callback the depth of the tag or attribute. The root element has depth 1, its attributes and sub tags depth 2.
+	 */
+	public int getDepth() {return depth;}
+	
+	/**
+	 * @return during a callback the position of a tag among the sub tags of its parent or of an attribute among the attributes of its tag,
+	 * 		starting with 1. Continuation rows have the position of their tag.
+	 */
+	public int getOrdinal() {return ordinal;}
+	
+	/**
+	 * @return the table of canonical names used for uri, local name and qName of elements and attributes reported by SAX.
+	 */
+	public StringInterner getNameInterner() {return nameInterner;}
+	
+	/**
+	 * @return number of ids assigned in the current or last parsed document.
+	 */
+	public int getId() {return id;}
+	
+	/**
+	 * @return include count reached in the current or last parsed document.
+	 */
+	public int getIncludeCount() {return inExcluder.getIncludeCount();}
+	
+	/**
+	 * @return include count right after entering the root element, before its attributes, in the current or last parsed document.
+	 */
+	public int getRootIncludeCount() {return rootIncludeCount;}
+	
+	/**
+	 * @return number of sub tags of the root element in the current or last parsed document.
+	 */
+	public int getRootSubTags() {return rootSubTags;}
+	
+	/**
+	 * @return true, if parsing of the last document was ended, because a node of the skip list was found.
+	 */
+	public boolean isSkipped() {return isSkipped;}
+	
+	/**
+	 * Called by the callback to end parsing of the current document, e.g. when enough rows were found.
+	 * Parsing ends with the next event of the parser like skipping does and the document counts as skipped.
+	 * Rows of the current event might still be passed to the callback. With an XMLEventCallback these are the rows
+	 * found until the batch is passed.
+	 */
+	public void stop() {isStopped = true;}
+	
+	// Row passed to an XMLRowCallback
+	private XMLEvent getRow() {
+		if(rowEvent == null) rowEvent = new XMLEvent();
+		return rowEvent;
+	}
+	
+	// Pass the events of the batch to the callback
+	private void flushEvents() {
+		if(eventCount == 0) return;
+		int count = eventCount;
+		eventCount = 0; // Callbacks might fail
+		((XMLEventCallback) xmlReaderCallback).newEvents(events, count);
+	}
+	
+	private class NonClosingInputStream extends FilterInputStream {
+		private boolean isASCIICompatible = true;
+		
+		// Sniff the encoding family from the first bytes. UTF-16 and UTF-32 are not replaced at byte level.
+		public NonClosingInputStream(InputStream inputStream) throws IOException {
+			super(new PushbackInputStream(inputStream, 4));
+			byte[] b = new byte[4];
+			int len = 0;
+			for(int ret = 0; len < b.length && ret != -1; len += ret) {
+				ret = in.read(b, len, b.length - len);
+				if(ret == -1) break;
+			}
+			if(len > 0) ((PushbackInputStream) in).unread(b, 0, len);
+			
+			if(len >= 2 && ((b[0] == (byte) 0xfe && b[1] == (byte) 0xff) || (b[0] == (byte) 0xff && b[1] == (byte) 0xfe) || b[0] == 0 || b[1] == 0))
+				isASCIICompatible = false;
+		}
 		
-		// replace invalid XML chars
+		public void close() throws IOException {} // in.close(); Do not close this stream
+		
+		// replace invalid XML control chars
 		public int read() throws IOException {
-			int ret = reader.read();
-			return (ret == -1)? -1:Utils.replaceInvalid((char) ret);
+			int ret = in.read();
+			return (ret == -1 || !isASCIICompatible || ret >= 0x20 || ret == 0x9 || ret == 0xa || ret == 0xd)? ret:'?';
 		}
 		
-		// replace invalid XML chars
-		public int read(char[] b, int off, int len) throws IOException {
-			int ret = reader.read(b, off, len);
-			if(ret != -1) {
-				for(int i = 0; i < len; i++) b[off+i] = Utils.replaceInvalid(b[off+i]);
+		// replace invalid XML control chars
+		public int read(byte[] b, int off, int len) throws IOException {
+			int ret = in.read(b, off, len);
+			if(isASCIICompatible) {
+				for(int i = off; i < off + ret; i++) {
+					byte c = b[i];
+					if(c >= 0 && c < 0x20 && c != 0x9 && c != 0xa && c != 0xd) b[i] = '?';
+				}
 			}
 			return ret;
 		}
+	}
+	
+	private class NonClosingReader extends Reader {
+		private Reader reader;
+
+		public NonClosingReader(Reader reader) {this.reader = reader;}
+		public void close() throws IOException {} // reader.close(); Do not close this reader
+		
+		public int read() throws IOException {return reader.read();}
+		public int read(char[] b, int off, int len) throws IOException {return reader.read(b, off, len);}
 		
 		public int read(char[] b) throws IOException {return read(b, 0, b.length);}
 		public int read(CharBuffer b) throws IOException {return read(b.array());}
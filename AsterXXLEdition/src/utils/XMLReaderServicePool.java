@@ -0,0 +1,176 @@
+package utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.xml.sax.SAXException;
+
+import utils.XMLReaderService.XMLReaderCallback;
+
+/**
+ * @author Juergen Boiselle
+ *
+ * Parse several XML documents at once. Each document is parsed in its own thread by one of a pool of XMLReaderService instances,
+ * all configured with the same include, exclude, skip, local name and select lists. The rows found are kept in an <code>XMLRowBuffer</code>
+ * with the values, that are otherwise only valid during a callback, and returned as the result of the future. Replay the results in the order of submission to keep the order of rows.
+ * 
+ * The threads are daemon threads. Call <code>shutdown</code> when the pool is not used any more.
+ */
+public class XMLReaderServicePool {
+	/**
+	 * @author Juergen Boiselle
+	 *
+	 * Implement this interface to parse one document with the given XMLReaderService.
+	 */
+	public interface ParseJob {
+		/**
+		 * Called in a thread of the pool.
+		 * @param xmlReaderService to use exclusively during this call.
+		 * @param xmlReaderCallback to pass to the parse method of the xmlReaderService.
+		 * @throws SAXException
+		 * @throws IOException
+		 */
+		public void parse(XMLReaderService xmlReaderService, XMLReaderCallback xmlReaderCallback) throws SAXException, IOException;
+	}
+	
+	private final int threads;
+	private final ExecutorService executorService;
+	private final BlockingQueue<XMLReaderService> xmlReaderServices;
+	private final List<StringInterner> nameInterners = new ArrayList<StringInterner>();
+	private final List<XMLReaderService> services = new ArrayList<XMLReaderService>(); // All services, also while in use
+	
+	/**
+	 * Create the pool and its XMLReaderServices.
+	 * @param threads number of documents parsed at once.
+	 * @param included see XMLReaderService
+	 * @param excluded see XMLReaderService
+	 * @param skip see XMLReaderService
+	 * @param localnames see XMLReaderService
+	 * @throws SAXException if an XMLReaderService cannot be created.
+	 */
+	public XMLReaderServicePool(int threads, List<String> included, List<String> excluded, List<String> skip, List<String> localnames) throws SAXException {
+		this(threads, included, excluded, skip, localnames, null);
+	}
+	
+	/**
+	 * Create the pool and its XMLReaderServices.
+	 * @param threads number of documents parsed at once.
+	 * @param included see XMLReaderService
+	 * @param excluded see XMLReaderService
+	 * @param skip see XMLReaderService
+	 * @param localnames see XMLReaderService
+	 * @param select see XMLReaderService
+	 * @throws SAXException if an XMLReaderService cannot be created.
+	 */
+	public XMLReaderServicePool(int threads, List<String> included, List<String> excluded, List<String> skip, List<String> localnames, List<String> select) throws SAXException {
+		this.threads = threads;
+		xmlReaderServices = new ArrayBlockingQueue<XMLReaderService>(threads);
+		for(int i = 0; i < threads; i++) xmlReaderServices.add(new XMLReaderService(included, excluded, skip, localnames, select));
+		services.addAll(xmlReaderServices);
+		for(XMLReaderService xmlReaderService : services) nameInterners.add(xmlReaderService.getNameInterner());
+		
+		executorService = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "XMLReaderServicePool");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	/**
+	 * Parse a document in the next free thread.
+	 * @param parseJob
+	 * @return the future of all rows found. An exception ending the parse is kept in the buffer and thrown on replay.
+	 */
+	public Future<XMLRowBuffer> submit(final ParseJob parseJob) {
+		return executorService.submit(new Callable<XMLRowBuffer>() {
+			public XMLRowBuffer call() throws InterruptedException {
+				XMLRowBuffer xmlRowBuffer = new XMLRowBuffer();
+				XMLReaderService xmlReaderService = xmlReaderServices.take();
+				try {
+					parseJob.parse(xmlReaderService, xmlRowBuffer);
+				} catch (Exception e) {
+					xmlRowBuffer.setException(e);
+				} finally {
+					xmlReaderServices.put(xmlReaderService);
+				}
+				return xmlRowBuffer;
+			}
+		});
+	}
+	
+	/**
+	 * @return the name tables of all XMLReaderServices of the pool to read their counters.
+	 */
+	public List<StringInterner> getNameInterners() {return nameInterners;}
+	
+	/**
+	 * Configure the resolver of external DTDs and entities of all XMLReaderServices. Call before the first document is submitted.
+	 * @param catalog see XMLReaderService
+	 */
+	public void setDTDCatalog(String catalog) {
+		for(XMLReaderService xmlReaderService : services) xmlReaderService.setDTDCatalog(catalog);
+	}
+	
+	/**
+	 * Split long values of all XMLReaderServices into continuation rows. Call before the first document is submitted.
+	 * @param maxValueChars see XMLReaderService
+	 */
+	public void setMaxValueChars(int maxValueChars) {
+		for(XMLReaderService xmlReaderService : services) xmlReaderService.setMaxValueChars(maxValueChars);
+	}
+	
+	/**
+	 * Compute fingerprints in all XMLReaderServices. Call before the first document is submitted.
+	 * @param isFingerprinted see XMLReaderService
+	 */
+	public void setFingerprint(boolean isFingerprinted) {
+		for(XMLReaderService xmlReaderService : services) xmlReaderService.setFingerprint(isFingerprinted);
+	}
+	
+	/**
+	 * Decode binary nodes in all XMLReaderServices. Call before the first document is submitted.
+	 * @param binaryNodes see XMLReaderService
+	 * @param chunkSize see XMLReaderService
+	 */
+	public void setBinaryNodes(List<String> binaryNodes, int chunkSize) {
+		for(XMLReaderService xmlReaderService : services) xmlReaderService.setBinaryNodes(binaryNodes, chunkSize);
+	}
+	
+	/**
+	 * Keep the original XML of elements in all XMLReaderServices. Call before the first document is submitted.
+	 * @param fragmentNodes see XMLReaderService
+	 * @param maxChars see XMLReaderService
+	 */
+	public void setFragments(List<String> fragmentNodes, int maxChars) {
+		for(XMLReaderService xmlReaderService : services) xmlReaderService.setFragments(fragmentNodes, maxChars);
+	}
+	
+	/**
+	 * @return the resolvers of external DTDs and entities of all XMLReaderServices of the pool to read their counters.
+	 */
+	public List<OfflineEntityResolver> getEntityResolvers() {
+		List<OfflineEntityResolver> entityResolvers = new ArrayList<OfflineEntityResolver>();
+		for(XMLReaderService xmlReaderService : services) entityResolvers.add(xmlReaderService.getEntityResolver());
+		return entityResolvers;
+	}
+	
+	/**
+	 * @return number of threads.
+	 */
+	public int getThreads() {return threads;}
+	
+	/**
+	 * Stop all threads after the submitted documents are parsed.
+	 */
+	public void shutdown() {executorService.shutdown();}
+}
@@ -0,0 +1,194 @@
+package utils;
+
+import utils.XMLReaderService.XMLReaderCallback;
+import utils.XMLReaderService.XMLRowCallback;
+
+/**
+ * @author Juergen Boiselle
+ *
+ * Keep rows found by the XML parser in memory to replay them later, usually in another thread.
+ * Rows are kept with the values, that are otherwise only valid during a callback of XMLReaderService, like the fingerprint or
+ * the position in the hierarchy, and with the bytes of binary chunks. These values are unknown for rows passed with strings to <code>newRow</code>.
+ * An exception, that ended the parsing, can be kept along with the rows found before.
+ */
+public class XMLRowBuffer implements XMLRowCallback {
+	private static final int ROW_BYTES = 96; // Estimated memory of the slots of one row and the string headers of its path and value
+	private int size = 0;
+	private long bytes = 0L;
+	private String[] includeParents = new String[256];
+	private int[] includeCounts = new int[256];
+	private String[] fullPaths = new String[256];
+	private String[] uris = new String[256];
+	private String[] localNames = new String[256];
+	private String[] qNames = new String[256];
+	private String[] types = new String[256];
+	private String[] values = new String[256];
+	private int[] ids = new int[256];
+	private int[] first_sub_ids = new int[256];
+	private int[] parentIds = new int[256];
+	private int[] depths = new int[256];
+	private int[] ordinals = new int[256];
+	private int[] valueChunks = new int[256];
+	private long[] fingerprints = new long[256];
+	private boolean[] isIncludeParents = new boolean[256];
+	private String[] fragments = new String[256];
+	private int[] binaryChunks = new int[256];
+	private byte[][] binaries = new byte[256][]; // Copy of the bytes of a binary chunk or null
+	private XMLEvent row = new XMLEvent(); // Reused for replay
+	private Exception exception = null;
+
+	/* (non-Javadoc)
+	 * @see utils.XMLReaderService.XMLReaderCallback#newRow(java.lang.String, int, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, int, int)
+	 * 
+	 * Keep the row without the values only valid during the callback.
+	 */
+	public void newRow(String includeParent, int includeCount, String fullPath,
+			String uri, String localName, String qName, String type, String value, int id, int first_sub_id) {
+		add(includeParent, includeCount, fullPath, uri, localName, qName, type, value, id, first_sub_id, -1, 0, 0, 0, 0L, false, null, 0, null);
+	}
+
+	/* (non-Javadoc)
+	 * @see utils.XMLReaderService.XMLBinaryCallback#newBinaryChunk(java.lang.String, int, java.lang.String, java.lang.String, java.lang.String, java.lang.String, int, byte[], int, int, int)
+	 * 
+	 * Keep a copy of the chunk without the values only valid during the callback.
+	 */
+	public void newBinaryChunk(String includeParent, int includeCount, String fullPath,
+			String uri, String localName, String qName, int chunk, byte[] buf, int off, int len, int id) {
+		add(includeParent, includeCount, fullPath, uri, localName, qName, "B", null, id, id, -1, 0, 0, 0, 0L, false, null, chunk, copyOf(buf, off, len));
+	}
+
+	/* (non-Javadoc)
+	 * @see utils.XMLReaderService.XMLRowCallback#newRow(utils.XMLEvent)
+	 * 
+	 * Keep the row with all its values.
+	 */
+	public void newRow(XMLEvent row) {
+		add(row.getIncludeParent(), row.getIncludeCount(), row.getFullPathString(), row.getUri(), row.getLocalName(), row.getQName(),
+				row.getType(), row.getValueString(), row.getId(), row.getFirstSubId(),
+				row.getParentId(), row.getDepth(), row.getOrdinal(), row.getValueChunk(), row.getFingerprint(), row.isIncludeParent(), row.getFragment(),
+				row.getBinaryChunk(), (row.getBytes() == null)? null:copyOf(row.getBytes(), row.getOffset(), row.getLength()));
+	}
+
+	/**
+	 * Send all kept rows in the order they were found to the callback. An <code>XMLRowCallback</code> gets them with all their values.
+	 * Other callbacks get binary chunks only, if they are an <code>XMLBinaryCallback</code>.
+	 * @param xmlReaderCallback
+	 */
+	public void replay(XMLReaderCallback xmlReaderCallback) {
+		for(int i = 0; i < size; i++) {
+			row.wrap(includeParents[i], includeCounts[i], fullPaths[i], uris[i], localNames[i], qNames[i], types[i], values[i], ids[i], first_sub_ids[i]);
+			row.setState(parentIds[i], depths[i], ordinals[i], valueChunks[i], fingerprints[i], isIncludeParents[i], fragments[i]);
+			if(binaries[i] != null) row.setBinary(binaryChunks[i], binaries[i], 0, binaries[i].length);
+			row.replay(xmlReaderCallback);
+		}
+	}
+
+	/**
+	 * Keep the exception, that ended parsing.
+	 * @param exception
+	 */
+	public void setException(Exception exception) {this.exception = exception;}
+	
+	/**
+	 * @return the exception, that ended parsing or null, if parsing ended normally.
+	 */
+	public Exception getException() {return exception;}
+	
+	/**
+	 * @return number of kept rows.
+	 */
+	public int size() {return size;}
+	
+	/**
+	 * @return estimated memory of the kept rows in bytes. Names like uri and local name are interned and not counted.
+	 */
+	public long getBytes() {return bytes;}
+	
+	/**
+	 * Remove all rows and the exception.
+	 */
+	public void clear() {
+		for(int i = 0; i < size; i++) binaries[i] = null;
+		size = 0;
+		bytes = 0L;
+		exception = null;
+	}
+
+	private void add(String includeParent, int includeCount, String fullPath,
+			String uri, String localName, String qName, String type, String value, int id, int first_sub_id,
+			int parentId, int depth, int ordinal, int valueChunk, long fingerprint, boolean isIncludeParent, String fragment,
+			int binaryChunk, byte[] binary) {
+		if(size == ids.length) grow();
+		includeParents[size] = includeParent;
+		includeCounts[size] = includeCount;
+		fullPaths[size] = fullPath;
+		uris[size] = uri;
+		localNames[size] = localName;
+		qNames[size] = qName;
+		types[size] = type;
+		values[size] = value;
+		ids[size] = id;
+		first_sub_ids[size] = first_sub_id;
+		parentIds[size] = parentId;
+		depths[size] = depth;
+		ordinals[size] = ordinal;
+		valueChunks[size] = valueChunk;
+		fingerprints[size] = fingerprint;
+		isIncludeParents[size] = isIncludeParent;
+		fragments[size] = fragment;
+		binaryChunks[size] = binaryChunk;
+		binaries[size] = binary;
+		size++;
+		bytes += ROW_BYTES + 2L*(length(includeParent) + length(fullPath) + length(value) + length(fragment)) + ((binary == null)? 0:binary.length);
+	}
+
+	private void grow() {
+		int len = ids.length*2;
+		includeParents = copyOf(includeParents, len);
+		includeCounts = copyOf(includeCounts, len);
+		fullPaths = copyOf(fullPaths, len);
+		uris = copyOf(uris, len);
+		localNames = copyOf(localNames, len);
+		qNames = copyOf(qNames, len);
+		types = copyOf(types, len);
+		values = copyOf(values, len);
+		ids = copyOf(ids, len);
+		first_sub_ids = copyOf(first_sub_ids, len);
+		parentIds = copyOf(parentIds, len);
+		depths = copyOf(depths, len);
+		ordinals = copyOf(ordinals, len);
+		valueChunks = copyOf(valueChunks, len);
+		fragments = copyOf(fragments, len);
+		binaryChunks = copyOf(binaryChunks, len);
+		
+		long[] f = new long[len];
+		System.arraycopy(fingerprints, 0, f, 0, size);
+		fingerprints = f;
+		boolean[] p = new boolean[len];
+		System.arraycopy(isIncludeParents, 0, p, 0, size);
+		isIncludeParents = p;
+		byte[][] b = new byte[len][];
+		System.arraycopy(binaries, 0, b, 0, size);
+		binaries = b;
+	}
+	
+	private static int length(String s) {return (s == null)? 0:s.length();}
+	
+	private static byte[] copyOf(byte[] buf, int off, int len) {
+		byte[] copy = new byte[len];
+		System.arraycopy(buf, off, copy, 0, len);
+		return copy;
+	}
+	
+	private String[] copyOf(String[] src, int len) {
+		String[] dest = new String[len];
+		System.arraycopy(src, 0, dest, 0, size);
+		return dest;
+	}
+	
+	private int[] copyOf(int[] src, int len) {
+		int[] dest = new int[len];
+		System.arraycopy(src, 0, dest, 0, size);
+		return dest;
+	}
+}
@@ -0,0 +1,183 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.asterdata.ncluster.sqlmr.data.ColumnDefinition;
+import com.asterdata.ncluster.sqlmr.data.RowEmitter;
+import com.asterdata.ncluster.sqlmr.data.SqlType;
+import com.asterdata.ncluster.sqlmr.data.types.Timestamp;
+
+/**
+ * @author Juergen Boiselle
+ *
+ * Shred the rows of an XML parse into one wide row per record. A record is one instance of an include parent,
+ * identified by includeParent and includeCount. Each column is configured as "name:type=item", where item is either
+ * the local name of a node or a regular expression starting with "/", which is matched against the full path as in InExcluder.
+ * Supported types are varchar, integer, bigint, double and timestamp.
+ * 
+ * The values of a record are collected in an array with one slot per column. The first value found for a column within a record is kept.
+ * Values are converted to the column type, when the record is emitted. Values, that cannot be converted, are emitted as null.
+ * This class is not thread safe.
+ */
+public class XMLShredder {
+	private static final Pattern TIMESTAMP = Pattern.compile(
+			"\\s*(\\d{4})-(\\d{1,2})-(\\d{1,2})(?:[T ](\\d{1,2}):(\\d{1,2})(?::(\\d{1,2})(?:\\.(\\d{1,9}))?)?)?(?:Z|[+-]\\d{2}:?\\d{2})?\\s*");
+	private enum Type {VARCHAR, INTEGER, BIGINT, DOUBLE, TIMESTAMP}
+	
+	private List<String> names = new ArrayList<String>();
+	private List<Type> types = new ArrayList<Type>();
+	private List<String> localNames = new ArrayList<String>(); // null, if path is used
+	private List<Pattern> paths = new ArrayList<Pattern>(); // null, if local name is used
+	
+	// Current record
+	private String[] slots;
+	private boolean hasRecord = false;
+	private String includeParent = null;
+	private int includeCount = 0;
+	
+	/**
+	 * @param columns list of "name:type=item".
+	 * @throws IllegalArgumentException if a column cannot be interpreted.
+	 */
+	public XMLShredder(List<String> columns) throws IllegalArgumentException {
+		for(String column : columns) {
+			int colon = column.indexOf(':');
+			int equals = column.indexOf('=', colon+1);
+			if(colon <= 0 || equals == -1 || equals == column.length()-1)
+				throw new IllegalArgumentException("unexpected value '" + column + "'. Expected 'name:type=localname' or 'name:type=/regex/'");
+			
+			names.add(column.substring(0, colon).trim());
+			types.add(toType(column.substring(colon+1, equals).trim()));
+			String item = column.substring(equals+1);
+			localNames.add(item.startsWith("/")? null:item);
+			paths.add(item.startsWith("/")? Pattern.compile(item):null);
+		}
+		slots = new String[names.size()];
+	}
+	
+	/**
+	 * Add the configured columns to the output schema.
+	 * @param outputColumns
+	 */
+	public void constructOutputSchema(List<ColumnDefinition> outputColumns) {
+		for(int i = 0; i < names.size(); i++) {
+			switch(types.get(i)) {
+			case VARCHAR: outputColumns.add(new ColumnDefinition(names.get(i), SqlType.getType("character varying"))); break;
+			case INTEGER: outputColumns.add(new ColumnDefinition(names.get(i), SqlType.getType("integer"))); break;
+			case BIGINT: outputColumns.add(new ColumnDefinition(names.get(i), SqlType.getType("bigint"))); break;
+			case DOUBLE: outputColumns.add(new ColumnDefinition(names.get(i), SqlType.getType("double precision"))); break;
+			case TIMESTAMP: outputColumns.add(new ColumnDefinition(names.get(i), SqlType.getType("timestamp without time zone"))); break;
+			}
+		}
+	}
+	
+	/**
+	 * Check if a row belongs to another record than the one collected so far. If so, the collected record must be emitted before
+	 * the row is collected.
+	 * @param includeParent of the row.
+	 * @param includeCount of the row.
+	 * @return true, if a record was collected and the row starts a new record.
+	 */
+	public boolean isNewRecord(String includeParent, int includeCount) {
+		return hasRecord && (includeCount != this.includeCount ||
+				(includeParent == null? this.includeParent != null:!includeParent.equals(this.includeParent)));
+	}
+	
+	/**
+	 * Collect the value of a row into the slot of all columns, that match the row.
+	 * @param includeParent of the row.
+	 * @param includeCount of the row.
+	 * @param fullPath of the row.
+	 * @param localName of the row.
+	 * @param value of the row.
+	 */
+	public void collect(String includeParent, int includeCount, String fullPath, String localName, String value) {
+		hasRecord = true;
+		this.includeParent = includeParent;
+		this.includeCount = includeCount;
+		for(int i = 0; i < slots.length; i++) {
+			if(slots[i] != null) continue; // First value wins
+			if(localNames.get(i) != null? localNames.get(i).equals(localName):paths.get(i).matcher(fullPath).matches()) slots[i] = value;
+		}
+	}
+	
+	/**
+	 * @return true, if values were collected since the last emit or clear.
+	 */
+	public boolean hasRecord() {return hasRecord;}
+	public String getIncludeParent() {return includeParent;}
+	public int getIncludeCount() {return includeCount;}
+	
+	/**
+	 * @param i index of the column.
+	 * @return the value collected for the column in the current record. Null, if no value was found.
+	 */
+	public String getValue(int i) {return slots[i];}
+	
+	/**
+	 * Put the converted values of the current record to the current output row and clear the record. The method does not call emitRow.
+	 * @param outputEmitter
+	 */
+	public void emit(RowEmitter outputEmitter) {
+		for(int i = 0; i < slots.length; i++) {
+			String value = slots[i] == null? null:slots[i].trim();
+			if(value == null || (value.length() == 0 && types.get(i) != Type.VARCHAR)) {
+				outputEmitter.addNull();
+				continue;
+			}
+			
+			try {
+				switch(types.get(i)) {
+				case VARCHAR: outputEmitter.addString(slots[i]); break;
+				case INTEGER: outputEmitter.addInt(Integer.parseInt(value)); break;
+				case BIGINT: outputEmitter.addLong(Long.parseLong(value)); break;
+				case DOUBLE: outputEmitter.addDouble(Double.parseDouble(value)); break;
+				case TIMESTAMP:
+					int[] fields = parseTimestamp(value);
+					if(fields == null) outputEmitter.addNull();
+					else outputEmitter.addTimestamp(new Timestamp(SqlType.getType("timestamp without time zone"),
+							fields[0], fields[1], fields[2], fields[3], fields[4], fields[5], fields[6]));
+					break;
+				}
+			}
+			catch(NumberFormatException e) {
+				outputEmitter.addNull();
+			}
+		}
+		clear();
+	}
+	
+	// Forget the current record
+	public void clear() {
+		for(int i = 0; i < slots.length; i++) slots[i] = null;
+		hasRecord = false;
+	}
+	
+	/**
+	 * Parse an XML date or date time like "2014-03-01", "2014-03-01T12:00:00.123" or "2014-03-01 12:00:00". A time zone is ignored.
+	 * @param value
+	 * @return year, month, day, hour, minute, second and nanoseconds or null, if value is not a date.
+	 */
+	public static int[] parseTimestamp(String value) {
+		Matcher matcher = TIMESTAMP.matcher(value);
+		if(!matcher.matches()) return null;
+		
+		int[] fields = new int[7];
+		for(int i = 0; i < 6; i++) fields[i] = (matcher.group(i+1) == null)? 0:Integer.parseInt(matcher.group(i+1));
+		if(matcher.group(7) != null) fields[6] = Integer.parseInt((matcher.group(7) + "00000000").substring(0, 9));
+		return fields;
+	}
+	
+	private static Type toType(String type) throws IllegalArgumentException {
+		type = type.toLowerCase();
+		if(type.equals("varchar") || type.equals("character varying")) return Type.VARCHAR;
+		if(type.equals("integer") || type.equals("int")) return Type.INTEGER;
+		if(type.equals("bigint")) return Type.BIGINT;
+		if(type.equals("double") || type.equals("double precision")) return Type.DOUBLE;
+		if(type.equals("timestamp")) return Type.TIMESTAMP;
+		throw new IllegalArgumentException("unexpected type '" + type + "'. Expected one of varchar, integer, bigint, double or timestamp");
+	}
+}
@@ -0,0 +1,154 @@
+package utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.xml.sax.SAXException;
+
+import utils.XMLReaderService.XMLReaderCallback;
+import utils.XMLReaderService.XMLRowAdapter;
+import utils.XMLReaderServicePool.ParseJob;
+
+/**
+ * @author Juergen Boiselle
+ *
+ * Parse one large XML document, that consists of a flat list of records below the root element, in parallel.
+ * The document is split by <code>XMLSplitter</code> into segments, that are parsed by the threads of an <code>XMLReaderServicePool</code>.
+ * The rows of the segments are passed to the callback in document order, with id, first_sub_id, includeCount, parent id and ordinal renumbered
+ * as if the document was parsed as a whole. The end of the root element, which closes all but the last segment, is not passed.
+ * An <code>XMLRowCallback</code> gets the rows with the values, that are otherwise only valid during a callback of XMLReaderService.
+ * The root element has no fragment, because its XML is split, and its fingerprint covers the last segment only.
+ * 
+ * Include counts of nodes, that are included by the root element itself, keep the count of the root element.
+ * Skipping ends the document at the segment, in which a node of the skip list was found.
+ */
+public class XMLSplitParser {
+	private XMLReaderServicePool xmlReaderServicePool;
+	private String record;
+	private int segmentSize;
+	
+	/**
+	 * @param xmlReaderServicePool to parse the segments.
+	 * @param record local name of the elements directly below the root element, the document can be split before.
+	 * @param segmentSize minimal number of characters of a segment.
+	 */
+	public XMLSplitParser(XMLReaderServicePool xmlReaderServicePool, String record, int segmentSize) {
+		this.xmlReaderServicePool = xmlReaderServicePool;
+		this.record = record;
+		this.segmentSize = segmentSize;
+	}
+	
+	/**
+	 * Split, parse and pass the rows to the callback in document order.
+	 * @param reader to read the XML document from.
+	 * @param xmlReaderCallback
+	 * @throws SAXException if a segment is not well formed.
+	 * @throws IOException if reading failed.
+	 */
+	public void parse(Reader reader, XMLReaderCallback xmlReaderCallback) throws SAXException, IOException {
+		XMLSplitter xmlSplitter = new XMLSplitter(reader);
+		LinkedList<Segment> pendingSegments = new LinkedList<Segment>();
+		Renumbering renumbering = new Renumbering(xmlReaderCallback);
+		
+		try {
+			for(String text = xmlSplitter.nextSegment(record, segmentSize); text != null; text = xmlSplitter.nextSegment(record, segmentSize)) {
+				Segment segment = new Segment(text, xmlSplitter.isLast(), pendingSegments.isEmpty() && renumbering.segmentNo == 0);
+				segment.rows = xmlReaderServicePool.submit(segment);
+				pendingSegments.add(segment);
+				
+				// Limit memory by emitting the oldest segments
+				while(pendingSegments.size() >= 2*xmlReaderServicePool.getThreads())
+					if(!renumbering.replay(pendingSegments.removeFirst(), xmlSplitter.getRootQName())) return; // Skipped
+			}
+			while(!pendingSegments.isEmpty())
+				if(!renumbering.replay(pendingSegments.removeFirst(), xmlSplitter.getRootQName())) return; // Skipped
+		} finally {
+			for(Segment segment : pendingSegments) segment.rows.cancel(false);
+		}
+	}
+	
+	// One segment parsed in the pool. Statistics are written by the pool's thread before the future completes.
+	private static class Segment implements ParseJob {
+		final String text;
+		final boolean isLast, isFirst;
+		Future<XMLRowBuffer> rows = null;
+		int ids = 0, includeCount = 0, rootIncludeCount = 0, rootSubTags = 0;
+		boolean isSkipped = false;
+		
+		Segment(String text, boolean isLast, boolean isFirst) {
+			this.text = text;
+			this.isLast = isLast;
+			this.isFirst = isFirst;
+		}
+		
+		public void parse(XMLReaderService xmlReaderService, XMLReaderCallback xmlReaderCallback) throws SAXException, IOException {
+			try {
+				xmlReaderService.parse(new StringReader(text), xmlReaderCallback);
+			} finally {
+				ids = xmlReaderService.getId();
+				includeCount = xmlReaderService.getIncludeCount();
+				rootIncludeCount = isFirst? 0:xmlReaderService.getRootIncludeCount();
+				rootSubTags = xmlReaderService.getRootSubTags();
+				isSkipped = xmlReaderService.isSkipped();
+			}
+		}
+	}
+	
+	// Pass rows of segments in order and shift numbers by what the previous segments have used.
+	private static class Renumbering extends XMLRowAdapter {
+		private final XMLReaderCallback xmlReaderCallback;
+		private int segmentNo = 0;
+		private int idOffset = 0, includeCountOffset = 0, ordinalOffset = 0;
+		private Segment segment = null;
+		private String rootPath = null;
+		
+		Renumbering(XMLReaderCallback xmlReaderCallback) {this.xmlReaderCallback = xmlReaderCallback;}
+		
+		// Return false, if the document was skipped in this segment.
+		boolean replay(Segment segment, String rootQName) throws SAXException, IOException {
+			XMLRowBuffer xmlRowBuffer = null;
+			try {
+				xmlRowBuffer = segment.rows.get();
+			} catch (InterruptedException e) {
+				throw new IOException(e.getMessage());
+			} catch (ExecutionException e) {
+				throw new SAXException(e);
+			}
+			
+			this.segment = segment;
+			this.rootPath = "/" + rootQName.substring(rootQName.indexOf(':')+1) + "/";
+			xmlRowBuffer.replay(this);
+			
+			// Throw exception of segment
+			Exception exception = xmlRowBuffer.getException();
+			if(exception instanceof SAXException) throw (SAXException) exception;
+			if(exception instanceof IOException) throw (IOException) exception;
+			if(exception != null) throw new SAXException(exception);
+			
+			// Closing root element of a segment has used one id, which does not exist in the document
+			idOffset += segment.isLast? segment.ids:segment.ids-1;
+			includeCountOffset += segment.includeCount - segment.rootIncludeCount;
+			ordinalOffset += segment.rootSubTags;
+			segmentNo++;
+			return !segment.isSkipped;
+		}
+		
+		public void newRow(XMLEvent row) {
+			boolean isRoot = row.getType().equals("T") && row.getFullPathString().equals(rootPath);
+			if(isRoot && !segment.isLast) return; // End of root element added by XMLSplitter
+			
+			int includeCount = row.getIncludeCount();
+			if(includeCount > segment.rootIncludeCount) includeCount += includeCountOffset - segment.rootIncludeCount;
+			int parentId = row.getParentId(), ordinal = row.getOrdinal();
+			if(row.getDepth() > 2) parentId += idOffset; // Within a record. The root keeps -1, its sub nodes the first_sub_id 0 of the root.
+			else if(row.getDepth() == 2 && !row.getType().equals("A")) ordinal += ordinalOffset; // Records count on over all segments
+			row.renumber(includeCount, row.getId() + idOffset, isRoot? 0:row.getFirstSubId() + idOffset);
+			row.setState(parentId, row.getDepth(), ordinal, row.getValueChunk(), row.getFingerprint(), row.isIncludeParent(), isRoot? null:row.getFragment());
+			row.replay(xmlReaderCallback);
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.xml.sax.SAXException;
+
+/**
+ * @author Juergen Boiselle
+ *
+ * Split an XML document read from a Reader into segments, that can be parsed independently.
+ * The document is scanned with XMLMarkupScanner, that only tracks markup, comments, CDATA sections,
+ * processing instructions, the DOCTYPE and the depth of elements. No values are decoded.
+ * 
+ * A segment is cut just before a start tag of a configured record element, that is a direct child of the root element,
+ * as soon as the segment has reached a minimal size. Each segment is a well formed document:
+ * The first segment is closed by an end tag of the root element. All following segments start with the prolog of the document
+ * and a start tag of the root element containing only its namespace declarations. All but the last segment are closed by an end tag
+ * of the root element. Root attributes are therefore only part of the first segment and the end of the root element is only part of the last segment.
+ * A document with an empty root element is a single segment.
+ * This class is not thread safe.
+ */
+public class XMLSplitter {
+	private static final Pattern XMLNS = Pattern.compile("\\sxmlns(:[^\\s=]+)?\\s*=\\s*(\"[^\"]*\"|'[^']*')");
+
+	private Reader reader;
+	private char[] buf = new char[64*1024];
+	private int pos = 0, limit = 0;
+	private boolean isEOF = false;
+
+	// Scanner state
+	private final XMLMarkupScanner scanner = new XMLMarkupScanner(new XMLMarkupScanner.MarkupAdapter() {
+		public void startMarkup() {tagStart = segment.length()-1;}
+		public void startElement(int depth) {isRecord = depth == 2 && tagStart >= segmentSize && scanner.getLocalName().equals(record);}
+		public void endStartTag(int depth, boolean isEmpty) {if(depth == 1 && rootQName == null) root();}
+	});
+	private int tagStart = 0; // Position of '<' of the current markup within segment
+	private StringBuilder segment = new StringBuilder();
+	private String record = null; // Parameters of the current call of nextSegment
+	private int segmentSize = 0;
+	private boolean isRecord = false; // The name of a start tag of a record was completed
+	
+	// Root element
+	private String rootQName = null;
+	private String prefix = null; // Prolog and start tag of root for all but the first segment
+	private int segmentNo = 0;
+	private boolean isLast = false;
+	
+	/**
+	 * @param reader to read the XML document from.
+	 */
+	public XMLSplitter(Reader reader) {this.reader = reader;}
+	
+	/**
+	 * Read the next segment.
+	 * @param record local name of the elements directly below the root element, before which a segment can be cut.
+	 * @param segmentSize minimal number of characters of a segment. Segments are cut at the first record starting behind this size.
+	 * @return the next segment as a well formed XML document or null, if the document was read completely.
+	 * @throws IOException if reading failed.
+	 * @throws SAXException if the document ends within the root element.
+	 */
+	public String nextSegment(String record, int segmentSize) throws IOException, SAXException {
+		if(isLast) return null;
+		this.record = record;
+		this.segmentSize = segmentSize;
+		
+		for(;;) {
+			if(pos == limit) {
+				limit = isEOF? -1:reader.read(buf, 0, buf.length);
+				pos = 0;
+				if(limit == -1) {
+					isEOF = true;
+					limit = 0;
+					if(scanner.getDepth() > 0 || rootQName == null) throw new SAXException("XML document structures must start and end within the same entity.");
+					isLast = true;
+					return segmentNo++ == 0? segment.toString():prefix + segment;
+				}
+			}
+			
+			// Scan until a cut is found
+			while(pos < limit) {
+				char c = buf[pos++];
+				segment.append(c);
+				scanner.scan(c);
+				if(isRecord) {
+					isRecord = false;
+					return cut();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return true, if the last segment returned contains the end of the document.
+	 */
+	public boolean isLast() {return isLast;}
+	
+	/**
+	 * @return the qualified name of the root element or null, if the root element was not found yet.
+	 */
+	public String getRootQName() {return rootQName;}
+	
+	// Cut segment at start of current tag and keep the rest for the next segment.
+	private String cut() {
+		StringBuilder cut = new StringBuilder();
+		if(segmentNo++ > 0) cut.append(prefix);
+		cut.append(segment, 0, tagStart);
+		cut.append("</").append(rootQName).append('>');
+		
+		segment.delete(0, tagStart);
+		tagStart = 0;
+		return cut.toString();
+	}
+	
+	// End of the start tag of the root element, which was already appended to segment. Keep its prolog, name and namespace declarations.
+	private void root() {
+		rootQName = scanner.getQName().toString();
+		StringBuilder root = new StringBuilder(segment.substring(0, tagStart)).append('<').append(rootQName);
+		Matcher matcher = XMLNS.matcher(segment.substring(tagStart));
+		while(matcher.find()) root.append(matcher.group());
+		prefix = root.append('>').toString();
+	}
+}
@@ -0,0 +1,218 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.xml.sax.Attributes;
+
+/**
+ * @author Juergen Boiselle
+ *
+ * Select elements and attributes of a tree with a subset of XPath, while the tree is walked with <code>enterElement</code> and <code>exitElement</code>.
+ * No document is built. All expressions are compiled into one automaton, whose active states are kept as a bit set per level of the tree.
+ * 
+ * The supported subset is:
+ * 	/a/b		child axis
+ * 	//a, a//b	descendant axis. An expression not starting with "/" is searched anywhere in the tree, like "//".
+ * 	*			any element
+ * 	@name, @*	attribute or any attribute. Must be the last step.
+ * 	[@name='value'], [@name="value"], [@name]	predicates on the attributes of an element. Several predicates must all be true.
+ * Names are compared by local name, prefixes are ignored.
+ * 
+ * An element or attribute is selected, if it matches one of the expressions. Sub nodes of a selected element are not selected,
+ * unless they match an expression themselves, e.g. "//item//*" and "//item//@*" select everything below "//item".
+ * If no expression is given, all nodes are selected.
+ * This class is not thread safe.
+ */
+public class XPathSelector {
+	// One step of an expression
+	private static class Step {
+		boolean isDescendant; // Step may match at any level below the previous step
+		boolean isAttribute;
+		boolean isLast; // Last step of its expression
+		String localName; // null for any
+		List<String> predicateNames = new ArrayList<String>();
+		List<String> predicateValues = new ArrayList<String>(); // null for existence only
+
+		boolean matchesName(String localName) {return this.localName == null || this.localName.equals(localName);}
+		
+		boolean matchesPredicates(Attributes atts) {
+			for(int i = 0; i < predicateNames.size(); i++) {
+				String value = valueOf(atts, predicateNames.get(i));
+				if(value == null) return false;
+				if(predicateValues.get(i) != null && !predicateValues.get(i).equals(value)) return false;
+			}
+			return true;
+		}
+		
+		private static String valueOf(Attributes atts, String localName) {
+			if(atts == null) return null;
+			for(int i = 0; i < atts.getLength(); i++)
+				if(atts.getLocalName(i).equals(localName)) return atts.getValue(i);
+			return null;
+		}
+	}
+	
+	private Step[] steps;
+	private BitSet initial = new BitSet(); // Start state of each expression
+	
+	// Current status
+	private List<BitSet> states = new ArrayList<BitSet>(); // Active states per level, reused
+	private boolean[] selected = new boolean[32]; // Selected elements per level
+	private BitSet selectedAttributes = new BitSet();
+	private int depth = 0;
+	
+	/**
+	 * @param expressions in the supported XPath subset. Might be null or empty to select all nodes.
+	 * @throws IllegalArgumentException if an expression cannot be compiled.
+	 */
+	public XPathSelector(List<String> expressions) throws IllegalArgumentException {
+		List<Step> steps = new ArrayList<Step>();
+		if(expressions != null) for(String expression : expressions) {
+			initial.set(steps.size());
+			compile(expression, steps);
+		}
+		this.steps = steps.toArray(new Step[steps.size()]);
+		clear();
+	}
+	
+	/**
+	 * @return true, if no expression was given and all nodes are selected.
+	 */
+	public boolean isEmpty() {return steps.length == 0;}
+	
+	// Initialize current status
+	public void clear() {
+		depth = 0;
+		state(0).or(initial);
+	}
+	
+	/**
+	 * Enter an element and select it and its attributes.
+	 * @param localName of the element.
+	 * @param atts of the element. Might be null.
+	 * @return true, if the element is selected.
+	 */
+	public boolean enterElement(String localName, Attributes atts) {
+		BitSet parent = states.get(depth++);
+		BitSet child = state(depth);
+		if(depth == selected.length) {
+			boolean[] grown = new boolean[2*depth];
+			System.arraycopy(selected, 0, grown, 0, depth);
+			selected = grown;
+		}
+		if(isEmpty()) return selected[depth] = true;
+		
+		// Advance the automaton
+		boolean isSelected = false;
+		for(int s = parent.nextSetBit(0); s >= 0; s = parent.nextSetBit(s+1)) {
+			Step step = steps[s];
+			if(step.isDescendant) child.set(s);
+			if(!step.isAttribute && step.matchesName(localName) && step.matchesPredicates(atts)) {
+				if(step.isLast) isSelected = true;
+				else child.set(s+1);
+			}
+		}
+		
+		// Attribute steps are always last and active for the attributes of this element
+		selectedAttributes.clear();
+		if(atts != null) for(int s = child.nextSetBit(0); s >= 0; s = child.nextSetBit(s+1)) {
+			Step step = steps[s];
+			if(step.isAttribute)
+				for(int i = 0; i < atts.getLength(); i++)
+					if(step.matchesName(atts.getLocalName(i))) selectedAttributes.set(i);
+		}
+		return selected[depth] = isSelected;
+	}
+	
+	/**
+	 * @return true, if the current element was selected.
+	 */
+	public boolean isSelected() {return selected[depth];}
+	
+	/**
+	 * @param index of the attribute of the element entered last.
+	 * @return true, if the attribute is selected.
+	 */
+	public boolean isAttributeSelected(int index) {return isEmpty() || selectedAttributes.get(index);}
+	
+	public void exitElement() {depth--;}
+	
+	// Get cleared bit set of a level
+	private BitSet state(int depth) {
+		if(depth == states.size()) states.add(new BitSet());
+		BitSet state = states.get(depth);
+		state.clear();
+		return state;
+	}
+	
+	// Compile one expression into steps.
+	private static void compile(String expression, List<Step> steps) throws IllegalArgumentException {
+		String x = expression.trim();
+		int pos = 0;
+		boolean isDescendant = true; // Relative expressions are searched anywhere
+		if(x.startsWith("//")) pos = 2;
+		else if(x.startsWith("/")) {
+			pos = 1;
+			isDescendant = false;
+		}
+		
+		for(;;) {
+			Step step = new Step();
+			step.isDescendant = isDescendant;
+			if(pos < x.length() && x.charAt(pos) == '@') {
+				step.isAttribute = true;
+				pos++;
+			}
+			
+			// Name test
+			int start = pos;
+			while(pos < x.length() && "/[]@=".indexOf(x.charAt(pos)) == -1 && !Character.isWhitespace(x.charAt(pos))) pos++;
+			String name = x.substring(start, pos);
+			if(name.length() == 0) throw new IllegalArgumentException("XPath '" + expression + "': name expected at position " + start);
+			step.localName = name.equals("*")? null:name.substring(name.indexOf(':')+1);
+			
+			// Predicates
+			while(pos < x.length() && x.charAt(pos) == '[') {
+				if(step.isAttribute) throw new IllegalArgumentException("XPath '" + expression + "': predicates on attributes are not supported");
+				pos = skipWhitespace(x, pos+1);
+				if(pos == x.length() || x.charAt(pos) != '@')
+					throw new IllegalArgumentException("XPath '" + expression + "': only attribute predicates like [@name='value'] are supported");
+				start = ++pos;
+				while(pos < x.length() && "]=".indexOf(x.charAt(pos)) == -1 && !Character.isWhitespace(x.charAt(pos))) pos++;
+				name = x.substring(start, pos);
+				if(name.length() == 0) throw new IllegalArgumentException("XPath '" + expression + "': attribute name expected at position " + start);
+				
+				String value = null;
+				pos = skipWhitespace(x, pos);
+				if(pos < x.length() && x.charAt(pos) == '=') {
+					pos = skipWhitespace(x, pos+1);
+					char quote = (pos < x.length())? x.charAt(pos):' ';
+					int end = (quote == '\'' || quote == '"')? x.indexOf(quote, pos+1):-1;
+					if(end == -1) throw new IllegalArgumentException("XPath '" + expression + "': quoted value expected at position " + pos);
+					value = x.substring(pos+1, end);
+					pos = skipWhitespace(x, end+1);
+				}
+				if(pos == x.length() || x.charAt(pos) != ']') throw new IllegalArgumentException("XPath '" + expression + "': ']' expected at position " + pos);
+				pos++;
+				step.predicateNames.add(name.substring(name.indexOf(':')+1));
+				step.predicateValues.add(value);
+			}
+			steps.add(step);
+			
+			// Next step
+			if(pos == x.length()) break;
+			if(x.charAt(pos) != '/') throw new IllegalArgumentException("XPath '" + expression + "': '/' expected at position " + pos);
+			if(step.isAttribute) throw new IllegalArgumentException("XPath '" + expression + "': attribute must be the last step");
+			isDescendant = x.startsWith("//", pos);
+			pos += isDescendant? 2:1;
+		}
+		steps.get(steps.size()-1).isLast = true;
+	}
+	
+	private static int skipWhitespace(String x, int pos) {
+		while(pos < x.length() && Character.isWhitespace(x.charAt(pos))) pos++;
+		return pos;
+	}
+}